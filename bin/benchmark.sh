@@ -0,0 +1,57 @@
+#!/bin/bash
+############################################################################
+# Copyright (c) 2013, Salesforce.com, Inc.
+# All rights reserved.
+#
+# Redistribution and use in source and binary forms, with or without
+# modification, are permitted provided that the following conditions are met:
+#
+#     Redistributions of source code must retain the above copyright notice,
+#     this list of conditions and the following disclaimer.
+#     Redistributions in binary form must reproduce the above copyright notice,
+#     this list of conditions and the following disclaimer in the documentation
+#     and/or other materials provided with the distribution.
+#     Neither the name of Salesforce.com nor the names of its contributors may 
+#     be used to endorse or promote products derived from this software without 
+#     specific prior written permission.
+#
+# THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+# ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+# WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+# DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+# FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+# DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+# SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+# CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+# OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+# OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+############################################################################
+
+# Runs the microbenchmarks in src/perf/java without requiring a cluster.
+# With no arguments all of them are run, otherwise only the ones named, for example:
+#   benchmark.sh                                               runs every benchmark
+#   benchmark.sh SkipScanFilterBenchmark GroupByKeyBenchmark   runs only these benchmarks
+
+current_dir=$(cd $(dirname $0);pwd)
+project_dir="$current_dir/.."
+
+(cd "$project_dir" && mvn -q -Pbenchmark test-compile) || exit 1
+
+benchmarks=$(cd "$project_dir/src/perf/java" && find . -name '*Benchmark.java' | sed -e 's|^\./||' -e 's|\.java$||' -e 's|/|.|g' | sort)
+if [ $# -gt 0 ]; then
+    selected=""
+    for name in "$@"; do
+        match=$(echo "$benchmarks" | grep "\.$name\$")
+        if [ -z "$match" ]; then
+            echo "Unknown benchmark: $name" >&2
+            exit 1
+        fi
+        selected="$selected $match"
+    done
+    benchmarks=$selected
+fi
+
+classpath="$project_dir/target/test-classes:$project_dir/target/classes:$(cat $project_dir/target/benchmark.classpath)"
+for benchmark in $benchmarks; do
+    java -cp "$current_dir:$classpath" -Dlog4j.configuration=file:$current_dir/log4j.properties $benchmark || exit 1
+done
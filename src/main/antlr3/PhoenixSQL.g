@@ -89,6 +89,8 @@ tokens
     CONSTRAINT='constraint';
     SHOW='show';
     TABLES='tables';
+    INDEX='index';
+    INCLUDE='include';
 }
 
 
@@ -320,6 +322,7 @@ oneStatement returns [SQLStatement ret]
     |    u=upsert_node {$ret=u;}
     |    d=delete_node {$ret=d;}
     |    ct=create_table {$ret=ct;}
+    |    ci=create_index {$ret=ci;}
     |    dt=drop_table {$ret=dt;}
     |    at=alter_table {$ret=at;}
     |    e=explain_plan {$ret=e;}
@@ -376,6 +379,25 @@ create_table returns [CreateTableStatement ret]
         {ret = factory.createTable(t, p, cdefs, pk, v, ro!=null, ex!=null, getBindCount()); }
     ;
 
+// Parse a create index statement.
+create_index returns [CreateIndexStatement ret]
+    :   CREATE INDEX (IF NOT ex=EXISTS)? i=index_name ON t=from_table_name
+        (LPAREN cols=column_def_names RPAREN)
+        (INCLUDE (LPAREN icols=column_def_names RPAREN))?
+        (p=fam_properties)?
+        (SPLIT ON v=values)?
+        {ret = factory.createIndex(i, t, cols, icols, p, v, ex!=null, getBindCount()); }
+    ;
+
+index_name returns [NamedNode ret]
+    :   name=identifier {$ret = factory.indexName(name); }
+    ;
+
+column_def_names returns [List<ColumnDefName> ret]
+@init{ret = new ArrayList<ColumnDefName>(); }
+    :  c = column_def_name {$ret.add(c);}  (COMMA c = column_def_name {$ret.add(c);} )*
+;
+
 pk_constraint returns [PrimaryKeyConstraint ret]
 	:	CONSTRAINT	n=identifier PRIMARY KEY LPAREN cols=identifiers RPAREN { $ret = factory.primaryKey(n,cols); }
 	;
@@ -534,7 +556,7 @@ table_refs returns [List<TableNode> ret]
 
 // parse a field, if it might be a bind name.
 named_table returns [NamedTableNode ret]
-    :   t=from_table_name { $ret = factory.namedTable(null, t); }
+    :   t=from_table_name ((AS)? alias=identifier)? { $ret = factory.namedTable(alias, t); }
     ;
 
 
@@ -545,11 +567,12 @@ table_ref returns [TableNode ret]
     ;
 
 join_specs returns [List<TableNode> ret]
+@init{ret = new ArrayList<TableNode>(4); }
     :   t=named_table {$ret.add(t);} (s=join_spec { $ret.add(s); })+
     ;
 
 join_spec returns [JoinTableNode ret]
-    :   j=join_type JOIN t=named_table ON e=condition { $ret = factory.join(null, t, e, j); }
+    :   (j=join_type)? JOIN t=named_table ON e=condition { $ret = factory.join(null, t, e, j == null ? JoinTableNode.JoinType.Inner : j); }
     ;
 
 join_type returns [JoinTableNode.JoinType ret]
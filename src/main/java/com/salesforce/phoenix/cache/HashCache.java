@@ -27,6 +27,8 @@
  ******************************************************************************/
 package com.salesforce.phoenix.cache;
 
+import java.util.List;
+
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.http.annotation.Immutable;
@@ -36,7 +38,8 @@ import com.salesforce.phoenix.util.SQLCloseable;
 
 /**
  * Encapsulate deserialized hash cache from bytes into Map.
- * The Map uses the row key as the key and the row as the value.
+ * The Map uses the row key as the key and the rows with that
+ * key as the value, since more than one row may share a join key.
  * @author jtaylor
  * @since 0.1
  */
@@ -44,5 +47,5 @@ import com.salesforce.phoenix.util.SQLCloseable;
 public interface HashCache extends SQLCloseable {
     public byte[] getTableName();
     public byte[][] getColumnFamilies();
-    public Result get(ImmutableBytesWritable rowKey);
+    public List<Result> get(ImmutableBytesWritable rowKey);
 }
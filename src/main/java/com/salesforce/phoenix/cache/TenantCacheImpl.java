@@ -161,7 +161,7 @@ public class TenantCacheImpl implements TenantCache {
 
         @Immutable
         private class AgeOutHashCache implements HashCache {
-            private final Map<ImmutableBytesWritable,Result> hashCache;
+            private final Map<ImmutableBytesWritable,List<Result>> hashCache;
             private final MemoryChunk memoryChunk;
             private final byte[][] cfs;
             private final byte[] tableName;
@@ -175,9 +175,9 @@ public class TenantCacheImpl implements TenantCache {
                     int nRows = dataInput.readInt();
                     int estimatedSize = SizedUtil.sizeOfMap(nRows, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, SizedUtil.RESULT_SIZE) + hashCacheBytes.getLength();
                     this.memoryChunk = memoryManager.allocate(estimatedSize);
-                    HashMap<ImmutableBytesWritable,Result> hashCacheMap = new HashMap<ImmutableBytesWritable,Result>(nRows * 5 / 4);
+                    HashMap<ImmutableBytesWritable,List<Result>> hashCacheMap = new HashMap<ImmutableBytesWritable,List<Result>>(nRows * 5 / 4);
                     offset += Bytes.SIZEOF_INT;
-                    // Build Map with row key as key and row as value
+                    // Build Map with row key as key and rows as value
                     // TODO: go through TupleUtil and create Tuples here
                     for (int i = 0; i < nRows; i++) {
                         int resultSize = (int)Bytes.readVLong(hashCacheByteArray, offset);
@@ -185,7 +185,12 @@ public class TenantCacheImpl implements TenantCache {
                         ImmutableBytesWritable value = new ImmutableBytesWritable(hashCacheByteArray,offset,resultSize);
                         Result result = new Result(value);
                         ImmutableBytesWritable key = ResultUtil.getKey(result);
-                        hashCacheMap.put(key, result);
+                        List<Result> results = hashCacheMap.get(key);
+                        if (results == null) {
+                            results = new ArrayList<Result>(1);
+                            hashCacheMap.put(key, results);
+                        }
+                        results.add(result);
                         offset += resultSize;
                     }
                     int cfCount = (int)Bytes.readVLong(hashCacheByteArray, offset);
@@ -223,7 +228,7 @@ public class TenantCacheImpl implements TenantCache {
             }
             
             @Override
-            public Result get(ImmutableBytesWritable rowKey) {
+            public List<Result> get(ImmutableBytesWritable rowKey) {
                 lastAccessTime = System.currentTimeMillis();
                 return hashCache.get(rowKey);
             }
@@ -39,8 +39,7 @@ import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.expression.LiteralExpression;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
-import com.salesforce.phoenix.parse.CreateTableStatement;
-import com.salesforce.phoenix.parse.ParseNode;
+import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.schema.MetaDataClient;
 
 
@@ -51,13 +50,9 @@ public class CreateTableCompiler {
         this.connection = connection;
     }
 
-    public MutationPlan compile(final CreateTableStatement statement, List<Object> binds) throws SQLException {
-        final ColumnResolver resolver = FromCompiler.getResolver(statement, connection);
-        Scan scan = new Scan();
-        final StatementContext context = new StatementContext(connection, resolver, binds, statement.getBindCount(), scan);
+    private static byte[][] compileSplits(StatementContext context, List<ParseNode> splitNodes) throws SQLException {
         ExpressionCompiler expressionCompiler = new ExpressionCompiler(context);
-        List<ParseNode> splitNodes = statement.getSplitNodes();
-        final byte[][] splits = new byte[splitNodes.size()][];
+        byte[][] splits = new byte[splitNodes.size()][];
         for (int i = 0; i < splits.length; i++) {
             ParseNode node = splitNodes.get(i);
             if (!node.isConstant()) {
@@ -67,6 +62,14 @@ public class CreateTableCompiler {
             LiteralExpression expression = (LiteralExpression)node.accept(expressionCompiler);
             splits[i] = expression.getBytes();
         }
+        return splits;
+    }
+    
+    public MutationPlan compile(final CreateTableStatement statement, List<Object> binds) throws SQLException {
+        final ColumnResolver resolver = FromCompiler.getResolver(statement, connection);
+        Scan scan = new Scan();
+        final StatementContext context = new StatementContext(connection, resolver, binds, statement.getBindCount(), scan);
+        final byte[][] splits = compileSplits(context, statement.getSplitNodes());
         final MetaDataClient client = new MetaDataClient(connection);
         
         return new MutationPlan() {
@@ -93,4 +96,36 @@ public class CreateTableCompiler {
             
         };
     }
+
+    public MutationPlan compile(final CreateIndexStatement statement, List<Object> binds) throws SQLException {
+        final ColumnResolver resolver = FromCompiler.getResolver(statement, connection);
+        Scan scan = new Scan();
+        final StatementContext context = new StatementContext(connection, resolver, binds, statement.getBindCount(), scan);
+        final byte[][] splits = compileSplits(context, statement.getSplitNodes());
+        final MetaDataClient client = new MetaDataClient(connection);
+        
+        return new MutationPlan() {
+
+            @Override
+            public ParameterMetaData getParameterMetaData() {
+                return context.getBindManager().getParameterMetaData();
+            }
+
+            @Override
+            public MutationState execute() throws SQLException {
+                return client.createIndex(statement, splits);
+            }
+
+            @Override
+            public ExplainPlan getExplainPlan() throws SQLException {
+                return new ExplainPlan(Collections.singletonList("CREATE INDEX"));
+            }
+
+            @Override
+            public PhoenixConnection getConnection() {
+                return connection;
+            }
+            
+        };
+    }
 }
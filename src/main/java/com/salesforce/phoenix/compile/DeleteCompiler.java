@@ -101,7 +101,8 @@ public class DeleteCompiler {
                     return connection;
                 }
             };
-        } else if (isAutoCommit) {
+        } else if (isAutoCommit && tableRef.getTable().getIndexes().isEmpty()) {
+            // The indexes of the table are maintained only for rows deleted through the client
             // Build an ungrouped aggregate query: select COUNT(*) from <table> where <where>
             // The coprocessor will delete each row returned from the scan
             List<AliasedParseNode> select = Collections.<AliasedParseNode>singletonList(
@@ -109,6 +110,7 @@ public class DeleteCompiler {
                             NODE_FACTORY.function(CountAggregateFunction.NORMALIZED_NAME, LiteralParseNode.STAR)));
             final RowProjector projector = ProjectionCompiler.getRowProjector(context, select, GroupBy.EMPTY_GROUP_BY, OrderBy.EMPTY_ORDER_BY, null);
             scan.setAttribute(UngroupedAggregateRegionObserver.DELETE_AGG, QueryConstants.TRUE);
+            scan.setAttribute(UngroupedAggregateRegionObserver.MUTATION_COUNTERS, QueryConstants.TRUE);
             final QueryPlan plan = new AggregatePlan(context, tableRef, projector, null, GroupBy.EMPTY_GROUP_BY, null, OrderBy.EMPTY_ORDER_BY, 0);
             return new MutationPlan() {
 
@@ -155,7 +157,8 @@ public class DeleteCompiler {
                     NODE_FACTORY.aliasedNode(null,
                         NODE_FACTORY.literal(1)));
             final RowProjector projector = ProjectionCompiler.getRowProjector(context, select, GroupBy.EMPTY_GROUP_BY, OrderBy.EMPTY_ORDER_BY, null);
-            final QueryPlan plan = new ScanPlan(context, tableRef, projector, null, OrderBy.EMPTY_ORDER_BY);
+            // The rows to delete may be collected in any order
+            final QueryPlan plan = new ScanPlan(context, tableRef, projector, null, OrderBy.EMPTY_ORDER_BY, false);
             return new MutationPlan() {
 
                 @Override
@@ -32,6 +32,7 @@ import java.sql.SQLException;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
+import com.salesforce.phoenix.expression.EvaluatorCompiler;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
@@ -48,12 +49,15 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 public class ExpressionProjector implements ColumnProjector {
     private final String name;
     private final Expression expression;
+    // Compiled form of the expression, used only to evaluate it
+    private final Expression evaluator;
     private final String tableName;
     private final boolean isCaseSensitive;
     
     public ExpressionProjector(String name, String tableName, Expression expression, boolean isCaseSensitive) {
         this.name = name;
         this.expression = expression;
+        this.evaluator = EvaluatorCompiler.compile(expression);
         this.tableName = tableName;
         this.isCaseSensitive = isCaseSensitive;
     }
@@ -75,8 +79,7 @@ public class ExpressionProjector implements ColumnProjector {
 
     @Override
     public final Object getValue(Tuple tuple, PDataType type, ImmutableBytesWritable ptr) throws SQLException {
-        Expression expression = getExpression();
-        if (!expression.evaluate(tuple, ptr)) {
+        if (!evaluator.evaluate(tuple, ptr)) {
             return null;
         }
         if (ptr.getLength() == 0) {
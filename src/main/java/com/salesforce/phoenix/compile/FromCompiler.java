@@ -68,6 +68,10 @@ public class FromCompiler {
         return EMPTY_TABLE_RESOLVER;
     }
 
+    public static ColumnResolver getResolver(final CreateIndexStatement statement, final PhoenixConnection connection) throws SQLException {
+        return EMPTY_TABLE_RESOLVER;
+    }
+
 
     // TODO: commonize with one for upsert
     public static ColumnResolver getResolver(DropColumnStatement statement, PhoenixConnection connection) throws SQLException {
@@ -85,13 +89,13 @@ public class FromCompiler {
      * @return the column resolver
      * @throws SQLException 
      * @throws SQLFeatureNotSupportedException if unsupported constructs appear in the FROM
-     * clause. Currently only a single table name is supported.
+     * clause. Currently only a single table name or a single join between two tables is supported.
      * @throws TableNotFoundException if table name not found in schema
      */
     public static ColumnResolver getResolver(SelectStatement statement, PhoenixConnection connection) throws SQLException {
         List<TableNode> fromNodes = statement.getFrom();
-        if (fromNodes.size() > 1) {
-            throw new SQLFeatureNotSupportedException("Joins not supported");
+        if (fromNodes.size() > 2 || (fromNodes.size() == 2 && !(fromNodes.get(1) instanceof JoinTableNode))) {
+            throw new SQLFeatureNotSupportedException("Only a single join between two tables is supported");
         }
         FromClauseVisitor visitor = new SelectFromClauseVisitor(connection);
         for (TableNode node : fromNodes) {
@@ -130,6 +134,10 @@ public class FromCompiler {
             return tableRef;
         }
         
+        @Override
+        public void visit(JoinTableNode joinNode) throws SQLException {
+            joinNode.getTable().accept(this);
+        }
     }
     
     private static class DDLFromClauseVisitor extends FromClauseVisitor {
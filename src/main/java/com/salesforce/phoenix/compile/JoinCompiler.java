@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.compile;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Scan;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.compile.QueryCompiler.CostEstimate;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.execute.BasicQueryPlan;
+import com.salesforce.phoenix.execute.HashJoinPlan;
+import com.salesforce.phoenix.expression.CoerceExpression;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.join.HashJoinInfo;
+import com.salesforce.phoenix.parse.*;
+import com.salesforce.phoenix.parse.JoinTableNode.JoinType;
+import com.salesforce.phoenix.query.ConnectionQueryServices;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.ByteUtil;
+import com.salesforce.phoenix.util.SchemaUtil;
+
+
+/**
+ * 
+ * Class used to compile a join between two tables into a broadcast hash join.
+ * The rows of one side, the hashed table, are scanned on the client and sent to
+ * every region server hosting the other side, the scanned table, where
+ * {@link com.salesforce.phoenix.join.HashJoiningRegionObserver} joins them to
+ * each row as it is scanned. The rest of the query is then compiled as a query
+ * over the scanned table in which the columns of the hashed table are resolved
+ * to the column families they are placed in by the join.
+ * 
+ * An INNER join hashes the side with fewer regions, while an outer join always
+ * hashes the side whose rows need not all be returned. FULL joins are not supported.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class JoinCompiler {
+    private static final ParseNodeFactory NODE_FACTORY = new ParseNodeFactory();
+    private static final int PROBE = 1;
+    private static final int HASH = 2;
+    private static final int BOTH = PROBE | HASH;
+    
+    private final PhoenixConnection connection;
+    private final ColumnResolver resolver;
+    private final boolean isOuterJoin;
+    private final TableRef probeTable;
+    private final TableRef hashTable;
+    private final NamedTableNode hashTableNode;
+    private final ParseNode onNode;
+    private final TableRef joinedTable;
+    private final SortedSet<Integer> referencedColumns = new TreeSet<Integer>();
+    private final List<ParseNode> probeKeyNodes = Lists.newArrayList();
+    private final List<ParseNode> hashKeyNodes = Lists.newArrayList();
+    private List<Expression> probeKeyExpressions;
+    private ParseNode hashWhere;
+    private HintNode hint;
+    private Expression postFilter;
+    
+    private JoinCompiler(PhoenixConnection connection, ColumnResolver resolver, boolean isOuterJoin, TableRef probeTable, TableRef hashTable, NamedTableNode hashTableNode, ParseNode onNode) {
+        this.connection = connection;
+        this.resolver = resolver;
+        this.isOuterJoin = isOuterJoin;
+        this.probeTable = probeTable;
+        this.hashTable = hashTable;
+        this.hashTableNode = hashTableNode;
+        this.onNode = onNode;
+        this.joinedTable = newJoinedTableRef(hashTable);
+    }
+
+    /**
+     * Get the compiler for the join in the FROM clause of a statement.
+     * @param statement the select statement
+     * @param resolver the resolver for all the tables in the FROM clause
+     * @param connection the connection
+     * @return the join compiler or null if the statement does not join tables
+     * @throws SQLFeatureNotSupportedException if the type of join is not supported
+     */
+    public static JoinCompiler getJoinCompiler(SelectStatement statement, ColumnResolver resolver, PhoenixConnection connection) throws SQLException {
+        List<TableNode> fromNodes = statement.getFrom();
+        if (fromNodes.size() == 1) {
+            return null;
+        }
+        // Validated in FromCompiler
+        NamedTableNode lhsNode = (NamedTableNode)fromNodes.get(0);
+        JoinTableNode joinNode = (JoinTableNode)fromNodes.get(1);
+        TableRef lhs = resolver.getTables().get(0);
+        TableRef rhs = resolver.getTables().get(1);
+        boolean hashLhs;
+        switch (joinNode.getType()) {
+        case Left:
+            hashLhs = false;
+            break;
+        case Right:
+            hashLhs = true;
+            break;
+        case Inner:
+            // Hash the smaller side, using the estimated size of the tables when statistics
+            // are available and otherwise the number of regions as a measure of size
+            ConnectionQueryServices services = connection.getQueryServices();
+            CostEstimate lhsCost = QueryCompiler.estimateCost(services, lhs, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+            CostEstimate rhsCost = QueryCompiler.estimateCost(services, rhs, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+            if (lhsCost.isKnown() && rhsCost.isKnown()) {
+                hashLhs = lhsCost.getByteCount() < rhsCost.getByteCount();
+            } else {
+                hashLhs = services.getAllTableRegions(lhs).size() < services.getAllTableRegions(rhs).size();
+            }
+            break;
+        default:
+            throw new SQLFeatureNotSupportedException(joinNode.getType() + " joins are not supported");
+        }
+        boolean isOuterJoin = joinNode.getType() != JoinType.Inner;
+        if (hashLhs) {
+            return new JoinCompiler(connection, resolver, isOuterJoin, rhs, lhs, lhsNode, joinNode.getOnNode());
+        }
+        return new JoinCompiler(connection, resolver, isOuterJoin, lhs, rhs, joinNode.getTable(), joinNode.getOnNode());
+    }
+    
+    /**
+     * Builds a table that matches the hashed table, but with every column being a
+     * nullable key value column in a family prefixed with {@link HashJoinInfo#JOINED_FAMILY_PREFIX},
+     * which is how they appear in a joined row.
+     */
+    private static TableRef newJoinedTableRef(TableRef tableRef) {
+        PTable table = tableRef.getTable();
+        List<PColumn> columns = table.getColumns();
+        List<PColumn> joinedColumns = Lists.newArrayListWithExpectedSize(columns.size());
+        for (PColumn column : columns) {
+            PName familyName = column.getFamilyName();
+            byte[] joinedFamily = familyName == null ? HashJoinInfo.JOINED_FAMILY_PREFIX : ByteUtil.concat(HashJoinInfo.JOINED_FAMILY_PREFIX, familyName.getBytes());
+            joinedColumns.add(new PColumnImpl(column.getName(), new PNameImpl(joinedFamily), column.getDataType(), 
+                    column.getMaxLength(), column.getScale(), true, column.getPosition()));
+        }
+        PTable joinedTable = new PTableImpl(table.getName(), table.getType(), table.getTimeStamp(), table.getSequenceNumber(), null, joinedColumns);
+        return new TableRef(tableRef.getTableAlias(), joinedTable, tableRef.getSchema(), tableRef.getTimeStamp());
+    }
+    
+    /**
+     * Get the resolver used to compile the query over the scanned table. Columns of the
+     * hashed table resolve to the key value columns they become in a joined row.
+     */
+    public ColumnResolver getResolver() {
+        return new ColumnResolver() {
+            @Override
+            public List<TableRef> getTables() {
+                return Collections.singletonList(probeTable);
+            }
+
+            @Override
+            public ColumnRef resolveColumn(ColumnParseNode node) throws SQLException {
+                ColumnRef ref = resolver.resolveColumn(node);
+                if (ref.getTableRef() != hashTable) {
+                    return ref;
+                }
+                referencedColumns.add(ref.getColumnPosition());
+                return new ColumnRef(joinedTable, ref.getColumnPosition());
+            }
+        };
+    }
+    
+    /**
+     * Replace a wildcard in the select list with the columns of both tables, since the resolver
+     * returned by {@link #getResolver()} only exposes the scanned table.
+     * @param statement the select statement
+     * @return the select statement with no wildcard
+     */
+    public SelectStatement expandWildcard(SelectStatement statement) {
+        List<AliasedParseNode> select = statement.getSelect();
+        List<AliasedParseNode> expandedSelect = null;
+        for (int i = 0; i < select.size(); i++) {
+            AliasedParseNode aliasedNode = select.get(i);
+            if (aliasedNode.getNode() == WildcardParseNode.INSTANCE) {
+                if (expandedSelect == null) {
+                    expandedSelect = Lists.newArrayList(select.subList(0, i));
+                }
+                for (TableRef tableRef : resolver.getTables()) {
+                    TableName tableName = tableRef.getTableAlias() != null ? new TableName(null, quote(tableRef.getTableAlias()))
+                            : new TableName(tableRef.getSchema().getName().length() == 0 ? null : quote(tableRef.getSchema().getName()), quote(tableRef.getTable().getName().getString()));
+                    for (PColumn column : tableRef.getTable().getColumns()) {
+                        expandedSelect.add(NODE_FACTORY.aliasedNode(null, NODE_FACTORY.column(tableName, quote(column.getName().getString()))));
+                    }
+                }
+            } else if (expandedSelect != null) {
+                expandedSelect.add(aliasedNode);
+            }
+        }
+        if (expandedSelect == null) {
+            return statement;
+        }
+        return NODE_FACTORY.select(statement.getFrom(), statement.getHint(), expandedSelect, statement.getWhere(), 
+                statement.getGroupBy(), statement.getHaving(), statement.getOrderBy(), statement.getLimit(), statement.getBindCount());
+    }
+    
+    private static String quote(String name) {
+        return "\"" + name + "\"";
+    }
+    
+    /**
+     * Split the conditions of the ON and WHERE clauses into the equality conditions that form
+     * the join key, the conditions applied to the hashed table before it is sent, the conditions
+     * applied to the joined rows, and the conditions applied to the scanned table before the join.
+     * @param context the context of the query over the scanned table
+     * @param statement the select statement
+     * @return the select statement with the WHERE clause reduced to the conditions on the
+     * scanned table, to be compiled into the filter of the scan.
+     * @throws SQLFeatureNotSupportedException if there is no equality condition between the two
+     * tables or if the ON clause of an outer join has conditions that cannot be evaluated before
+     * the join.
+     */
+    public SelectStatement compileConditions(StatementContext context, SelectStatement statement) throws SQLException {
+        List<ParseNode> probeConditions = Lists.newArrayList();
+        List<ParseNode> hashConditions = Lists.newArrayList();
+        List<ParseNode> postConditions = Lists.newArrayList();
+        for (ParseNode node : getConjuncts(onNode)) {
+            int tables = getReferencedTables(node);
+            if (tables == BOTH && addJoinKey(node)) {
+                continue;
+            }
+            if (tables == HASH) {
+                hashConditions.add(node);
+            } else if (!isOuterJoin) {
+                (tables == BOTH ? postConditions : probeConditions).add(node);
+            } else {
+                throw new SQLFeatureNotSupportedException("Only equality conditions between the tables and conditions on the " +
+                		"optional side may appear in the ON clause of an outer join: " + node);
+            }
+        }
+        for (ParseNode node : getConjuncts(statement.getWhere())) {
+            int tables = getReferencedTables(node);
+            if (tables == BOTH && !isOuterJoin && addJoinKey(node)) {
+                continue;
+            }
+            if (tables == BOTH || (tables == HASH && isOuterJoin)) {
+                // Must see the nulls of the rows that did not match
+                postConditions.add(node);
+            } else if (tables == HASH) {
+                hashConditions.add(node);
+            } else {
+                probeConditions.add(node);
+            }
+        }
+        if (probeKeyNodes.isEmpty()) {
+            throw new SQLFeatureNotSupportedException("A join must have an equality condition between the two tables");
+        }
+        
+        ExpressionCompiler compiler = new ExpressionCompiler(context);
+        probeKeyExpressions = Lists.newArrayListWithExpectedSize(probeKeyNodes.size());
+        List<ParseNode> nodes = Lists.newArrayList(probeKeyNodes);
+        if (!postConditions.isEmpty()) {
+            nodes.add(and(postConditions));
+        }
+        for (ParseNode node : nodes) {
+            Expression expression = node.accept(compiler);
+            if (compiler.isAggregate()) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.AGGREGATE_IN_WHERE).build().buildException();
+            }
+            compiler.reset();
+            if (probeKeyExpressions.size() < probeKeyNodes.size()) {
+                probeKeyExpressions.add(expression);
+            } else {
+                postFilter = expression;
+            }
+        }
+        hashWhere = and(hashConditions);
+        hint = statement.getHint();
+        statement = NODE_FACTORY.select(statement, and(probeConditions), statement.getHaving());
+        // ON conditions have not been through the normalization that the WHERE clause has
+        return RHSLiteralStatementRewriter.normalizeWhereClause(statement);
+    }
+    
+    /**
+     * Build the plan that sends the hashed table to the region servers before executing
+     * the plan over the scanned table.
+     * @param plan the plan over the scanned table, compiled using the resolver returned
+     * by {@link #getResolver()} and the WHERE clause returned by {@link #compileConditions(StatementContext, SelectStatement)}
+     * @param binds values of bind variables
+     * @return the join plan
+     */
+    public QueryPlan compile(BasicQueryPlan plan, List<Object> binds) throws SQLException {
+        // The columns of the hashed table are added to the joined rows, not read from the scanned table
+        Iterator<byte[]> families = plan.getContext().getScan().getFamilyMap().keySet().iterator();
+        while (families.hasNext()) {
+            byte[] family = families.next();
+            if (family.length > 0 && family[0] == HashJoinInfo.JOINED_FAMILY_PREFIX[0]) {
+                families.remove();
+            }
+        }
+        
+        List<AliasedParseNode> select = Lists.newArrayListWithExpectedSize(hashKeyNodes.size());
+        for (ParseNode node : hashKeyNodes) {
+            select.add(NODE_FACTORY.aliasedNode(null, node));
+        }
+        SelectStatement hashStatement = NODE_FACTORY.select(Collections.<TableNode>singletonList(hashTableNode), hint, 
+                select, hashWhere, null, null, null, null, binds.size());
+        Scan hashScan = new Scan();
+        QueryPlan hashPlan = new QueryCompiler(connection, 0, hashScan).compile(hashStatement, binds);
+        
+        // Coerce the join keys of both sides to the same type so that they match byte for byte
+        List<Expression> probeKeys = Lists.newArrayListWithExpectedSize(probeKeyExpressions.size());
+        List<Expression> hashKeys = Lists.newArrayListWithExpectedSize(probeKeyExpressions.size());
+        for (int i = 0; i < probeKeyExpressions.size(); i++) {
+            Expression probeKey = probeKeyExpressions.get(i);
+            Expression hashKey = hashPlan.getProjector().getColumnProjector(i).getExpression();
+            PDataType probeType = probeKey.getDataType();
+            PDataType hashType = hashKey.getDataType();
+            if (probeType != hashType && probeType != null && hashType != null) {
+                if (hashType.isCoercibleTo(probeType)) {
+                    hashKey = CoerceExpression.create(hashKey, probeType);
+                } else if (probeType.isCoercibleTo(hashType)) {
+                    probeKey = CoerceExpression.create(probeKey, hashType);
+                } else {
+                    throw new TypeMismatchException(probeType, hashType, probeKeyNodes.get(i) + " = " + hashKeyNodes.get(i));
+                }
+            }
+            probeKeys.add(probeKey);
+            hashKeys.add(hashKey);
+        }
+        
+        // Project the referenced columns of the hashed table
+        List<Expression> hashColumns = Lists.newArrayListWithExpectedSize(referencedColumns.size());
+        List<PColumn> joinedColumns = Lists.newArrayListWithExpectedSize(referencedColumns.size());
+        for (Integer position : referencedColumns) {
+            ColumnRef ref = new ColumnRef(hashTable, position);
+            PColumn column = ref.getColumn();
+            if (!SchemaUtil.isPKColumn(column)) {
+                byte[] family = column.getFamilyName().getBytes();
+                // Don't narrow a family that's already projected in its entirety
+                if (!hashScan.getFamilyMap().containsKey(family) || hashScan.getFamilyMap().get(family) != null) {
+                    hashScan.addColumn(family, column.getName().getBytes());
+                }
+            }
+            hashColumns.add(ref.newColumnExpression());
+            joinedColumns.add(joinedTable.getTable().getColumns().get(position));
+        }
+        
+        HashJoinInfo joinInfo = new HashJoinInfo(isOuterJoin, probeKeys, postFilter);
+        return new HashJoinPlan(plan, hashPlan, joinInfo, hashKeys, hashColumns, joinedColumns);
+    }
+    
+    private static ParseNode and(List<ParseNode> nodes) {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        return NODE_FACTORY.and(nodes);
+    }
+    
+    private static List<ParseNode> getConjuncts(ParseNode node) {
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        if (node instanceof AndParseNode) {
+            List<ParseNode> conjuncts = Lists.newArrayList();
+            for (ParseNode child : node.getChildren()) {
+                conjuncts.addAll(getConjuncts(child));
+            }
+            return conjuncts;
+        }
+        return Collections.singletonList(node);
+    }
+    
+    private boolean addJoinKey(ParseNode node) throws SQLException {
+        if (!(node instanceof EqualParseNode)) {
+            return false;
+        }
+        EqualParseNode equalNode = (EqualParseNode)node;
+        int lhsTables = getReferencedTables(equalNode.getLHS());
+        int rhsTables = getReferencedTables(equalNode.getRHS());
+        if (lhsTables == PROBE && rhsTables == HASH) {
+            probeKeyNodes.add(equalNode.getLHS());
+            hashKeyNodes.add(equalNode.getRHS());
+        } else if (lhsTables == HASH && rhsTables == PROBE) {
+            probeKeyNodes.add(equalNode.getRHS());
+            hashKeyNodes.add(equalNode.getLHS());
+        } else {
+            return false;
+        }
+        return true;
+    }
+    
+    private int getReferencedTables(ParseNode node) throws SQLException {
+        final int[] tables = new int[1];
+        node.accept(new StatelessTraverseAllParseNodeVisitor() {
+            @Override
+            public Void visit(ColumnParseNode node) throws SQLException {
+                tables[0] |= resolver.resolveColumn(node).getTableRef() == probeTable ? PROBE : HASH;
+                return null;
+            }
+        });
+        return tables[0];
+    }
+}
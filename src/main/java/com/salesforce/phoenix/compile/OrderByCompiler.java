@@ -121,11 +121,14 @@ public class OrderByCompiler {
         private final boolean ascending;
         
         private OrderingColumn(OrderByNode node, Expression expression) {
-            checkNotNull(node);
+            this(expression, checkNotNull(node).getNullsLast(), node.getOrderAscending());
+        }
+        
+        public OrderingColumn(Expression expression, boolean nullsLast, boolean ascending) {
             checkNotNull(expression);
             this.expression = expression;
-            this.nullsLast = node.getNullsLast();
-            this.ascending = node.getOrderAscending();
+            this.nullsLast = nullsLast;
+            this.ascending = ascending;
         }
 
         public Expression getExpression() {
@@ -103,6 +103,7 @@ public class PostDDLCompiler  {
                                 NODE_FACTORY.function(CountAggregateFunction.NORMALIZED_NAME, LiteralParseNode.STAR)));
                 Scan scan = new Scan();
                 scan.setAttribute(UngroupedAggregateRegionObserver.UNGROUPED_AGG, QueryConstants.TRUE);
+                scan.setAttribute(UngroupedAggregateRegionObserver.MUTATION_COUNTERS, QueryConstants.TRUE);
                 final List<TableRef> tableRefs = Collections.singletonList(tableRef);
                 ColumnResolver resolver = new ColumnResolver() {
                     @Override
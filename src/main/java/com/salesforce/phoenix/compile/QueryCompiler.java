@@ -28,20 +28,30 @@
 package com.salesforce.phoenix.compile;
 
 import java.sql.SQLException;
+import java.io.IOException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
 
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
 
+import com.google.common.collect.Lists;
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
-import com.salesforce.phoenix.execute.AggregatePlan;
-import com.salesforce.phoenix.execute.ScanPlan;
+import com.salesforce.phoenix.execute.*;
 import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.iterate.ParallelIterators;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
-import com.salesforce.phoenix.parse.RHSLiteralStatementRewriter;
-import com.salesforce.phoenix.parse.SelectStatement;
+import com.salesforce.phoenix.parse.*;
+import com.salesforce.phoenix.query.ConnectionQueryServices;
+import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.query.StatsManager;
 import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.stat.PRegionStats;
+import com.salesforce.phoenix.util.SchemaUtil;
 
 
 
@@ -53,10 +63,50 @@ import com.salesforce.phoenix.schema.*;
  * @since 0.1
  */
 public class QueryCompiler {
+    private static final ParseNodeFactory NODE_FACTORY = new ParseNodeFactory();
+    
     private final PhoenixConnection connection;
     private final Scan scan;
     private final int maxRows;
     private final PColumn[] targetColumns;
+    private final boolean useIndexes;
+    
+    /**
+     * 
+     * Estimated cost of scanning a key range of a table
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    public static class CostEstimate {
+        public static final CostEstimate UNKNOWN = new CostEstimate(-1, -1);
+        
+        private final long rowCount;
+        private final long byteCount;
+        
+        private CostEstimate(long rowCount, long byteCount) {
+            this.rowCount = rowCount;
+            this.byteCount = byteCount;
+        }
+        
+        /**
+         * @return the estimated number of rows scanned or -1 if unknown
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+        
+        /**
+         * @return the estimated number of bytes scanned or -1 if unknown
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+        
+        public boolean isKnown() {
+            return this != UNKNOWN;
+        }
+    }
     
     public QueryCompiler(PhoenixConnection connection, int maxRows) {
         this(connection, maxRows, new Scan());
@@ -71,10 +121,19 @@ public class QueryCompiler {
     }
 
     public QueryCompiler(PhoenixConnection connection, int maxRows, Scan scan, PColumn[] targetDatums) {
+        this(connection, maxRows, scan, targetDatums, true);
+    }
+
+    /**
+     * @param useIndexes false if the query must be run against the table it names, for example
+     * when the scan is shared with an UPSERT SELECT run on the server for the same table
+     */
+    public QueryCompiler(PhoenixConnection connection, int maxRows, Scan scan, PColumn[] targetDatums, boolean useIndexes) {
         this.connection = connection;
         this.maxRows = maxRows;
         this.scan = scan;
         this.targetColumns = targetDatums;
+        this.useIndexes = useIndexes;
     }
 
     /**
@@ -88,13 +147,164 @@ public class QueryCompiler {
      * @throws TableNotFoundException if table name not found in schema
      * @throws ColumnNotFoundException if column name could not be resolved
      * @throws AmbiguousColumnException if an unaliased column name is ambiguous across multiple tables
+     * @see JoinCompiler
      */
     public QueryPlan compile(SelectStatement statement, List<Object> binds) throws SQLException{
         
         assert(binds.size() == statement.getBindCount());
         
         statement = RHSLiteralStatementRewriter.normalizeWhereClause(statement);
+        if (!useIndexes || statement.getFrom().size() != 1 || !(statement.getFrom().get(0) instanceof NamedTableNode)) {
+            return compile(statement, binds, scan);
+        }
+        PTable table = FromCompiler.getResolver(statement, connection).getTables().get(0).getTable();
+        if (table.getIndexes().isEmpty()) {
+            return compile(statement, binds, scan);
+        }
+        BasicQueryPlan plan = compileWithIndexes(statement, binds, table);
+        // Whether an index is used depends on the key ranges formed for the bind values, so
+        // the plan is compiled again for other values instead of being bound to them
+        plan.getContext().setRebindableWhere(null);
+        return plan;
+    }
+    
+    private BasicQueryPlan compileWithIndexes(SelectStatement statement, List<Object> binds, PTable table) throws SQLException {
+        Scan indexScan;
+        try {
+            indexScan = new Scan(scan);
+        } catch (IOException e) {
+            throw new SQLException(e); // Impossible, since the scan has no filter yet
+        }
+        // Without a join, the plan is always a BasicQueryPlan
+        BasicQueryPlan plan = (BasicQueryPlan)compile(statement, binds, scan);
+        // Only consider an index if the table must be scanned from beginning to end
+        if (!plan.getContext().getScanRanges().isEverything()) {
+            return plan;
+        }
+        for (AliasedParseNode node : statement.getSelect()) {
+            // The index would not have the same columns as the table
+            if (node.getNode() instanceof WildcardParseNode) {
+                return plan;
+            }
+        }
+        NamedTableNode tableNode = (NamedTableNode)statement.getFrom().get(0);
+        String alias = tableNode.getAlias() == null ? tableNode.getName().getTableName() : tableNode.getAlias();
+        for (PTable index : table.getIndexes()) {
+            TableName indexName = NODE_FACTORY.table(
+                    SchemaUtil.getCaseSensitiveIdentifier(tableNode.getName().getSchemaName()),
+                    SchemaUtil.getCaseSensitiveIdentifier(index.getName().getString()));
+            SelectStatement indexStatement = NODE_FACTORY.select(
+                    Collections.<TableNode>singletonList(NODE_FACTORY.namedTable(SchemaUtil.getCaseSensitiveIdentifier(alias), indexName)),
+                    statement.getHint(), statement.getSelect(), statement.getWhere(), statement.getGroupBy(),
+                    statement.getHaving(), statement.getOrderBy(), statement.getLimit(), statement.getBindCount());
+            if (!isCovering(indexStatement)) {
+                continue;
+            }
+            BasicQueryPlan indexPlan;
+            try {
+                indexPlan = (BasicQueryPlan)compile(indexStatement, binds, new Scan(indexScan));
+            } catch (IOException e) {
+                throw new SQLException(e); // Impossible
+            }
+            if (isUsable(indexPlan)) {
+                return indexPlan;
+            }
+        }
+        return plan;
+    }
+    
+    /**
+     * 
+     * Visitor that resolves the columns referenced by a query over an index, to find
+     * out whether the index contains all of them.
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    private static class IndexCoverageVisitor extends StatelessTraverseAllParseNodeVisitor {
+        private final ColumnResolver resolver;
+        private boolean isCovering = true;
+        
+        private IndexCoverageVisitor(ColumnResolver resolver) {
+            this.resolver = resolver;
+        }
+        
+        @Override
+        public Void visit(ColumnParseNode node) throws SQLException {
+            try {
+                resolver.resolveColumn(node);
+            } catch (ColumnNotFoundException e) {
+                isCovering = false;
+            } catch (ColumnFamilyNotFoundException e) {
+                isCovering = false;
+            } catch (TableNotFoundException e) {
+                // A column qualified by a column family that the index does not have, since
+                // the query was already compiled against the table with the same alias
+                isCovering = false;
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * @return true if all the columns referenced by the query over an index are in the index
+     */
+    private boolean isCovering(SelectStatement indexStatement) throws SQLException {
+        IndexCoverageVisitor visitor = new IndexCoverageVisitor(FromCompiler.getResolver(indexStatement, connection));
+        for (AliasedParseNode node : indexStatement.getSelect()) {
+            node.getNode().accept(visitor);
+        }
+        List<ParseNode> nodes = Lists.newArrayList(indexStatement.getGroupBy());
+        nodes.add(indexStatement.getWhere());
+        nodes.add(indexStatement.getHaving());
+        for (OrderByNode node : indexStatement.getOrderBy()) {
+            nodes.add(node.getOrderByParseNode());
+        }
+        for (ParseNode node : nodes) {
+            if (node != null) {
+                node.accept(visitor);
+            }
+        }
+        return visitor.isCovering;
+    }
+    
+    /**
+     * @return true if the plan for a query over an index scans only part of it, in which case
+     * it is preferred to a full scan of the table. Since an index has no row for a table row with a
+     * null value for a fixed width indexed column, the index is only usable if such values are
+     * filtered out by the key ranges of the scan.
+     */
+    private static boolean isUsable(BasicQueryPlan indexPlan) {
+        ScanRanges scanRanges = indexPlan.getContext().getScanRanges();
+        if (scanRanges.isEverything() || scanRanges.isDegenerate()) {
+            return false;
+        }
+        List<List<KeyRange>> ranges = scanRanges.getRanges();
+        List<PColumn> pkColumns = indexPlan.getTable().getTable().getPKColumns();
+        for (int i = 0; i < pkColumns.size(); i++) {
+            PColumn column = pkColumns.get(i);
+            if (column.isNullable() && column.getDataType().isFixedWidth()) {
+                if (i >= ranges.size()) {
+                    return false;
+                }
+                for (KeyRange range : ranges.get(i)) {
+                    // Matches IS NULL, which the index cannot answer
+                    if (range.getLowerRange().length == 0 && range.isLowerInclusive()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    private QueryPlan compile(SelectStatement statement, List<Object> binds, Scan scan) throws SQLException {
         ColumnResolver resolver = FromCompiler.getResolver(statement, connection);
+        JoinCompiler joinCompiler = JoinCompiler.getJoinCompiler(statement, resolver, connection);
+        if (joinCompiler != null) {
+            statement = joinCompiler.expandWildcard(statement);
+            resolver = joinCompiler.getResolver();
+        }
         StatementContext context = new StatementContext(connection, resolver, binds, statement.getBindCount(), scan);
         Integer limit = LimitCompiler.getLimit(context, statement.getLimit());
 
@@ -103,16 +313,28 @@ public class QueryCompiler {
         // to the WHERE clause
         statement = HavingCompiler.moveToWhereClause(statement, context, groupBy);
         Expression having = HavingCompiler.getExpression(statement, context, groupBy);
+        if (joinCompiler != null) {
+            // Leaves only the conditions that may be evaluated before the join in the WHERE clause
+            statement = joinCompiler.compileConditions(context, statement);
+        }
         // Don't pass groupBy when building where clause expression, because we do not want to wrap these
         // expressions as group by key expressions since they're pre, not post filtered.
         WhereCompiler.getWhereClause(context, statement.getWhere());
+        Filter whereFilter = scan.getFilter();
         OrderBy orderBy = OrderByCompiler.getOrderBy(statement, context, groupBy, limit); 
         RowProjector projector = ProjectionCompiler.getRowProjector(statement, context, groupBy, orderBy, limit, targetColumns);
+        // The WHERE clause alone may be compiled again for other bind values if no other clause
+        // depends on them and no filter was added to the scan for the other clauses
+        if (joinCompiler == null && statement.getBindCount() > 0 && scan.getFilter() == whereFilter 
+                && countBinds(statement.getWhere()) == statement.getBindCount() && countBindsOutsideWhere(statement) == 0) {
+            context.setRebindableWhere(statement.getWhere());
+        }
         
         // Final step is to build the query plan
         TableRef table = resolver.getTables().get(0);
+        BasicQueryPlan plan;
         if (context.isAggregate()) {
-            return new AggregatePlan(context, table, projector, limit, groupBy, having, orderBy, maxRows);
+            plan = new AggregatePlan(context, table, projector, limit, groupBy, having, orderBy, maxRows);
         } else {
             if (maxRows > 0) {
                 if (limit != null) {
@@ -121,7 +343,80 @@ public class QueryCompiler {
                     limit = maxRows;
                 }
             }
-            return new ScanPlan(context, table, projector, limit, orderBy);
+            plan = new ScanPlan(context, table, projector, limit, orderBy);
+        }
+        if (joinCompiler != null) {
+            return joinCompiler.compile(plan, binds);
+        }
+        return plan;
+    }
+    
+    private static class BindCountVisitor extends StatelessTraverseAllParseNodeVisitor {
+        private int count;
+        
+        @Override
+        public Void visit(BindParseNode node) throws SQLException {
+            count++;
+            return null;
+        }
+    }
+    
+    private static int countBinds(ParseNode node) throws SQLException {
+        if (node == null) {
+            return 0;
+        }
+        BindCountVisitor visitor = new BindCountVisitor();
+        node.accept(visitor);
+        return visitor.count;
+    }
+    
+    private static int countBindsOutsideWhere(SelectStatement statement) throws SQLException {
+        int count = countBinds(statement.getHaving());
+        for (AliasedParseNode node : statement.getSelect()) {
+            count += countBinds(node.getNode());
+        }
+        for (ParseNode node : statement.getGroupBy()) {
+            count += countBinds(node);
+        }
+        for (OrderByNode node : statement.getOrderBy()) {
+            count += countBinds(node.getOrderByParseNode());
+        }
+        if (statement.getLimit() != null) {
+            count += countBinds(statement.getLimit().getLimitParseNode());
+        }
+        return count;
+    }
+    
+    /**
+     * Estimate the number of rows and bytes read by a scan over a key range of a table,
+     * using the statistics collected for the regions that the key range overlaps. The
+     * guide posts of a region are used to estimate the part of it that is read when
+     * the key range only partially overlaps with it.
+     * @param services the query services
+     * @param table the table
+     * @param startKey the inclusive start key or an empty byte array if unbound
+     * @param stopKey the exclusive stop key or an empty byte array if unbound
+     * @return the cost estimate or {@link CostEstimate#UNKNOWN} if there are regions
+     * for which no statistics are available
+     * @throws SQLException
+     */
+    public static CostEstimate estimateCost(ConnectionQueryServices services, TableRef table, byte[] startKey, byte[] stopKey) throws SQLException {
+        SortedSet<HRegionInfo> allTableRegions = services.getAllTableRegions(table);
+        if (allTableRegions == null) {
+            return CostEstimate.UNKNOWN;
+        }
+        StatsManager statsManager = services.getStatsManager();
+        double rowCount = 0;
+        double byteCount = 0;
+        for (HRegionInfo region : ParallelIterators.filterRegions(allTableRegions, startKey, stopKey)) {
+            PRegionStats stats = statsManager.getRegionStats(table, region);
+            if (stats == null) {
+                return CostEstimate.UNKNOWN;
+            }
+            double fraction = stats.getFraction(startKey, stopKey);
+            rowCount += fraction * stats.getRowCount();
+            byteCount += fraction * stats.getByteCount();
         }
+        return new CostEstimate(Math.round(rowCount), Math.round(byteCount));
     }
 }
@@ -66,4 +66,10 @@ public interface QueryPlan extends StatementPlan {
     OrderBy getOrderBy();
 
     List<KeyRange> getSplits();
+
+    /**
+     * Returns the context the plan was compiled with, which tracks the
+     * client-side memory used while executing it
+     */
+    StatementContext getContext();
 }
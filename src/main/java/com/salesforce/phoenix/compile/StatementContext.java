@@ -40,6 +40,9 @@ import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.QueryMemoryManager;
+import com.salesforce.phoenix.parse.ParseNode;
 import com.salesforce.phoenix.query.QueryConstants;
 import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.schema.MetaDataClient;
@@ -57,7 +60,8 @@ import com.salesforce.phoenix.util.DateUtil;
  */
 public class StatementContext {
     private final ColumnResolver resolver;
-    private final BindManager binds;
+    private final int bindCount;
+    private BindManager binds;
     private final Scan scan;
     private final ExpressionManager expressions;
     private final AggregationManager aggregates;
@@ -66,16 +70,20 @@ public class StatementContext {
     private final Format dateParser;
     private final ImmutableBytesWritable tempPtr;
     private final PhoenixConnection connection;
+    private final QueryMemoryManager memoryManager;
 
     private boolean isAggregate;
     private GroupBy groupBy;
     private long currentTime = QueryConstants.UNSET_TIMESTAMP;
+    private boolean isCurrentTimeBound;
     private ScanRanges scanRanges = ScanRanges.EVERYTHING;
+    private ParseNode rebindableWhere;
 
     public StatementContext(PhoenixConnection connection, ColumnResolver resolver, List<Object> binds, int bindCount, Scan scan) {
         this.connection = connection;
         this.resolver = resolver;
         this.scan = scan;
+        this.bindCount = bindCount;
         this.binds = new BindManager(binds, bindCount);
         this.aggregates = new AggregationManager();
         this.expressions = new ExpressionManager();
@@ -84,6 +92,7 @@ public class StatementContext {
         this.dateParser = DateUtil.getDateParser(dateFormat);
         this.tempPtr = new ImmutableBytesWritable();
         this.groupBy = GroupBy.EMPTY_GROUP_BY;
+        this.memoryManager = new QueryMemoryManager(connection.getQueryServices().getMemoryManager());
     }
 
 
@@ -107,6 +116,29 @@ public class StatementContext {
         return binds;
     }
 
+    /**
+     * Binds other values to the bind parameters of the statement, for compiling
+     * the clause in which they are used again.
+     */
+    public void setBinds(List<Object> binds) {
+        this.binds = new BindManager(binds, bindCount);
+    }
+
+    /**
+     * Get the WHERE clause of the statement when it holds all the bind parameters
+     * of the statement, forms the only filter of the scan, and the table has no index
+     * that could be chosen for other values, in which case the compiled plan may be
+     * executed with other bind values by compiling just the WHERE clause again.
+     * @return the WHERE clause or null if the plan may not be re-bound
+     */
+    public ParseNode getRebindableWhere() {
+        return rebindableWhere;
+    }
+
+    public void setRebindableWhere(ParseNode where) {
+        this.rebindableWhere = where;
+    }
+
     public AggregationManager getAggregationManager() {
         return aggregates;
     }
@@ -137,14 +169,31 @@ public class StatementContext {
         return connection;
     }
 
+    /**
+     * Get the memory manager from which the client-side memory used by
+     * this statement is allocated. It tracks the memory in use by the
+     * statement and its high-water mark.
+     */
+    public MemoryManager getMemoryManager() {
+        return memoryManager;
+    }
+
+    /**
+     * Restart the high-water mark of the memory used by the statement,
+     * so that it covers only the next execution of the statement.
+     */
+    public void resetPeakUsedMemory() {
+        memoryManager.resetPeakUsedMemory();
+    }
+
     public long getCurrentTime() throws SQLException {
+        if (currentTime != QueryConstants.UNSET_TIMESTAMP) {
+            return currentTime;
+        }
         long ts = this.getResolver().getTables().get(0).getTimeStamp();
         if (ts != QueryConstants.UNSET_TIMESTAMP) {
             return ts;
         }
-        if (currentTime != QueryConstants.UNSET_TIMESTAMP) {
-            return currentTime;
-        }
         /*
          * For an UPSERT VALUES where autocommit off, we won't hit the server until the commit.
          * However, if the statement has a CURRENT_DATE() call as a value, we need to know the
@@ -157,6 +206,28 @@ public class StatementContext {
         return currentTime;
     }
 
+    /**
+     * Sets the time as of which the statement is executed, when a plan compiled
+     * earlier is executed again.
+     */
+    public void setCurrentTime(long currentTime) {
+        this.currentTime = currentTime;
+    }
+
+    /**
+     * Get the current time to bind into an expression of the statement, as is
+     * done for CURRENT_DATE(). The expression then evaluates to the time at which
+     * the statement was compiled, so the compiled plan may not be executed again.
+     */
+    public long bindCurrentTime() throws SQLException {
+        isCurrentTimeBound = true;
+        return getCurrentTime();
+    }
+
+    public boolean isCurrentTimeBound() {
+        return isCurrentTimeBound;
+    }
+
 
     public void setAggregate(boolean isAggregate) {
         this.isAggregate = isAggregate;
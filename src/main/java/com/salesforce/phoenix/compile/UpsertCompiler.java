@@ -82,6 +82,25 @@ public class UpsertCompiler {
     }
     
     public MutationPlan compile(UpsertStatement upsert, List<Object> binds) throws SQLException {
+        return compile(upsert, binds, Collections.singletonList(binds));
+    }
+    
+    /**
+     * Compiles an UPSERT VALUES statement once for a batch of bind values. The table
+     * and the target columns are resolved once, and only the values are compiled for
+     * each set of bind values, into a plan that upserts all the rows together.
+     * @param upsert the UPSERT VALUES statement
+     * @param batch the sets of bind values, one for each row
+     * @return the plan upserting a row for each set of bind values
+     * @throws SQLException
+     */
+    public MutationPlan compileBatch(UpsertStatement upsert, List<List<Object>> batch) throws SQLException {
+        assert(upsert.getValues() != null && !batch.isEmpty());
+        // The bind manager reads the values from this list, so that one context can compile every row
+        return compile(upsert, new ArrayList<Object>(batch.get(0)), batch);
+    }
+    
+    private MutationPlan compile(UpsertStatement upsert, List<Object> binds, List<List<Object>> batch) throws SQLException {
         final PhoenixConnection connection = statement.getConnection();
         ConnectionQueryServices services = connection.getQueryServices();
         final int maxSize = services.getConfig().getInt(QueryServices.MAX_MUTATION_SIZE_ATTRIB,QueryServicesOptions.DEFAULT_MAX_MUTATION_SIZE);
@@ -148,8 +167,9 @@ public class UpsertCompiler {
             assert(select != null);
             TableRef selectTableRef = FromCompiler.getResolver(select, connection).getTables().get(0);
             sameTable = tableRef.equals(selectTableRef);
-            // Pass scan through if same table in upsert and select so that projection is computed correctly
-            QueryCompiler compiler = new QueryCompiler(connection, 0, sameTable? scan : new Scan(), targetColumns);
+            // Pass scan through if same table in upsert and select so that projection is computed correctly.
+            // Don't read through an index when populating one, since it may be the one being populated.
+            QueryCompiler compiler = new QueryCompiler(connection, 0, sameTable? scan : new Scan(), targetColumns, !sameTable && table.getType() != PTableType.INDEX);
             plan = compiler.compile(select, binds);
             projector = plan.getProjector();
             nValuesToSet = projector.getColumnCount();
@@ -176,11 +196,12 @@ public class UpsertCompiler {
              * 1) the into table matches from table
              * 2) the select query isn't doing aggregation
              * 3) autoCommit is on
+             * 4) the table has no indexes, since these are maintained only for rows sent by the client
              * Otherwise, run the query to pull the data from the server
              * and populate the MutationState (upto a limit).
             */
             final boolean isAutoCommit = connection.getAutoCommit();
-            if (isAutoCommit && !plan.isAggregate() && sameTable) { // UPSERT SELECT run server-side
+            if (isAutoCommit && !plan.isAggregate() && sameTable && table.getIndexes().isEmpty()) { // UPSERT SELECT run server-side
                 // At most this array will grow bigger my the number of PK columns
                 int[] allColumnsIndexes = Arrays.copyOf(columnIndexes, columnIndexes.length + nValuesToSet);
                 int[] reverseColumnIndexes = new int[table.getColumns().size()];
@@ -243,6 +264,7 @@ public class UpsertCompiler {
                  */
                 scan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE, UngroupedAggregateRegionObserver.serialize(projectedTable));
                 scan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS, UngroupedAggregateRegionObserver.serialize(projectedExpressions));
+                scan.setAttribute(UngroupedAggregateRegionObserver.MUTATION_COUNTERS, QueryConstants.TRUE);
                 final QueryPlan aggPlan = new AggregatePlan(context, tableRef, projector, plan.getLimit(), GroupBy.EMPTY_GROUP_BY, null, OrderBy.EMPTY_ORDER_BY, 0);
                 return new MutationPlan() {
 
@@ -348,34 +370,13 @@ public class UpsertCompiler {
                 };
             } 
         } else { // UPSERT VALUES
-            int nodeIndex = 0;
-            // Allocate array based on size of all columns in table,
-            // since some values may not be set (if they're nullable).
             UpsertValuesCompiler expressionBuilder = new UpsertValuesCompiler(context);
-            final byte[][] values = new byte[nValuesToSet][];
-            for (ParseNode valueNode : valueNodes) {
-                if (!valueNode.isConstant()) {
-                    throw new SQLExceptionInfo.Builder(SQLExceptionCode.VALUE_IN_UPSERT_NOT_CONSTANT).build().buildException();
+            final List<byte[][]> rows = Lists.newArrayListWithExpectedSize(batch.size());
+            for (List<Object> rowBinds : batch) {
+                if (rowBinds != binds) {
+                    Collections.copy(binds, rowBinds);
                 }
-                PColumn column = allColumns.get(columnIndexes[nodeIndex]);
-                expressionBuilder.setColumn(column);
-                LiteralExpression literalExpression = (LiteralExpression)valueNode.accept(expressionBuilder);
-                if (literalExpression.getDataType() != null) {
-                    if (!literalExpression.getDataType().isCoercibleTo(column.getDataType(), literalExpression.getValue())) {
-                        throw new TypeMismatchException(literalExpression.getDataType(), column.getDataType(), "expression: " + literalExpression.toString() + " in column " + column);
-                    }
-                    if (!column.getDataType().isSizeCompatible(literalExpression.getDataType(),
-                            literalExpression.getValue(), literalExpression.getBytes(),
-                            literalExpression.getMaxLength(), column.getMaxLength(), 
-                            literalExpression.getScale(), column.getScale())) {
-                        throw new SQLExceptionInfo.Builder(SQLExceptionCode.DATA_INCOMPATIBLE_WITH_TYPE)
-                            .setColumnName(column.getName().getString()).setMessage("value=" + literalExpression.toString()).build().buildException();
-                    }
-                }
-                byte[] byteValue = column.getDataType().coerceBytes(literalExpression.getBytes(), literalExpression.getValue(), literalExpression.getDataType(),
-                        literalExpression.getMaxLength(), literalExpression.getScale(), column.getMaxLength(), column.getScale());
-                values[nodeIndex] = byteValue;
-                nodeIndex++;
+                rows.add(compileValues(expressionBuilder, valueNodes, allColumns, columnIndexes));
             }
             return new MutationPlan() {
 
@@ -391,20 +392,54 @@ public class UpsertCompiler {
     
                 @Override
                 public MutationState execute() {
-                    Map<ImmutableBytesPtr,Map<PColumn,byte[]>> mutation = Maps.newHashMapWithExpectedSize(1);
-                    setValues(values, pkSlotIndexes, columnIndexes, tableRef.getTable(), mutation);
+                    Map<ImmutableBytesPtr,Map<PColumn,byte[]>> mutation = Maps.newHashMapWithExpectedSize(rows.size());
+                    for (byte[][] values : rows) {
+                        setValues(values, pkSlotIndexes, columnIndexes, tableRef.getTable(), mutation);
+                    }
                     return new MutationState(tableRef, mutation, 0, maxSize, connection);
                 }
     
                 @Override
                 public ExplainPlan getExplainPlan() throws SQLException {
-                    return new ExplainPlan(Collections.singletonList("PUT SINGLE ROW"));
+                    return new ExplainPlan(Collections.singletonList(rows.size() == 1 ? "PUT SINGLE ROW" : "PUT " + rows.size() + " ROWS"));
                 }
                 
             };
         }
     }
     
+    private static byte[][] compileValues(UpsertValuesCompiler expressionBuilder, List<ParseNode> valueNodes, List<PColumn> allColumns, int[] columnIndexes) throws SQLException {
+        int nodeIndex = 0;
+        // Allocate array based on size of all columns in table,
+        // since some values may not be set (if they're nullable).
+        byte[][] values = new byte[valueNodes.size()][];
+        for (ParseNode valueNode : valueNodes) {
+            if (!valueNode.isConstant()) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.VALUE_IN_UPSERT_NOT_CONSTANT).build().buildException();
+            }
+            PColumn column = allColumns.get(columnIndexes[nodeIndex]);
+            expressionBuilder.setColumn(column);
+            LiteralExpression literalExpression = (LiteralExpression)valueNode.accept(expressionBuilder);
+            if (literalExpression.getDataType() != null) {
+                if (!literalExpression.getDataType().isCoercibleTo(column.getDataType(), literalExpression.getValue())) {
+                    throw new TypeMismatchException(literalExpression.getDataType(), column.getDataType(), "expression: " + literalExpression.toString() + " in column " + column);
+                }
+                if (!column.getDataType().isSizeCompatible(literalExpression.getDataType(),
+                        literalExpression.getValue(), literalExpression.getBytes(),
+                        literalExpression.getMaxLength(), column.getMaxLength(), 
+                        literalExpression.getScale(), column.getScale())) {
+                    throw new SQLExceptionInfo.Builder(SQLExceptionCode.DATA_INCOMPATIBLE_WITH_TYPE)
+                        .setColumnName(column.getName().getString()).setMessage("value=" + literalExpression.toString()).build().buildException();
+                }
+            }
+            byte[] byteValue = column.getDataType().coerceBytes(literalExpression.getBytes(), literalExpression.getValue(), literalExpression.getDataType(),
+                    literalExpression.getMaxLength(), literalExpression.getScale(), column.getMaxLength(), column.getScale());
+            values[nodeIndex] = byteValue;
+            nodeIndex++;
+        }
+        return values;
+    }
+    
     private static final class ColumnUpsertCompiler extends ExpressionCompiler {
         private final int[] columnIndex;
         private final int[] pkSlotIndex;
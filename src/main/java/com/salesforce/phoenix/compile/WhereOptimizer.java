@@ -108,6 +108,15 @@ public class WhereOptimizer {
             if (slot == null || slot.getPKPosition() != pkPos + 1) {
                 break;
             }
+            // Once a preceding slot has an unbounded range, only continue with slots of single
+            // keys, such as an IN list, since the skip scan filter checks these for each value
+            // in the range. This lets a query on a leading range and a trailing IN list seek
+            // between the values of the IN list instead of filtering every row in the range.
+            // TODO: when stats are available, we may want to continue this loop for any slot
+            // with a low cardinality, or even in the absence of a range for a key slot.
+            if (hasUnboundedRange && !isSingleKeys(slot.getKeyRanges())) {
+                break;
+            }
             KeyPart keyPart = slot.getKeyPart();
             pkPos = slot.getPKPosition();
             cnf.add(slot.getKeyRanges());
@@ -120,20 +129,21 @@ public class WhereOptimizer {
             // set the start key to 'foo' but still need to match the regex at filter time.
             List<Expression> nodesToExtract = keyPart.getExtractNodes();
             extractNodes.addAll(nodesToExtract);
-            // Stop building start/stop key once we encounter a non single key range.
-            // TODO: remove this soon after more testing on SkipScanFilter
-            if (hasUnboundedRange) {
-                // TODO: when stats are available, we may want to continue this loop if the
-                // cardinality of this slot is low. We could potentially even continue this
-                // loop in the absence of a range for a key slot.
-                break;
-            }
         }
 
         context.setScanRanges(ScanRanges.create(cnf, table.getRowKeySchema()));
         return whereClause.accept(new RemoveExtractedNodesVisitor(extractNodes));
     }
 
+    private static boolean isSingleKeys(List<KeyRange> ranges) {
+        for (KeyRange range : ranges) {
+            if (!range.isSingleKey()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static class RemoveExtractedNodesVisitor extends TraverseNoExpressionVisitor<Expression> {
         private final Set<Expression> nodesToRemove;
 
@@ -165,8 +175,6 @@ public class WhereOptimizer {
             }
             return node;
         }
-
-        // TODO: same visitEnter/visitLeave for OrExpression once we optimize it
     }
 
     public static class KeyExpressionVisitor extends TraverseAllExpressionVisitor<KeyExpressionVisitor.KeySlots> {
@@ -177,6 +185,15 @@ public class WhereOptimizer {
                 return Iterators.emptyIterator();
             }
         };
+        // For an expression that references the row key but cannot narrow it, such as an OR with
+        // a branch that does not constrain the row key. Must not be null, since that would let the
+        // key slots of the other branches pass through as if they applied to the whole expression.
+        private static final KeySlots UNCONSTRAINED_KEY_PARTS = new KeySlots() {
+            @Override
+            public Iterator<KeySlot> iterator() {
+                return Iterators.emptyIterator();
+            }
+        };
 
         private static boolean isDegenerate(List<KeyRange> keyRanges) {
             return keyRanges == null || keyRanges.size() == 1 && keyRanges.get(0) == KeyRange.EMPTY_RANGE;
@@ -411,8 +428,105 @@ public class WhereOptimizer {
 
         @Override
         public Iterator<Expression> visitEnter(OrExpression node) {
-            // TODO: optimize for cases where LHS column is the same for all
-            return Iterators.emptyIterator();
+            return node.getChildren().iterator();
+        }
+
+        /**
+         * Forms key ranges for each PK column constrained in every branch of the OR by
+         * taking the union of the key ranges of the branches for that column. Overlapping
+         * and adjacent ranges are coalesced. The OR is only extracted from the WHERE clause
+         * if every branch constrains the same single PK column and is itself fully extracted,
+         * since otherwise the ranges may let through rows that the OR would filter out.
+         */
+        @Override
+        public KeySlots visitLeave(OrExpression node, List<KeySlots> l) {
+            // A branch that doesn't reference the row key may match any row
+            if (l.size() != node.getChildren().size()) {
+                return UNCONSTRAINED_KEY_PARTS;
+            }
+            int nColumns = table.getPKColumns().size();
+            List<KeySlot[]> branchSlots = Lists.newArrayListWithExpectedSize(l.size());
+            List<Expression> branchNodes = Lists.newArrayListWithExpectedSize(l.size());
+            for (int i = 0; i < l.size(); i++) {
+                KeySlots childSlots = l.get(i);
+                // Drop branches that can never be true
+                if (childSlots == DEGENERATE_KEY_PARTS) {
+                    continue;
+                }
+                KeySlot[] slots = new KeySlot[nColumns];
+                for (KeySlot slot : childSlots) {
+                    if (slot != null) {
+                        slots[slot.getPKPosition()] = slot;
+                    }
+                }
+                branchSlots.add(slots);
+                branchNodes.add(node.getChildren().get(i));
+            }
+            if (branchSlots.isEmpty()) {
+                return DEGENERATE_KEY_PARTS;
+            }
+            KeySlot[] newSlots = new KeySlot[nColumns];
+            int nSlots = 0;
+            int position = -1;
+            for (int i = 0; i < nColumns; i++) {
+                List<KeyRange> keyRanges = Lists.newArrayList();
+                for (KeySlot[] slots : branchSlots) {
+                    if (slots[i] == null) {
+                        keyRanges = null;
+                        break;
+                    }
+                    keyRanges.addAll(slots[i].getKeyRanges());
+                }
+                if (keyRanges == null) {
+                    continue;
+                }
+                keyRanges = KeyRange.coalesce(keyRanges);
+                KeyRange firstRange = keyRanges.get(0);
+                if (firstRange.lowerUnbound() && firstRange.upperUnbound()) {
+                    continue;
+                }
+                newSlots[i] = new KeySlot(new BaseKeyPart(branchSlots.get(0)[i].getKeyPart().getColumn(), Collections.<Expression>emptyList()), i, keyRanges);
+                position = i;
+                nSlots++;
+            }
+            if (nSlots == 0) {
+                return UNCONSTRAINED_KEY_PARTS;
+            }
+            if (nSlots == 1 && isExtractable(branchSlots, branchNodes, position)) {
+                KeySlot slot = newSlots[position];
+                newSlots[position] = new KeySlot(new BaseKeyPart(slot.getKeyPart().getColumn(), Collections.<Expression>singletonList(node)), position, slot.getKeyRanges());
+            }
+            return new MultiKeySlot(Arrays.asList(newSlots));
+        }
+
+        private static boolean isExtractable(List<KeySlot[]> branchSlots, List<Expression> branchNodes, int position) {
+            for (int i = 0; i < branchSlots.size(); i++) {
+                KeySlot[] slots = branchSlots.get(i);
+                for (int j = 0; j < slots.length; j++) {
+                    if (j != position && slots[j] != null) {
+                        return false;
+                    }
+                }
+                if (!isExtracted(branchNodes.get(i), slots[position].getKeyPart().getExtractNodes())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isExtracted(Expression node, List<Expression> extractNodes) {
+            if (extractNodes.contains(node)) {
+                return true;
+            }
+            if (node instanceof AndExpression) {
+                for (Expression child : node.getChildren()) {
+                    if (!isExtracted(child, extractNodes)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
         }
 
         @Override
@@ -425,24 +539,98 @@ public class WhereOptimizer {
         }
 
         /*
-         * These prevents our optimizer from trying to form a rowkey for a column in
-         * an arithmetic expression. We could possibly do more later, but for now folks
-         * should write their expressions with constants on the LHS. For example:
+         * Forms a rowkey for an INTEGER or UNSIGNED_INT column to which constants are
+         * added or from which they are subtracted by moving the constants to the other
+         * side of the comparison. For example:
          *    WHERE a + 1 < 5
-         * would cause the rowkey to not be able to formed using column a, while
+         * is used to form the key range of a as if it was written
          *    WHERE a < 4
-         * would be able to be formed using column a.
+         * Since these expressions are evaluated as a BIGINT, they cannot overflow for
+         * these column types. The expression is left in the WHERE clause for filtering.
          **/
         @Override
         public Iterator<Expression> visitEnter(AddExpression node) {
-            // TODO: optimize by moving constants to LHS
-            return Iterators.emptyIterator();
+            int index = getArithmeticKeyChildIndex(node);
+            if (index < 0) {
+                return Iterators.emptyIterator();
+            }
+            return Iterators.singletonIterator(node.getChildren().get(index));
+        }
+
+        @Override
+        public KeySlots visitLeave(AddExpression node, List<KeySlots> childParts) {
+            return newArithmeticKeyPart(node, childParts, false);
         }
 
         @Override
         public Iterator<Expression> visitEnter(SubtractExpression node) {
-            // TODO: optimize by moving constants to LHS
-            return Iterators.emptyIterator();
+            // Only a - 1 < 5, since 1 - a < 5 would require the comparison to be flipped
+            if (getArithmeticKeyChildIndex(node) != 0) {
+                return Iterators.emptyIterator();
+            }
+            return Iterators.singletonIterator(node.getChildren().get(0));
+        }
+
+        @Override
+        public KeySlots visitLeave(SubtractExpression node, List<KeySlots> childParts) {
+            return newArithmeticKeyPart(node, childParts, true);
+        }
+
+        /**
+         * @return the index of the only child that isn't a constant if the expression can be
+         * used to form a key, and -1 otherwise.
+         */
+        private static int getArithmeticKeyChildIndex(Expression node) {
+            if (node.getDataType() != PDataType.LONG) {
+                return -1;
+            }
+            int index = -1;
+            List<Expression> children = node.getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                Expression child = children.get(i);
+                if (child instanceof LiteralExpression) {
+                    Object value = ((LiteralExpression)child).getValue();
+                    // Only integral constants (and not, for example, a date) may be used
+                    if (value != null && !(value instanceof Integer || value instanceof Long)) {
+                        return -1;
+                    }
+                    // Keep the constants small enough that the expression can't overflow
+                    if (value != null && (((Number)value).longValue() > Integer.MAX_VALUE || ((Number)value).longValue() < Integer.MIN_VALUE)) {
+                        return -1;
+                    }
+                } else if (index >= 0) {
+                    return -1;
+                } else if (child.getDataType() != PDataType.INTEGER && child.getDataType() != PDataType.UNSIGNED_INT) {
+                    return -1;
+                } else {
+                    index = i;
+                }
+            }
+            return index;
+        }
+
+        private static KeySlots newArithmeticKeyPart(Expression node, List<KeySlots> childParts, boolean isSubtract) {
+            if (childParts.isEmpty()) {
+                return null;
+            }
+            KeySlot childSlot = childParts.get(0).iterator().next();
+            long offset = 0;
+            PDataType childType = null;
+            List<Expression> children = node.getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                Expression child = children.get(i);
+                if (child instanceof LiteralExpression) {
+                    Object value = ((LiteralExpression)child).getValue();
+                    // The expression is always null, so the comparison is never true
+                    if (value == null) {
+                        return DEGENERATE_KEY_PARTS;
+                    }
+                    offset += isSubtract ? -((Number)value).longValue() : ((Number)value).longValue();
+                } else {
+                    childType = child.getDataType();
+                }
+            }
+            return new SingleKeySlot(new ArithmeticKeyPart(childSlot.getKeyPart(), childType, offset), childSlot.getPKPosition(), childSlot.getKeyRanges());
         }
 
         @Override
@@ -536,6 +724,44 @@ public class WhereOptimizer {
             
         }
         
+        /**
+         * Key part for a column to which a constant offset is added. The key on the
+         * other side of the comparison is shifted by the offset and then passed to
+         * the key part of the column.
+         */
+        private static class ArithmeticKeyPart implements KeyPart {
+            private final KeyPart childPart;
+            private final PDataType childType;
+            private final long offset;
+
+            private ArithmeticKeyPart(KeyPart childPart, PDataType childType, long offset) {
+                this.childPart = childPart;
+                this.childType = childType;
+                this.offset = offset;
+            }
+
+            @Override
+            public KeyRange getKeyRange(CompareOp op, byte[] key) {
+                long value = PDataType.LONG.getCodec().decodeLong(key, 0);
+                long childValue = value - offset;
+                // On overflow or when out of range for the column, let the filter sort it out
+                if (((value ^ offset) & (value ^ childValue)) < 0 || !PDataType.LONG.isCoercibleTo(childType, childValue)) {
+                    return KeyRange.EVERYTHING_RANGE;
+                }
+                return childPart.getKeyRange(op, childType.toBytes(childValue));
+            }
+
+            @Override
+            public List<Expression> getExtractNodes() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public PColumn getColumn() {
+                return childPart.getColumn();
+            }
+        }
+
         private static class BaseKeyPart implements KeyPart {
             @Override
             public KeyRange getKeyRange(CompareOp op, byte[] key) {
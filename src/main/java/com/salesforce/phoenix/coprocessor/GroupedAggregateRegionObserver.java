@@ -32,6 +32,7 @@ import static com.salesforce.phoenix.query.QueryConstants.*;
 import java.io.*;
 import java.util.*;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
@@ -49,8 +50,7 @@ import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.expression.aggregator.Aggregator;
 import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
-import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
-import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.*;
@@ -114,10 +114,6 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
         }
     }
 
-    private static int sizeOfUnorderedGroupByMap(int nRows, int valueSize) {
-        return SizedUtil.sizeOfMap(nRows, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, valueSize);
-    }
-
     private List<Expression> deserializeGroupByExpressions(byte[] expressionBytes) throws IOException {
         List<Expression> expressions = new ArrayList<Expression>(3);
         ByteArrayInputStream stream = new ByteArrayInputStream(expressionBytes);
@@ -181,7 +177,8 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
     /**
      * Used for an aggregate query in which the key order does not necessarily match the group by key order. In this case,
      * we must collect all distinct groups within a region into a map, aggregating as we go, and then at the end of the
-     * underlying scan, sort them and return them one by one during iteration.
+     * underlying scan, sort them and return them one by one during iteration. If the map becomes too big, the groups
+     * are spilled to disk and merged back together during iteration (see {@link SpillableGroupByCache}).
      */
     private RegionScanner scanUnordered(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s, List<Expression> expressions, ServerAggregators aggregators) throws IOException {
         
@@ -191,19 +188,18 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
         int estDistVals = DEFAULT_ESTIMATED_DISTINCT_VALUES;
         byte[] estDistValsBytes = scan.getAttribute(ESTIMATED_DISTINCT_VALUES);
         if (estDistValsBytes != null) {
-            estDistVals = Math.min(MIN_DISTINCT_VALUES, Bytes.toInt(estDistValsBytes) * 3 / 2);  // Allocate 1.5x estimation
+            estDistVals = Math.max(MIN_DISTINCT_VALUES, Bytes.toInt(estDistValsBytes) * 3 / 2);  // Allocate 1.5x estimation
         }
         
-        TenantCache tenantCache = GlobalCache.getTenantCache(c.getEnvironment().getConfiguration(), ScanUtil.getTenantId(scan));
-        int estSize = sizeOfUnorderedGroupByMap(estDistVals, aggregators.getSize());
-        final MemoryChunk chunk = tenantCache.getMemoryManager().allocate(estSize);
+        Configuration config = c.getEnvironment().getConfiguration();
+        long spillThresholdBytes = config.getLong(QueryServices.GROUPBY_SPILL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_GROUPBY_SPILL_THRESHOLD_BYTES);
+        File spillDirectory = new File(config.get(QueryServices.SPOOL_DIRECTORY_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY));
+        TenantCache tenantCache = GlobalCache.getTenantCache(config, ScanUtil.getTenantId(scan));
+        SpillableGroupByCache groupByCache = new SpillableGroupByCache(tenantCache.getMemoryManager(), estDistVals, aggregators, spillThresholdBytes, spillDirectory);
         boolean success = false;
         try {
-            // TODO: spool map to disk if map becomes too big
             boolean hasMore;
-            int estValueSize = aggregators.getSize();
             MultiKeyValueTuple result = new MultiKeyValueTuple();
-            Map<ImmutableBytesWritable, Aggregator[]> aggregateMap = new HashMap<ImmutableBytesWritable, Aggregator[]>(estDistVals);
             HRegion region = c.getEnvironment().getRegion();
             MultiVersionConsistencyControl.setThreadReadPoint(s.getMvccReadPoint());
             region.startRegionOperation();
@@ -217,82 +213,27 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                     if (!results.isEmpty()) {
                         result.setKeyValues(results);
                         ImmutableBytesWritable key = getKey(expressions, result);
-                        Aggregator[] rowAggregators = aggregateMap.get(key);
-                        if (rowAggregators == null) {
-                            // If Aggregators not found for this distinct value, clone our original one (we need one per distinct value)
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("Adding new aggregate bucket for row key " + Bytes.toStringBinary(key.get(),key.getOffset(),key.getLength()));
-                            }
-                            aggregateMap.put(key, rowAggregators = aggregators.newAggregators());
-                        }
+                        Aggregator[] rowAggregators = groupByCache.cache(key);
                         // Aggregate values here
                         aggregators.aggregate(rowAggregators, result);
                         if (logger.isDebugEnabled()) {
                             logger.debug("Row passed filters: " + results + ", aggregated values: " + Arrays.asList(rowAggregators));
                         }
-                            
-                        if (aggregateMap.size() > estDistVals) { // increase allocation
-                            estDistVals *= 3/2;
-                            estSize = sizeOfUnorderedGroupByMap(estDistVals, estValueSize);
-                            chunk.resize(estSize);
-                        }
                     }
                 } while (hasMore);
             } finally {
                 region.closeRegionOperation();
             }
-    
-            // Compute final allocation
-            estSize = sizeOfUnorderedGroupByMap(aggregateMap.size(), estValueSize);
-            chunk.resize(estSize);
             
-            // TODO: spool list to disk if too big and free memory?
-            final List<KeyValue> aggResults = new ArrayList<KeyValue>(aggregateMap.size());
-            for (Map.Entry<ImmutableBytesWritable, Aggregator[]> entry : aggregateMap.entrySet()) {
-                ImmutableBytesWritable key = entry.getKey();
-                Aggregator[] rowAggregators = entry.getValue();
-                // Generate byte array of Aggregators and set as value of row
-                byte[] value = aggregators.toBytes(rowAggregators);
-                
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Adding new distinct group: " + Bytes.toStringBinary(key.get(),key.getOffset(), key.getLength()) + 
-                            " with aggregators " + Arrays.asList(rowAggregators).toString() + 
-                            " value = " + Bytes.toStringBinary(value));
-                }
-                KeyValue keyValue = KeyValueUtil.newKeyValue(key.get(),key.getOffset(), key.getLength(),SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length);
-                aggResults.add(keyValue);
+            if (logger.isDebugEnabled() && groupByCache.getSpillCount() > 0) {
+                logger.debug("Group by map spilled to disk " + groupByCache.getSpillCount() + " times for scan " + scan);
             }
-            Collections.sort(aggResults, KeyValue.COMPARATOR);
-            RegionScanner scanner = new BaseRegionScanner() {
-                private int index = 0;
-    
-                @Override
-                public HRegionInfo getRegionInfo() {
-                    return s.getRegionInfo();
-                }
-    
-                @Override
-                public void close() throws IOException {
-                    try {
-                        s.close();
-                    } finally {
-                        chunk.close();
-                    }
-                }
-    
-                @Override
-                public boolean next(List<KeyValue> results) throws IOException {
-                    if (index >= aggResults.size()) return false;
-                    results.add(aggResults.get(index));
-                    index++;
-                    return index < aggResults.size();
-                }
-            };
+            RegionScanner scanner = groupByCache.getScanner(s);
             success = true;
             return scanner;
         } finally {
             if (!success)
-                chunk.close();
+                groupByCache.close();
         }
     }
 
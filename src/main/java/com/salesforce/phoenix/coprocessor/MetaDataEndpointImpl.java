@@ -79,7 +79,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
         try {
             PTable oldTable = metaDataCache.get(cacheKey);
             long tableTimeStamp = oldTable == null ? MIN_TABLE_TIMESTAMP-1 : oldTable.getTimeStamp();
-            PTable newTable = getTable(scanner, clientTimeStamp, tableTimeStamp);
+            PTable newTable = getTable(scanner, region, clientTimeStamp, tableTimeStamp);
             if (newTable == null) {
                 return null;
             }
@@ -144,7 +144,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
         return new PNameImpl(pnameBuf);
     }
     
-    private PTable getTable(RegionScanner scanner, long clientTimeStamp, long tableTimeStamp) throws IOException {
+    private PTable getTable(RegionScanner scanner, HRegion region, long clientTimeStamp, long tableTimeStamp) throws IOException {
         List<KeyValue> results = Lists.newArrayList();
         scanner.next(results);
         if (results.isEmpty()) {
@@ -158,7 +158,8 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
         byte[] keyBuffer = keyValue.getBuffer();
         int keyLength = keyValue.getRowLength();
         int keyOffset = keyValue.getRowOffset();
-        int offset = getVarCharLength(keyBuffer, keyOffset, keyLength) + 1; // skip schema name
+        int schemaLength = getVarCharLength(keyBuffer, keyOffset, keyLength);
+        int offset = schemaLength + 1; // skip schema name
         PName tableName = newPName(keyBuffer, keyOffset + offset, keyLength-offset);
         offset += tableName.getBytes().length + 1;
         // This will prevent the client from continually looking for the current
@@ -207,6 +208,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
         }
         
         List<PColumn> columns = Lists.newArrayListWithExpectedSize(columnCount);
+        List<PTable> indexes = Lists.newArrayListWithExpectedSize(1);
         while (true) {
             results.clear();
             scanner.next(results);
@@ -218,6 +220,15 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
             PName colName = newPName(colKv.getBuffer(), colKv.getRowOffset() + offset, colKeyLength-offset);
             int colKeyOffset = offset + colName.getBytes().length + 1;
             PName famName = newPName(colKv.getBuffer(), colKv.getRowOffset() + colKeyOffset, colKeyLength-colKeyOffset);
+            // A row without a column name links the table to one of its indexes,
+            // whose name is stored where the column family name would be.
+            if (colName.getBytes().length == 0) {
+                PTable index = getIndex(keyBuffer, keyOffset, schemaLength, famName, region, clientTimeStamp);
+                if (index != null) {
+                    indexes.add(index);
+                }
+                continue;
+            }
             i = 0;
             j = 0;
             nFound = 0;
@@ -253,7 +264,20 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
             columns.add(column);
         }
         
-        return new PTableImpl(tableName, tableType, timeStamp, tableSeqNum, pkName, columns);
+        return new PTableImpl(tableName, tableType, timeStamp, tableSeqNum, pkName, columns, indexes);
+    }
+    
+    private PTable getIndex(byte[] schemaBuffer, int schemaOffset, int schemaLength, PName indexName, HRegion region, long clientTimeStamp) throws IOException {
+        byte[] schemaName = new byte[schemaLength];
+        System.arraycopy(schemaBuffer, schemaOffset, schemaName, 0, schemaLength);
+        byte[] key = SchemaUtil.getTableKey(schemaName, indexName.getBytes());
+        // The index metadata is expected to be co-located with the table metadata
+        if (checkTableKeyInRegion(key, region) != null) {
+            throw new IllegalStateException("Metadata for index " + SchemaUtil.getTableDisplayName(schemaName, indexName.getBytes()) + " is not in the same region as its table");
+        }
+        PTable index = buildTable(key, new ImmutableBytesPtr(key), region, clientTimeStamp);
+        // The index may have since been dropped
+        return index == null || isTableDeleted(index) ? null : index;
     }
     
     private PTable buildDeletedTable(byte[] key, ImmutableBytesPtr cacheKey, HRegion region, long clientTimeStamp) throws IOException {
@@ -338,6 +362,11 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
                 long currentTime = getClientTimeStamp(tableMetadata);
                 // Invalidate the cache - the next getTable call will add it
                 metaDataCache.remove(cacheKey);
+                // Creating an index also updates the table it indexes, so invalidate that too
+                for (Mutation mutation : tableMetadata) {
+                    getVarChars(mutation.getRow(), rowKeyMetaData);
+                    metaDataCache.remove(new ImmutableBytesPtr(SchemaUtil.getTableKey(rowKeyMetaData[PhoenixDatabaseMetaData.SCHEMA_NAME_INDEX], rowKeyMetaData[PhoenixDatabaseMetaData.TABLE_NAME_INDEX])));
+                }
                 return new MetaDataMutationResult(MutationCode.TABLE_NOT_FOUND, currentTime, null);
             } finally {
                 region.releaseRowLock(lid);
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.util.Pair;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/**
+ * 
+ * Applies batches of mutations produced by a region scan on a separate writer
+ * thread, so that the scan isn't stalled while each batch is written to the WAL
+ * and memstore. The hand-off between the two is bounded: the scan blocks once
+ * the maximum number of batches is pending.
+ * 
+ * The writer threads come from a bounded pool shared by the region server. If
+ * none is free, the batches are written on the scan thread as they are added
+ * instead, so that a burst of statements slows down rather than piling up
+ * threads.
+ * 
+ * The scan thread holds the region operation lock while the writer applies the
+ * batches, so the scan thread never waits indefinitely on the writer. If the
+ * region starts closing while it waits, it gives up so that the lock can be
+ * released, since the writer could otherwise be queued behind the close.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MutationPipeline {
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final List<Pair<Mutation,Integer>> END_OF_BATCHES = Lists.newArrayListWithCapacity(0);
+    private static final long WRITER_KEEP_ALIVE_MS = 60000;
+    
+    /**
+     * Create the pool of writer threads. Rather than being queued, a pipeline is
+     * rejected by the pool when all of its threads are busy.
+     * @param maxThreads the maximum number of writer threads
+     */
+    public static ExecutorService newWriterPool(int maxThreads) {
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(maxThreads, maxThreads, WRITER_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("phoenix-mutation-writer-%d").build());
+        writers.allowCoreThreadTimeOut(true);
+        return writers;
+    }
+    
+    /**
+     * Target to which the batches of mutations are written
+     */
+    public static interface MutationTarget {
+        void batchMutate(List<Pair<Mutation,Integer>> mutations) throws IOException;
+        /**
+         * @return true if no more batches may be written, in which case
+         * the pipeline is aborted.
+         */
+        boolean isClosing();
+    }
+    
+    private final MutationTarget target;
+    private final BlockingQueue<List<Pair<Mutation,Integer>>> pendingBatches;
+    // Null if the batches are written by the caller
+    private final Future<Void> writer;
+    private volatile boolean isAborted;
+    // Only updated by the thread writing the batches
+    private volatile long mutationCount;
+    private volatile long batchCount;
+    private volatile long totalBatchTimeNs;
+    private volatile long maxBatchTimeNs;
+    
+    /**
+     * @param target the target to which the batches are written
+     * @param maxPendingBatches the maximum number of batches waiting to be written
+     * @param writers the pool from which the writer thread is taken. See {@link #newWriterPool(int)}.
+     */
+    public MutationPipeline(MutationTarget target, int maxPendingBatches, ExecutorService writers) {
+        this.target = target;
+        this.pendingBatches = new ArrayBlockingQueue<List<Pair<Mutation,Integer>>>(maxPendingBatches);
+        Future<Void> writer = null;
+        try {
+            writer = writers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    write();
+                    return null;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // All writer threads are busy, so write the batches as they're added
+        }
+        this.writer = writer;
+    }
+    
+    /**
+     * @return true if the batches are written on a separate thread and false if they're written by the caller
+     */
+    public boolean isPipelined() {
+        return writer != null;
+    }
+    
+    private void write() throws IOException, InterruptedException {
+        List<Pair<Mutation,Integer>> batch;
+        while ((batch = pendingBatches.take()) != END_OF_BATCHES && !isAborted) {
+            write(batch);
+        }
+    }
+    
+    private void write(List<Pair<Mutation,Integer>> batch) throws IOException {
+        long startTime = System.nanoTime();
+        target.batchMutate(batch);
+        long batchTimeNs = System.nanoTime() - startTime;
+        mutationCount += batch.size();
+        batchCount++;
+        totalBatchTimeNs += batchTimeNs;
+        maxBatchTimeNs = Math.max(maxBatchTimeNs, batchTimeNs);
+    }
+    
+    /**
+     * Throws the exception thrown by the writer, if any, or an exception if the pipeline
+     * should not wait on the writer any longer because the target is closing.
+     */
+    private void checkWriter() throws IOException {
+        if (writer.isDone()) {
+            getWriterResult();
+        }
+        if (target.isClosing()) {
+            abort();
+            throw new IOException("Aborted writing mutations after " + mutationCount + " since the region is closing");
+        }
+    }
+    
+    private void getWriterResult() throws IOException {
+        try {
+            writer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (CancellationException e) {
+            throw new IOException("Writing of mutations was aborted", e);
+        }
+    }
+    
+    /**
+     * Hand off a batch of mutations to the writer thread, blocking while the
+     * maximum number of batches are already pending.
+     * @param batch the mutations, which may not be modified by the caller afterwards
+     * @throws IOException if the writer failed to write an earlier batch
+     */
+    public void add(List<Pair<Mutation,Integer>> batch) throws IOException {
+        if (writer == null) {
+            if (isAborted) {
+                throw new IOException("Writing of mutations was aborted");
+            }
+            if (batch != END_OF_BATCHES) {
+                write(batch);
+            }
+            return;
+        }
+        try {
+            checkWriter();
+            while (!pendingBatches.offer(batch, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+    
+    /**
+     * Wait until every batch handed off has been written.
+     * @throws IOException if the writer failed to write a batch
+     */
+    public void finish() throws IOException {
+        add(END_OF_BATCHES);
+        if (writer == null) {
+            return;
+        }
+        while (true) {
+            try {
+                writer.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                checkWriter();
+            } catch (InterruptedException e) {
+                abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                getWriterResult();
+            }
+        }
+    }
+    
+    /**
+     * Stop writing batches, dropping any that are still pending. A batch that
+     * is being written when this is called will be completed.
+     */
+    public void abort() {
+        isAborted = true;
+        pendingBatches.clear();
+        pendingBatches.offer(END_OF_BATCHES);
+    }
+
+    /**
+     * @return the number of mutations written so far
+     */
+    public long getMutationCount() {
+        return mutationCount;
+    }
+
+    /**
+     * @return the number of batches written so far
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return the total time in nanoseconds taken to write the batches so far
+     */
+    public long getTotalBatchTimeNs() {
+        return totalBatchTimeNs;
+    }
+
+    /**
+     * @return the time in nanoseconds taken to write the slowest batch so far
+     */
+    public long getMaxBatchTimeNs() {
+        return maxBatchTimeNs;
+    }
+}
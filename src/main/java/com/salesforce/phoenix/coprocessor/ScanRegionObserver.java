@@ -27,18 +27,35 @@
  ******************************************************************************/
 package com.salesforce.phoenix.coprocessor;
 
-import java.io.IOException;
+import java.io.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
-import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.regionserver.*;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.cache.GlobalCache;
+import com.salesforce.phoenix.cache.TenantCache;
+import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
+import com.salesforce.phoenix.exception.PhoenixIOException;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.ExpressionType;
+import com.salesforce.phoenix.iterate.OrderedResultIterator;
+import com.salesforce.phoenix.iterate.ResultIterator;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ScanUtil;
 import com.salesforce.phoenix.util.ServerUtil;
 
 
@@ -47,17 +64,173 @@ import com.salesforce.phoenix.util.ServerUtil;
  * Wraps the scan performing a non aggregate query to prevent needless retries
  * if a Phoenix bug is encountered from our custom filter expression evaluation.
  * Unfortunately, until HBASE-7481 gets fixed, there's no way to do this from our
- * custom filters.
+ * custom filters. For a query with an ORDER BY and a LIMIT, only the top N rows
+ * of the region are returned, sorted by the ORDER BY expressions.
  *
  * @author jtaylor
  * @since 0.1
  */
 public class ScanRegionObserver extends BaseScannerRegionObserver {
     public static final String NON_AGGREGATE_QUERY = "NonAggregateQuery";
+    public static final String TOPN = "TopN";
+
+    public static void serializeIntoScan(Scan scan, int limit, List<OrderingColumn> orderingColumns) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(stream);
+            WritableUtils.writeVInt(output, limit);
+            WritableUtils.writeVInt(output, orderingColumns.size());
+            for (OrderingColumn orderingColumn : orderingColumns) {
+                Expression expression = orderingColumn.getExpression();
+                WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+                expression.write(output);
+                output.writeBoolean(orderingColumn.isNullsLast());
+                output.writeBoolean(orderingColumn.isAscending());
+            }
+            scan.setAttribute(TOPN, stream.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+    
+    private static OrderedResultIterator deserializeFromScan(Scan scan, ResultIterator delegate, TenantCache tenantCache, int thresholdBytes, File spoolDirectory) {
+        byte[] topN = scan.getAttribute(TOPN);
+        if (topN == null) {
+            return null;
+        }
+        ByteArrayInputStream stream = new ByteArrayInputStream(topN);
+        try {
+            DataInputStream input = new DataInputStream(stream);
+            int limit = WritableUtils.readVInt(input);
+            int size = WritableUtils.readVInt(input);
+            List<OrderingColumn> orderingColumns = new ArrayList<OrderingColumn>(size);
+            for (int i = 0; i < size; i++) {
+                Expression expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+                expression.readFields(input);
+                boolean nullsLast = input.readBoolean();
+                boolean ascending = input.readBoolean();
+                orderingColumns.add(new OrderingColumn(expression, nullsLast, ascending));
+            }
+            return new OrderedResultIterator(delegate, orderingColumns, limit, tenantCache.getMemoryManager(), thresholdBytes, spoolDirectory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+    
+    /**
+     * Return a scanner over the top N rows of the region, as defined by the ORDER BY
+     * expressions. The whole region is scanned up front, keeping only the top N rows
+     * in a bounded heap, so that at most N rows are sent back to the client.
+     */
+    private static RegionScanner getTopNScanner(final ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s) throws IOException {
+        Configuration config = c.getEnvironment().getConfiguration();
+        TenantCache tenantCache = GlobalCache.getTenantCache(config, ScanUtil.getTenantId(scan));
+        int thresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES);
+        File spoolDirectory = new File(config.get(QueryServices.SPOOL_DIRECTORY_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY));
+        ResultIterator delegate = new ResultIterator() {
+            private boolean hasMore = true;
+            
+            @Override
+            public Tuple next() throws SQLException {
+                try {
+                    while (hasMore) {
+                        List<KeyValue> results = new ArrayList<KeyValue>();
+                        // Results are potentially returned even when the return value of s.next is false
+                        // since this is an indication of whether or not there are more values after the
+                        // ones returned
+                        hasMore = s.nextRaw(results, null) && !s.isFilterDone();
+                        if (!results.isEmpty()) {
+                            return new MultiKeyValueTuple(results);
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new PhoenixIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                // The region scanner is closed when the returned scanner is closed
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+        };
+        final OrderedResultIterator iterator = deserializeFromScan(scan, delegate, tenantCache, thresholdBytes, spoolDirectory);
+        Tuple firstTuple;
+        HRegion region = c.getEnvironment().getRegion();
+        MultiVersionConsistencyControl.setThreadReadPoint(s.getMvccReadPoint());
+        region.startRegionOperation();
+        try {
+            // Once the first row is found, the rows are all in the sort buffer
+            firstTuple = iterator.next();
+        } catch (Throwable t) {
+            ServerUtil.throwIOException(region.getRegionNameAsString(), t);
+            return null; // impossible
+        } finally {
+            region.closeRegionOperation();
+        }
+        final Tuple tuple = firstTuple;
+        return new BaseRegionScanner() {
+            private Tuple next = tuple;
+
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return s.getRegionInfo();
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                try {
+                    if (next == null) {
+                        return false;
+                    }
+                    for (int i = 0; i < next.size(); i++) {
+                        results.add(next.getValue(i));
+                    }
+                    next = iterator.next();
+                    return next != null;
+                } catch (Throwable t) {
+                    ServerUtil.throwIOException(c.getEnvironment().getRegion().getRegionNameAsString(), t);
+                    return false; // impossible
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    s.close();
+                } finally {
+                    try {
+                        iterator.close();
+                    } catch (SQLException e) {
+                        ServerUtil.throwIOException(c.getEnvironment().getRegion().getRegionNameAsString(), e);
+                    }
+                }
+            }
+        };
+    }
 
     @Override
     protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, Scan scan,
             final RegionScanner s) throws IOException {
+        if (scan.getAttribute(TOPN) != null) {
+            return getTopNScanner(c, scan, s);
+        }
         byte[] isScanQuery = scan.getAttribute(NON_AGGREGATE_QUERY);
 
         if (isScanQuery == null || Bytes.compareTo(PDataType.TRUE_BYTES, isScanQuery) == 0) {
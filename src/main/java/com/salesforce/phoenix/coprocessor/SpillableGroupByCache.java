@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import static com.salesforce.phoenix.query.QueryConstants.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
+import com.salesforce.phoenix.memory.InsufficientMemoryException;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * 
+ * Cache of the distinct groups found by an unordered GROUP BY within a region.
+ * Groups are aggregated in an in-memory map until either the map would grow
+ * beyond the spill threshold or the memory manager is unable to grow the
+ * chunk backing the map. At that point, the groups in the map are sorted
+ * and spilled to a run file on disk and the map is cleared. When the groups
+ * are returned, the in-memory groups and all spilled runs are merged in
+ * row key order.
+ * 
+ * Since a group may be spilled more than once, the same row key may be
+ * returned more than once by the merge. This is fine, since the client
+ * already does a final aggregation over consecutive rows with the same
+ * key, as it must for the same group coming back from different regions.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class SpillableGroupByCache implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SpillableGroupByCache.class);
+    
+    private final ServerAggregators aggregators;
+    private final MemoryChunk chunk;
+    private final long spillThresholdBytes;
+    private final File spillDirectory;
+    private final int estValueSize;
+    private final List<File> spillFiles = new ArrayList<File>();
+    private final List<GroupIterator> openIterators = new ArrayList<GroupIterator>();
+    private Map<ImmutableBytesWritable, Aggregator[]> aggregateMap;
+    private int estDistVals;
+    
+    /**
+     * Create a cache for the groups of a single region scan.
+     * @param mm memory manager from which the memory for the in-memory map is allocated
+     * @param estDistVals the estimated number of distinct groups
+     * @param aggregators the aggregators used to create and serialize the per group state
+     * @param spillThresholdBytes the size in bytes beyond which the in-memory map is spilled to disk
+     * @param spillDirectory the directory in which the spill files are created or null to use the
+     *  default temporary-file directory
+     */
+    public SpillableGroupByCache(MemoryManager mm, int estDistVals, ServerAggregators aggregators, long spillThresholdBytes, File spillDirectory) {
+        this.aggregators = aggregators;
+        this.estValueSize = aggregators.getSize();
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.spillDirectory = spillDirectory;
+        this.estDistVals = Math.max(1, Math.min(estDistVals, maxGroups()));
+        this.chunk = mm.allocate(sizeOfMap(this.estDistVals));
+        this.aggregateMap = new HashMap<ImmutableBytesWritable, Aggregator[]>(this.estDistVals);
+    }
+    
+    private int sizeOfMap(int nRows) {
+        return SizedUtil.sizeOfMap(nRows, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, estValueSize);
+    }
+    
+    private int maxGroups() {
+        return (int)Math.min(Integer.MAX_VALUE, spillThresholdBytes / sizeOfMap(1));
+    }
+    
+    /**
+     * Get the aggregators for the group identified by key, creating them if the
+     * group has not been seen yet. The in-memory groups are spilled to disk first
+     * if there's no room for a new group.
+     * @param key the group by key. The cache takes ownership of the key.
+     * @return the aggregators of the group
+     * @throws IOException if spilling to disk fails
+     */
+    public Aggregator[] cache(ImmutableBytesWritable key) throws IOException {
+        Aggregator[] rowAggregators = aggregateMap.get(key);
+        if (rowAggregators == null) {
+            if (aggregateMap.size() >= estDistVals && !grow()) {
+                spill();
+            }
+            // If Aggregators not found for this distinct value, clone our original one (we need one per distinct value)
+            if (logger.isDebugEnabled()) {
+                logger.debug("Adding new aggregate bucket for row key " + Bytes.toStringBinary(key.get(),key.getOffset(),key.getLength()));
+            }
+            aggregateMap.put(key, rowAggregators = aggregators.newAggregators());
+        }
+        return rowAggregators;
+    }
+    
+    /**
+     * Attempt to increase the memory allocation of the in-memory map.
+     * @return true if the allocation was increased and false if the
+     * in-memory map should be spilled instead.
+     */
+    private boolean grow() {
+        int newEstDistVals = (int)Math.min(Math.max(estDistVals + 1, estDistVals * 3L / 2), maxGroups());
+        if (newEstDistVals <= estDistVals) {
+            return false;
+        }
+        try {
+            chunk.resize(sizeOfMap(newEstDistVals));
+        } catch (InsufficientMemoryException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Unable to grow group by map beyond " + aggregateMap.size() + " groups: " + e.getMessage());
+            }
+            return false;
+        }
+        estDistVals = newEstDistVals;
+        return true;
+    }
+    
+    /**
+     * Sort the in-memory groups by key and write them to a new run file,
+     * keeping the current memory allocation for the next set of groups.
+     */
+    private void spill() throws IOException {
+        File file = File.createTempFile("GroupBySpiller", ".bin", spillDirectory);
+        spillFiles.add(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (Map.Entry<ImmutableBytesWritable, Aggregator[]> entry : sortedEntries()) {
+                ImmutableBytesWritable key = entry.getKey();
+                byte[] value = aggregators.toBytes(entry.getValue());
+                WritableUtils.writeVInt(out, key.getLength());
+                out.write(key.get(), key.getOffset(), key.getLength());
+                WritableUtils.writeVInt(out, value.length);
+                out.write(value);
+            }
+        } finally {
+            out.close();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Spilled " + aggregateMap.size() + " groups to " + file + " (run " + spillFiles.size() + ")");
+        }
+        aggregateMap = new HashMap<ImmutableBytesWritable, Aggregator[]>(estDistVals);
+    }
+    
+    private List<Map.Entry<ImmutableBytesWritable, Aggregator[]>> sortedEntries() {
+        List<Map.Entry<ImmutableBytesWritable, Aggregator[]>> entries = new ArrayList<Map.Entry<ImmutableBytesWritable, Aggregator[]>>(aggregateMap.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<ImmutableBytesWritable, Aggregator[]>>() {
+            @Override
+            public int compare(Map.Entry<ImmutableBytesWritable, Aggregator[]> e1, Map.Entry<ImmutableBytesWritable, Aggregator[]> e2) {
+                return e1.getKey().compareTo(e2.getKey());
+            }
+        });
+        return entries;
+    }
+    
+    /**
+     * @return the number of groups currently held in memory
+     */
+    public int size() {
+        return aggregateMap.size();
+    }
+    
+    /**
+     * @return the number of times the in-memory groups were spilled to disk
+     */
+    public int getSpillCount() {
+        return spillFiles.size();
+    }
+    
+    /**
+     * Get a RegionScanner that returns one row per group in row key order. Closing the
+     * returned scanner closes both the underlying scanner and this cache.
+     * @param s the underlying region scanner
+     */
+    public RegionScanner getScanner(final RegionScanner s) throws IOException {
+        // Compute final allocation
+        if (spillFiles.isEmpty()) {
+            chunk.resize(sizeOfMap(aggregateMap.size()));
+        }
+        final PriorityQueue<GroupIterator> mergeQueue = new PriorityQueue<GroupIterator>(spillFiles.size() + 1, new Comparator<GroupIterator>() {
+            @Override
+            public int compare(GroupIterator i1, GroupIterator i2) {
+                return KeyValue.COMPARATOR.compare(i1.peek(), i2.peek());
+            }
+        });
+        openIterators.add(new InMemoryGroupIterator(sortedEntries()));
+        for (File file : spillFiles) {
+            openIterators.add(new SpilledGroupIterator(file));
+        }
+        for (GroupIterator iterator : openIterators) {
+            if (iterator.peek() != null) {
+                mergeQueue.add(iterator);
+            }
+        }
+        return new BaseRegionScanner() {
+
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return s.getRegionInfo();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    s.close();
+                } finally {
+                    SpillableGroupByCache.this.close();
+                }
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                GroupIterator iterator = mergeQueue.poll();
+                if (iterator == null) {
+                    return false;
+                }
+                results.add(iterator.next());
+                if (iterator.peek() != null) {
+                    mergeQueue.add(iterator);
+                }
+                return !mergeQueue.isEmpty();
+            }
+        };
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            Closeables.closeAll(openIterators);
+        } finally {
+            try {
+                for (File file : spillFiles) {
+                    file.delete();
+                }
+            } finally {
+                chunk.close();
+            }
+        }
+    }
+    
+    private static KeyValue newKeyValue(byte[] key, int keyOffset, int keyLength, byte[] value) {
+        return KeyValueUtil.newKeyValue(key, keyOffset, keyLength, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length);
+    }
+    
+    private static interface GroupIterator extends Closeable {
+        KeyValue peek();
+        KeyValue next() throws IOException;
+    }
+    
+    private class InMemoryGroupIterator implements GroupIterator {
+        private final Iterator<Map.Entry<ImmutableBytesWritable, Aggregator[]>> iterator;
+        private KeyValue next;
+        
+        private InMemoryGroupIterator(List<Map.Entry<ImmutableBytesWritable, Aggregator[]>> entries) {
+            this.iterator = entries.iterator();
+            advance();
+        }
+        
+        private void advance() {
+            if (!iterator.hasNext()) {
+                next = null;
+                return;
+            }
+            Map.Entry<ImmutableBytesWritable, Aggregator[]> entry = iterator.next();
+            ImmutableBytesWritable key = entry.getKey();
+            Aggregator[] rowAggregators = entry.getValue();
+            // Generate byte array of Aggregators and set as value of row
+            byte[] value = aggregators.toBytes(rowAggregators);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Adding new distinct group: " + Bytes.toStringBinary(key.get(),key.getOffset(), key.getLength()) + 
+                        " with aggregators " + Arrays.asList(rowAggregators).toString() + 
+                        " value = " + Bytes.toStringBinary(value));
+            }
+            next = newKeyValue(key.get(), key.getOffset(), key.getLength(), value);
+        }
+
+        @Override
+        public KeyValue peek() {
+            return next;
+        }
+
+        @Override
+        public KeyValue next() {
+            KeyValue current = next;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+    
+    private static class SpilledGroupIterator implements GroupIterator {
+        private final DataInputStream in;
+        private KeyValue next;
+        private boolean isClosed;
+        
+        private SpilledGroupIterator(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            boolean success = false;
+            try {
+                advance();
+                success = true;
+            } finally {
+                if (!success) {
+                    close();
+                }
+            }
+        }
+        
+        private void advance() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            int keyLength;
+            try {
+                keyLength = WritableUtils.readVInt(in);
+            } catch (EOFException e) {
+                close();
+                return;
+            }
+            byte[] key = new byte[keyLength];
+            in.readFully(key);
+            byte[] value = new byte[WritableUtils.readVInt(in)];
+            in.readFully(value);
+            next = newKeyValue(key, 0, keyLength, value);
+        }
+
+        @Override
+        public KeyValue peek() {
+            return next;
+        }
+
+        @Override
+        public KeyValue next() throws IOException {
+            KeyValue current = next;
+            next = null;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!isClosed) {
+                isClosed = true;
+                next = null;
+                in.close();
+            }
+        }
+    }
+}
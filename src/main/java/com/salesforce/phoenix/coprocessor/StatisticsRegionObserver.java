@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import static com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData.STATS_FAMILY_BYTES;
+import static com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData.STATS_TABLE_NAME;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.coprocessor.ObserverContext;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.regionserver.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.stat.PRegionStats;
+import com.salesforce.phoenix.schema.stat.StatisticsCollector;
+
+
+/**
+ * 
+ * Region observer that collects the statistics of each column family of a region
+ * while it's being major compacted, when every key value of the store is rewritten.
+ * Statistics may also be collected on demand through a scan over the table with
+ * the {@link #COLLECT_STATS} attribute set, which returns no rows.
+ * 
+ * The statistics are written to the {@link com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData#STATS_TABLE_NAME}
+ * table, in a row keyed by the region name with a column for each column family.
+ * Failure to collect or write them is logged, but never fails the compaction.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class StatisticsRegionObserver extends BaseScannerRegionObserver {
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsRegionObserver.class);
+    public static final String COLLECT_STATS = "CollectStats";
+    
+    // Set by preCompactScannerOpen and read by preCompact, both of which
+    // are called by the thread doing the compaction.
+    private final ThreadLocal<Boolean> isMajorCompaction = new ThreadLocal<Boolean>();
+    private final ConcurrentMap<Store,StatisticsCollector> compactionCollectors = new ConcurrentHashMap<Store,StatisticsCollector>();
+    
+    private static StatisticsCollector newCollector(RegionCoprocessorEnvironment env) {
+        int maxGuidePosts = env.getConfiguration().getInt(QueryServices.MAX_GUIDE_POSTS_PER_REGION_ATTRIB, QueryServicesOptions.DEFAULT_MAX_GUIDE_POSTS_PER_REGION);
+        return new StatisticsCollector(maxGuidePosts);
+    }
+    
+    private static void writeStats(RegionCoprocessorEnvironment env, Map<byte[],PRegionStats> statsByFamily) {
+        HRegionInfo region = env.getRegion().getRegionInfo();
+        try {
+            HTableInterface statsTable = env.getTable(STATS_TABLE_NAME);
+            try {
+                Put put = new Put(region.getRegionName());
+                for (Entry<byte[],PRegionStats> entry : statsByFamily.entrySet()) {
+                    put.add(STATS_FAMILY_BYTES, entry.getKey(), entry.getValue().toBytes());
+                }
+                statsTable.put(put);
+            } finally {
+                statsTable.close();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Wrote statistics for " + region.getRegionNameAsString() + ": " + statsByFamily);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write statistics for " + region.getRegionNameAsString(), e);
+        }
+    }
+    
+    @Override
+    public InternalScanner preCompactScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Store store,
+            List<? extends KeyValueScanner> scanners, ScanType scanType, long earliestPutTs, InternalScanner s) throws IOException {
+        isMajorCompaction.set(scanType == ScanType.MAJOR_COMPACT);
+        return s;
+    }
+
+    @Override
+    public InternalScanner preCompact(ObserverContext<RegionCoprocessorEnvironment> c, Store store, final InternalScanner scanner) {
+        Boolean isMajor = isMajorCompaction.get();
+        isMajorCompaction.remove();
+        if (!Boolean.TRUE.equals(isMajor)) {
+            return scanner;
+        }
+        final StatisticsCollector collector = newCollector(c.getEnvironment());
+        compactionCollectors.put(store, collector);
+        return new InternalScanner() {
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                int size = results.size();
+                boolean hasMore = scanner.next(results);
+                collector.collect(results.subList(size, results.size()));
+                return hasMore;
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results, String metric) throws IOException {
+                int size = results.size();
+                boolean hasMore = scanner.next(results, metric);
+                collector.collect(results.subList(size, results.size()));
+                return hasMore;
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results, int limit) throws IOException {
+                int size = results.size();
+                boolean hasMore = scanner.next(results, limit);
+                collector.collect(results.subList(size, results.size()));
+                return hasMore;
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results, int limit, String metric) throws IOException {
+                int size = results.size();
+                boolean hasMore = scanner.next(results, limit, metric);
+                collector.collect(results.subList(size, results.size()));
+                return hasMore;
+            }
+
+            @Override
+            public void close() throws IOException {
+                scanner.close();
+            }
+        };
+    }
+
+    @Override
+    public void postCompact(ObserverContext<RegionCoprocessorEnvironment> c, Store store, StoreFile resultFile) {
+        // Only write the stats once the compaction has completed, since an aborted one
+        // will have only seen part of the store.
+        StatisticsCollector collector = compactionCollectors.remove(store);
+        if (collector != null) {
+            writeStats(c.getEnvironment(), Collections.singletonMap(store.getFamily().getName(), collector.getStats()));
+        }
+    }
+
+    @Override
+    protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s) throws IOException {
+        if (scan.getAttribute(COLLECT_STATS) == null) {
+            return s;
+        }
+        RegionCoprocessorEnvironment env = c.getEnvironment();
+        HRegion region = env.getRegion();
+        Map<byte[],StatisticsCollector> collectors = new TreeMap<byte[],StatisticsCollector>(Bytes.BYTES_COMPARATOR);
+        for (byte[] family : region.getTableDesc().getFamiliesKeys()) {
+            collectors.put(family, newCollector(env));
+        }
+        boolean hasMore;
+        MultiVersionConsistencyControl.setThreadReadPoint(s.getMvccReadPoint());
+        region.startRegionOperation();
+        try {
+            List<KeyValue> results = new ArrayList<KeyValue>();
+            do {
+                results.clear();
+                hasMore = s.nextRaw(results, null) && !s.isFilterDone();
+                for (int i = 0; i < results.size(); i++) {
+                    KeyValue kv = results.get(i);
+                    StatisticsCollector collector = collectors.get(kv.getFamily());
+                    if (collector != null) {
+                        collector.collect(kv);
+                    }
+                }
+            } while (hasMore);
+        } finally {
+            region.closeRegionOperation();
+        }
+        Map<byte[],PRegionStats> statsByFamily = new TreeMap<byte[],PRegionStats>(Bytes.BYTES_COMPARATOR);
+        for (Entry<byte[],StatisticsCollector> entry : collectors.entrySet()) {
+            statsByFamily.put(entry.getKey(), entry.getValue().getStats());
+        }
+        writeStats(env, statsByFamily);
+        
+        return new BaseRegionScanner() {
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return s.getRegionInfo();
+            }
+
+            @Override
+            public boolean isFilterDone() {
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                s.close();
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                return false;
+            }
+        };
+    }
+}
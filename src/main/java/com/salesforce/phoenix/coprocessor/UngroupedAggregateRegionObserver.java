@@ -28,11 +28,15 @@
 package com.salesforce.phoenix.coprocessor;
 
 import static com.salesforce.phoenix.query.QueryConstants.*;
+import static com.salesforce.phoenix.query.QueryServices.MAX_MUTATION_WRITER_THREADS_ATTRIB;
+import static com.salesforce.phoenix.query.QueryServices.MAX_PENDING_MUTATION_BATCHES_ATTRIB;
 import static com.salesforce.phoenix.query.QueryServices.MUTATE_BATCH_SIZE_ATTRIB;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.*;
@@ -76,11 +80,52 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
     public static final String DELETE_CF = "DeleteCF";
     public static final String EMPTY_CF = "EmptyCF";
     
-    private static void commitBatch(HRegion region, List<Pair<Mutation,Integer>> mutations) throws IOException {
-        @SuppressWarnings("unchecked")
-        Pair<Mutation,Integer>[] mutationArray = new Pair[mutations.size()];
-        // TODO: should we use the one that is all or none?
-        region.batchMutate(mutations.toArray(mutationArray));
+    /*
+     * Set by clients that accept counters in the aggregate row. Older clients
+     * expect the aggregated value alone, so the counters are only returned
+     * when this attribute is present.
+     */
+    public static final String MUTATION_COUNTERS = "MutationCounters";
+    /*
+     * Counters reported back to the client in the aggregate row, in addition
+     * to the aggregated value. The qualifiers sort after SINGLE_COLUMN in the
+     * order in which the key values are added to the row.
+     */
+    public static final byte[] MUTATION_COUNT_COLUMN = Bytes.toBytes("sm");
+    public static final byte[] ROWS_SCANNED_COLUMN = Bytes.toBytes("sr");
+    public static final byte[] TOTAL_BATCH_TIME_COLUMN = Bytes.toBytes("st");
+    public static final byte[] MAX_BATCH_TIME_COLUMN = Bytes.toBytes("sx");
+    
+    // Shared by the regions of the region server and sized by the first configuration seen
+    private static ExecutorService mutationWriters;
+    
+    private static synchronized ExecutorService getMutationWriters(Configuration config) {
+        if (mutationWriters == null) {
+            int maxThreads = config.getInt(MAX_MUTATION_WRITER_THREADS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MUTATION_WRITER_THREADS);
+            mutationWriters = MutationPipeline.newWriterPool(maxThreads);
+        }
+        return mutationWriters;
+    }
+    
+    private static class RegionMutationTarget implements MutationPipeline.MutationTarget {
+        private final HRegion region;
+        
+        private RegionMutationTarget(HRegion region) {
+            this.region = region;
+        }
+        
+        @Override
+        public void batchMutate(List<Pair<Mutation,Integer>> mutations) throws IOException {
+            @SuppressWarnings("unchecked")
+            Pair<Mutation,Integer>[] mutationArray = new Pair[mutations.size()];
+            // TODO: should we use the one that is all or none?
+            region.batchMutate(mutations.toArray(mutationArray));
+        }
+
+        @Override
+        public boolean isClosing() {
+            return region.isClosing() || region.isClosed();
+        }
     }
     
     @Override
@@ -119,10 +164,15 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         long ts = scan.getTimeRange().getMax();
         HRegion region = c.getEnvironment().getRegion();
         List<Pair<Mutation,Integer>> mutations = Collections.emptyList();
+        MutationPipeline pipeline = null;
         if (isDelete || isUpsert || (deleteCQ != null && deleteCF != null) || emptyCF != null) {
             // TODO: size better
             mutations = Lists.newArrayListWithExpectedSize(1024);
-            batchSize = c.getEnvironment().getConfiguration().getInt(MUTATE_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MUTATE_BATCH_SIZE);
+            Configuration config = c.getEnvironment().getConfiguration();
+            batchSize = config.getInt(MUTATE_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MUTATE_BATCH_SIZE);
+            // Write the batches on a separate thread so that we continue scanning while a batch is written
+            int maxPendingBatches = config.getInt(MAX_PENDING_MUTATION_BATCHES_ATTRIB, QueryServicesOptions.DEFAULT_MAX_PENDING_MUTATION_BATCHES);
+            pipeline = new MutationPipeline(new RegionMutationTarget(region), maxPendingBatches, getMutationWriters(config));
         }
         Aggregators aggregators = ServerAggregators.deserialize(scan.getAttribute(GroupedAggregateRegionObserver.AGGREGATORS));
         Aggregator[] rowAggregators = aggregators.getAggregators();
@@ -211,10 +261,10 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
                                 }
                             }
                         }
-                        // Commit in batches based on UPSERT_BATCH_SIZE_ATTRIB in config
-                        if (!mutations.isEmpty() && batchSize > 0 && mutations.size() % batchSize == 0) {
-                            commitBatch(region,mutations);
-                            mutations.clear();
+                        // Commit in batches based on MUTATE_BATCH_SIZE_ATTRIB in config
+                        if (!mutations.isEmpty() && batchSize > 0 && mutations.size() >= batchSize) {
+                            pipeline.add(mutations);
+                            mutations = Lists.newArrayListWithExpectedSize(batchSize);
                         }
                     } catch (ConstraintViolationException e) {
                         // Log and ignore in count
@@ -225,25 +275,41 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
                     hasAny = true;
                 }
             } while (hasMore);
+            if (pipeline != null) {
+                if (!mutations.isEmpty()) {
+                    pipeline.add(mutations);
+                }
+                pipeline.finish();
+            }
         } finally {
+            if (pipeline != null) {
+                pipeline.abort();
+            }
             region.closeRegionOperation();
         }
         
         if (logger.isInfoEnabled()) {
-        	logger.info("Finished scanning " + rowCount + " rows for ungrouped coprocessor scan " + scan);
-        }
-
-        if (!mutations.isEmpty()) {
-            commitBatch(region,mutations);
+            if (pipeline == null) {
+                logger.info("Finished scanning " + rowCount + " rows for ungrouped coprocessor scan " + scan);
+            } else {
+                logger.info("Finished scanning " + rowCount + " rows and writing " + pipeline.getMutationCount() + " mutations in "
+                        + pipeline.getBatchCount() + " batches (" + pipeline.getTotalBatchTimeNs() / 1000000 + " ms total, "
+                        + pipeline.getMaxBatchTimeNs() / 1000000 + " ms max) for ungrouped coprocessor scan " + scan);
+            }
         }
 
         final boolean hadAny = hasAny;
-        KeyValue keyValue = null;
+        final List<KeyValue> aggKeyValues = Lists.newArrayListWithExpectedSize(5);
         if (hadAny) {
             byte[] value = aggregators.toBytes(rowAggregators);
-            keyValue = KeyValueUtil.newKeyValue(UNGROUPED_AGG_ROW_KEY, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length);
+            aggKeyValues.add(KeyValueUtil.newKeyValue(UNGROUPED_AGG_ROW_KEY, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length));
+            if (pipeline != null && scan.getAttribute(MUTATION_COUNTERS) != null) {
+                aggKeyValues.add(newCounterKeyValue(MUTATION_COUNT_COLUMN, pipeline.getMutationCount()));
+                aggKeyValues.add(newCounterKeyValue(ROWS_SCANNED_COLUMN, rowCount));
+                aggKeyValues.add(newCounterKeyValue(TOTAL_BATCH_TIME_COLUMN, pipeline.getTotalBatchTimeNs()));
+                aggKeyValues.add(newCounterKeyValue(MAX_BATCH_TIME_COLUMN, pipeline.getMaxBatchTimeNs()));
+            }
         }
-        final KeyValue aggKeyValue = keyValue;
         
         RegionScanner scanner = new BaseRegionScanner() {
             private boolean done = !hadAny;
@@ -267,13 +333,18 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
             public boolean next(List<KeyValue> results) throws IOException {
                 if (done) return false;
                 done = true;
-                results.add(aggKeyValue);
+                results.addAll(aggKeyValues);
                 return false;
             }
         };
         return scanner;
     }
     
+    private static KeyValue newCounterKeyValue(byte[] qualifier, long value) {
+        byte[] bytes = Bytes.toBytes(value);
+        return KeyValueUtil.newKeyValue(UNGROUPED_AGG_ROW_KEY, SINGLE_COLUMN_FAMILY, qualifier, AGG_TIMESTAMP, bytes, 0, bytes.length);
+    }
+    
     private static PTable deserializeTable(byte[] b) {
         ByteArrayInputStream stream = new ByteArrayInputStream(b);
         try {
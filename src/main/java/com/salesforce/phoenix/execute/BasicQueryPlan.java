@@ -29,15 +29,18 @@ package com.salesforce.phoenix.execute;
 
 import java.sql.ParameterMetaData;
 import java.sql.SQLException;
+import java.util.List;
 
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.compile.*;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.parse.ParseNode;
 import com.salesforce.phoenix.query.*;
-import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.ScanUtil;
 
 
@@ -136,11 +139,74 @@ public abstract class BasicQueryPlan implements QueryPlan {
         return scanner;
     }
 
+    /**
+     * Prepares the plan to be executed again, so that a statement executed again
+     * with the same bind values does not have to be compiled again. The table
+     * meta data is brought up to date as it is when the statement is compiled, and
+     * the plan is executed as of the time returned with it.
+     * @return true if the plan may be executed again and false if the statement
+     * must be compiled again, because the table changed since the plan was compiled
+     * or the current time was bound into an expression of the statement.
+     * @throws SQLException
+     */
+    public boolean reset() throws SQLException {
+        if (context.isCurrentTimeBound()) {
+            return false;
+        }
+        PhoenixConnection connection = context.getConnection();
+        String schemaName = table.getSchema().getName();
+        String tableName = table.getTable().getName().getString();
+        long timeStamp = Math.abs(new MetaDataClient(connection).updateCache(schemaName, tableName));
+        PTable currentTable;
+        try {
+            currentTable = connection.getPMetaData().getSchema(schemaName).getTable(tableName);
+        } catch (SchemaNotFoundException e) {
+            return false;
+        } catch (TableNotFoundException e) {
+            return false;
+        }
+        // Compare the time stamp too, in case the table was dropped and created again
+        if (currentTable.getSequenceNumber() != table.getTable().getSequenceNumber()
+                || currentTable.getTimeStamp() != table.getTable().getTimeStamp()) {
+            return false;
+        }
+        context.setCurrentTime(timeStamp);
+        context.resetPeakUsedMemory();
+        scanner = null;
+        return true;
+    }
+
+    /**
+     * Binds other values to the plan, so that a statement executed again with other
+     * bind values does not have to be compiled again. Only the WHERE clause is compiled
+     * again, to form the key ranges and filter of the scan for the values, which is
+     * possible when it holds all the bind parameters of the statement.
+     * @param binds the values of the bind parameters
+     * @return true if the values were bound and false if the statement must be compiled again
+     * @throws SQLException if the values may not be bound to the WHERE clause
+     */
+    public boolean rebind(List<Object> binds) throws SQLException {
+        ParseNode where = context.getRebindableWhere();
+        if (where == null) {
+            return false;
+        }
+        Scan scan = context.getScan();
+        scan.setFilter(null);
+        scan.setStartRow(HConstants.EMPTY_START_ROW);
+        scan.setStopRow(HConstants.EMPTY_END_ROW);
+        context.setScanRanges(ScanRanges.EVERYTHING);
+        context.setBinds(binds);
+        WhereCompiler.getWhereClause(context, where);
+        scanner = null;
+        return true;
+    }
+
     @Override
     public ParameterMetaData getParameterMetaData() {
         return paramMetaData;
     }
 
+    @Override
     public StatementContext getContext() {
         return context;
     }
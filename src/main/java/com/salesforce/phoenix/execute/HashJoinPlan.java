@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.execute;
+
+import java.sql.ParameterMetaData;
+import java.sql.SQLException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.compile.*;
+import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.iterate.ResultIterator;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.join.HashCacheClient;
+import com.salesforce.phoenix.join.HashJoinInfo;
+import com.salesforce.phoenix.query.*;
+import com.salesforce.phoenix.query.Scanner;
+import com.salesforce.phoenix.schema.PColumn;
+import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+/**
+ * 
+ * Query plan for a broadcast hash join. Before the plan over the scanned table
+ * is executed, the rows of the hashed table are sent to the region servers of the
+ * scanned table, keyed by their join key, where they're joined to the scanned rows
+ * by {@link com.salesforce.phoenix.join.HashJoiningRegionObserver}.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class HashJoinPlan implements QueryPlan {
+    private final BasicQueryPlan plan;
+    private final QueryPlan hashPlan;
+    private final HashJoinInfo joinInfo;
+    private final List<Expression> hashKeyExpressions;
+    private final List<Expression> hashColumnExpressions;
+    private final List<PColumn> joinedColumns;
+    
+    private Scanner scanner;
+
+    /**
+     * @param plan the plan over the scanned table
+     * @param hashPlan the plan over the hashed table
+     * @param joinInfo the join information sent to the region servers of the scanned table
+     * @param hashKeyExpressions the join key expressions evaluated against the rows of the hashed table
+     * @param hashColumnExpressions the referenced columns of the hashed table
+     * @param joinedColumns the columns in the joined row that hold the values of hashColumnExpressions
+     */
+    public HashJoinPlan(BasicQueryPlan plan, QueryPlan hashPlan, HashJoinInfo joinInfo, List<Expression> hashKeyExpressions, 
+            List<Expression> hashColumnExpressions, List<PColumn> joinedColumns) {
+        this.plan = plan;
+        this.hashPlan = hashPlan;
+        this.joinInfo = joinInfo;
+        this.hashKeyExpressions = hashKeyExpressions;
+        this.hashColumnExpressions = hashColumnExpressions;
+        this.joinedColumns = joinedColumns;
+    }
+
+    @Override
+    public Scanner getScanner() throws SQLException {
+        if (scanner != null) {
+            return scanner;
+        }
+        StatementContext context = plan.getContext();
+        PhoenixConnection connection = context.getConnection();
+        HashCacheClient hashClient = new HashCacheClient(connection.getQueryServices(), plan.getTable().getTableName(), connection.getTenantId());
+        final HashCacheClient.HashCache hashCache = hashClient.addHashCache(new HashScanner(hashPlan.getScanner()), null, null);
+        boolean success = false;
+        try {
+            // Must be set before the scan over the joined table is started
+            Scan scan = context.getScan();
+            scan.setAttribute(HashJoinInfo.HASH_JOIN, HashJoinInfo.serialize(joinInfo));
+            scan.setAttribute(HashJoinInfo.JOIN_ID, hashCache.getJoinId());
+            scanner = new DelegateScanner(plan.getScanner()) {
+                @Override
+                public ResultIterator iterator() throws SQLException {
+                    final ResultIterator iterator = super.iterator();
+                    return new ResultIterator() {
+                        private boolean isClosed;
+                        
+                        @Override
+                        public Tuple next() throws SQLException {
+                            return iterator.next();
+                        }
+
+                        @Override
+                        public void close() throws SQLException {
+                            if (isClosed) {
+                                return;
+                            }
+                            isClosed = true;
+                            try {
+                                iterator.close();
+                            } finally {
+                                hashCache.close();
+                            }
+                        }
+
+                        @Override
+                        public void explain(List<String> planSteps) {
+                            iterator.explain(planSteps);
+                        }
+                    };
+                }
+            };
+            success = true;
+            return scanner;
+        } finally {
+            if (!success) {
+                hashCache.close();
+            }
+        }
+    }
+    
+    /**
+     * Scanner over the hashed table that turns each row into the row sent to the
+     * region servers: keyed by the join key, with the referenced columns placed in
+     * the column families they have in the joined row.
+     */
+    private class HashScanner extends DelegateScanner {
+        public HashScanner(Scanner delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public ResultIterator iterator() throws SQLException {
+            final ResultIterator iterator = super.iterator();
+            return new ResultIterator() {
+                private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+                
+                @Override
+                public Tuple next() throws SQLException {
+                    for (Tuple tuple = iterator.next(); tuple != null; tuple = iterator.next()) {
+                        // A null join key never matches anything
+                        if (!HashJoinInfo.evaluateJoinKey(tuple, hashKeyExpressions, ptr)) {
+                            continue;
+                        }
+                        byte[] row = ptr.copyBytes();
+                        List<KeyValue> kvs = Lists.newArrayListWithExpectedSize(hashColumnExpressions.size() + 1);
+                        // Ensures every row has a key value, even if all its columns are null
+                        kvs.add(new KeyValue(row, HashJoinInfo.JOINED_FAMILY_PREFIX, QueryConstants.EMPTY_COLUMN_BYTES, QueryConstants.AGG_TIMESTAMP, ByteUtil.EMPTY_BYTE_ARRAY));
+                        for (int i = 0; i < hashColumnExpressions.size(); i++) {
+                            if (hashColumnExpressions.get(i).evaluate(tuple, ptr) && ptr.getLength() > 0) {
+                                PColumn column = joinedColumns.get(i);
+                                kvs.add(new KeyValue(row, column.getFamilyName().getBytes(), column.getName().getBytes(), QueryConstants.AGG_TIMESTAMP, ptr.copyBytes()));
+                            }
+                        }
+                        Collections.sort(kvs, KeyValue.COMPARATOR);
+                        return new ResultTuple(new Result(kvs));
+                    }
+                    return null;
+                }
+
+                @Override
+                public void close() throws SQLException {
+                    iterator.close();
+                }
+
+                @Override
+                public void explain(List<String> planSteps) {
+                    iterator.explain(planSteps);
+                }
+            };
+        }
+    }
+
+    @Override
+    public ExplainPlan getExplainPlan() throws SQLException {
+        List<String> planSteps = Lists.newArrayList(plan.getExplainPlan().getPlanSteps());
+        // The join happens right after the filter of the scan is applied
+        int i = 1;
+        while (i < planSteps.size() && planSteps.get(i).startsWith("    SERVER FILTER BY")) {
+            i++;
+        }
+        List<String> joinSteps = Lists.newArrayList();
+        joinSteps.add("    SERVER " + (joinInfo.isOuterJoin() ? "OUTER" : "INNER") + " HASH JOIN ON " + 
+                joinInfo.getJoinExpressions() + " = " + hashKeyExpressions + " WITH");
+        for (String step : hashPlan.getExplainPlan().getPlanSteps()) {
+            joinSteps.add("        " + step);
+        }
+        if (joinInfo.getPostFilter() != null) {
+            joinSteps.add("    SERVER FILTER JOINED ROWS BY " + joinInfo.getPostFilter());
+        }
+        planSteps.addAll(i, joinSteps);
+        return new ExplainPlan(planSteps);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() {
+        return plan.getParameterMetaData();
+    }
+
+    @Override
+    public boolean isAggregate() {
+        return plan.isAggregate();
+    }
+
+    @Override
+    public TableRef getTable() {
+        return plan.getTable();
+    }
+
+    @Override
+    public RowProjector getProjector() {
+        return plan.getProjector();
+    }
+
+    @Override
+    public Integer getLimit() {
+        return plan.getLimit();
+    }
+
+    @Override
+    public OrderBy getOrderBy() {
+        return plan.getOrderBy();
+    }
+
+    @Override
+    public List<KeyRange> getSplits() {
+        return plan.getSplits();
+    }
+
+    @Override
+    public StatementContext getContext() {
+        return plan.getContext();
+    }
+}
@@ -0,0 +1,460 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.execute;
+
+import java.util.*;
+
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.ByteUtil;
+
+/**
+ * 
+ * Compact buffer of the uncommitted rows of a table. Each row is laid out as a single
+ * record in large byte blocks: the length and bytes of the row key, followed by the
+ * number of columns set (or -1 for a deleted row) and then the ordinal, length and
+ * bytes of the value of each column. The records are found through an open addressing
+ * hash table of their locations, so that a row costs little more than its bytes,
+ * instead of several objects for each of its columns.
+ * <p>
+ * Changing a row again appends a new record with the merged columns, and the blocks
+ * are compacted once the replaced records take up more than half of them. The rows
+ * are sorted by row key when they are read back, and their values are handed to the
+ * HBase mutations directly from the blocks.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MutationBuffer {
+    private static final int BLOCK_SIZE = 64 * 1024; // 64K
+    private static final int INITIAL_INDEX_SIZE = 16;
+    private static final int DELETED_ROW = -1;
+    
+    private final PTable table;
+    private final List<byte[]> blocks = Lists.newArrayList();
+    private final BitSet columnOrdinals = new BitSet();
+    // Location of the record of each row, or 0 for an empty slot
+    private long[] index = new long[INITIAL_INDEX_SIZE];
+    private int size;
+    private int blockOffset;
+    private long blockBytes;
+    private long recordBytes;
+    private long replacedBytes;
+    
+    public MutationBuffer(PTable table) {
+        this.table = table;
+    }
+    
+    /**
+     * @return the number of rows in the buffer
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return the number of bytes held by the buffer
+     */
+    public long getByteSize() {
+        return blockBytes + index.length * Bytes.SIZEOF_LONG;
+    }
+    
+    /**
+     * @return the ordinals of the columns set by any of the rows in the buffer
+     */
+    public BitSet getColumnOrdinals() {
+        return columnOrdinals;
+    }
+    
+    /**
+     * Set the values of a row, keeping the values of any other columns set before,
+     * or delete a row.
+     * @param key the row key
+     * @param values the value of each column, or null to delete the row
+     */
+    public void put(ImmutableBytesWritable key, Map<PColumn,byte[]> values) {
+        if (values == null) {
+            put(key.get(), key.getOffset(), key.getLength(), DELETED_ROW, null, null, null, null);
+            return;
+        }
+        int i = 0;
+        int count = values.size();
+        int[] ordinals = new int[count];
+        byte[][] arrays = new byte[count][];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (Map.Entry<PColumn,byte[]> entry : values.entrySet()) {
+            byte[] value = entry.getValue() == null ? ByteUtil.EMPTY_BYTE_ARRAY : entry.getValue();
+            ordinals[i] = entry.getKey().getPosition();
+            arrays[i] = value;
+            lengths[i++] = value.length;
+        }
+        put(key.get(), key.getOffset(), key.getLength(), count, ordinals, arrays, offsets, lengths);
+    }
+    
+    /**
+     * Merge the rows of another buffer of the same table into this one, the rows
+     * of the other buffer taking precedence.
+     * @param buffer the buffer whose rows are merged into this one
+     */
+    public void putAll(MutationBuffer buffer) {
+        for (long location : buffer.index) {
+            if (location == 0) {
+                continue;
+            }
+            byte[] block = buffer.getBlock(location);
+            int offset = getOffset(location);
+            int keyLength = ByteUtil.vintFromBytes(block, offset);
+            int keyOffset = offset + WritableUtils.decodeVIntSize(block[offset]);
+            offset = keyOffset + keyLength;
+            int count = ByteUtil.vintFromBytes(block, offset);
+            offset += WritableUtils.decodeVIntSize(block[offset]);
+            if (count == DELETED_ROW) {
+                put(block, keyOffset, keyLength, DELETED_ROW, null, null, null, null);
+                continue;
+            }
+            int[] ordinals = new int[count];
+            byte[][] arrays = new byte[count][];
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                offset = readCell(block, offset, i, ordinals, arrays, offsets, lengths);
+            }
+            put(block, keyOffset, keyLength, count, ordinals, arrays, offsets, lengths);
+        }
+    }
+    
+    /**
+     * Copy a row of another buffer of the same table into this one
+     * @param buffer the buffer holding the row
+     * @param location the location of the row in the other buffer
+     */
+    public void copy(MutationBuffer buffer, long location) {
+        byte[] block = buffer.getBlock(location);
+        int offset = getOffset(location);
+        int length = getRecordLength(block, offset);
+        int keyOffset = offset + WritableUtils.decodeVIntSize(block[offset]);
+        int slot = findSlot(block, keyOffset, ByteUtil.vintFromBytes(block, offset));
+        if (index[slot] == 0) {
+            size++;
+        }
+        index[slot] = append(block, offset, length);
+        columnOrdinals.or(buffer.columnOrdinals);
+        growIndexIfNecessary();
+    }
+    
+    /**
+     * @return the location of each row, ordered by row key
+     */
+    public long[] getSortedLocations() {
+        int i = 0;
+        long[] locations = new long[size];
+        for (long location : index) {
+            if (location != 0) {
+                locations[i++] = location;
+            }
+        }
+        sort(locations, 0, locations.length, new long[locations.length]);
+        return locations;
+    }
+    
+    /**
+     * Point to the row key of a row
+     * @param location the location of the row
+     * @param ptr set to the row key
+     */
+    public void getKey(long location, ImmutableBytesWritable ptr) {
+        byte[] block = getBlock(location);
+        int offset = getOffset(location);
+        int keyLength = ByteUtil.vintFromBytes(block, offset);
+        ptr.set(block, offset + WritableUtils.decodeVIntSize(block[offset]), keyLength);
+    }
+    
+    /**
+     * Get the HBase mutations of a row
+     * @param location the location of the row
+     * @param timestamp the time stamp of the mutations
+     * @return the mutations of the row
+     */
+    public List<Mutation> getRowMutations(long location, long timestamp) {
+        byte[] block = getBlock(location);
+        int offset = getOffset(location);
+        ImmutableBytesWritable key = new ImmutableBytesWritable();
+        getKey(location, key);
+        PRow row = table.newRow(timestamp, key);
+        offset = key.getOffset() + key.getLength();
+        int count = ByteUtil.vintFromBytes(block, offset);
+        offset += WritableUtils.decodeVIntSize(block[offset]);
+        if (count == DELETED_ROW) {
+            row.delete();
+        } else {
+            List<PColumn> columns = table.getColumns();
+            for (int i = 0; i < count; i++) {
+                int ordinal = ByteUtil.vintFromBytes(block, offset);
+                offset += WritableUtils.decodeVIntSize(block[offset]);
+                int length = ByteUtil.vintFromBytes(block, offset);
+                offset += WritableUtils.decodeVIntSize(block[offset]);
+                row.setValue(columns.get(ordinal), block, offset, length);
+                offset += length;
+            }
+        }
+        return row.toRowMutations();
+    }
+    
+    private void put(byte[] key, int keyOffset, int keyLength, int count, int[] ordinals, byte[][] arrays, int[] offsets, int[] lengths) {
+        int slot = findSlot(key, keyOffset, keyLength);
+        long location = index[slot];
+        if (location == 0) {
+            size++;
+        } else {
+            byte[] block = getBlock(location);
+            int offset = getOffset(location);
+            replacedBytes += getRecordLength(block, offset);
+            if (count != DELETED_ROW) {
+                offset += WritableUtils.decodeVIntSize(block[offset]) + keyLength;
+                int existingCount = ByteUtil.vintFromBytes(block, offset);
+                offset += WritableUtils.decodeVIntSize(block[offset]);
+                // Values set after a delete replace the row, otherwise the values are merged
+                if (existingCount != DELETED_ROW) {
+                    int[] mergedOrdinals = Arrays.copyOf(ordinals, count + existingCount);
+                    byte[][] mergedArrays = Arrays.copyOf(arrays, count + existingCount);
+                    int[] mergedOffsets = Arrays.copyOf(offsets, count + existingCount);
+                    int[] mergedLengths = Arrays.copyOf(lengths, count + existingCount);
+                    int mergedCount = count;
+                    for (int i = 0; i < existingCount; i++) {
+                        offset = readCell(block, offset, mergedCount, mergedOrdinals, mergedArrays, mergedOffsets, mergedLengths);
+                        if (!contains(ordinals, count, mergedOrdinals[mergedCount])) {
+                            mergedCount++;
+                        }
+                    }
+                    count = mergedCount;
+                    ordinals = mergedOrdinals;
+                    arrays = mergedArrays;
+                    offsets = mergedOffsets;
+                    lengths = mergedLengths;
+                }
+            }
+        }
+        index[slot] = writeRecord(key, keyOffset, keyLength, count, ordinals, arrays, offsets, lengths);
+        growIndexIfNecessary();
+        if (replacedBytes > BLOCK_SIZE && replacedBytes > recordBytes / 2) {
+            compact();
+        }
+    }
+    
+    private static int readCell(byte[] block, int offset, int i, int[] ordinals, byte[][] arrays, int[] offsets, int[] lengths) {
+        ordinals[i] = ByteUtil.vintFromBytes(block, offset);
+        offset += WritableUtils.decodeVIntSize(block[offset]);
+        lengths[i] = ByteUtil.vintFromBytes(block, offset);
+        offset += WritableUtils.decodeVIntSize(block[offset]);
+        arrays[i] = block;
+        offsets[i] = offset;
+        return offset + lengths[i];
+    }
+    
+    private static boolean contains(int[] ordinals, int count, int ordinal) {
+        for (int i = 0; i < count; i++) {
+            if (ordinals[i] == ordinal) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private long writeRecord(byte[] key, int keyOffset, int keyLength, int count, int[] ordinals, byte[][] arrays, int[] offsets, int[] lengths) {
+        int length = WritableUtils.getVIntSize(keyLength) + keyLength + WritableUtils.getVIntSize(count);
+        for (int i = 0; i < count; i++) {
+            length += WritableUtils.getVIntSize(ordinals[i]) + WritableUtils.getVIntSize(lengths[i]) + lengths[i];
+        }
+        long location = allocate(length);
+        byte[] block = getBlock(location);
+        int offset = getOffset(location);
+        offset += ByteUtil.vintToBytes(block, offset, keyLength);
+        System.arraycopy(key, keyOffset, block, offset, keyLength);
+        offset += keyLength;
+        offset += ByteUtil.vintToBytes(block, offset, count);
+        for (int i = 0; i < count; i++) {
+            offset += ByteUtil.vintToBytes(block, offset, ordinals[i]);
+            offset += ByteUtil.vintToBytes(block, offset, lengths[i]);
+            System.arraycopy(arrays[i], offsets[i], block, offset, lengths[i]);
+            offset += lengths[i];
+            columnOrdinals.set(ordinals[i]);
+        }
+        return location;
+    }
+    
+    private long append(byte[] bytes, int offset, int length) {
+        long location = allocate(length);
+        System.arraycopy(bytes, offset, getBlock(location), getOffset(location), length);
+        return location;
+    }
+    
+    /**
+     * Reserve space for a record, starting a new block if it does not fit
+     * in the current one. The first block is sized to the record, so that a
+     * buffer holding a single row stays small, and each subsequent block is
+     * twice the size of the one before up to {@link #BLOCK_SIZE}. A record
+     * bigger than that gets a block of its own.
+     * @return the location of the space reserved
+     */
+    private long allocate(int length) {
+        if (blocks.isEmpty() || blockOffset + length > blocks.get(blocks.size() - 1).length) {
+            int blockSize = blocks.isEmpty() ? length : Math.min(BLOCK_SIZE, 2 * blocks.get(blocks.size() - 1).length);
+            byte[] block = new byte[Math.max(blockSize, length)];
+            blocks.add(block);
+            blockBytes += block.length;
+            blockOffset = 0;
+        }
+        long location = ((long)blocks.size() << 32) | blockOffset;
+        blockOffset += length;
+        recordBytes += length;
+        return location;
+    }
+    
+    private byte[] getBlock(long location) {
+        return blocks.get((int)(location >>> 32) - 1);
+    }
+    
+    private static int getOffset(long location) {
+        return (int)location;
+    }
+    
+    private static int getRecordLength(byte[] block, int offset) {
+        int start = offset;
+        int keyLength = ByteUtil.vintFromBytes(block, offset);
+        offset += WritableUtils.decodeVIntSize(block[offset]) + keyLength;
+        int count = ByteUtil.vintFromBytes(block, offset);
+        offset += WritableUtils.decodeVIntSize(block[offset]);
+        for (int i = 0; i < count; i++) {
+            offset += WritableUtils.decodeVIntSize(block[offset]);
+            int length = ByteUtil.vintFromBytes(block, offset);
+            offset += WritableUtils.decodeVIntSize(block[offset]) + length;
+        }
+        return offset - start;
+    }
+    
+    /**
+     * @return the slot of the row with the key, or the empty slot where it belongs
+     */
+    private int findSlot(byte[] key, int keyOffset, int keyLength) {
+        int hash = Bytes.hashCode(key, keyOffset, keyLength);
+        int mask = index.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (index[slot] != 0) {
+            byte[] block = getBlock(index[slot]);
+            int offset = getOffset(index[slot]);
+            int length = ByteUtil.vintFromBytes(block, offset);
+            offset += WritableUtils.decodeVIntSize(block[offset]);
+            if (Bytes.equals(block, offset, length, key, keyOffset, keyLength)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void growIndexIfNecessary() {
+        if (size * 2 > index.length) {
+            long[] oldIndex = index;
+            index = new long[oldIndex.length * 2];
+            for (long location : oldIndex) {
+                if (location != 0) {
+                    byte[] block = getBlock(location);
+                    int offset = getOffset(location);
+                    int keyLength = ByteUtil.vintFromBytes(block, offset);
+                    index[findSlot(block, offset + WritableUtils.decodeVIntSize(block[offset]), keyLength)] = location;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copy the current record of each row into new blocks, dropping the replaced ones
+     */
+    private void compact() {
+        List<byte[]> oldBlocks = Lists.newArrayList(blocks);
+        // Start from a block big enough for the live records rather than growing up to it again
+        byte[] firstBlock = new byte[(int)Math.min(BLOCK_SIZE, recordBytes - replacedBytes)];
+        blocks.clear();
+        blocks.add(firstBlock);
+        blockBytes = firstBlock.length;
+        blockOffset = 0;
+        recordBytes = 0;
+        replacedBytes = 0;
+        for (int slot = 0; slot < index.length; slot++) {
+            long location = index[slot];
+            if (location != 0) {
+                byte[] block = oldBlocks.get((int)(location >>> 32) - 1);
+                int offset = getOffset(location);
+                index[slot] = append(block, offset, getRecordLength(block, offset));
+            }
+        }
+    }
+    
+    private int compareKeys(long location1, long location2) {
+        byte[] block1 = getBlock(location1);
+        int offset1 = getOffset(location1);
+        int length1 = ByteUtil.vintFromBytes(block1, offset1);
+        offset1 += WritableUtils.decodeVIntSize(block1[offset1]);
+        byte[] block2 = getBlock(location2);
+        int offset2 = getOffset(location2);
+        int length2 = ByteUtil.vintFromBytes(block2, offset2);
+        offset2 += WritableUtils.decodeVIntSize(block2[offset2]);
+        return Bytes.compareTo(block1, offset1, length1, block2, offset2, length2);
+    }
+    
+    /**
+     * Merge sort of the locations between from and to by row key
+     */
+    private void sort(long[] locations, int from, int to, long[] scratch) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(locations, from, mid, scratch);
+        sort(locations, mid, to, scratch);
+        if (compareKeys(locations[mid - 1], locations[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(locations, from, scratch, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compareKeys(scratch[i], scratch[j]) <= 0)) {
+                locations[k] = scratch[i++];
+            } else {
+                locations[k] = scratch[j++];
+            }
+        }
+    }
+}
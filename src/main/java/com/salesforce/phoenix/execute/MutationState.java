@@ -27,26 +27,33 @@
  ******************************************************************************/
 package com.salesforce.phoenix.execute;
 
-import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.*;
 
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.salesforce.phoenix.exception.PhoenixIOException;
+import com.salesforce.phoenix.index.IndexMaintainer;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.ImmutableBytesPtr;
 import com.salesforce.phoenix.util.SQLCloseable;
 
 /**
  * 
- * Tracks the uncommitted state
+ * Tracks the uncommitted state. The rows of each table are held in a
+ * {@link MutationBuffer}, and the memory they take up is reserved from
+ * the client memory manager as rows are joined into the state.
  *
  * @author jtaylor
  * @since 0.1
@@ -54,46 +61,75 @@ import com.salesforce.phoenix.util.SQLCloseable;
 public class MutationState implements SQLCloseable {
     private PhoenixConnection connection;
     private final long maxSize;
-    private final Map<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> mutations = Maps.newHashMapWithExpectedSize(3); // TODO: Sizing?
+    private final long maxSizeBytes;
+    private final Map<TableRef, MutationBuffer> mutations = Maps.newHashMapWithExpectedSize(3); // TODO: Sizing?
     private final long sizeOffset;
     private int numEntries = 0;
+    private MemoryChunk memoryChunk;
 
     public MutationState(int maxSize, PhoenixConnection connection) {
         this.maxSize = maxSize;
+        this.maxSizeBytes = getMaxSizeBytes(connection);
         this.connection = connection;
         this.sizeOffset = 0;
     }
     
     public MutationState(TableRef table, Map<ImmutableBytesPtr,Map<PColumn,byte[]>> mutations, long sizeOffset, long maxSize, PhoenixConnection connection) {
         this.maxSize = maxSize;
+        this.maxSizeBytes = getMaxSizeBytes(connection);
         this.connection = connection;
-        this.mutations.put(table, mutations);
+        MutationBuffer buffer = new MutationBuffer(table.getTable());
+        for (Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>> rowEntry : mutations.entrySet()) {
+            buffer.put(rowEntry.getKey(), rowEntry.getValue());
+        }
+        this.mutations.put(table, buffer);
         this.sizeOffset = sizeOffset;
-        this.numEntries = mutations.size();
+        this.numEntries = buffer.size();
         throwIfTooBig();
     }
     
-    private MutationState(List<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> entries, long sizeOffset, long maxSize, PhoenixConnection connection) {
+    private MutationState(Map<TableRef, MutationBuffer> mutations, long sizeOffset, long maxSize, PhoenixConnection connection) {
         this.maxSize = maxSize;
+        this.maxSizeBytes = getMaxSizeBytes(connection);
         this.connection = connection;
         this.sizeOffset = sizeOffset;
-        for (Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry : entries) {
+        for (Map.Entry<TableRef, MutationBuffer> entry : mutations.entrySet()) {
             numEntries += entry.getValue().size();
             this.mutations.put(entry.getKey(), entry.getValue());
         }
         throwIfTooBig();
     }
     
+    private static long getMaxSizeBytes(PhoenixConnection connection) {
+        return connection.getQueryServices().getConfig().getLong(QueryServices.MAX_MUTATION_SIZE_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MUTATION_SIZE_BYTES);
+    }
+    
     private void throwIfTooBig() {
         if (numEntries > maxSize) {
             // TODO: throw SQLException ?
             throw new IllegalArgumentException("MutationState size of " + numEntries + " is bigger than max allowed size of " + maxSize);
         }
+        long byteSize = getByteSize();
+        if (byteSize > maxSizeBytes) {
+            throw new IllegalArgumentException("MutationState size of " + byteSize + " bytes is bigger than max allowed size of " + maxSizeBytes + " bytes");
+        }
     }
     
     public long getUpdateCount() {
         return sizeOffset + numEntries;
     }
+    
+    /**
+     * @return the number of bytes taken up by the uncommitted rows
+     */
+    public long getByteSize() {
+        long byteSize = 0;
+        for (MutationBuffer buffer : mutations.values()) {
+            byteSize += buffer.getByteSize();
+        }
+        return byteSize;
+    }
+    
     /**
      * Combine a newer mutation with this one, where in the event of overlaps,
      * the newer one will take precedence.
@@ -101,58 +137,59 @@ public class MutationState implements SQLCloseable {
      */
     public void join(MutationState newMutation) {
         // Merge newMutation with this one, keeping state from newMutation for any overlaps
-        for (Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry : newMutation.mutations.entrySet()) {
-            Map<ImmutableBytesPtr,Map<PColumn,byte[]>> existing = this.mutations.put(entry.getKey(), entry.getValue());
+        for (Map.Entry<TableRef, MutationBuffer> entry : newMutation.mutations.entrySet()) {
+            MutationBuffer existing = this.mutations.get(entry.getKey());
             if (existing != null) {
-                for (Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>> rowEntry : entry.getValue().entrySet()) {
-                    Map<PColumn,byte[]> existingRow = existing.put(rowEntry.getKey(), rowEntry.getValue());
-                    if (existingRow != null) {
-                        for (Map.Entry<PColumn,byte[]> valueEntry : rowEntry.getValue().entrySet()) {
-                            existingRow.put(valueEntry.getKey(), valueEntry.getValue());
-                        }
-                    } else {
-                        numEntries++;
-                    }
-                }
-                // Put the existing one back now that it's merged
-                this.mutations.put(entry.getKey(), existing);
+                numEntries -= existing.size();
+                existing.putAll(entry.getValue());
+                numEntries += existing.size();
             } else {
+                // Take over the rows without copying them, as the newer mutation is only asked
+                // for its update count after the join
+                this.mutations.put(entry.getKey(), entry.getValue());
                 numEntries += entry.getValue().size();
             }
         }
+        reserveMemory();
         throwIfTooBig();
     }
     
-    private static void addRowMutations(PTable table, Iterator<Entry<ImmutableBytesPtr, Map<PColumn, byte[]>>> iterator, long timestamp, List<Mutation> mutations) {
-        while (iterator.hasNext()) {
-            Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>> rowEntry = iterator.next();
-            ImmutableBytesPtr key = rowEntry.getKey();
-            PRow row = table.newRow(timestamp, key);
-            if (rowEntry.getValue() == null) { // means delete
-                row.delete();
-            } else {
-                for (Map.Entry<PColumn,byte[]> valueEntry : rowEntry.getValue().entrySet()) {
-                    row.setValue(valueEntry.getKey(), valueEntry.getValue());
-                }
+    /**
+     * Reserve the memory taken up by the uncommitted rows from the memory manager
+     */
+    private void reserveMemory() {
+        long byteSize = getByteSize();
+        if (memoryChunk == null) {
+            if (byteSize > 0) {
+                memoryChunk = connection.getQueryServices().getMemoryManager().allocate(byteSize);
             }
-            mutations.addAll(row.toRowMutations());
+        } else if (memoryChunk.getSize() != byteSize) {
+            memoryChunk.resize(byteSize);
+        }
+    }
+    
+    private void clear() {
+        this.mutations.clear();
+        numEntries = 0;
+        if (memoryChunk != null) {
+            memoryChunk.close();
+            memoryChunk = null;
         }
     }
     
     /**
-     * Get the unsorted list of HBase mutations for the tables with uncommitted data.
+     * Get the list of HBase mutations for the tables with uncommitted data,
+     * ordered by row key within each table.
      * @return list of HBase mutations for uncommitted data.
      */
     public List<Mutation> toMutations() {
         Long scn = connection.getSCN();
         long timestamp = scn == null ? HConstants.LATEST_TIMESTAMP : scn;
         List<Mutation> mutations = Lists.newArrayListWithExpectedSize(this.numEntries);
-        Iterator<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> iterator = this.mutations.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry = iterator.next();
-            PTable table = entry.getKey().getTable();
-            List<Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>>> rowMutations = new ArrayList<Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>>>(entry.getValue().entrySet());
-            addRowMutations(table, rowMutations.iterator(), timestamp, mutations);
+        for (MutationBuffer buffer : this.mutations.values()) {
+            for (long location : buffer.getSortedLocations()) {
+                mutations.addAll(buffer.getRowMutations(location, timestamp));
+            }
         }
         return mutations;
     }
@@ -169,7 +206,7 @@ public class MutationState implements SQLCloseable {
         Long scn = connection.getSCN();
         MetaDataClient client = new MetaDataClient(connection);
         long[] timeStamps = new long[this.mutations.size()];
-        for (Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry : mutations.entrySet()) {
+        for (Map.Entry<TableRef, MutationBuffer> entry : mutations.entrySet()) {
             TableRef tableRef = entry.getKey();
             long serverTimeStamp = tableRef.getTimeStamp();
             PTable table = tableRef.getTable();
@@ -177,21 +214,12 @@ public class MutationState implements SQLCloseable {
                 serverTimeStamp = client.updateCache(tableRef.getSchema().getName(), tableRef.getTable().getName().getString());
                 if (serverTimeStamp < 0) {
                     serverTimeStamp *= -1;
-                    // TODO: use bitset?
-                    PColumn[] columns = new PColumn[table.getColumns().size()];
-                    for (Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>> rowEntry : entry.getValue().entrySet()) {
-                        Map<PColumn,byte[]> valueEntry = rowEntry.getValue();
-                        if (valueEntry != null) {
-                            for (PColumn column : valueEntry.keySet()) {
-                                columns[column.getPosition()] = column;
-                            }
-                        }
-                    }
+                    List<PColumn> columns = table.getColumns();
+                    BitSet columnOrdinals = entry.getValue().getColumnOrdinals();
                     table = connection.getPMetaData().getSchema(tableRef.getSchema().getName()).getTable(tableRef.getTable().getName().getString());
-                    for (PColumn column : columns) {
-                        if (column != null) {
-                            table.getColumnFamily(column.getFamilyName().getString()).getColumn(column.getName().getString());
-                        }
+                    for (int ordinal = columnOrdinals.nextSetBit(0); ordinal >= 0; ordinal = columnOrdinals.nextSetBit(ordinal + 1)) {
+                        PColumn column = columns.get(ordinal);
+                        table.getColumnFamily(column.getFamilyName().getString()).getColumn(column.getName().getString());
                     }
                 }
             }
@@ -200,52 +228,285 @@ public class MutationState implements SQLCloseable {
         return timeStamps;
     }
     
+    /**
+     * Commits the uncommitted rows. The rows of each table are grouped by the region
+     * server hosting them, and the groups are written concurrently, each with a
+     * single batch. A group that fails is retried with the rows it did not write
+     * up to phoenix.mutate.commitRetries times, after which a {@link CommitException}
+     * is thrown holding both the rows that were committed and the ones that were not.
+     * @throws SQLException
+     */
     public void commit() throws SQLException {
         int i = 0;
         long[] serverTimeStamps = validate();
-        Iterator<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> iterator = this.mutations.entrySet().iterator();
-        List<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> committedList = Lists.newArrayListWithCapacity(this.mutations.size());
+        ConnectionQueryServices services = connection.getQueryServices();
+        List<CommitGroup> groups = Lists.newArrayList();
+        for (Map.Entry<TableRef, MutationBuffer> entry : this.mutations.entrySet()) {
+            long timestamp = serverTimeStamps[i++];
+            // The rows of a table with indexes are time stamped by the region server while the row
+            // is locked, so that the mutations of a row are time stamped in the order they're applied
+            if (connection.getSCN() == null && !entry.getKey().getTable().getIndexes().isEmpty()) {
+                timestamp = HConstants.LATEST_TIMESTAMP;
+            }
+            addCommitGroups(services, entry.getKey(), entry.getValue(), timestamp, groups);
+        }
+        int retries = services.getConfig().getInt(QueryServices.COMMIT_RETRIES_ATTRIB, QueryServicesOptions.DEFAULT_COMMIT_RETRIES);
+        for (int attempt = 0; !groups.isEmpty(); attempt++) {
+            write(services, groups);
+            Exception failure = null;
+            List<CommitGroup> failedGroups = Lists.newArrayListWithExpectedSize(0);
+            for (CommitGroup group : groups) {
+                CommitGroup failedGroup = null;
+                for (int row = 0; row < group.rowLocations.size(); row++) {
+                    if (!group.isWritten(row)) {
+                        if (failedGroup == null) {
+                            failedGroup = new CommitGroup(group.tableRef);
+                            failedGroups.add(failedGroup);
+                            failure = group.getFailure();
+                        }
+                        failedGroup.addRow(group.rowLocations.get(row), group.getRowMutations(row));
+                    }
+                }
+            }
+            if (!failedGroups.isEmpty() && attempt == retries) {
+                throw newCommitException(failure, failedGroups);
+            }
+            groups = failedGroups;
+        }
+        clear();
+    }
+    
+    /**
+     * Split the rows into the ones that were committed and the ones that were not, leaving
+     * the latter in this state.
+     * @return the exception to throw to the client with both what was committed and what is
+     * left to be committed. That way, client can either undo what was done or try again with
+     * what was not done.
+     */
+    private CommitException newCommitException(Exception failure, List<CommitGroup> failedGroups) {
+        Map<TableRef, Set<Long>> failedRows = Maps.newHashMap();
+        for (CommitGroup group : failedGroups) {
+            Set<Long> tableFailedRows = failedRows.get(group.tableRef);
+            if (tableFailedRows == null) {
+                tableFailedRows = new HashSet<Long>();
+                failedRows.put(group.tableRef, tableFailedRows);
+            }
+            tableFailedRows.addAll(group.rowLocations);
+        }
+        Map<TableRef, MutationBuffer> committedMutations = Maps.newHashMapWithExpectedSize(this.mutations.size());
+        Iterator<Map.Entry<TableRef, MutationBuffer>> iterator = this.mutations.entrySet().iterator();
         while (iterator.hasNext()) {
-            Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry = iterator.next();
-            TableRef tableRef = entry.getKey();
-            PTable table = tableRef.getTable();
-            long serverTimestamp = serverTimeStamps[i++];
-            List<Mutation> mutations = Lists.newArrayListWithExpectedSize(entry.getValue().size());
-            addRowMutations(table, entry.getValue().entrySet().iterator(), serverTimestamp, mutations);
-            SQLException sqlE = null;
-            HTableInterface hTable = connection.getQueryServices().getTable(tableRef.getTableName());
+            Map.Entry<TableRef, MutationBuffer> entry = iterator.next();
+            MutationBuffer buffer = entry.getValue();
+            Set<Long> tableFailedRows = failedRows.get(entry.getKey());
+            if (tableFailedRows == null) {
+                committedMutations.put(entry.getKey(), buffer);
+                numEntries -= buffer.size();
+                iterator.remove();
+                continue;
+            }
+            PTable table = entry.getKey().getTable();
+            MutationBuffer committedBuffer = new MutationBuffer(table);
+            MutationBuffer uncommittedBuffer = new MutationBuffer(table);
+            for (long location : buffer.getSortedLocations()) {
+                if (tableFailedRows.contains(location)) {
+                    uncommittedBuffer.copy(buffer, location);
+                } else {
+                    committedBuffer.copy(buffer, location);
+                }
+            }
+            numEntries -= committedBuffer.size();
+            entry.setValue(uncommittedBuffer);
+            if (committedBuffer.size() > 0) {
+                committedMutations.put(entry.getKey(), committedBuffer);
+            }
+        }
+        reserveMemory();
+        return new CommitException(failure, this, new MutationState(committedMutations, this.sizeOffset, this.maxSize, this.connection));
+    }
+    
+    /**
+     * Splits the rows of a table into a group per region server, using the cached
+     * region boundaries to find the region of each row. Without region information,
+     * all rows of the table form a single group.
+     */
+    private static void addCommitGroups(ConnectionQueryServices services, TableRef tableRef, MutationBuffer buffer, long timestamp, List<CommitGroup> groups) throws SQLException {
+        long[] locations = buffer.getSortedLocations();
+        PTable table = tableRef.getTable();
+        // Serialized once for all the rows, so that the region server may maintain the indexes
+        byte[] indexMetaData = table.getIndexes().isEmpty() ? null : IndexMaintainer.serialize(tableRef.getSchema().getName(), table);
+        SortedSet<HRegionInfo> regions = services.getAllTableRegions(tableRef);
+        if (regions == null || regions.size() <= 1) {
+            CommitGroup group = new CommitGroup(tableRef);
+            for (long location : locations) {
+                group.addRow(location, getRowMutations(buffer, location, timestamp, indexMetaData));
+            }
+            groups.add(group);
+            return;
+        }
+        int i = 0;
+        byte[][] startKeys = new byte[regions.size()][];
+        for (HRegionInfo region : regions) {
+            startKeys[i++] = region.getStartKey();
+        }
+        // The server of each region, looked up the first time a row falls into the region
+        String[] servers = new String[startKeys.length];
+        Map<String,CommitGroup> serverGroups = Maps.newHashMap();
+        ImmutableBytesWritable key = new ImmutableBytesWritable();
+        for (long location : locations) {
+            buffer.getKey(location, key);
+            int region = getRegionIndex(startKeys, key);
+            if (servers[region] == null) {
+                servers[region] = services.getTableRegionLocation(tableRef.getTableName(), startKeys[region]).getHostnamePort();
+            }
+            CommitGroup group = serverGroups.get(servers[region]);
+            if (group == null) {
+                group = new CommitGroup(tableRef);
+                serverGroups.put(servers[region], group);
+                groups.add(group);
+            }
+            group.addRow(location, getRowMutations(buffer, location, timestamp, indexMetaData));
+        }
+    }
+    
+    private static List<Mutation> getRowMutations(MutationBuffer buffer, long location, long timestamp, byte[] indexMetaData) {
+        List<Mutation> rowMutations = buffer.getRowMutations(location, timestamp);
+        if (indexMetaData != null) {
+            IndexMaintainer.setAttributes(indexMetaData, rowMutations);
+        }
+        return rowMutations;
+    }
+    
+    /**
+     * @return the index of the last region whose start key is less than or equal to the row key
+     */
+    private static int getRegionIndex(byte[][] startKeys, ImmutableBytesWritable key) {
+        int low = 0;
+        int high = startKeys.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (Bytes.compareTo(startKeys[mid], 0, startKeys[mid].length, key.get(), key.getOffset(), key.getLength()) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Writes the groups concurrently, writing the last one from this thread
+     */
+    private void write(final ConnectionQueryServices services, List<CommitGroup> groups) throws SQLException {
+        ExecutorService executor = services.getExecutor();
+        List<Future<Void>> futures = Lists.newArrayListWithExpectedSize(groups.size() - 1);
+        for (final CommitGroup group : groups.subList(0, groups.size() - 1)) {
             try {
-                hTable.batch(mutations);
-                committedList.add(entry);
-                numEntries -= entry.getValue().size();
-                iterator.remove(); // Remove batches as we process them
-            } catch (Exception e) {
-                // Throw to client with both what was committed so far and what is left to be committed.
-                // That way, client can either undo what was done or try again with what was not done.
-                sqlE = new CommitException(e, this, new MutationState(committedList, this.sizeOffset, this.maxSize, this.connection));
-            } finally {
-                try {
-                    hTable.close();
-                } catch (IOException e) {
-                    if (sqlE != null) {
-                        sqlE.setNextException(new PhoenixIOException(e));
-                    } else {
-                        sqlE = new PhoenixIOException(e);
+                futures.add(executor.submit(new JobCallable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        group.write(services);
+                        return null;
                     }
+
+                    @Override
+                    public Object getJobId() {
+                        return MutationState.this;
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // No thread free to write the group, so write it from this thread
+                group.write(services);
+            }
+        }
+        groups.get(groups.size() - 1).write(services);
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } catch (ExecutionException e) {
+            throw new SQLException(e);
+        }
+    }
+    
+    /**
+     * 
+     * The rows of a table hosted by the same region server, written with a single batch
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    private static class CommitGroup {
+        private final TableRef tableRef;
+        // Location of each row in the mutation buffer of the table
+        private final List<Long> rowLocations = Lists.newArrayList();
+        private final List<Mutation> mutations = Lists.newArrayList();
+        // Index of the first mutation of each row
+        private final List<Integer> rowOffsets = Lists.newArrayList();
+        private Object[] results;
+        private Exception failure;
+        
+        private CommitGroup(TableRef tableRef) {
+            this.tableRef = tableRef;
+        }
+        
+        private void addRow(long location, List<Mutation> rowMutations) {
+            rowLocations.add(location);
+            rowOffsets.add(mutations.size());
+            mutations.addAll(rowMutations);
+        }
+        
+        private List<Mutation> getRowMutations(int row) {
+            int end = row + 1 < rowOffsets.size() ? rowOffsets.get(row + 1) : mutations.size();
+            return mutations.subList(rowOffsets.get(row), end);
+        }
+        
+        private void write(ConnectionQueryServices services) {
+            results = new Object[mutations.size()];
+            failure = null;
+            try {
+                HTableInterface hTable = services.getTable(tableRef.getTableName());
+                try {
+                    hTable.batch(mutations, results);
                 } finally {
-                    if (sqlE != null) {
-                        throw sqlE;
+                    hTable.close();
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        
+        /**
+         * @return true if all the mutations of the row were written and false otherwise
+         */
+        private boolean isWritten(int row) {
+            int end = row + 1 < rowOffsets.size() ? rowOffsets.get(row + 1) : mutations.size();
+            for (int i = rowOffsets.get(row); i < end; i++) {
+                if (results[i] == null || results[i] instanceof Throwable) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private Exception getFailure() {
+            if (failure == null) {
+                for (Object result : results) {
+                    if (result instanceof Exception) {
+                        return (Exception)result;
                     }
                 }
             }
+            return failure;
         }
-        assert(numEntries==0);
-        assert(this.mutations.isEmpty());
     }
     
     public void rollback(PhoenixConnection connection) throws SQLException {
-        this.mutations.clear();
-        numEntries = 0;
+        clear();
     }
     
     @Override
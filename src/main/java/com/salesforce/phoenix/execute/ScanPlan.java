@@ -48,14 +48,25 @@ import com.salesforce.phoenix.schema.TableRef;
  * @since 0.1
  */
 public class ScanPlan extends BasicQueryPlan {
+    private final boolean isOrderPreserving;
+    private List<KeyRange> splits;
     
     public ScanPlan(StatementContext context, TableRef table, RowProjector projection, Integer limit, OrderBy orderBy) {
+        this(context, table, projection, limit, orderBy, true);
+    }
+    
+    /**
+     * @param isOrderPreserving if false, rows of an unordered, unlimited scan are returned as soon as
+     *  any region produces them, instead of in row key order
+     */
+    public ScanPlan(StatementContext context, TableRef table, RowProjector projection, Integer limit, OrderBy orderBy, boolean isOrderPreserving) {
         super(context, table, projection, context.getBindManager().getParameterMetaData(), limit, orderBy);
+        this.isOrderPreserving = isOrderPreserving;
     }
     
     @Override
     public List<KeyRange> getSplits() {
-        return null;
+        return splits;
     }
     
     @Override
@@ -65,23 +76,41 @@ public class ScanPlan extends BasicQueryPlan {
     
     @Override
     protected Scanner newScanner(ConnectionQueryServices services) throws SQLException {
+        // Set the attribute before the splits are scanned, since their scans are copied from this one
+        context.getScan().setAttribute(ScanRegionObserver.NON_AGGREGATE_QUERY, QueryConstants.TRUE);
         ResultIterator scanner;
-        // Either way, just use serial result iterator, instead of parallel one.
-        // When we get the pre-fetching ClientScanner, this will be better, but even
-        // without that, it's better not to run through the entire scan (which is
-        // what the parallel iterator does) in case there are a billion rows and we'll
-        // stop iterating after a few.
-        if (limit == null) {
-            scanner = new TableResultIterator(context, table);
-            scanner = new SerialLimitingResultIterator(scanner, Long.MAX_VALUE, RowCounter.UNLIMIT_ROW_COUNTER);
+        boolean isOrdered = !orderBy.getOrderingColumns().isEmpty();
+        if (isOrdered && limit != null) {
+            // Have each region find its own top N rows, so that at most N rows per region
+            // come back, and then merge them, since each region returns them sorted
+            ScanRegionObserver.serializeIntoScan(context.getScan(), limit, orderBy.getOrderingColumns());
+            ParallelIterators parallelIterators = new ParallelIterators(context, table, RowCounter.UNLIMIT_ROW_COUNTER);
+            splits = parallelIterators.getSplits();
+            scanner = new MergeSortTopNResultIterator(parallelIterators, limit, orderBy.getOrderingColumns());
+        } else if (!isOrderPreserving && !isOrdered && limit == null) {
+            // Don't wait on the region with the lowest row key when the caller doesn't care about the order
+            ParallelIterators parallelIterators = new ParallelIterators(context, table, RowCounter.UNLIMIT_ROW_COUNTER, true);
+            splits = parallelIterators.getSplits();
+            scanner = new ConcatResultIterator(parallelIterators);
         } else {
-            scanner = new TableResultIterator(context, table);
-            scanner = new SerialLimitingResultIterator(scanner, limit, new ScanRowCounter());
+            // Scan in row key order, stopping at the limit if there is one. An ordered scan
+            // has no limit here, since the regions find the top N rows of an ordered scan.
+            RowCounter rowCounter = limit == null ? RowCounter.UNLIMIT_ROW_COUNTER : new ScanRowCounter();
+            if (services.getConfig().getInt(QueryServices.SCAN_PREFETCH_ROWS_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_PREFETCH_ROWS) > 0) {
+                // Scans the splits in parallel, but only as far ahead of the client as it has
+                // gotten, so that we don't run through the entire scan in case there are a
+                // billion rows and we'll stop iterating after a few.
+                PrefetchingResultIterator prefetchingIterator = new PrefetchingResultIterator(context, table, limit, rowCounter);
+                splits = prefetchingIterator.getSplits();
+                scanner = prefetchingIterator;
+            } else {
+                scanner = new TableResultIterator(context, table);
+                scanner = new SerialLimitingResultIterator(scanner, limit == null ? Long.MAX_VALUE : limit, rowCounter);
+            }
+            if (isOrdered) {
+                scanner = new OrderedResultIterator(context, scanner, orderBy.getOrderingColumns());
+            }
         }
-        if (!orderBy.getOrderingColumns().isEmpty()) {
-            scanner = new OrderedResultIterator(context, scanner, orderBy.getOrderingColumns());
-        }
-        context.getScan().setAttribute(ScanRegionObserver.NON_AGGREGATE_QUERY, QueryConstants.TRUE);
 
         return new WrappedScanner(scanner, getProjector());
     }
@@ -0,0 +1,509 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.primitives.Longs;
+import com.salesforce.phoenix.expression.visitor.ExpressionVisitor;
+import com.salesforce.phoenix.expression.visitor.TraverseNoExpressionVisitor;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+/**
+ * 
+ * Compiles an expression tree into an equivalent tree that is cheaper to evaluate
+ * for each row. The nodes that dominate WHERE clause evaluation are replaced by
+ * specialized nodes: comparisons against a constant have the constant inlined and
+ * compare bytes directly when both sides have the same type, AND and OR walk an
+ * array of children, and the constants of long addition and multiplication are
+ * folded together. Any other node is left as is, so it's evaluated as before.
+ * 
+ * The compiled tree may only be used to evaluate and reset the expression. It
+ * visits, serializes, and prints as the original expression, but it cannot be
+ * deserialized, so the original should be kept around for everything else.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public final class EvaluatorCompiler {
+    private EvaluatorCompiler() {
+    }
+    
+    /**
+     * @return an expression that evaluates the same as the given one, which is
+     * the given expression itself if none of it could be specialized
+     */
+    public static Expression compile(Expression expression) {
+        Expression compiled = expression.accept(new CompilingVisitor());
+        // Terminal expressions that aren't visited return null, and an aggregate
+        // function may be visited as its delegate, so only use a specialized node
+        return compiled instanceof CompiledExpression ? compiled : expression;
+    }
+    
+    private static class CompilingVisitor extends TraverseNoExpressionVisitor<Expression> {
+        /**
+         * @return true if each child returned either a compiled expression or itself, and
+         * false if any were left out or replaced, in which case the node is kept as is
+         */
+        private static boolean isComplete(Expression node, List<Expression> l) {
+            List<Expression> children = node.getChildren();
+            if (l.size() != children.size()) {
+                return false;
+            }
+            for (int i = 0; i < l.size(); i++) {
+                Expression child = l.get(i);
+                if (child != children.get(i) && !(child instanceof CompiledExpression)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public Expression defaultReturn(Expression node, List<Expression> l) {
+            return node;
+        }
+
+        @Override
+        public Expression visit(LiteralExpression node) {
+            return node;
+        }
+
+        @Override
+        public Expression visit(RowKeyColumnExpression node) {
+            return node;
+        }
+
+        @Override
+        public Expression visit(KeyValueColumnExpression node) {
+            return node;
+        }
+
+        @Override
+        public Iterator<Expression> visitEnter(AndExpression node) {
+            return node.getChildren().iterator();
+        }
+
+        @Override
+        public Expression visitLeave(AndExpression node, List<Expression> l) {
+            return isComplete(node, l) ? compileAndOr(node, l) : null;
+        }
+
+        @Override
+        public Iterator<Expression> visitEnter(OrExpression node) {
+            return node.getChildren().iterator();
+        }
+
+        @Override
+        public Expression visitLeave(OrExpression node, List<Expression> l) {
+            return isComplete(node, l) ? compileAndOr(node, l) : null;
+        }
+
+        @Override
+        public Iterator<Expression> visitEnter(ComparisonExpression node) {
+            return node.getChildren().iterator();
+        }
+
+        @Override
+        public Expression visitLeave(ComparisonExpression node, List<Expression> l) {
+            if (!isComplete(node, l)) {
+                return null;
+            }
+            Expression lhs = l.get(0);
+            Expression rhs = l.get(1);
+            if (rhs instanceof LiteralExpression) {
+                return compileComparison(node, lhs, (LiteralExpression)rhs, false);
+            }
+            if (lhs instanceof LiteralExpression) {
+                return compileComparison(node, rhs, (LiteralExpression)lhs, true);
+            }
+            return null;
+        }
+
+        @Override
+        public Iterator<Expression> visitEnter(AddExpression node) {
+            return node.getChildren().iterator();
+        }
+
+        @Override
+        public Expression visitLeave(AddExpression node, List<Expression> l) {
+            if (node instanceof LongAddExpression && isComplete(node, l)) {
+                return compileLongArithmetic(node, l, false);
+            }
+            return null;
+        }
+
+        @Override
+        public Iterator<Expression> visitEnter(MultiplyExpression node) {
+            return node.getChildren().iterator();
+        }
+
+        @Override
+        public Expression visitLeave(MultiplyExpression node, List<Expression> l) {
+            if (node instanceof LongMultiplyExpression && isComplete(node, l)) {
+                return compileLongArithmetic(node, l, true);
+            }
+            return null;
+        }
+    }
+    
+    private static Expression compileAndOr(AndOrExpression node, List<Expression> children) {
+        for (Expression child : children) {
+            if (child.getDataType() != PDataType.BOOLEAN) {
+                return null;
+            }
+        }
+        return new AndOrEvaluator(node, children.toArray(new Expression[children.size()]), node.getStopValue());
+    }
+    
+    private static boolean isIntegral(PDataType type) {
+        return type == PDataType.LONG || type == PDataType.INTEGER || type == PDataType.UNSIGNED_LONG || type == PDataType.UNSIGNED_INT;
+    }
+    
+    private static Expression compileComparison(ComparisonExpression node, Expression value, LiteralExpression constant, boolean isConstantFirst) {
+        byte[] constantBytes = constant.getBytes();
+        if (constantBytes.length == 0) {
+            return null;
+        }
+        PDataType valueType = value.getDataType();
+        PDataType constantType = constant.getDataType();
+        CompareOp op = node.getFilterOp();
+        // Each type compares bytes directly against its own type, except for BOOLEAN
+        if (valueType == constantType && valueType != PDataType.BOOLEAN) {
+            return new BytesComparison(node, op, value, constantBytes, isConstantFirst);
+        }
+        if (isIntegral(valueType) && isIntegral(constantType)) {
+            return new LongComparison(node, op, value, constantBytes, constantType, isConstantFirst);
+        }
+        return new TypedComparison(node, op, value, constantBytes, constantType, isConstantFirst);
+    }
+    
+    private static Expression compileLongArithmetic(Expression node, List<Expression> children, boolean isMultiply) {
+        long constant = isMultiply ? 1 : 0;
+        List<Expression> values = new ArrayList<Expression>(children.size());
+        for (Expression child : children) {
+            if (child instanceof LiteralExpression) {
+                byte[] bytes = ((LiteralExpression)child).getBytes();
+                if (bytes.length == 0) { // Always evaluates to null, so nothing to gain
+                    return null;
+                }
+                long childValue = child.getDataType().getCodec().decodeLong(bytes, 0);
+                constant = isMultiply ? constant * childValue : constant + childValue;
+            } else {
+                values.add(child);
+            }
+        }
+        if (values.size() == children.size()) {
+            return null;
+        }
+        Expression[] valuesArray = values.toArray(new Expression[values.size()]);
+        return isMultiply ? new LongMultiplyEvaluator(node, valuesArray, constant) : new LongAddEvaluator(node, valuesArray, constant);
+    }
+    
+    /**
+     * Base class for a specialized node, which behaves as the original
+     * expression it replaces, except for how it's evaluated.
+     */
+    private static abstract class CompiledExpression extends BaseExpression {
+        protected final Expression original;
+        
+        private CompiledExpression(Expression original) {
+            this.original = original;
+        }
+        
+        @Override
+        public PDataType getDataType() {
+            return original.getDataType();
+        }
+
+        @Override
+        public boolean isNullable() {
+            return original.isNullable();
+        }
+
+        @Override
+        public Integer getByteSize() {
+            return original.getByteSize();
+        }
+
+        @Override
+        public Integer getMaxLength() {
+            return original.getMaxLength();
+        }
+
+        @Override
+        public Integer getScale() {
+            return original.getScale();
+        }
+
+        @Override
+        public <T> T accept(ExpressionVisitor<T> visitor) {
+            return original.accept(visitor);
+        }
+
+        @Override
+        public List<Expression> getChildren() {
+            return original.getChildren();
+        }
+
+        @Override
+        public void readFields(DataInput input) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+            original.write(output);
+        }
+
+        @Override
+        public String toString() {
+            return original.toString();
+        }
+    }
+    
+    /**
+     * Evaluates AND and OR the same as {@link AndOrExpression}, including the
+     * partial evaluation of children, but reads the boolean value of each child
+     * directly from its bytes.
+     */
+    private static final class AndOrEvaluator extends CompiledExpression {
+        private final Expression[] children;
+        private final boolean stopValue;
+        // Remember evaluation of child expression for partial evaluation
+        private boolean[] isEvaluated;
+        
+        private AndOrEvaluator(Expression original, Expression[] children, boolean stopValue) {
+            super(original);
+            this.children = children;
+            this.stopValue = stopValue;
+        }
+
+        @Override
+        public void reset() {
+            if (isEvaluated == null) {
+                isEvaluated = new boolean[children.length];
+            } else {
+                Arrays.fill(isEvaluated, false);
+            }
+            for (Expression child : children) {
+                child.reset();
+            }
+        }
+
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            boolean isNull = false;
+            for (int i = 0; i < children.length; i++) {
+                if (isEvaluated == null || !isEvaluated[i]) {
+                    if (children[i].evaluate(tuple, ptr)) {
+                        // Short circuit if we see our stop value
+                        if (ptr.getLength() > 0 && (ptr.get()[ptr.getOffset()] != PDataType.FALSE_BYTE) == stopValue) {
+                            return true;
+                        } else if (isEvaluated != null) {
+                            isEvaluated[i] = true;
+                        }
+                    } else {
+                        isNull = true;
+                    }
+                }
+            }
+            return !isNull;
+        }
+    }
+    
+    /**
+     * Comparison of an expression against a constant, with the result of
+     * the comparison for each sign worked out up front from the operator.
+     */
+    private static abstract class ConstantComparison extends CompiledExpression {
+        protected final Expression value;
+        protected final byte[] constant;
+        protected final boolean isConstantFirst;
+        private final boolean lessResult;
+        private final boolean equalResult;
+        private final boolean greaterResult;
+        
+        private ConstantComparison(Expression original, CompareOp op, Expression value, byte[] constant, boolean isConstantFirst) {
+            super(original);
+            this.value = value;
+            this.constant = constant;
+            this.isConstantFirst = isConstantFirst;
+            this.lessResult = ByteUtil.compare(op, -1);
+            this.equalResult = ByteUtil.compare(op, 0);
+            this.greaterResult = ByteUtil.compare(op, 1);
+        }
+        
+        /**
+         * @return the result of comparing the first child of the comparison to the second
+         */
+        protected abstract int compare(byte[] b, int offset, int length);
+        
+        @Override
+        public void reset() {
+            value.reset();
+        }
+
+        @Override
+        public final boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            if (!value.evaluate(tuple, ptr)) {
+                return false;
+            }
+            int cmp = compare(ptr.get(), ptr.getOffset(), ptr.getLength());
+            ptr.set((cmp < 0 ? lessResult : cmp == 0 ? equalResult : greaterResult) ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+            return true;
+        }
+    }
+    
+    private static final class BytesComparison extends ConstantComparison {
+        private BytesComparison(Expression original, CompareOp op, Expression value, byte[] constant, boolean isConstantFirst) {
+            super(original, op, value, constant, isConstantFirst);
+        }
+
+        @Override
+        protected int compare(byte[] b, int offset, int length) {
+            return isConstantFirst 
+                    ? Bytes.compareTo(constant, 0, constant.length, b, offset, length)
+                    : Bytes.compareTo(b, offset, length, constant, 0, constant.length);
+        }
+    }
+    
+    /**
+     * Comparison between different integral types, which compares the decoded
+     * value against the constant decoded once up front.
+     */
+    private static final class LongComparison extends ConstantComparison {
+        private final PDataType valueType;
+        private final PDataType constantType;
+        private final long longConstant;
+        
+        private LongComparison(Expression original, CompareOp op, Expression value, byte[] constant, PDataType constantType, boolean isConstantFirst) {
+            super(original, op, value, constant, isConstantFirst);
+            this.valueType = value.getDataType();
+            this.constantType = constantType;
+            this.longConstant = constantType.getCodec().decodeLong(constant, 0);
+        }
+
+        @Override
+        protected int compare(byte[] b, int offset, int length) {
+            if (length == 0) { // Leave null to the type, as there's no value to decode
+                return isConstantFirst 
+                        ? constantType.compareTo(constant, 0, constant.length, b, offset, length, valueType)
+                        : valueType.compareTo(b, offset, length, constant, 0, constant.length, constantType);
+            }
+            long l = valueType.getCodec().decodeLong(b, offset);
+            return isConstantFirst ? Longs.compare(longConstant, l) : Longs.compare(l, longConstant);
+        }
+    }
+    
+    private static final class TypedComparison extends ConstantComparison {
+        private final PDataType valueType;
+        private final PDataType constantType;
+        
+        private TypedComparison(Expression original, CompareOp op, Expression value, byte[] constant, PDataType constantType, boolean isConstantFirst) {
+            super(original, op, value, constant, isConstantFirst);
+            this.valueType = value.getDataType();
+            this.constantType = constantType;
+        }
+
+        @Override
+        protected int compare(byte[] b, int offset, int length) {
+            return isConstantFirst 
+                    ? constantType.compareTo(constant, 0, constant.length, b, offset, length, valueType)
+                    : valueType.compareTo(b, offset, length, constant, 0, constant.length, constantType);
+        }
+    }
+    
+    /**
+     * Long addition or multiplication with its constants folded into one, so
+     * that only the other children are evaluated and decoded for each row.
+     */
+    private static abstract class LongArithmeticEvaluator extends CompiledExpression {
+        private final Expression[] children;
+        private final long constant;
+        
+        private LongArithmeticEvaluator(Expression original, Expression[] children, long constant) {
+            super(original);
+            this.children = children;
+            this.constant = constant;
+        }
+        
+        protected abstract long apply(long result, long value);
+        
+        @Override
+        public void reset() {
+            for (Expression child : children) {
+                child.reset();
+            }
+        }
+
+        @Override
+        public final boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            long result = constant;
+            for (Expression child : children) {
+                if (!child.evaluate(tuple, ptr) || ptr.getLength() == 0) {
+                    return false;
+                }
+                result = apply(result, child.getDataType().getCodec().decodeLong(ptr));
+            }
+            ptr.set(new byte[PDataType.LONG.getByteSize()]);
+            PDataType.LONG.getCodec().encodeLong(result, ptr);
+            return true;
+        }
+    }
+    
+    private static final class LongAddEvaluator extends LongArithmeticEvaluator {
+        private LongAddEvaluator(Expression original, Expression[] children, long constant) {
+            super(original, children, constant);
+        }
+
+        @Override
+        protected long apply(long result, long value) {
+            return result + value;
+        }
+    }
+    
+    private static final class LongMultiplyEvaluator extends LongArithmeticEvaluator {
+        private LongMultiplyEvaluator(Expression original, Expression[] children, long constant) {
+            super(original, children, constant);
+        }
+
+        @Override
+        protected long apply(long result, long value) {
+            return result * value;
+        }
+    }
+}
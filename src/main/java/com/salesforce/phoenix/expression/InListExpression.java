@@ -46,14 +46,24 @@ import com.salesforce.phoenix.util.ImmutableBytesPtr;
  * Implementation of a SQL foo IN (a,b,c) expression. Other than the first
  * expression, child expressions must be constants.
  *
- * TODO: optimize this for row key columns by having multiple scans move
- * from key to key using a custom filter with a hint
+ * The distinct values are kept sorted in a single packed byte array. Membership
+ * is checked by a linear scan for short lists, a binary search for medium sized
+ * lists, and an open addressing hash table of value indexes for long lists, none
+ * of which allocate or hash more than once per row.
  */
 public class InListExpression extends BaseSingleExpression {
-    private Set<ImmutableBytesPtr> values;
-    private int valuesByteLength;
+    // Lists up to this size are scanned linearly
+    private static final int MAX_LINEAR_SEARCH_SIZE = 8;
+    // Lists up to this size are binary searched and longer lists are hashed
+    private static final int MAX_BINARY_SEARCH_SIZE = 256;
+    
+    // Distinct values, sorted by byte value and concatenated together
+    private byte[] values;
+    // Offset of each value in values, plus the total length at the end
+    private int[] offsets;
+    // Index plus one of the value hashed to each slot, or zero for an empty slot
+    private int[] hashTable;
     private boolean containsNull;
-    private ImmutableBytesPtr value = new ImmutableBytesPtr();
 
     public InListExpression() {
     }
@@ -66,22 +76,109 @@ public class InListExpression extends BaseSingleExpression {
             LiteralExpression child = (LiteralExpression)children.get(i);
             PDataType childType = child.getDataType();
             if (childType != type) {
-                throw new IllegalStateException("Type mismatch: expected " + type + " but got " + child.getDataType() + " for " + this);
+                throw new IllegalStateException("Type mismatch: expected " + type + " but got " + child.getDataType() + " for " + getChild());
             }
             ImmutableBytesPtr ptr = new ImmutableBytesPtr();
             child.evaluate(null, ptr);
             if (ptr.getLength() == 0) {
                 containsNull = true;
             } else {
-                if (values.add(ptr)) {
-                    valuesByteLength += ptr.getLength();
-                }
+                values.add(ptr);
             }
         }
-        // Sort values by byte value
-        ImmutableBytesPtr[] valuesArray = values.toArray(new ImmutableBytesPtr[values.size()]);
+        init(values.toArray(new ImmutableBytesPtr[values.size()]));
+    }
+    
+    /**
+     * Sort the distinct values by byte value and pack them together
+     */
+    private void init(ImmutableBytesPtr[] valuesArray) {
         Arrays.sort(valuesArray, ByteUtil.BYTES_PTR_COMPARATOR);
-        this.values = new LinkedHashSet<ImmutableBytesPtr>(Arrays.asList(valuesArray));
+        int valuesByteLength = 0;
+        for (ImmutableBytesPtr ptr : valuesArray) {
+            valuesByteLength += ptr.getLength();
+        }
+        byte[] valuesBytes = new byte[valuesByteLength];
+        int[] offsets = new int[valuesArray.length + 1];
+        int offset = 0;
+        for (int i = 0; i < valuesArray.length; i++) {
+            ImmutableBytesPtr ptr = valuesArray[i];
+            System.arraycopy(ptr.get(), ptr.getOffset(), valuesBytes, offset, ptr.getLength());
+            offsets[i] = offset;
+            offset += ptr.getLength();
+        }
+        offsets[valuesArray.length] = offset;
+        init(valuesBytes, offsets);
+    }
+    
+    private void init(byte[] values, int[] offsets) {
+        this.values = values;
+        this.offsets = offsets;
+        this.hashTable = null;
+        int size = size();
+        if (size > MAX_BINARY_SEARCH_SIZE) {
+            // Keep the load factor at or below one half
+            hashTable = new int[Integer.highestOneBit(size) << 2];
+            int mask = hashTable.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(values, offsets[i], offsets[i+1] - offsets[i]) & mask;
+                while (hashTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashTable[slot] = i + 1;
+            }
+        }
+    }
+    
+    private static int hash(byte[] b, int offset, int length) {
+        int h = Bytes.hashCode(b, offset, length);
+        return h ^ (h >>> 16);
+    }
+    
+    private int size() {
+        return offsets.length - 1;
+    }
+    
+    private int compareTo(int index, byte[] b, int offset, int length) {
+        return Bytes.compareTo(values, offsets[index], offsets[index+1] - offsets[index], b, offset, length);
+    }
+    
+    private boolean contains(byte[] b, int offset, int length) {
+        int size = size();
+        if (hashTable != null) {
+            int mask = hashTable.length - 1;
+            int slot = hash(b, offset, length) & mask;
+            int index;
+            while ((index = hashTable[slot]) != 0) {
+                if (compareTo(index - 1, b, offset, length) == 0) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+        if (size > MAX_LINEAR_SEARCH_SIZE) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareTo(mid, b, offset, length);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (offsets[i+1] - offsets[i] == length && compareTo(i, b, offset, length) == 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -89,8 +186,7 @@ public class InListExpression extends BaseSingleExpression {
         if (!getChild().evaluate(tuple, ptr)) {
             return false;
         }
-        value.set(ptr);
-        if (values.contains(value)) {
+        if (contains(ptr.get(), ptr.getOffset(), ptr.getLength())) {
             ptr.set(PDataType.TRUE_BYTES);
             return true;
         }
@@ -106,7 +202,8 @@ public class InListExpression extends BaseSingleExpression {
         final int prime = 31;
         int result = 1;
         result = prime * result + (containsNull ? 1231 : 1237);
-        result = prime * result + values.hashCode();
+        result = prime * result + Arrays.hashCode(values);
+        result = prime * result + Arrays.hashCode(offsets);
         return result;
     }
 
@@ -117,7 +214,8 @@ public class InListExpression extends BaseSingleExpression {
         if (getClass() != obj.getClass()) return false;
         InListExpression other = (InListExpression)obj;
         if (containsNull != other.containsNull) return false;
-        if (!values.equals(other.values)) return false;
+        if (!Arrays.equals(values, other.values)) return false;
+        if (!Arrays.equals(offsets, other.offsets)) return false;
         return true;
     }
 
@@ -137,29 +235,40 @@ public class InListExpression extends BaseSingleExpression {
         boolean fixedWidth = getChild().getDataType().isFixedWidth();
         containsNull = input.readBoolean();
         byte[] valuesBytes = Bytes.readByteArray(input);
-        valuesByteLength = valuesBytes.length;
-        int len = fixedWidth ? valuesByteLength / getChild().getByteSize() : WritableUtils.readVInt(input);
-        values = Sets.newLinkedHashSetWithExpectedSize(len);
+        int len = fixedWidth ? valuesBytes.length / getChild().getByteSize() : WritableUtils.readVInt(input);
+        int[] offsets = new int[len + 1];
         int offset = 0;
         for (int i = 0; i < len; i++) {
             int valueLen = fixedWidth ? getChild().getByteSize() : WritableUtils.readVInt(input);
-            values.add(new ImmutableBytesPtr(valuesBytes,offset,valueLen));
+            offsets[i] = offset;
             offset += valueLen;
         }
+        offsets[len] = offset;
+        for (int i = 1; i < len; i++) {
+            if (Bytes.compareTo(valuesBytes, offsets[i-1], offsets[i] - offsets[i-1], valuesBytes, offsets[i], offsets[i+1] - offsets[i]) > 0) {
+                // Clients that didn't sort the values serialize them in the order they were listed
+                ImmutableBytesPtr[] valuesArray = new ImmutableBytesPtr[len];
+                for (int j = 0; j < len; j++) {
+                    valuesArray[j] = new ImmutableBytesPtr(valuesBytes, offsets[j], offsets[j+1] - offsets[j]);
+                }
+                init(valuesArray);
+                return;
+            }
+        }
+        init(valuesBytes, offsets);
     }
 
     @Override
     public void write(DataOutput output) throws IOException {
         super.write(output);
         output.writeBoolean(containsNull);
-        WritableUtils.writeVInt(output, valuesByteLength);
-        for (ImmutableBytesPtr ptr : values) {
-            output.write(ptr.get(), ptr.getOffset(), ptr.getLength());
-        }
+        WritableUtils.writeVInt(output, values.length);
+        output.write(values);
         if (!getChild().getDataType().isFixedWidth()) {
-            WritableUtils.writeVInt(output, values.size());
-            for (ImmutableBytesPtr ptr : values) {
-                WritableUtils.writeVInt(output, ptr.getLength());
+            int size = size();
+            WritableUtils.writeVInt(output, size);
+            for (int i = 0; i < size; i++) {
+                WritableUtils.writeVInt(output, offsets[i+1] - offsets[i]);
             }
         }
     }
@@ -180,31 +289,22 @@ public class InListExpression extends BaseSingleExpression {
      * @return the list of values in the IN expression
      */
     public List<byte[]> getKeys() {
-      List<byte[]> keys = new ArrayList<byte[]>(values.size());
-      for (ImmutableBytesPtr value : values) {
-        keys.add(value.getOffset() == 0 && value.getLength() == value.get().length ? value.get() : value.copyBytes());
-      }
-      return keys;
+        int size = size();
+        List<byte[]> keys = new ArrayList<byte[]>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(Arrays.copyOfRange(values, offsets[i], offsets[i+1]));
+        }
+        return keys;
     }
 
     public ImmutableBytesWritable getMinKey() {
-        ImmutableBytesWritable minKey = null;
-        for (ImmutableBytesPtr value : values) {
-            if (minKey == null || Bytes.compareTo(value.get(), value.getOffset(), value.getLength(), minKey.get(), minKey.getOffset(), minKey.getLength()) < 0)  {
-                minKey = value;
-            }
-        }
-        return minKey;
+        int size = size();
+        return size == 0 ? null : new ImmutableBytesWritable(values, offsets[0], offsets[1] - offsets[0]);
     }
 
     public ImmutableBytesWritable getMaxKey() {
-        ImmutableBytesWritable maxKey = null;
-        for (ImmutableBytesPtr value : values) {
-            if (maxKey == null || Bytes.compareTo(value.get(), value.getOffset(), value.getLength(), maxKey.get(), maxKey.getOffset(), maxKey.getLength()) > 0)  {
-                maxKey = value;
-            }
-        }
-        return maxKey;
+        int size = size();
+        return size == 0 ? null : new ImmutableBytesWritable(values, offsets[size-1], offsets[size] - offsets[size-1]);
     }
 
     @Override
@@ -216,9 +316,9 @@ public class InListExpression extends BaseSingleExpression {
         if (containsNull) {
             buf.append("null,");
         }
-        for (ImmutableBytesPtr value : values) {
+        for (int i = 0; i < size(); i++) {
             if (isString) buf.append('\'');
-            buf.append(type.toObject(value));
+            buf.append(type.toObject(values, offsets[i], offsets[i+1] - offsets[i]));
             if (isString) buf.append('\'');
             buf.append(',');
         }
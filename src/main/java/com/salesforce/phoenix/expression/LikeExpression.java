@@ -29,8 +29,7 @@ package com.salesforce.phoenix.expression;
 
 import java.io.DataInput;
 import java.io.IOException;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.*;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.slf4j.Logger;
@@ -39,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import com.salesforce.phoenix.expression.visitor.ExpressionVisitor;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
 import com.salesforce.phoenix.util.StringUtil;
 
 
@@ -57,8 +57,8 @@ import com.salesforce.phoenix.util.StringUtil;
 public class LikeExpression extends BaseCompoundExpression {
     private static final Logger logger = LoggerFactory.getLogger(LikeExpression.class);
     
-    private static final String ZERO_OR_MORE = "\\E.*\\Q";
-    private static final String ANY_ONE = "\\E.\\Q";
+    // Maximum number of patterns compiled from a non literal pattern expression to keep around
+    private static final int MAX_CACHED_MATCHERS = 16;
     public final static char MULTI_CHAR_LIKE = '%';
     public final static char SINGLE_CHAR_LIKE = '_';
     public final static char MULTI_CHAR_WILDCARD = '*';
@@ -156,56 +156,9 @@ public class LikeExpression extends BaseCompoundExpression {
         }
     }
 
-    private static String toPattern(String s) {
-        StringBuilder sb = new StringBuilder(s.length());
-
-        // From the JDK doc: \Q and \E protect everything between them
-        sb.append("\\Q");
-        boolean wasSlash = false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (wasSlash) {
-                sb.append(c);
-                wasSlash = false;
-            } else if (c == SINGLE_CHAR_LIKE) {
-                sb.append(ANY_ONE);
-            } else if (c == MULTI_CHAR_LIKE) {
-                sb.append(ZERO_OR_MORE);
-            } else if (c == '\\') {
-                wasSlash = true;
-            } else {
-                sb.append(c);
-            }
-        }
-        sb.append("\\E");
-        // Found nothing interesting
-        return sb.toString();
-    }
-
-//    private static String fromPattern(String s) {
-//        StringBuilder sb = new StringBuilder(s.length());
-//
-//        for (int i = 0; i < s.length(); i++) {
-//            if (s.substring(i).startsWith("\\Q")) {
-//                while (s.substring(i + "\\Q".length()).startsWith("\\E")) {
-//                    sb.append(s.charAt(i++ + "\\Q".length()));
-//                }
-//                i+= "\\E".length();
-//            }
-//            if (s.charAt(i) == '.') {
-//                if (s.charAt(i+1) == '*') {
-//                    sb.append('%');
-//                    i+=2;                    
-//                } else {
-//                    sb.append('_');
-//                    i++;
-//                }
-//            }
-//        }
-//        return sb.toString();
-//    }
-
-    private Pattern pattern;
+    private LikeMatcher matcher;
+    private Map<ImmutableBytesPtr,LikeMatcher> matcherCache;
+    private final ImmutableBytesPtr patternPtr = new ImmutableBytesPtr();
     
     public LikeExpression() {
     }
@@ -216,7 +169,7 @@ public class LikeExpression extends BaseCompoundExpression {
     }
     
     public boolean startsWithWildcard() {
-        return pattern != null && pattern.pattern().startsWith("\\Q\\E");
+        return matcher != null && matcher.startsWithWildcard();
     }
     
     private void init() {
@@ -224,8 +177,34 @@ public class LikeExpression extends BaseCompoundExpression {
         if (e instanceof LiteralExpression) {
             LiteralExpression patternExpression = (LiteralExpression)e;
             String value = (String)patternExpression.getValue();
-            pattern = Pattern.compile(toPattern(value));
+            if (value != null) {
+                matcher = LikeMatcher.compile(value);
+            }
+        }
+    }
+    
+    /**
+     * Gets the matcher for a pattern that isn't a literal, compiling it only if
+     * it's not one of the most recently used patterns.
+     */
+    private LikeMatcher getMatcher(ImmutableBytesWritable ptr) {
+        if (matcherCache == null) {
+            matcherCache = new LinkedHashMap<ImmutableBytesPtr,LikeMatcher>(MAX_CACHED_MATCHERS, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ImmutableBytesPtr,LikeMatcher> eldest) {
+                    return size() > MAX_CACHED_MATCHERS;
+                }
+            };
+        }
+        patternPtr.set(ptr);
+        LikeMatcher matcher = matcherCache.get(patternPtr);
+        if (matcher == null) {
+            matcher = LikeMatcher.compile((String)PDataType.VARCHAR.toObject(ptr));
+            matcherCache.put(new ImmutableBytesPtr(ptr.copyBytes()), matcher);
         }
+        return matcher;
     }
 
     private Expression getStrExpression() {
@@ -238,34 +217,30 @@ public class LikeExpression extends BaseCompoundExpression {
 
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
-        Pattern pattern = this.pattern;
-        if (pattern == null) { // TODO: don't allow? this is going to be slooowwww
-            if (!getPatternExpression().evaluate(tuple, ptr)) {
+        LikeMatcher matcher = this.matcher;
+        if (matcher == null) {
+            if (!getPatternExpression().evaluate(tuple, ptr) || ptr.getLength() == 0) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("LIKE is FALSE: pattern is null");
                 }
                 return false;
             }
-            String value = (String)PDataType.VARCHAR.toObject(ptr);
-            pattern = Pattern.compile(toPattern(value));
-            if (logger.isDebugEnabled()) {
-                logger.debug("LIKE pattern is expression: " + pattern.pattern());
-            }
+            matcher = getMatcher(ptr);
         }
         
-        if (!getStrExpression().evaluate(tuple, ptr)) {
+        if (!getStrExpression().evaluate(tuple, ptr) || ptr.getLength() == 0) {
             if (logger.isDebugEnabled()) {
                 logger.debug("LIKE is FALSE: child expression is null");
             }
             return false;
         }
         
-        String value = (String)PDataType.VARCHAR.toObject(ptr);
-        boolean matched = pattern.matcher(value).matches();
-        ptr.set(matched ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+        // Match against the UTF-8 bytes directly instead of decoding them
+        boolean matched = matcher.matches(ptr.get(), ptr.getOffset(), ptr.getLength());
         if (logger.isDebugEnabled()) {
-            logger.debug("LIKE(value='" + value + "'pattern='" + pattern.pattern() + "' is " + matched);
+            logger.debug("LIKE(value='" + PDataType.VARCHAR.toObject(ptr) + "'pattern='" + getPatternExpression() + "' is " + matched);
         }
+        ptr.set(matched ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
         return true;
     }
 
@@ -291,23 +266,14 @@ public class LikeExpression extends BaseCompoundExpression {
     }
 
     public String getLiteralPrefix() {
-        if (pattern == null) {
+        if (matcher == null) {
             return "";
         }
-        String pattern = this.pattern.pattern();
-        int fromIndex = "\\Q".length();
-        return pattern.substring(fromIndex, pattern.indexOf("\\E", fromIndex));
+        return matcher.getLiteralPrefix();
     }
 
     public boolean endsWithOnlyWildcard() {
-        if (pattern == null) {
-            return false;
-        }
-        String pattern = this.pattern.pattern();
-        String endsWith = ZERO_OR_MORE + "\\E";
-        return pattern.endsWith(endsWith) && 
-        pattern.lastIndexOf(ANY_ONE, pattern.length() - endsWith.length() - 1) == -1 &&
-        pattern.lastIndexOf(ZERO_OR_MORE, pattern.length() - endsWith.length() - 1) == -1;
+        return matcher != null && matcher.endsWithOnlyWildcard();
     }
     
     @Override
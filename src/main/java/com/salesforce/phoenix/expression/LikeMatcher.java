@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.util.StringUtil;
+
+
+/**
+ * 
+ * Matches UTF-8 encoded bytes against a LIKE pattern without decoding
+ * them into a String. Exact matches and patterns that only have a '%'
+ * at the start and/or end are matched with a single comparison or search.
+ * Other patterns are matched byte by byte, backtracking to the last '%',
+ * where '_' matches a single, possibly multi-byte, character.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public final class LikeMatcher {
+    // Neither of these bytes may occur in UTF-8, so they can't clash with a literal byte
+    private static final byte ANY_ONE = (byte)0xFF;
+    private static final byte ZERO_OR_MORE = (byte)0xFE;
+    
+    private enum Type {EXACT, PREFIX, SUFFIX, CONTAINS, GENERAL};
+    
+    private final Type type;
+    // The literal to match for all but the GENERAL type, otherwise the
+    // literal bytes interspersed with ANY_ONE and ZERO_OR_MORE.
+    private final byte[] pattern;
+    private final String literalPrefix;
+    private final boolean startsWithWildcard;
+    private final boolean endsWithOnlyWildcard;
+    
+    private LikeMatcher(Type type, byte[] pattern, String literalPrefix, boolean startsWithWildcard, boolean endsWithOnlyWildcard) {
+        this.type = type;
+        this.pattern = pattern;
+        this.literalPrefix = literalPrefix;
+        this.startsWithWildcard = startsWithWildcard;
+        this.endsWithOnlyWildcard = endsWithOnlyWildcard;
+    }
+    
+    /**
+     * Compiles a LIKE pattern in which '_' matches any single character, '%' matches
+     * zero or more characters, and any character preceded by a '\' is matched literally.
+     */
+    public static LikeMatcher compile(String likePattern) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(likePattern.length());
+        StringBuilder literal = new StringBuilder();
+        String literalPrefix = null;
+        int nWildcards = 0;
+        int nTokens = 0;
+        boolean hasAnyOne = false;
+        boolean endsWithZeroOrMore = false;
+        boolean wasSlash = false;
+        for (int i = 0; i < likePattern.length(); i++) {
+            char c = likePattern.charAt(i);
+            if (wasSlash) {
+                literal.append(c);
+                wasSlash = false;
+            } else if (c == '\\') {
+                wasSlash = true;
+            } else if (c == LikeExpression.SINGLE_CHAR_LIKE || c == LikeExpression.MULTI_CHAR_LIKE) {
+                if (nWildcards++ == 0) {
+                    literalPrefix = literal.toString();
+                }
+                nTokens += writeLiteral(literal, bytes);
+                if (c == LikeExpression.SINGLE_CHAR_LIKE) {
+                    hasAnyOne = true;
+                    bytes.write(ANY_ONE);
+                    nTokens++;
+                    endsWithZeroOrMore = false;
+                } else if (!endsWithZeroOrMore) { // Consecutive '%' are the same as one
+                    bytes.write(ZERO_OR_MORE);
+                    nTokens++;
+                    endsWithZeroOrMore = true;
+                }
+                continue;
+            } else {
+                literal.append(c);
+            }
+            endsWithZeroOrMore &= literal.length() == 0;
+        }
+        if (literalPrefix == null) {
+            literalPrefix = literal.toString();
+        }
+        nTokens += writeLiteral(literal, bytes);
+        byte[] pattern = bytes.toByteArray();
+        boolean startsWithWildcard = nWildcards > 0 && literalPrefix.length() == 0;
+        boolean endsWithOnlyWildcard = nWildcards == 1 && endsWithZeroOrMore;
+        boolean startsWithZeroOrMore = pattern.length > 0 && pattern[0] == ZERO_OR_MORE;
+        Type type = Type.GENERAL;
+        if (!hasAnyOne) {
+            if (nWildcards == 0) {
+                type = Type.EXACT;
+            } else if (nTokens == 1 && startsWithZeroOrMore) { // Only '%'
+                type = Type.CONTAINS;
+                pattern = new byte[0];
+            } else if (nTokens == 2 && startsWithZeroOrMore) {
+                type = Type.SUFFIX;
+                pattern = Bytes.tail(pattern, pattern.length - 1);
+            } else if (nTokens == 2 && endsWithZeroOrMore) {
+                type = Type.PREFIX;
+                pattern = Bytes.head(pattern, pattern.length - 1);
+            } else if (nTokens == 3 && startsWithZeroOrMore && endsWithZeroOrMore) {
+                type = Type.CONTAINS;
+                pattern = Bytes.head(Bytes.tail(pattern, pattern.length - 1), pattern.length - 2);
+            }
+        }
+        return new LikeMatcher(type, pattern, literalPrefix, startsWithWildcard, endsWithOnlyWildcard);
+    }
+    
+    private static int writeLiteral(StringBuilder literal, ByteArrayOutputStream bytes) {
+        if (literal.length() == 0) {
+            return 0;
+        }
+        byte[] literalBytes = StringUtil.toBytes(literal.toString());
+        bytes.write(literalBytes, 0, literalBytes.length);
+        literal.setLength(0);
+        return 1;
+    }
+    
+    /**
+     * @return the literal characters before the first wildcard
+     */
+    public String getLiteralPrefix() {
+        return literalPrefix;
+    }
+    
+    public boolean startsWithWildcard() {
+        return startsWithWildcard;
+    }
+    
+    /**
+     * @return true if the only wildcard is a '%' at the end of the pattern
+     */
+    public boolean endsWithOnlyWildcard() {
+        return endsWithOnlyWildcard;
+    }
+    
+    /**
+     * @return true if the UTF-8 encoded value matches the pattern and false otherwise
+     */
+    public boolean matches(byte[] b, int offset, int length) {
+        switch (type) {
+        case EXACT:
+            return Bytes.equals(pattern, 0, pattern.length, b, offset, length);
+        case PREFIX:
+            return length >= pattern.length && Bytes.equals(pattern, 0, pattern.length, b, offset, pattern.length);
+        case SUFFIX:
+            return length >= pattern.length && Bytes.equals(pattern, 0, pattern.length, b, offset + length - pattern.length, pattern.length);
+        case CONTAINS:
+            return indexOf(b, offset, length) >= 0;
+        default:
+            return matchesGeneral(b, offset, length);
+        }
+    }
+    
+    private int indexOf(byte[] b, int offset, int length) {
+        int n = pattern.length;
+        if (n == 0) {
+            return 0;
+        }
+        byte first = pattern[0];
+        int maxOffset = offset + length - n;
+        for (int i = offset; i <= maxOffset; i++) {
+            if (b[i] == first && Bytes.equals(pattern, 1, n - 1, b, i + 1, n - 1)) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+    
+    private static int nextChar(byte[] b, int offset, int maxOffset) {
+        byte lead = b[offset];
+        int length = 1;
+        if ((lead & 0xE0) == 0xC0) {
+            length = 2;
+        } else if ((lead & 0xF0) == 0xE0) {
+            length = 3;
+        } else if ((lead & 0xF8) == 0xF0) {
+            length = 4;
+        }
+        return Math.min(offset + length, maxOffset);
+    }
+    
+    private boolean matchesGeneral(byte[] b, int offset, int length) {
+        int maxOffset = offset + length;
+        int i = offset;
+        int j = 0;
+        int n = pattern.length;
+        // Position in the pattern after the last '%' and in the value where it started matching
+        int starPatternIndex = -1;
+        int starValueIndex = offset;
+        while (i < maxOffset) {
+            if (j < n) {
+                byte c = pattern[j];
+                if (c == ZERO_OR_MORE) {
+                    starPatternIndex = ++j;
+                    starValueIndex = i;
+                    continue;
+                }
+                if (c == ANY_ONE) {
+                    i = nextChar(b, i, maxOffset);
+                    j++;
+                    continue;
+                }
+                if (c == b[i]) {
+                    i++;
+                    j++;
+                    continue;
+                }
+            }
+            // Otherwise, let the last '%' match one more character and try again
+            if (starPatternIndex < 0) {
+                return false;
+            }
+            starValueIndex = nextChar(b, starValueIndex, maxOffset);
+            i = starValueIndex;
+            j = starPatternIndex;
+        }
+        while (j < n && pattern[j] == ZERO_OR_MORE) {
+            j++;
+        }
+        return j == n;
+    }
+}
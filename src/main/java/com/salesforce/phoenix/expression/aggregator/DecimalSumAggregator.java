@@ -38,13 +38,22 @@ import com.salesforce.phoenix.util.SizedUtil;
 
 /**
  * 
- * Aggregator that sums BigDecimal values
+ * Aggregator that sums BigDecimal values. The sum is accumulated in a long scaled
+ * by the largest scale of the values seen so far, so that no BigDecimal is created
+ * for each value. Only once the sum no longer fits in a long, or a value has a scale
+ * that is too large, does it switch to summing BigDecimal values.
  *
  * @author jtaylor
  * @since 0.1
  */
 public class DecimalSumAggregator extends BaseAggregator {
-    private BigDecimal sum = BigDecimal.ZERO;
+    // Largest scale for which the sum is accumulated in a long
+    private static final int MAX_SCALED_LONG_SCALE = 18;
+    
+    private long scaledSum = 0;
+    private int scale = 0;
+    // Set once the sum can no longer be accumulated in scaledSum
+    private BigDecimal sum = null;
     private byte[] sumBuffer;
     
     public DecimalSumAggregator() {
@@ -56,19 +65,60 @@ public class DecimalSumAggregator extends BaseAggregator {
     
     @Override
     public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
-        BigDecimal value = (BigDecimal)getDataType().toObject(ptr, getInputDataType());
-        sum = sum.add(value);
+        if (sum == null && !aggregateScaledLong(ptr)) {
+            sum = BigDecimal.valueOf(scaledSum, scale);
+        }
+        if (sum != null) {
+            BigDecimal value = (BigDecimal)getDataType().toObject(ptr, getInputDataType());
+            sum = sum.add(value);
+        }
         if (sumBuffer == null) {
             sumBuffer = new byte[getDataType().getByteSize()];
         }
     }
     
+    /**
+     * Adds the value to the scaled long sum, increasing its scale if the value has a larger one
+     * @return false if the sum can no longer be accumulated in a long and true otherwise
+     */
+    private boolean aggregateScaledLong(ImmutableBytesWritable ptr) {
+        long value = PDataType.toScaledLong(ptr.get(), ptr.getOffset(), ptr.getLength(), scale);
+        if (value == Long.MIN_VALUE) {
+            // Either the value doesn't fit or it has a larger scale than the sum
+            int valueScale = PDataType.getDecimalPrecisionAndScale(ptr.get(), ptr.getOffset(), ptr.getLength())[1];
+            if (valueScale <= scale || valueScale > MAX_SCALED_LONG_SCALE) {
+                return false;
+            }
+            for (; scale < valueScale; scale++) {
+                if (scaledSum > Long.MAX_VALUE / 10 || scaledSum < Long.MIN_VALUE / 10) {
+                    return false;
+                }
+                scaledSum *= 10;
+            }
+            value = PDataType.toScaledLong(ptr.get(), ptr.getOffset(), ptr.getLength(), scale);
+            if (value == Long.MIN_VALUE) {
+                return false;
+            }
+        }
+        long result = scaledSum + value;
+        // Overflow if both operands have a sign that differs from the result
+        if (((scaledSum ^ result) & (value ^ result)) < 0) {
+            return false;
+        }
+        scaledSum = result;
+        return true;
+    }
+    
+    private BigDecimal getSum() {
+        return sum == null ? BigDecimal.valueOf(scaledSum, scale) : sum;
+    }
+    
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
         if (sumBuffer == null) {
             return false;
         }
-        int len = getDataType().toBytes(sum, sumBuffer, 0);
+        int len = getDataType().toBytes(getSum(), sumBuffer, 0);
         ptr.set(sumBuffer, 0, len);
         return true;
     }
@@ -80,18 +130,20 @@ public class DecimalSumAggregator extends BaseAggregator {
     
     @Override
     public void reset() {
-        sum = BigDecimal.ZERO;
+        scaledSum = 0;
+        scale = 0;
+        sum = null;
         sumBuffer = null;
         super.reset();
     }
 
     @Override
     public String toString() {
-        return "DECIMAL SUM [sum=" + sum + "]";
+        return "DECIMAL SUM [sum=" + getSum() + "]";
     }
 
     @Override
     public int getSize() {
-        return super.getSize() + SizedUtil.BIG_DECIMAL_SIZE + SizedUtil.ARRAY_SIZE + getDataType().getByteSize();
+        return super.getSize() + SizedUtil.LONG_SIZE + SizedUtil.INT_SIZE + SizedUtil.BIG_DECIMAL_SIZE + SizedUtil.ARRAY_SIZE + getDataType().getByteSize();
     }
 }
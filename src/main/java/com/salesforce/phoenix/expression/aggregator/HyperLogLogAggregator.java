@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.SizedUtil;
+
+
+/**
+ * 
+ * Aggregator that estimates the number of distinct values using a HyperLogLog
+ * sketch. Each value is hashed to 64 bits, of which the first {@link #PRECISION}
+ * bits select a register and the position of the leftmost one bit of the rest is
+ * kept as the max in that register. The registers are the serialized form of the
+ * sketch, so the sketches from each region are merged by taking the max of each
+ * register (see {@link HyperLogLogClientAggregator}), and the cardinality is only
+ * estimated from the final registers (see {@link #estimate(byte[], int, int)}).
+ * With 4096 registers, the standard error of the estimate is about 1.6%.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class HyperLogLogAggregator extends BaseAggregator {
+    public static final int PRECISION = 12;
+    public static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    
+    protected byte[] registers = null;
+    
+    public HyperLogLogAggregator() {
+    }
+    
+    protected byte[] getRegisters() {
+        if (registers == null) {
+            registers = new byte[REGISTER_COUNT];
+        }
+        return registers;
+    }
+    
+    @Override
+    public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (ptr.getLength() == 0) { // Don't count nulls
+            return;
+        }
+        long hash = HASH_FUNCTION.hashBytes(ptr.get(), ptr.getOffset(), ptr.getLength()).asLong();
+        int index = (int)(hash >>> (Long.SIZE - PRECISION));
+        // Set a guard bit so that the rank is at most Long.SIZE - PRECISION + 1
+        byte rank = (byte)(Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        byte[] registers = getRegisters();
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+    
+    @Override
+    public boolean isNullable() {
+        return false;
+    }
+    
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        ptr.set(getRegisters());
+        return true;
+    }
+    
+    @Override
+    public final PDataType getDataType() {
+        return PDataType.BINARY;
+    }
+
+    @Override
+    public void reset() {
+        registers = null;
+        super.reset();
+    }
+    
+    /**
+     * Estimate the number of distinct values from the registers of a sketch
+     * @param b the bytes containing the registers
+     * @param offset the offset of the registers
+     * @param length the length of the registers, which is {@link #REGISTER_COUNT}
+     * @return the estimated number of distinct values
+     */
+    public static long estimate(byte[] b, int offset, int length) {
+        double sum = 0;
+        int zeroCount = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte rank = b[i];
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeroCount++;
+            }
+        }
+        double m = length;
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Use linear counting for small cardinalities, for which the raw estimate is biased.
+        // No correction is required for large cardinalities, since the hash has 64 bits.
+        if (estimate <= 2.5 * m && zeroCount > 0) {
+            estimate = m * Math.log(m / zeroCount);
+        }
+        return Math.round(estimate);
+    }
+    
+    @Override
+    public String toString() {
+        return "HYPERLOGLOG [estimate=" + (registers == null ? 0 : estimate(registers, 0, registers.length)) + "]";
+    }
+
+    @Override
+    public int getSize() {
+        return super.getSize() + SizedUtil.ARRAY_SIZE + REGISTER_COUNT;
+    }
+}
@@ -33,6 +33,7 @@ import org.apache.hadoop.hbase.filter.FilterBase;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.expression.EvaluatorCompiler;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.schema.IllegalDataException;
@@ -49,6 +50,8 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 abstract public class BooleanExpressionFilter extends FilterBase {
 
     protected Expression expression;
+    // Compiled form of the expression, used only to evaluate it
+    private Expression evaluator;
     protected boolean evaluateOnCompletion;
     private ImmutableBytesWritable tempPtr = new ImmutableBytesWritable();
     
@@ -57,6 +60,7 @@ abstract public class BooleanExpressionFilter extends FilterBase {
 
     public BooleanExpressionFilter(Expression expression) {
         this.expression = expression;
+        this.evaluator = EvaluatorCompiler.compile(expression);
     }
 
     protected void setEvaluateOnCompletion(boolean evaluateOnCompletion) {
@@ -95,7 +99,7 @@ abstract public class BooleanExpressionFilter extends FilterBase {
             justification="Returns null by design.")
     protected Boolean evaluate(Tuple input) {
         try {
-            if (!expression.evaluate(input, tempPtr)) {
+            if (!evaluator.evaluate(input, tempPtr)) {
                 return null;
             }
         } catch (IllegalDataException e) {
@@ -104,10 +108,18 @@ abstract public class BooleanExpressionFilter extends FilterBase {
         return (Boolean)expression.getDataType().toObject(tempPtr);
     }
 
+    /**
+     * Resets the state of the expression before evaluating it for a new row.
+     */
+    protected void resetExpression() {
+        evaluator.reset();
+    }
+
     @Override
     public void readFields(DataInput input) throws IOException {
         expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
         expression.readFields(input);
+        evaluator = EvaluatorCompiler.compile(expression);
     }
 
     @Override
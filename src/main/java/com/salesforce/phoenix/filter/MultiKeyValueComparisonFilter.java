@@ -183,7 +183,7 @@ public abstract class MultiKeyValueComparisonFilter extends BooleanExpressionFil
         };
         expression.accept(visitor);
         this.evaluateOnCompletion = visitor.evaluateOnCompletion();
-        expression.reset();
+        resetExpression();
     }
     
     @Override
@@ -230,7 +230,7 @@ public abstract class MultiKeyValueComparisonFilter extends BooleanExpressionFil
     public void reset() {
         matchedColumn = null;
         inputTuple.reset();
-        expression.reset();
+        resetExpression();
     }
 
     @Override
@@ -28,8 +28,7 @@
 package com.salesforce.phoenix.filter;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.filter.FilterBase;
@@ -40,9 +39,11 @@ import org.apache.hadoop.io.WritableUtils;
 import com.google.common.base.Objects;
 import com.google.common.hash.*;
 import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.query.QueryConstants;
 import com.salesforce.phoenix.query.KeyRange.Bound;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.schema.ValueSchema.Field;
+import com.salesforce.phoenix.util.ByteUtil;
 import com.salesforce.phoenix.util.ScanUtil;
 
 public class SkipScanFilter extends FilterBase {
@@ -59,6 +60,8 @@ public class SkipScanFilter extends FilterBase {
     private byte[] endKey; 
     private int endKeyLength;
     private int maxKeyLength;
+    // skip hint for the current start key, reused until the start key changes
+    private KeyValue nextKeyHint;
     // use to optimize filter to include all key values within the terminating range
     private boolean includeUntilEndKey;
     // use to optimize filter to include all key values for a row we've found to include
@@ -116,8 +119,63 @@ after the first possible key.
 
     @Override
     public KeyValue getNextKeyHint(KeyValue kv) {
-        // TODO: don't allocate new key value every time here if possible
-        return startKey == null ? null : KeyValue.createFirstOnRow(startKey);
+        if (startKey == null) {
+            return null;
+        }
+        if (nextKeyHint == null) {
+            nextKeyHint = KeyValue.createFirstOnRow(startKey, 0, (short)startKeyLength);
+        }
+        return nextKeyHint;
+    }
+
+    public RowKeySchema getSchema() {
+        return schema;
+    }
+
+    public List<List<KeyRange>> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Intersects the leading slot with the key range of a scan, for example the
+     * scan over a single region, dropping the ranges that cannot match any row
+     * within it. This keeps the filter sent to each region small when the leading
+     * slot has a large number of ranges.
+     * @param lowerInclusiveKey the lower bound of the key range or an empty array if unbound
+     * @param upperExclusiveKey the upper bound of the key range or an empty array if unbound
+     * @return this filter if no ranges were dropped, a new filter over the remaining ranges,
+     * or null if no ranges remain.
+     */
+    public SkipScanFilter intersect(byte[] lowerInclusiveKey, byte[] upperExclusiveKey) {
+        List<KeyRange> slot = slots.get(0);
+        int fromIndex = 0;
+        if (lowerInclusiveKey.length > 0) {
+            int length = getLeadingValueLength(lowerInclusiveKey, 0, lowerInclusiveKey.length);
+            fromIndex = searchSlot(slot, 0, lowerInclusiveKey, 0, length);
+        }
+        int toIndex = slot.size();
+        if (upperExclusiveKey.length > 0) {
+            // Find the first range whose keys are all at or after the upper bound
+            int low = fromIndex;
+            while (low < toIndex) {
+                int mid = (low + toIndex) >>> 1;
+                KeyRange range = slot.get(mid);
+                if (!range.lowerUnbound() && Bytes.compareTo(range.getLowerRange(), upperExclusiveKey) >= 0) {
+                    toIndex = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+        }
+        if (fromIndex >= toIndex) {
+            return null;
+        }
+        if (fromIndex == 0 && toIndex == slot.size()) {
+            return this;
+        }
+        List<List<KeyRange>> intersectedSlots = new ArrayList<List<KeyRange>>(slots);
+        intersectedSlots.set(0, new ArrayList<KeyRange>(slot.subList(fromIndex, toIndex)));
+        return new SkipScanFilter(intersectedSlots, schema);
     }
 
     private ReturnCode navigate(final byte[] currentKey, final int offset, final int length) {
@@ -131,81 +189,208 @@ after the first possible key.
             return ReturnCode.INCLUDE;
         }
         includeWhileEqual = false;
-        if (Bytes.compareTo(currentKey, offset, length, endKey, 0, endKeyLength) <= 0) {
+        // The end key is exclusive and a zero length end key means there's no upper bound
+        if (isBeforeEndKey(currentKey, offset, length)) {
             if (includeUntilEndKey) {
                 return ReturnCode.INCLUDE;
             }
-            int i;
+            int i = 0;
             int nSlots = slots.size();
-            for (i = 0; i < nSlots; i++) {
-                // Stop one slot after the first range, since we
-                // know we're within the first range based on
-                // the scan start/stop key
-                if (!slots.get(i).get(position[i]).isSingleKey()) {
-                    i++;
-                    break;
-                }
+            // We know we're within the first range based on the start and end
+            // key, so only the slots after it need to be checked
+            while (i < nSlots && slots.get(i).get(position[i]).isSingleKey()) {
+                i++;
             }
-            if (i < nSlots) {
-                ptr.set(currentKey, offset, length);
-                for (   Boolean hasValue = schema.setAccessor(ptr, i, ValueBitSet.EMPTY_VALUE_BITSET); 
-                        hasValue != null; 
-                        hasValue = ++i == nSlots ? null : schema.next(ptr, i, ValueBitSet.EMPTY_VALUE_BITSET)) {
-                    KeyRange range = slots.get(i).get(position[i]);
-                    /* No need to check hasValue, since if we have a single key for the is null check
-                     * we wouldn't want to terminate here and if we have a range, our minimum lower
-                     * bound ends up being 1, even for the unbound lower case.
-                     */
-                    if (!range.isInRange(ptr.get(), ptr.getOffset(), ptr.getLength())) {
-                        break;
-                    }
-                }
-                int partialLength = ptr.getOffset() - offset;
-                int maxLength = partialLength + this.maxKeyLength;
-                if (i < nSlots) {
-                    // Set the start and end key using the part of the current key that is "in range"
-                    setStartKey(maxLength, currentKey, offset, partialLength);
-                    // Append the rest of the start and end key from the current position
-                    appendToStartKey(i, partialLength);
-                    setEndKey(maxLength, currentKey, offset, partialLength);
-                    appendToEndKey(i, partialLength);
-                    return ReturnCode.SEEK_NEXT_USING_HINT;
-                } else if (!slots.get(nSlots-1).get(position[nSlots-1]).isSingleKey()) {
-                    includeUntilEndKey = true;
-                }
+            if (i == nSlots - 1) {
+                includeUntilEndKey = true;
+                return ReturnCode.INCLUDE;
             }
-            if (i == nSlots) { // Include this row, since we're in range for all slots
-                // If we haven't set includeUntilEndKey, it means that we're currently at a single key.
-                // In this case, we can optimize this filter by including all key value for this row key.
-                if (!includeUntilEndKey) {
-                    whileEqualPtr.set(currentKey, offset, length);
-                    includeWhileEqual = true;
+            if (i < nSlots) {
+                ReturnCode code = navigateTrailingSlots(i + 1, currentKey, offset, length);
+                if (code != null) {
+                    return code;
                 }
-                return ReturnCode.INCLUDE;
             }
+            // Include this row, since we're in range for all slots. As we're either at
+            // a single key or at a single value of the trailing slots, we can optimize
+            // this filter by including all key values for this row key.
+            whileEqualPtr.set(currentKey, offset, length);
+            includeWhileEqual = true;
+            return ReturnCode.INCLUDE;
         }
         includeUntilEndKey = false;
-        // Increment the key while it's less than the current key,
-        // stopping if run out of keys.
-        int cmp;
-        do {
+        // Jump the leading slot directly to the first range that may contain the
+        // current key. Then increment the key until the current key is before the
+        // end key of the current position, stopping if we run out of keys. We can't
+        // stop based on the start key, since a range may contain the current
+        // key even though its start key is before it.
+        if (!seekLeadingSlot(currentKey, offset, length)) {
+            startKey = null;
+            return ReturnCode.NEXT_ROW;
+        }
+        while (!isBeforeEndKey(currentKey, offset, length)) {
+            skipTrailingSlots();
             if (!incrementKey()) {
                 startKey = null;
                 return ReturnCode.NEXT_ROW;
             }
             setStartKey();
-            cmp = Bytes.compareTo(currentKey, offset, length, startKey, 0, startKeyLength);
-        } while (cmp > 0);
+            setEndKey();
+        }
+        if (Bytes.compareTo(currentKey, offset, length, startKey, 0, startKeyLength) < 0) {
+            return ReturnCode.SEEK_NEXT_USING_HINT;
+        }
+        // Otherwise we're within the new start and end key, so navigate within it
+        return navigate(currentKey, offset, length);
+    }
+
+    /**
+     * Checks the slots that follow the first range against the current key. Since the
+     * end key stops at the first range, these slots must be checked for each row and
+     * may be positioned independently for each value of the preceding slots.
+     * @return null if the current key is in range for all slots and otherwise the
+     * return code to get to the next key that may be in range
+     */
+    private ReturnCode navigateTrailingSlots(int slotIndex, byte[] currentKey, int offset, int length) {
+        int nSlots = slots.size();
+        ptr.set(currentKey, offset, length);
+        int i = slotIndex;
+        for (   Boolean hasValue = schema.setAccessor(ptr, i, ValueBitSet.EMPTY_VALUE_BITSET); 
+                hasValue != null; 
+                hasValue = ++i == nSlots ? null : schema.next(ptr, i, ValueBitSet.EMPTY_VALUE_BITSET)) {
+            List<KeyRange> slot = slots.get(i);
+            // The schema doesn't know where the row ends within the key value,
+            // so a trailing variable length value may run past the end of it
+            int valueLength = Math.max(0, Math.min(ptr.getLength(), offset + length - ptr.getOffset()));
+            int index = searchSlot(slot, 0, ptr.get(), ptr.getOffset(), valueLength);
+            // The search is conservative for inclusive upper bounds, so step past
+            // a range that the value is after, but of which it has the upper bound as a prefix
+            while (index < slot.size() && isAfter(slot.get(index), ptr.get(), ptr.getOffset(), valueLength)) {
+                index++;
+            }
+            int partialLength = ptr.getOffset() - offset;
+            Arrays.fill(position, i + 1, position.length, 0);
+            if (index == slot.size()) {
+                // No range of this slot is at or after the value, so skip all keys
+                // that share the preceding slot values with the current key
+                Arrays.fill(position, i, position.length, 0);
+                setStartKey(partialLength, currentKey, offset, partialLength);
+                if (!ByteUtil.nextKey(startKey, partialLength)) {
+                    startKey = null;
+                    return ReturnCode.NEXT_ROW;
+                }
+                return ReturnCode.SEEK_NEXT_USING_HINT;
+            }
+            position[i] = index;
+            if (!slot.get(index).isInRange(ptr.get(), ptr.getOffset(), valueLength)) {
+                // The value is before the range, so seek to the part of the current key
+                // that is in range followed by the lower bound of the remaining slots
+                setStartKey(partialLength + this.maxKeyLength, currentKey, offset, partialLength);
+                appendToStartKey(i, partialLength);
+                return ReturnCode.SEEK_NEXT_USING_HINT;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the slots after the first range to their last position, so that incrementing
+     * the key moves on to the next value of the slots up to and including the first range.
+     * Once the current key is past the end key, no other position of the trailing slots
+     * can be in range.
+     */
+    private void skipTrailingSlots() {
+        int nSlots = slots.size();
+        int i = 0;
+        while (i < nSlots && slots.get(i).get(position[i]).isSingleKey()) {
+            i++;
+        }
+        while (++i < nSlots) {
+            position[i] = slots.get(i).size() - 1;
+        }
+    }
+
+    private boolean isBeforeEndKey(byte[] currentKey, int offset, int length) {
+        return endKeyLength <= 0 || Bytes.compareTo(currentKey, offset, length, endKey, 0, endKeyLength) < 0;
+    }
+
+    /**
+     * Moves the position of the leading slot to the first range that isn't entirely
+     * before the leading value of the current key using a binary search, instead
+     * of stepping through each range. The positions of the other slots are reset when
+     * the leading slot moves.
+     * @return false if there are no ranges left and true otherwise
+     */
+    private boolean seekLeadingSlot(byte[] currentKey, int offset, int length) {
+        List<KeyRange> slot = slots.get(0);
+        int index = searchSlot(slot, position[0], currentKey, offset, getLeadingValueLength(currentKey, offset, length));
+        if (index == position[0]) {
+            return true;
+        }
+        if (index == slot.size()) {
+            return false;
+        }
+        position[0] = index;
+        Arrays.fill(position, 1, position.length, 0);
+        setStartKey();
         setEndKey();
-        // Special case for when our new start key matches the row we're on. In that case,
-        // we know we're in range and can include all key values for this row.
-        if (cmp == 0) {
-            whileEqualPtr.set(currentKey, offset, length);
-            includeWhileEqual = true;
-            return ReturnCode.INCLUDE;
+        return true;
+    }
+
+    private int getLeadingValueLength(byte[] key, int offset, int length) {
+        Field field = schema.getField(0);
+        PDataType type = field.getType();
+        if (type.isFixedWidth()) {
+            int byteSize = type.getByteSize() == null ? field.getByteSize() : type.getByteSize();
+            return Math.min(byteSize, length);
+        }
+        int i = offset;
+        int maxOffset = offset + length;
+        while (i < maxOffset && key[i] != QueryConstants.SEPARATOR_BYTE) {
+            i++;
+        }
+        return i - offset;
+    }
+
+    /**
+     * @return the index of the first range at or after fromIndex that isn't entirely
+     * before the given value, or the size of the slot if there is none. Relies on the
+     * ranges of a slot being sorted and non overlapping.
+     */
+    private static int searchSlot(List<KeyRange> slot, int fromIndex, byte[] value, int offset, int length) {
+        int low = fromIndex;
+        int high = slot.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (isBefore(slot.get(mid), value, offset, length)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isBefore(KeyRange range, byte[] value, int offset, int length) {
+        if (range.upperUnbound()) {
+            return false;
+        }
+        byte[] upper = range.getUpperRange();
+        if (range.isUpperInclusive()) {
+            // An inclusive upper bound includes any value it's a prefix of
+            return Bytes.compareTo(upper, 0, upper.length, value, offset, Math.min(length, upper.length)) < 0;
         }
-        return ReturnCode.SEEK_NEXT_USING_HINT;
-   }
+        return Bytes.compareTo(upper, 0, upper.length, value, offset, length) <= 0;
+    }
+
+    private static boolean isAfter(KeyRange range, byte[] value, int offset, int length) {
+        if (range.upperUnbound()) {
+            return false;
+        }
+        byte[] upper = range.getUpperRange();
+        int cmp = Bytes.compareTo(upper, 0, upper.length, value, offset, length);
+        return cmp < 0 || cmp == 0 && !range.isUpperInclusive();
+    }
 
     private boolean incrementKey() {
         int i = slots.size() - 1;
@@ -229,6 +414,7 @@ after the first possible key.
     private void setStartKey(int maxLength, byte[] sourceKey, int offset, int length) {
         startKey = copyKey(startKey, maxLength, sourceKey, offset, length);
         startKeyLength = length;
+        nextKeyHint = null;
     }
     
     private void setEndKey(int maxLength, byte[] sourceKey, int offset, int length) {
@@ -242,10 +428,12 @@ after the first possible key.
 
     private void setStartKey() {
         startKeyLength = setKey(Bound.LOWER, startKey, 0, 0);
+        nextKeyHint = null;
     }
 
     private void appendToStartKey(int slotIndex, int byteOffset) {
         startKeyLength += setKey(Bound.LOWER, startKey, slotIndex, byteOffset);
+        nextKeyHint = null;
     }
 
     private void setEndKey() {
@@ -334,7 +522,7 @@ after the first possible key.
         h.putInt(slots.size());
         for (int i=0; i<slots.size(); i++) {
             h.putInt(slots.get(i).size());
-            for (int j=0; j<slots.size(); j++) {
+            for (int j=0; j<slots.get(i).size(); j++) {
                 h.putBytes(slots.get(i).get(j).getLowerRange());
                 h.putBytes(slots.get(i).get(j).getUpperRange());
             }
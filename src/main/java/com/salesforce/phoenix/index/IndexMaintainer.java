@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.index;
+
+import java.io.*;
+import java.sql.SQLException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.salesforce.phoenix.expression.RowKeyColumnExpression;
+import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * 
+ * Computes the rows of the secondary indexes of a table that must be removed and added
+ * when a row of the table is mutated. The client attaches the metadata of the table,
+ * including its indexes, to the mutations it sends for the table through
+ * {@link #setAttributes(byte[], List)} and {@link IndexRegionObserver} uses it to
+ * maintain the indexes based on the prior state and the new state of each row.
+ *
+ * The row key of an index leads with the indexed columns, followed by the primary key
+ * columns of the table that are not indexed, so an index row is formed from the row key
+ * of the table row plus the values of the indexed and included key value columns. A row
+ * whose indexed fixed width column is null has no index row, since null cannot be
+ * represented in such a column of a row key.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class IndexMaintainer {
+    /**
+     * Mutation attribute holding the serialized metadata of the table and its indexes
+     */
+    public static final String INDEX_MD = "IndexMD";
+    /**
+     * Put attribute holding the columns set to null in the same row, since these are
+     * sent to the region server in a separate Delete
+     */
+    public static final String INDEX_NULLS = "IndexNulls";
+    
+    private final PTable dataTable;
+    private final List<IndexInfo> indexes;
+    // Key value columns of the table referenced by any of the indexes
+    private final List<PColumn> referencedColumns;
+    private final byte[] emptyFamily;
+    
+    private IndexMaintainer(String schemaName, PTable dataTable) {
+        this.dataTable = dataTable;
+        this.emptyFamily = SchemaUtil.getEmptyColumnFamily(dataTable.getColumnFamilies());
+        Map<PColumn,Integer> referencedColumns = Maps.newLinkedHashMap();
+        List<IndexInfo> indexes = Lists.newArrayListWithExpectedSize(dataTable.getIndexes().size());
+        for (PTable index : dataTable.getIndexes()) {
+            indexes.add(new IndexInfo(schemaName, index, referencedColumns));
+        }
+        this.indexes = indexes;
+        this.referencedColumns = Lists.newArrayList(referencedColumns.keySet());
+    }
+    
+    /**
+     * Serialize the metadata that the region server needs to maintain the indexes of a table.
+     * @param schemaName the schema of the table and its indexes
+     * @param dataTable the table, with at least one index
+     */
+    public static byte[] serialize(String schemaName, PTable dataTable) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(stream);
+            Bytes.writeByteArray(output, schemaName == null ? ByteUtil.EMPTY_BYTE_ARRAY : Bytes.toBytes(schemaName));
+            dataTable.write(output);
+            return stream.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    public static IndexMaintainer deserialize(byte[] indexMetaData) {
+        ByteArrayInputStream stream = new ByteArrayInputStream(indexMetaData);
+        try {
+            DataInputStream input = new DataInputStream(stream);
+            byte[] schemaNameBytes = Bytes.readByteArray(input);
+            String schemaName = schemaNameBytes.length == 0 ? null : Bytes.toString(schemaNameBytes);
+            PTable dataTable = new PTableImpl();
+            dataTable.readFields(input);
+            return new IndexMaintainer(schemaName, dataTable);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    /**
+     * Attach the serialized index metadata to the mutations of a single row, as produced by
+     * {@link PRow#toRowMutations()}: either a Delete of the entire row or a Put, optionally
+     * followed by a Delete of the columns set to null.
+     * @param indexMetaData the metadata serialized through {@link #serialize(String, PTable)}
+     * @param rowMutations the mutations of the row
+     */
+    public static void setAttributes(byte[] indexMetaData, List<Mutation> rowMutations) {
+        Mutation mutation = rowMutations.get(0);
+        mutation.setAttribute(INDEX_MD, indexMetaData);
+        if (rowMutations.size() > 1) {
+            mutation.setAttribute(INDEX_NULLS, serializeColumns(rowMutations.get(1).getFamilyMap()));
+        }
+    }
+    
+    private static byte[] serializeColumns(Map<byte[],List<KeyValue>> familyMap) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(stream);
+            int nColumns = 0;
+            for (List<KeyValue> kvs : familyMap.values()) {
+                nColumns += kvs.size();
+            }
+            WritableUtils.writeVInt(output, nColumns);
+            for (List<KeyValue> kvs : familyMap.values()) {
+                for (KeyValue kv : kvs) {
+                    Bytes.writeByteArray(output, kv.getFamily());
+                    Bytes.writeByteArray(output, kv.getQualifier());
+                }
+            }
+            return stream.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    private static Set<ImmutableBytesPtr> deserializeColumns(byte[] columns) {
+        if (columns == null) {
+            return Collections.emptySet();
+        }
+        ByteArrayInputStream stream = new ByteArrayInputStream(columns);
+        try {
+            DataInputStream input = new DataInputStream(stream);
+            int nColumns = WritableUtils.readVInt(input);
+            Set<ImmutableBytesPtr> columnSet = new HashSet<ImmutableBytesPtr>(nColumns);
+            for (int i = 0; i < nColumns; i++) {
+                byte[] family = Bytes.readByteArray(input);
+                byte[] qualifier = Bytes.readByteArray(input);
+                columnSet.add(new ImmutableBytesPtr(getColumnKey(family, qualifier)));
+            }
+            return columnSet;
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    private static byte[] getColumnKey(byte[] family, byte[] qualifier) {
+        return ByteUtil.concat(family, QueryConstants.SEPARATOR_BYTE_ARRAY, qualifier);
+    }
+    
+    /**
+     * @return a Get for the prior state of the columns of a row that are referenced by
+     * any index, up to and including the given time stamp. Called before the mutation
+     * at that time stamp is applied.
+     */
+    public Get newGet(byte[] row, long ts) throws IOException {
+        Get get = new Get(row);
+        get.addColumn(emptyFamily, QueryConstants.EMPTY_COLUMN_BYTES);
+        for (PColumn column : referencedColumns) {
+            get.addColumn(column.getFamilyName().getBytes(), column.getName().getBytes());
+        }
+        get.setTimeRange(0, ts + 1);
+        return get;
+    }
+    
+    /**
+     * Compute the index mutations for a Put to a row of the table.
+     * @param put the Put, whose time stamps must already be set
+     * @param priorRow the prior state of the row, read through {@link #newGet(byte[], long)}
+     * @param ts the time stamp of the Put
+     * @return the index mutations by the name of the index table
+     */
+    public Map<ImmutableBytesPtr,List<Mutation>> getIndexUpdates(Put put, Result priorRow, long ts) {
+        Set<ImmutableBytesPtr> nulls = deserializeColumns(put.getAttribute(INDEX_NULLS));
+        byte[][] priorValues = null;
+        if (!priorRow.isEmpty()) {
+            priorValues = new byte[referencedColumns.size()][];
+            for (int i = 0; i < priorValues.length; i++) {
+                priorValues[i] = getValue(priorRow, referencedColumns.get(i));
+            }
+        }
+        byte[][] values = new byte[referencedColumns.size()][];
+        for (int i = 0; i < values.length; i++) {
+            PColumn column = referencedColumns.get(i);
+            byte[] family = column.getFamilyName().getBytes();
+            byte[] qualifier = column.getName().getBytes();
+            List<KeyValue> kvs = put.get(family, qualifier);
+            if (!kvs.isEmpty()) {
+                values[i] = kvs.get(kvs.size()-1).getValue();
+            } else if (!nulls.contains(new ImmutableBytesPtr(getColumnKey(family, qualifier))) && priorValues != null) {
+                values[i] = priorValues[i];
+            }
+        }
+        Map<ImmutableBytesPtr,List<Mutation>> updates = Maps.newHashMapWithExpectedSize(indexes.size());
+        for (IndexInfo index : indexes) {
+            List<Mutation> indexMutations = Lists.newArrayListWithExpectedSize(2);
+            byte[] priorKey = priorValues == null ? null : index.getRowKey(put.getRow(), priorValues);
+            byte[] key = index.getRowKey(put.getRow(), values);
+            if (priorKey != null && (key == null || Bytes.compareTo(priorKey, key) != 0)) {
+                PRow row = index.table.newRow(ts, new ImmutableBytesWritable(priorKey));
+                row.delete();
+                indexMutations.addAll(row.toRowMutations());
+            }
+            if (key != null) {
+                PRow row = index.table.newRow(ts, new ImmutableBytesWritable(key));
+                for (int i = 0; i < index.coveredColumns.size(); i++) {
+                    row.setValue(index.coveredColumns.get(i), values[index.coveredColumnPositions[i]]);
+                }
+                indexMutations.addAll(row.toRowMutations());
+            }
+            if (!indexMutations.isEmpty()) {
+                updates.put(index.physicalName, indexMutations);
+            }
+        }
+        return updates;
+    }
+    
+    /**
+     * Compute the index mutations for the Delete of an entire row of the table.
+     * @param priorRow the prior state of the row, read through {@link #newGet(byte[], long)}
+     * @param ts the time stamp of the Delete
+     * @return the index mutations by the name of the index table
+     */
+    public Map<ImmutableBytesPtr,List<Mutation>> getIndexDeletes(Delete delete, Result priorRow, long ts) {
+        if (priorRow.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        byte[][] priorValues = new byte[referencedColumns.size()][];
+        for (int i = 0; i < priorValues.length; i++) {
+            priorValues[i] = getValue(priorRow, referencedColumns.get(i));
+        }
+        Map<ImmutableBytesPtr,List<Mutation>> updates = Maps.newHashMapWithExpectedSize(indexes.size());
+        for (IndexInfo index : indexes) {
+            byte[] priorKey = index.getRowKey(delete.getRow(), priorValues);
+            if (priorKey != null) {
+                PRow row = index.table.newRow(ts, new ImmutableBytesWritable(priorKey));
+                row.delete();
+                updates.put(index.physicalName, row.toRowMutations());
+            }
+        }
+        return updates;
+    }
+    
+    private static byte[] getValue(Result result, PColumn column) {
+        KeyValue kv = result.getColumnLatest(column.getFamilyName().getBytes(), column.getName().getBytes());
+        return kv == null ? null : kv.getValue();
+    }
+    
+    /**
+     * 
+     * How the row key and the columns of one index are formed from a row of the table
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    private class IndexInfo {
+        private final PTable table;
+        private final ImmutableBytesPtr physicalName;
+        // For each PK column of the index, the table PK column it comes from, if any
+        private final RowKeyColumnExpression[] pkExpressions;
+        // For each PK column of the index, the position of the referenced column it comes from, if any
+        private final int[] pkColumnPositions;
+        private final List<PColumn> coveredColumns;
+        private final int[] coveredColumnPositions;
+        
+        private IndexInfo(String schemaName, PTable index, Map<PColumn,Integer> referencedColumns) {
+            this.table = index;
+            this.physicalName = new ImmutableBytesPtr(SchemaUtil.getTableName(schemaName, index.getName().getString()));
+            List<PColumn> pkColumns = index.getPKColumns();
+            List<PColumn> dataPKColumns = dataTable.getPKColumns();
+            this.pkExpressions = new RowKeyColumnExpression[pkColumns.size()];
+            this.pkColumnPositions = new int[pkColumns.size()];
+            for (int i = 0; i < pkColumns.size(); i++) {
+                String name = pkColumns.get(i).getName().getString();
+                PColumn dataColumn;
+                try {
+                    dataColumn = dataTable.getColumn(name);
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Unable to find column " + name + " of index " + index.getName().getString(), e);
+                }
+                if (SchemaUtil.isPKColumn(dataColumn)) {
+                    pkExpressions[i] = new RowKeyColumnExpression(dataColumn, new RowKeyValueAccessor(dataPKColumns, dataPKColumns.indexOf(dataColumn)));
+                    pkColumnPositions[i] = -1;
+                } else {
+                    pkColumnPositions[i] = getPosition(referencedColumns, dataColumn);
+                }
+            }
+            this.coveredColumns = Lists.newArrayListWithExpectedSize(index.getColumns().size() - pkColumns.size());
+            for (PColumnFamily family : index.getColumnFamilies()) {
+                this.coveredColumns.addAll(family.getColumns());
+            }
+            this.coveredColumnPositions = new int[coveredColumns.size()];
+            for (int i = 0; i < coveredColumns.size(); i++) {
+                PColumn column = coveredColumns.get(i);
+                try {
+                    PColumn dataColumn = dataTable.getColumnFamily(column.getFamilyName().getString()).getColumn(column.getName().getString());
+                    coveredColumnPositions[i] = getPosition(referencedColumns, dataColumn);
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Unable to find column " + column.getName().getString() + " of index " + index.getName().getString(), e);
+                }
+            }
+        }
+        
+        private int getPosition(Map<PColumn,Integer> referencedColumns, PColumn column) {
+            Integer position = referencedColumns.get(column);
+            if (position == null) {
+                position = referencedColumns.size();
+                referencedColumns.put(column, position);
+            }
+            return position;
+        }
+        
+        /**
+         * @return the row key of the index row for the table row, or null if the
+         * table row cannot be represented in the index.
+         */
+        private byte[] getRowKey(byte[] dataRowKey, byte[][] referencedValues) {
+            byte[][] values = new byte[pkExpressions.length][];
+            ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+            SingleKeyValueTuple tuple = new SingleKeyValueTuple();
+            tuple.setKey(new ImmutableBytesWritable(dataRowKey));
+            for (int i = 0; i < values.length; i++) {
+                if (pkExpressions[i] == null) {
+                    values[i] = referencedValues[pkColumnPositions[i]];
+                } else if (pkExpressions[i].evaluate(tuple, ptr)) {
+                    values[i] = ptr.copyBytes();
+                }
+            }
+            try {
+                table.newKey(ptr, values);
+            } catch (ConstraintViolationException e) {
+                return null;
+            }
+            return ptr.copyBytes();
+        }
+    }
+}
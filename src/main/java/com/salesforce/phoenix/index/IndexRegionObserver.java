@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.index;
+
+import static com.salesforce.phoenix.query.QueryServices.MAX_INDEX_WRITER_THREADS_ATTRIB;
+import static com.salesforce.phoenix.query.QueryServices.INDEX_WRITE_TIMEOUT_MS_ATTRIB;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.coprocessor.*;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+import com.salesforce.phoenix.query.QueryServicesOptions;
+
+
+/**
+ * 
+ * Region observer that maintains the secondary indexes of a table. Mutations for
+ * a table with indexes carry the metadata of the table and its indexes in the
+ * {@link IndexMaintainer#INDEX_MD} attribute. For such a mutation, the row is locked
+ * while its prior state is read, the index rows that no longer apply and the ones for
+ * the new state of the row are computed and written through an {@link IndexWriter},
+ * and the mutation is applied, so that no other mutation of the row may come in between.
+ * The mutation and the index rows are written at the same time stamp, so that a query at
+ * a given time stamp sees the index consistent with its table. Unless the client sets the
+ * time stamp, the mutation is time stamped while the row is locked, so that the prior
+ * state of the row includes every mutation of the row applied before it. A mutation time
+ * stamped by the client earlier than the latest one of the row is not reconciled with the
+ * index rows of the later ones.
+ * 
+ * The index rows are written before the mutation is applied, and a failure to write them
+ * fails the mutation without applying it. The HBase client retries the mutation, which
+ * computes the same index rows again from the same prior state of the row at a later
+ * time stamp, superseding any of them written by the failed attempt, and reports the
+ * failure to the caller once its retries are exhausted.
+ * 
+ * The region calls the hooks for the mutations of a batch before it locks their rows,
+ * which is how the client sends the mutations of a table, so the hooks lock the row
+ * and apply the mutation themselves, bypassing the region.
+ * 
+ * @author jtaylor
+ * @since 1.2
+ */
+public class IndexRegionObserver extends BaseRegionObserver {
+    // Shared by the regions of the region server and sized by the first configuration seen.
+    // Stopped once the last region using it closes, so that it doesn't outlive its cluster.
+    private static IndexWriter indexWriter;
+    private static int indexWriterRefCount;
+    
+    private static synchronized IndexWriter getIndexWriter(Configuration config) {
+        if (indexWriter == null) {
+            int maxThreads = config.getInt(MAX_INDEX_WRITER_THREADS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_INDEX_WRITER_THREADS);
+            long timeoutMs = config.getLong(INDEX_WRITE_TIMEOUT_MS_ATTRIB, QueryServicesOptions.DEFAULT_INDEX_WRITE_TIMEOUT_MS);
+            indexWriter = new IndexWriter(config, maxThreads, timeoutMs);
+        }
+        indexWriterRefCount++;
+        return indexWriter;
+    }
+    
+    private static synchronized void releaseIndexWriter() throws IOException {
+        if (--indexWriterRefCount == 0) {
+            IndexWriter writer = indexWriter;
+            indexWriter = null;
+            writer.stop();
+        }
+    }
+    
+    // Cache the last deserialized metadata, since a batch of mutations carries the same one
+    private volatile CachedMaintainer cachedMaintainer;
+    private IndexWriter writer;
+
+    private static class CachedMaintainer {
+        private final byte[] indexMetaData;
+        private final IndexMaintainer maintainer;
+        
+        private CachedMaintainer(byte[] indexMetaData, IndexMaintainer maintainer) {
+            this.indexMetaData = indexMetaData;
+            this.maintainer = maintainer;
+        }
+    }
+    
+    private IndexMaintainer getMaintainer(byte[] indexMetaData) {
+        CachedMaintainer cached = cachedMaintainer;
+        if (cached == null || !Bytes.equals(cached.indexMetaData, indexMetaData)) {
+            cached = new CachedMaintainer(indexMetaData, IndexMaintainer.deserialize(indexMetaData));
+            cachedMaintainer = cached;
+        }
+        return cached.maintainer;
+    }
+    
+    /**
+     * Copy a mutation to apply it through the region while the hook bypasses the original.
+     * The KeyValues are copied too, since the region rolls back the KeyValues of the original
+     * mutation from the memstore when every mutation of a batch was bypassed. The copy has
+     * no index metadata, so that the hook ignores it when it's applied.
+     */
+    private static <T extends Mutation> T copyKeyValues(T copy, Mutation mutation) {
+        Map<byte[],List<KeyValue>> familyMap = new TreeMap<byte[],List<KeyValue>>(Bytes.BYTES_COMPARATOR);
+        for (Map.Entry<byte[],List<KeyValue>> entry : mutation.getFamilyMap().entrySet()) {
+            List<KeyValue> kvs = new ArrayList<KeyValue>(entry.getValue().size());
+            for (KeyValue kv : entry.getValue()) {
+                kvs.add(kv.clone());
+            }
+            familyMap.put(entry.getKey(), kvs);
+        }
+        copy.setFamilyMap(familyMap);
+        copy.setAttribute(IndexMaintainer.INDEX_MD, null);
+        return copy;
+    }
+    
+    @Override
+    public void start(CoprocessorEnvironment env) throws IOException {
+        writer = getIndexWriter(env.getConfiguration());
+    }
+    
+    @Override
+    public void stop(CoprocessorEnvironment env) throws IOException {
+        releaseIndexWriter();
+    }
+    
+    @Override
+    public void prePut(ObserverContext<RegionCoprocessorEnvironment> c, Put put, WALEdit edit, boolean writeToWAL)
+            throws IOException {
+        byte[] indexMetaData = put.getAttribute(IndexMaintainer.INDEX_MD);
+        if (indexMetaData == null) {
+            return;
+        }
+        IndexMaintainer maintainer = getMaintainer(indexMetaData);
+        HRegion region = c.getEnvironment().getRegion();
+        Integer lockId = region.getLock(null, put.getRow(), true);
+        try {
+            long ts = HConstants.LATEST_TIMESTAMP;
+            byte[] now = null;
+            for (List<KeyValue> kvs : put.getFamilyMap().values()) {
+                for (KeyValue kv : kvs) {
+                    if (kv.isLatestTimestamp()) {
+                        // Pin the time stamp of the row so that the index rows get the same one. Done
+                        // with the row locked, so that the prior state read below includes any earlier
+                        // mutation of the row.
+                        if (now == null) {
+                            now = Bytes.toBytes(EnvironmentEdgeManager.currentTimeMillis());
+                        }
+                        kv.updateLatestStamp(now);
+                    }
+                    ts = Math.min(ts, kv.getTimestamp());
+                }
+            }
+            Result priorRow = region.get(maintainer.newGet(put.getRow(), ts));
+            writer.write(maintainer.getIndexUpdates(put, priorRow, ts));
+            region.put(copyKeyValues(new Put(put), put), lockId, writeToWAL);
+        } finally {
+            region.releaseRowLock(lockId);
+        }
+        c.bypass();
+    }
+
+    @Override
+    public void preDelete(ObserverContext<RegionCoprocessorEnvironment> c, Delete delete, WALEdit edit,
+            boolean writeToWAL) throws IOException {
+        byte[] indexMetaData = delete.getAttribute(IndexMaintainer.INDEX_MD);
+        if (indexMetaData == null) {
+            return;
+        }
+        IndexMaintainer maintainer = getMaintainer(indexMetaData);
+        HRegion region = c.getEnvironment().getRegion();
+        Integer lockId = region.getLock(null, delete.getRow(), true);
+        try {
+            long ts = delete.getTimeStamp();
+            if (ts == HConstants.LATEST_TIMESTAMP) {
+                // Pin the time stamp of the row with the row locked, as for a Put
+                ts = EnvironmentEdgeManager.currentTimeMillis();
+                delete.setTimestamp(ts);
+                byte[] now = Bytes.toBytes(ts);
+                for (List<KeyValue> kvs : delete.getFamilyMap().values()) {
+                    for (KeyValue kv : kvs) {
+                        kv.updateLatestStamp(now);
+                    }
+                }
+            }
+            Result priorRow = region.get(maintainer.newGet(delete.getRow(), ts));
+            writer.write(maintainer.getIndexDeletes(delete, priorRow, ts));
+            region.delete(copyKeyValues(new Delete(delete), delete), lockId, writeToWAL);
+        } finally {
+            region.releaseRowLock(lockId);
+        }
+        c.bypass();
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.index;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
+
+
+/**
+ * 
+ * Writes the index rows computed by {@link IndexRegionObserver} to the index tables, in one
+ * batch per index table. The batches of the different index tables are written in parallel
+ * on a pool of threads shared by the regions of the region server, and the caller waits
+ * until every one of them is written, so that a mutation isn't acknowledged before its
+ * index rows are. A batch that fails, or that isn't written within the timeout, fails the
+ * call, so that the failure is reported back to the client writing the mutation.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class IndexWriter {
+    private final HTablePool tables;
+    private final ExecutorService writers;
+    private final long timeoutMs;
+    
+    /**
+     * @param config the configuration used to connect to the index tables
+     * @param maxThreads the number of threads writing the index rows
+     * @param timeoutMs the number of milliseconds to wait for the index rows to be written
+     */
+    public IndexWriter(Configuration config, int maxThreads, long timeoutMs) {
+        this.tables = new HTablePool(config, maxThreads);
+        this.writers = Executors.newFixedThreadPool(maxThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("phoenix-index-writer-%d").build());
+        this.timeoutMs = timeoutMs;
+    }
+    
+    /**
+     * Write the index updates for a mutation of a table row, returning once all of them
+     * have been written.
+     * @param updates the index mutations by the name of the index table
+     * @throws IOException if the index rows of any index table could not be written
+     * within the timeout
+     */
+    public void write(Map<ImmutableBytesPtr,List<Mutation>> updates) throws IOException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        List<byte[]> tableNames = Lists.newArrayListWithExpectedSize(updates.size());
+        List<Future<?>> futures = Lists.newArrayListWithExpectedSize(updates.size());
+        for (Map.Entry<ImmutableBytesPtr,List<Mutation>> entry : updates.entrySet()) {
+            final byte[] tableName = entry.getKey().copyBytes();
+            final List<Mutation> mutations = entry.getValue();
+            tableNames.add(tableName);
+            futures.add(writers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    write(tableName, mutations);
+                    return null;
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                String indexName = Bytes.toString(tableNames.get(i));
+                try {
+                    futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    throw new IOException("Unable to write the rows of index " + indexName, e.getCause());
+                } catch (TimeoutException e) {
+                    throw new IOException("Timed out after " + timeoutMs + " ms writing the rows of index " + indexName);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            // Don't start the writes still waiting for a thread once one has failed. The ones
+            // in progress are left to finish, since interrupting them may close the connection
+            // shared with the other writes.
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+    
+    private void write(byte[] tableName, List<Mutation> mutations) throws IOException, InterruptedException {
+        HTableInterface table = tables.getTable(tableName);
+        try {
+            table.batch(mutations);
+        } finally {
+            table.close();
+        }
+    }
+    
+    /**
+     * Stop the threads writing the index rows and release the connections to the index
+     * tables. Called once no region is left to write index rows through the writer.
+     */
+    public void stop() throws IOException {
+        writers.shutdown();
+        tables.close();
+    }
+}
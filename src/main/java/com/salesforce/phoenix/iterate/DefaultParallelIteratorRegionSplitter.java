@@ -46,7 +46,9 @@ import com.salesforce.phoenix.query.ConnectionQueryServices;
 import com.salesforce.phoenix.query.KeyRange;
 import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.query.StatsManager;
 import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.stat.PRegionStats;
 
 
 /**
@@ -100,6 +102,11 @@ public class DefaultParallelIteratorRegionSplitter implements ParallelIteratorRe
         // distributed across regions, using this scheme compensates for regions that
         // have more rows than others, by applying tighter splits and therefore spawning
         // off more scans over the overloaded regions.
+        //
+        // If statistics have been collected for every region, the total number of splits
+        // is instead divided between the regions based on their row counts, and each
+        // region is split on its equi-depth guide posts so that every split holds about
+        // the same number of rows.
         
         List<HRegionInfo> regions = ParallelIterators.filterRegions(allTableRegions, scan.getStartRow(), scan.getStopRow());
         if (regions.isEmpty()) {
@@ -115,9 +122,28 @@ public class DefaultParallelIteratorRegionSplitter implements ParallelIteratorRe
         } else {
             assert splitsPerRegion >= 2 : "Splits per region has to be greater than 2";
             
+            StatsManager statsManager = services.getStatsManager();
+            List<PRegionStats> regionStats = Lists.newArrayListWithExpectedSize(regions.size());
+            long totalRowCount = 0;
+            for (HRegionInfo region : regions) {
+                PRegionStats stats = statsManager.getRegionStats(table, region);
+                if (stats == null) {
+                    regionStats = null;
+                    break;
+                }
+                regionStats.add(stats);
+                totalRowCount += stats.getRowCount();
+            }
             // Maintain bucket for each server and then returns KeyRanges in round-robin
             // order to ensure all servers are utilized.
-            for (HRegionInfo region : regions) {
+            for (int r = 0; r < regions.size(); r++) {
+                HRegionInfo region = regions.get(r);
+                if (regionStats != null) {
+                    PRegionStats stats = regionStats.get(r);
+                    int nSplits = totalRowCount == 0 ? 1 : (int)Math.max(1, Math.round((double)splitsPerRegion * regions.size() * stats.getRowCount() / totalRowCount));
+                    addGuidePostSplits(keyRangesPerRegion, region, scan, stats.getGuidePosts(), nSplits);
+                    continue;
+                }
                 byte[] startKey = region.getStartKey();
                 byte[] stopKey = region.getEndKey();
                 boolean lowerUnbound = Bytes.compareTo(startKey, HConstants.EMPTY_START_ROW) == 0;
@@ -184,4 +210,33 @@ public class DefaultParallelIteratorRegionSplitter implements ParallelIteratorRe
         return splits;
     }
 
+    /**
+     * Split a region into at most the given number of key ranges, on the guide posts
+     * that fall within the scan. Since the guide posts are equi-depth, picking evenly
+     * spaced ones gives key ranges holding about the same number of rows.
+     */
+    private static void addGuidePostSplits(ListMultimap<Long,KeyRange> keyRangesPerRegion, HRegionInfo region, Scan scan, byte[][] guidePosts, int nSplits) {
+        byte[] startRow = scan.getStartRow();
+        byte[] stopRow = scan.getStopRow();
+        int first = 0;
+        while (first < guidePosts.length && Bytes.compareTo(guidePosts[first], startRow) <= 0) {
+            first++;
+        }
+        int last = guidePosts.length;
+        while (last > first && stopRow.length > 0 && Bytes.compareTo(guidePosts[last-1], stopRow) >= 0) {
+            last--;
+        }
+        int nGuidePosts = last - first;
+        nSplits = Math.min(nSplits, nGuidePosts + 1);
+        byte[] lowerRange = region.getStartKey().length == 0 ? KeyRange.UNBOUND_LOWER : region.getStartKey();
+        for (int i = 1; i < nSplits; i++) {
+            byte[] guidePost = guidePosts[first + (int)((long)i * nGuidePosts / nSplits)];
+            if (Bytes.compareTo(lowerRange, guidePost) < 0) {
+                keyRangesPerRegion.put(region.getRegionId(), KeyRange.getKeyRange(lowerRange, true, guidePost, false));
+                lowerRange = guidePost;
+            }
+        }
+        byte[] upperRange = region.getEndKey().length == 0 ? KeyRange.UNBOUND_UPPER : region.getEndKey();
+        keyRangesPerRegion.put(region.getRegionId(), KeyRange.getKeyRange(lowerRange, true, upperRange, false));
+    }
 }
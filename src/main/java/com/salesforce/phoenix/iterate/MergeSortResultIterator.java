@@ -28,7 +28,7 @@
 package com.salesforce.phoenix.iterate;
 
 import java.sql.SQLException;
-import java.util.List;
+import java.util.*;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
@@ -40,50 +40,90 @@ import com.salesforce.phoenix.util.TupleUtil;
 /**
  * 
  * Result iterator that does a merge sort on the list of iterators provided.
- * The rows are returned in ascending key order.
+ * The rows are returned in ascending key order. The iterators are kept in
+ * a heap ordered by their next row, so that finding the next row costs
+ * O(log n) comparisons for n iterators. The iterator with the next row is
+ * held aside between a call to {@link #peek()} and {@link #next()}, so that
+ * the heap is only adjusted once per row.
  *
  * @author jtaylor
  * @since 0.1
  */
 public class MergeSortResultIterator implements PeekingResultIterator {
-    private final ResultIterators resultIterators;
+    protected final ResultIterators resultIterators;
     private final ImmutableBytesWritable tempPtr = new ImmutableBytesWritable();
-    private List<PeekingResultIterator> iterators;
+    private final Comparator<PeekingResultIterator> comparator = new Comparator<PeekingResultIterator>() {
+        @Override
+        public int compare(PeekingResultIterator o1, PeekingResultIterator o2) {
+            try {
+                return MergeSortResultIterator.this.compare(o1.peek(), o2.peek());
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+    private PriorityQueue<PeekingResultIterator> iterators;
+    private PeekingResultIterator minIterator;
     
     public MergeSortResultIterator(ResultIterators iterators) {
         this.resultIterators = iterators;
     }
     
-    private List<PeekingResultIterator> getIterators() throws SQLException {
+    /**
+     * Compares the next rows of two of the iterators being merged. By default,
+     * rows are ordered by their row key.
+     */
+    protected int compare(Tuple t1, Tuple t2) throws SQLException {
+        return TupleUtil.compare(t1, t2, tempPtr);
+    }
+    
+    private PriorityQueue<PeekingResultIterator> getIterators() throws SQLException {
         if (iterators == null) {
-            iterators = resultIterators.getIterators();
+            List<PeekingResultIterator> iterators = resultIterators.getIterators();
+            this.iterators = new PriorityQueue<PeekingResultIterator>(Math.max(1, iterators.size()), comparator);
+            boolean success = false;
+            try {
+                for (PeekingResultIterator iterator : iterators) {
+                    addIterator(iterator);
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    SQLCloseables.closeAllQuietly(iterators);
+                }
+            }
         }
         return iterators;
     }
     
+    private void addIterator(PeekingResultIterator iterator) throws SQLException {
+        if (iterator.peek() == null) {
+            iterator.close();
+        } else {
+            iterators.add(iterator);
+        }
+    }
+    
     @Override
     public void close() throws SQLException {
         if (iterators != null) {
-            SQLCloseables.closeAll(iterators);
+            try {
+                if (minIterator != null) {
+                    minIterator.close();
+                }
+            } finally {
+                minIterator = null;
+                SQLCloseables.closeAll(iterators);
+            }
         }
     }
 
     private PeekingResultIterator minIterator() throws SQLException {
-        List<PeekingResultIterator> iterators = getIterators();
-        Tuple minResult = null;
-        PeekingResultIterator minIterator = EMPTY_ITERATOR;
-        for (int i = iterators.size()-1; i >= 0; i--) {
-            PeekingResultIterator iterator = iterators.get(i);
-            Tuple r = iterator.peek();
-            if (r != null) {
-                if (minResult == null || TupleUtil.compare(r, minResult, tempPtr) < 0) {
-                    minResult = r;
-                    minIterator = iterator;
-                }
-                continue;
+        if (minIterator == null) {
+            minIterator = getIterators().poll();
+            if (minIterator == null) {
+                return EMPTY_ITERATOR;
             }
-            iterator.close();
-            iterators.remove(i);
         }
         return minIterator;
     }
@@ -97,7 +137,12 @@ public class MergeSortResultIterator implements PeekingResultIterator {
     @Override
     public Tuple next() throws SQLException {
         PeekingResultIterator iterator = minIterator();
-        return iterator.next();
+        Tuple next = iterator.next();
+        if (iterator != EMPTY_ITERATOR) {
+            minIterator = null;
+            addIterator(iterator);
+        }
+        return next;
     }
 
     @Override
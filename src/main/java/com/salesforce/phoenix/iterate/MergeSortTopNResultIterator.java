@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+/**
+ * 
+ * Result iterator that does a merge sort on the list of iterators provided,
+ * each of which returns its rows sorted by the ORDER BY columns, and returns
+ * at most the given number of rows. Used when the top N rows of a non aggregate
+ * query are found by each region, so that the client only needs to merge
+ * them instead of sorting all of the rows.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MergeSortTopNResultIterator extends MergeSortResultIterator {
+    private final int limit;
+    private final List<OrderingColumn> orderingColumns;
+    private final ImmutableBytesWritable ptr1 = new ImmutableBytesWritable();
+    private final ImmutableBytesWritable ptr2 = new ImmutableBytesWritable();
+    private int count;
+    
+    public MergeSortTopNResultIterator(ResultIterators iterators, int limit, List<OrderingColumn> orderingColumns) {
+        super(iterators);
+        this.limit = limit;
+        this.orderingColumns = orderingColumns;
+    }
+    
+    /**
+     * Compares the rows the same way as {@link OrderedResultIterator} does, with a
+     * sort key that doesn't evaluate ordered as null.
+     */
+    @Override
+    protected int compare(Tuple t1, Tuple t2) throws SQLException {
+        for (OrderingColumn column : orderingColumns) {
+            Expression expression = column.getExpression();
+            boolean isNull1 = !expression.evaluate(t1, ptr1);
+            boolean isNull2 = !expression.evaluate(t2, ptr2);
+            if (isNull1 || isNull2) {
+                if (isNull1 && isNull2) {
+                    continue;
+                }
+                return isNull1 == column.isNullsLast() ? 1 : -1;
+            }
+            int cmp = Bytes.compareTo(ptr1.get(), ptr1.getOffset(), ptr1.getLength(), ptr2.get(), ptr2.getOffset(), ptr2.getLength());
+            if (cmp != 0) {
+                return column.isAscending() ? cmp : -cmp;
+            }
+        }
+        return 0;
+    }
+    
+    @Override
+    public Tuple peek() throws SQLException {
+        if (count >= limit) {
+            return null;
+        }
+        return super.peek();
+    }
+
+    @Override
+    public Tuple next() throws SQLException {
+        if (count >= limit) {
+            return null;
+        }
+        Tuple next = super.next();
+        if (next != null) {
+            count++;
+        }
+        return next;
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        resultIterators.explain(planSteps);
+        planSteps.add("    SERVER TOP " + limit + " ROW" + (limit == 1 ? "" : "S") + " SORTED BY " + orderingColumns.toString());
+        planSteps.add("CLIENT MERGE SORT");
+    }
+}
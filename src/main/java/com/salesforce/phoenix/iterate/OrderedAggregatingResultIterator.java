@@ -28,7 +28,6 @@
 package com.salesforce.phoenix.iterate;
 
 import java.sql.SQLException;
-import java.util.Iterator;
 import java.util.List;
 
 import com.salesforce.phoenix.compile.StatementContext;
@@ -38,8 +37,6 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 
 /**
  * Result scanner that sorts aggregated rows by columns specified in the ORDER BY clause.
- * <p>
- * Note that currently the sort is entirely done in memory. 
  *  
  * @author syyang
  * @since 0.1
@@ -58,27 +55,12 @@ public class OrderedAggregatingResultIterator extends OrderedResultIterator impl
     }
     
     @Override
-    protected Iterator<Tuple> newIterator(final Iterator<ResultEntry> iterator) {
-        return new Iterator<Tuple>() {
-
-            @Override
-            public boolean hasNext() {
-                return iterator.hasNext();
-            }
-
-            @Override
-            public Tuple next() {
-                Tuple tuple = iterator.next().getResult();
-                aggregate(tuple);
-                return tuple;
-            }
-
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
-            }
-            
-        };
+    public Tuple next() throws SQLException {
+        Tuple tuple = super.next();
+        if (tuple != null) {
+            aggregate(tuple);
+        }
+        return tuple;
     }
 
     @Override
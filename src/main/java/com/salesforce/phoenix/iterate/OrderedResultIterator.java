@@ -30,31 +30,49 @@ package com.salesforce.phoenix.iterate;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkPositionIndex;
 
+import java.io.*;
 import java.sql.SQLException;
 import java.util.*;
 
-import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.WritableUtils;
 
 
 import com.google.common.base.Function;
 import com.google.common.collect.*;
 import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
+import com.salesforce.phoenix.exception.PhoenixIOException;
 import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.*;
 
 /**
  * Result scanner that sorts aggregated rows by columns specified in the ORDER BY clause.
  * <p>
- * Note that currently the sort is entirely done in memory. 
+ * Rows are sorted in memory until the memory allocated from the {@link MemoryManager}
+ * (at most phoenix.query.spoolThresholdBytes, but at least {@link #DEFAULT_MIN_RUN_BYTES})
+ * is used up, at which point the sorted rows are spilled to a run file on disk. The
+ * in-memory rows and the spilled runs are then merged when the rows are returned, first
+ * merging the runs in passes of at most {@link #DEFAULT_MAX_MERGE_FAN_IN} files if there
+ * are too many of them to open at once. If a limit is specified, only the top N rows
+ * are kept in a bounded heap, so that memory usage is proportional to the limit instead
+ * of to the number of rows being sorted. If even the heap doesn't fit in memory, it is
+ * spilled as a run of at most N rows, and rows that sort after the last row of a full
+ * run are discarded as they are read.
  *  
  * @author syyang
  * @since 0.1
  */
 public class OrderedResultIterator implements ResultIterator {
+    public static final int DEFAULT_MIN_RUN_BYTES = 64 * 1024;
+    public static final int DEFAULT_MAX_MERGE_FAN_IN = 64;
 
-    /** A container that holds pointers to a {@link Result} and its sort keys. */
+    /** A container that holds pointers to a {@link Tuple} and its sort keys. */
     protected static class ResultEntry {
         private final ImmutableBytesWritable[] sortKeys;
         private final Tuple result;
@@ -97,40 +115,89 @@ public class OrderedResultIterator implements ResultIterator {
 
     private final ResultIterator delegate;
     private final List<OrderingColumn> orderingColumns;
+    private final Integer limit;
+    private final MemoryManager mm;
+    private final int thresholdBytes;
+    private final int minRunBytes;
+    private final int maxMergeFanIn;
+    private final File spoolDirectory;
+    private final Comparator<ResultEntry> comparator;
+    private final List<File> runFiles = Lists.newArrayList();
+    private final List<EntryIterator> entryIterators = Lists.newArrayList();
     
-    private Iterator<Tuple> iterator;
+    private MemoryChunk chunk;
+    private EntryIterator iterator;
+    private long count;
 
     protected ResultIterator getDelegate() {
         return delegate;
     }
     
-    protected Iterator<Tuple> newIterator(final Iterator<ResultEntry> iterator) {
-        return new Iterator<Tuple>() {
-
-            @Override
-            public boolean hasNext() {
-                return iterator.hasNext();
-            }
-
-            @Override
-            public Tuple next() {
-                return iterator.next().getResult();
-            }
-
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
-            }
-            
-        };
+    public OrderedResultIterator(StatementContext context,
+                                 ResultIterator delegate,
+                                 List<OrderingColumn> orderingColumns) throws SQLException {
+        this(context, delegate, orderingColumns, null);
     }
 
+    /**
+     * @param limit the maximum number of rows to return after sorting or null
+     * if there is no limit. 
+     */
     public OrderedResultIterator(StatementContext context,
                                  ResultIterator delegate,
-                                 List<OrderingColumn> orderingColumns) throws SQLException {
+                                 List<OrderingColumn> orderingColumns,
+                                 Integer limit) throws SQLException {
+        this(delegate, orderingColumns, limit, 
+                context.getMemoryManager(), 
+                context.getConnection().getQueryServices().getConfig().getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES),
+                new File(context.getConnection().getQueryServices().getConfig().get(QueryServices.SPOOL_DIRECTORY_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY)));
+    }
+
+    /**
+     * @param limit the maximum number of rows to return after sorting or null
+     * if there is no limit. 
+     * @param mm memory manager from which the memory used for sorting is allocated
+     * @param thresholdBytes the maximum number of bytes to sort in memory before
+     * spilling sorted runs to disk
+     * @param spoolDirectory the directory in which the run files are created or null to use
+     * the default temporary-file directory
+     */
+    public OrderedResultIterator(ResultIterator delegate,
+                                 List<OrderingColumn> orderingColumns,
+                                 Integer limit,
+                                 MemoryManager mm,
+                                 int thresholdBytes,
+                                 File spoolDirectory) {
+        this(delegate, orderingColumns, limit, mm, thresholdBytes, DEFAULT_MIN_RUN_BYTES, DEFAULT_MAX_MERGE_FAN_IN, spoolDirectory);
+    }
+
+    /**
+     * @param minRunBytes the minimum number of bytes to sort in memory before spilling,
+     * which is allocated from mm regardless of thresholdBytes, so that a small memory
+     * grant doesn't spill a run file per row
+     * @param maxMergeFanIn the maximum number of run files to merge at once
+     */
+    OrderedResultIterator(ResultIterator delegate,
+                          List<OrderingColumn> orderingColumns,
+                          Integer limit,
+                          MemoryManager mm,
+                          int thresholdBytes,
+                          int minRunBytes,
+                          int maxMergeFanIn,
+                          File spoolDirectory) {
         checkArgument(!orderingColumns.isEmpty());
+        checkArgument(limit == null || limit >= 0);
+        checkArgument(minRunBytes > 0);
+        checkArgument(maxMergeFanIn >= 2);
         this.delegate = delegate;
         this.orderingColumns = orderingColumns;
+        this.limit = limit;
+        this.mm = mm;
+        this.thresholdBytes = thresholdBytes;
+        this.minRunBytes = minRunBytes;
+        this.maxMergeFanIn = maxMergeFanIn;
+        this.spoolDirectory = spoolDirectory;
+        this.comparator = buildComparator(orderingColumns);
     }
 
     /**
@@ -158,18 +225,47 @@ public class OrderedResultIterator implements ResultIterator {
         if (iterator == null) {
             init();
         }
-        if (!iterator.hasNext()) {
+        if (limit != null && count >= limit) {
+            return null;
+        }
+        ResultEntry entry;
+        try {
+            entry = iterator.next();
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
+        }
+        if (entry == null) {
             return null;
         }
-        Tuple result = iterator.next();
-        return result;
+        count++;
+        return entry.getResult();
+    }
+    
+    /**
+     * Estimate the number of bytes of memory held by an entry.
+     */
+    private static long sizeOf(ResultEntry entry) {
+        long size = SizedUtil.OBJECT_SIZE + SizedUtil.ARRAY_SIZE + SizedUtil.RESULT_SIZE;
+        for (ImmutableBytesWritable sortKey : entry.sortKeys) {
+            size += SizedUtil.POINTER_SIZE + (sortKey == null ? 0 : SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE);
+        }
+        Tuple result = entry.getResult();
+        for (int i = 0; i < result.size(); i++) {
+            size += SizedUtil.KEY_VALUE_SIZE + result.getValue(i).getLength();
+        }
+        return size;
     }
     
     private void init() throws SQLException {
         final int numSortKeys = orderingColumns.size();
         List<Expression> expressions = Lists.newArrayList(Collections2.transform(orderingColumns, TO_EXPRESSION));
-        // TODO: size
+        chunk = mm.allocate(minRunBytes, Math.max(minRunBytes, thresholdBytes));
+        // Keep only the top N entries in a heap whose head is the largest entry
+        PriorityQueue<ResultEntry> topEntries = limit == null ? null : new PriorityQueue<ResultEntry>(Math.max(1, Math.min(limit, 1000)), Collections.reverseOrder(comparator));
+        // Last entry of a spilled run of N entries. Entries that don't sort before it can't be in the top N.
+        ResultEntry cutoff = null;
         List<ResultEntry> entries = Lists.newArrayList();
+        long bytes = 0;
         try {
             for (Tuple result = delegate.next(); result != null; result = delegate.next()) {
                 int pos = 0;
@@ -180,26 +276,317 @@ public class OrderedResultIterator implements ResultIterator {
                     // set the sort key that failed to get evaluated with null
                     sortKeys[pos++] = evaluated ? sortKey : null;
                 }
-                entries.add(new ResultEntry(sortKeys, result));
+                ResultEntry entry = new ResultEntry(sortKeys, result);
+                if (topEntries != null) {
+                    if (limit == 0 || (cutoff != null && comparator.compare(entry, cutoff) >= 0)) {
+                        continue;
+                    }
+                    if (topEntries.size() < limit) {
+                        topEntries.add(entry);
+                        bytes += sizeOf(entry);
+                    } else if (comparator.compare(entry, topEntries.peek()) < 0) {
+                        bytes -= sizeOf(topEntries.poll());
+                        topEntries.add(entry);
+                        bytes += sizeOf(entry);
+                    }
+                    if (bytes > chunk.getSize()) {
+                        // Too big to keep in memory, so spill the top N entries seen so far as a run
+                        entries.addAll(topEntries);
+                        topEntries.clear();
+                        spill(entries);
+                        if (entries.size() == limit) {
+                            cutoff = entries.get(entries.size()-1);
+                        }
+                        entries.clear();
+                        bytes = 0;
+                    }
+                } else {
+                    entries.add(entry);
+                    bytes += sizeOf(entry);
+                    if (bytes > chunk.getSize()) {
+                        spill(entries);
+                        entries.clear();
+                        bytes = 0;
+                    }
+                }
+            }
+            if (topEntries != null) {
+                entries.addAll(topEntries);
             }
             
             // do in-memory sort
-            Collections.sort(entries, buildComparator(orderingColumns));
-            final Iterator<ResultEntry> iterator = entries.iterator();
-            this.iterator = newIterator(iterator);
+            Collections.sort(entries, comparator);
+            if (runFiles.isEmpty()) {
+                chunk.resize(bytes);
+            }
+            // Leave room to merge the in-memory entries with the spilled runs
+            while (runFiles.size() >= maxMergeFanIn) {
+                mergeRuns(numSortKeys);
+            }
+            // Spilled runs go first, since they contain the earlier rows
+            for (File file : runFiles) {
+                entryIterators.add(new SpilledEntryIterator(file, numSortKeys));
+            }
+            entryIterators.add(new InMemoryEntryIterator(entries.iterator()));
+            this.iterator = entryIterators.size() == 1 ? entryIterators.get(0) : new MergingEntryIterator(entryIterators, comparator);
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
         } finally {
             delegate.close();
         }
     }
+    
+    /**
+     * Merge each consecutive group of at most maxMergeFanIn run files into a single
+     * run file, keeping only the first N entries of each merged run if there's a limit.
+     */
+    private void mergeRuns(int numSortKeys) throws IOException {
+        List<File> mergedFiles = Lists.newArrayListWithExpectedSize((runFiles.size() + maxMergeFanIn - 1) / maxMergeFanIn);
+        boolean success = false;
+        try {
+            for (int i = 0; i < runFiles.size(); i += maxMergeFanIn) {
+                List<File> files = runFiles.subList(i, Math.min(i + maxMergeFanIn, runFiles.size()));
+                if (files.size() == 1) {
+                    mergedFiles.add(files.get(0));
+                    continue;
+                }
+                List<EntryIterator> iterators = Lists.newArrayListWithExpectedSize(files.size());
+                try {
+                    for (File file : files) {
+                        iterators.add(new SpilledEntryIterator(file, numSortKeys));
+                    }
+                    File file = File.createTempFile("ResultSorter", ".bin", spoolDirectory);
+                    mergedFiles.add(file);
+                    write(new MergingEntryIterator(iterators, comparator), file);
+                } finally {
+                    Closeables.closeAll(iterators);
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (File file : mergedFiles) {
+                    if (!runFiles.contains(file)) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+        for (File file : runFiles) {
+            if (!mergedFiles.contains(file)) {
+                file.delete();
+            }
+        }
+        runFiles.clear();
+        runFiles.addAll(mergedFiles);
+    }
+    
+    /**
+     * Sort the entries and write them to a new run file.
+     */
+    private void spill(List<ResultEntry> entries) throws IOException {
+        Collections.sort(entries, comparator);
+        File file = File.createTempFile("ResultSorter", ".bin", spoolDirectory);
+        runFiles.add(file);
+        write(new InMemoryEntryIterator(entries.iterator()), file);
+    }
+
+    /**
+     * Write the entries to the file, stopping after the limit if there is one.
+     */
+    private void write(EntryIterator iterator, File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            long count = 0;
+            for (ResultEntry entry = iterator.next(); entry != null && (limit == null || count < limit); entry = iterator.next(), count++) {
+                for (ImmutableBytesWritable sortKey : entry.sortKeys) {
+                    // Use zero to represent a null sort key
+                    if (sortKey == null) {
+                        WritableUtils.writeVInt(out, 0);
+                    } else {
+                        WritableUtils.writeVInt(out, sortKey.getLength() + 1);
+                        out.write(sortKey.get(), sortKey.getOffset(), sortKey.getLength());
+                    }
+                }
+                TupleUtil.write(entry.getResult(), out);
+            }
+        } finally {
+            out.close();
+        }
+    }
 
     @Override
-    public void close()  {
+    public void close() throws SQLException {
+        try {
+            Closeables.closeAll(entryIterators);
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
+        } finally {
+            entryIterators.clear();
+            for (File file : runFiles) {
+                file.delete();
+            }
+            runFiles.clear();
+            if (chunk != null) {
+                chunk.close();
+            }
+        }
     }
 
 
     @Override
     public void explain(List<String> planSteps) {
         delegate.explain(planSteps);
-        planSteps.add("CLIENT SORT BY " + orderingColumns.toString());
+        if (limit == null) {
+            planSteps.add("CLIENT SORT BY " + orderingColumns.toString());
+        } else {
+            planSteps.add("CLIENT TOP " + limit + " ROW" + (limit == 1 ? "" : "S") + " SORTED BY " + orderingColumns.toString());
+        }
+    }
+    
+    private static interface EntryIterator extends Closeable {
+        ResultEntry peek();
+        ResultEntry next() throws IOException;
+    }
+    
+    private static class InMemoryEntryIterator implements EntryIterator {
+        private final Iterator<ResultEntry> iterator;
+        private ResultEntry next;
+        
+        private InMemoryEntryIterator(Iterator<ResultEntry> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public ResultEntry peek() {
+            return next;
+        }
+
+        @Override
+        public ResultEntry next() {
+            ResultEntry current = next;
+            next = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+
+        @Override
+        public void close() {
+            next = null;
+        }
+    }
+    
+    private static class SpilledEntryIterator implements EntryIterator {
+        private final SpoolFileReader reader;
+        private final int numSortKeys;
+        private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        private ResultEntry next;
+        private boolean isClosed;
+        
+        private SpilledEntryIterator(File file, int numSortKeys) throws IOException {
+            this.reader = new SpoolFileReader(file);
+            this.numSortKeys = numSortKeys;
+            boolean success = false;
+            try {
+                advance();
+                success = true;
+            } finally {
+                if (!success) {
+                    close();
+                }
+            }
+        }
+        
+        private void advance() throws IOException {
+            next = null;
+            if (isClosed) {
+                return;
+            }
+            if (reader.isEOF()) {
+                close();
+                return;
+            }
+            // The sort keys and the row point into the slabs read by the reader instead of being copied
+            ImmutableBytesWritable[] sortKeys = new ImmutableBytesWritable[numSortKeys];
+            for (int i = 0; i < numSortKeys; i++) {
+                int length = reader.readVInt();
+                if (length > 0) {
+                    sortKeys[i] = new ImmutableBytesWritable();
+                    reader.read(length - 1, sortKeys[i]);
+                }
+            }
+            reader.read(reader.readVInt(), ptr);
+            next = new ResultEntry(sortKeys, TupleUtil.read(ptr.get(), ptr.getOffset(), ptr.getLength()));
+        }
+        
+        @Override
+        public ResultEntry peek() {
+            return next;
+        }
+
+        @Override
+        public ResultEntry next() throws IOException {
+            ResultEntry current = next;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!isClosed) {
+                isClosed = true;
+                reader.close();
+            }
+        }
+    }
+    
+    /**
+     * Merges sorted entry iterators. Ties are broken by the position of the
+     * iterator so that the sort remains stable across spilled runs.
+     */
+    private static class MergingEntryIterator implements EntryIterator {
+        private final PriorityQueue<Integer> queue;
+        private final List<EntryIterator> iterators;
+        
+        private MergingEntryIterator(final List<EntryIterator> iterators, final Comparator<ResultEntry> comparator) {
+            this.iterators = iterators;
+            this.queue = new PriorityQueue<Integer>(iterators.size(), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    int c = comparator.compare(iterators.get(i1).peek(), iterators.get(i2).peek());
+                    return c != 0 ? c : i1.compareTo(i2);
+                }
+            });
+            for (int i = 0; i < iterators.size(); i++) {
+                if (iterators.get(i).peek() != null) {
+                    queue.add(i);
+                }
+            }
+        }
+
+        @Override
+        public ResultEntry peek() {
+            Integer index = queue.peek();
+            return index == null ? null : iterators.get(index).peek();
+        }
+
+        @Override
+        public ResultEntry next() throws IOException {
+            Integer index = queue.poll();
+            if (index == null) {
+                return null;
+            }
+            EntryIterator iterator = iterators.get(index);
+            ResultEntry current = iterator.next();
+            if (iterator.peek() != null) {
+                queue.add(index);
+            }
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Closeables.closeAll(iterators);
+        }
     }
 }
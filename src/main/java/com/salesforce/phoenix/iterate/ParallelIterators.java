@@ -27,6 +27,8 @@
  ******************************************************************************/
 package com.salesforce.phoenix.iterate;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.*;
@@ -40,6 +42,7 @@ import org.apache.hadoop.hbase.util.Pair;
 import com.google.common.base.*;
 import com.google.common.collect.*;
 import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.exception.PhoenixIOException;
 import com.salesforce.phoenix.execute.RowCounter;
 import com.salesforce.phoenix.job.JobManager.JobCallable;
 import com.salesforce.phoenix.memory.MemoryManager;
@@ -60,6 +63,7 @@ import com.salesforce.phoenix.util.ScanUtil;
 public class ParallelIterators extends ExplainTable implements ResultIterators {
     private final RowCounter rowCounter;
     private final List<KeyRange> splits;
+    private final boolean isStreaming;
 
     private static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
     private static final int DEFAULT_SPOOL_THRESHOLD_BYTES = 1024 * 100; // 100K
@@ -72,8 +76,18 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
     };
 
     public ParallelIterators(StatementContext context, TableRef table, RowCounter rowCounter) throws SQLException {
+        this(context, table, rowCounter, false);
+    }
+
+    /**
+     * @param isStreaming if true, {@link #getIterators()} returns a single iterator that hands back
+     *  rows as they arrive from any region, without waiting for the regions to be completely scanned.
+     *  Only use when the order in which the rows are returned does not matter.
+     */
+    public ParallelIterators(StatementContext context, TableRef table, RowCounter rowCounter, boolean isStreaming) throws SQLException {
         super(context, table);
         this.rowCounter = rowCounter;
+        this.isStreaming = isStreaming;
         this.splits = getSplits(context.getConnection().getQueryServices(), table, context.getScan(), context.getConnection().getQueryServices().getAllTableRegions(table));
     }
 
@@ -84,8 +98,7 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
      * @param stopKey the upper bound of key range, inclusive
      * @return regions that intersect with the key range given by the startKey and stopKey
      */
-    // exposed for tests
-    static List<HRegionInfo> filterRegions(SortedSet<HRegionInfo> allTableRegions, byte[] startKey, byte[] stopKey) {
+    public static List<HRegionInfo> filterRegions(SortedSet<HRegionInfo> allTableRegions, byte[] startKey, byte[] stopKey) {
         Iterable<HRegionInfo> regions;
         final KeyRange keyRange = KeyRange.getKeyRange(startKey, true, stopKey, false);
         if (keyRange == KeyRange.EVERYTHING_RANGE) {
@@ -120,10 +133,15 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
 
     /**
      * Executes the scan in parallel across all regions, blocking until all scans are complete.
-     * @return the result iterators for the scan of each region
+     * In streaming mode, returns as soon as the scans have been started instead.
+     * @return the result iterators for the scan of each region, or a single iterator over
+     *  the rows of every region in streaming mode.
      */
     @Override
     public List<PeekingResultIterator> getIterators() throws SQLException {
+        if (isStreaming) {
+            return Collections.<PeekingResultIterator>singletonList(getStreamingIterator());
+        }
         boolean success = false;
         final ConnectionQueryServices services = context.getConnection().getQueryServices();
         Configuration config = services.getConfig();
@@ -133,8 +151,9 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
             List<Pair<byte[],Future<PeekingResultIterator>>> futures = new ArrayList<Pair<byte[],Future<PeekingResultIterator>>>(numSplits);
             try {
                 ExecutorService executor = services.getExecutor();
-                final MemoryManager mm = services.getMemoryManager();
+                final MemoryManager mm = context.getMemoryManager();
                 final int spoolThresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES);
+                final File spoolDirectory = new File(config.get(QueryServices.SPOOL_DIRECTORY_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY));
                 for (KeyRange split : splits) {
                     final Scan splitScan = new Scan(this.context.getScan());
                     // Intersect with existing start/stop key
@@ -146,7 +165,7 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
                             public PeekingResultIterator call() throws Exception {
                                 // TODO: different HTableInterfaces for each thread or the same is better?
                                 ResultIterator scanner = new TableResultIterator(context, table, splitScan);
-                                return new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter);
+                                return new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter, spoolDirectory);
                             }
     
                             /**
@@ -191,6 +210,62 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
         }
     }
 
+    private PeekingResultIterator getStreamingIterator() throws SQLException {
+        final ConnectionQueryServices services = context.getConnection().getQueryServices();
+        Configuration config = services.getConfig();
+        List<Scan> splitScans = new ArrayList<Scan>(splits.size());
+        try {
+            for (KeyRange split : splits) {
+                Scan splitScan = new Scan(this.context.getScan());
+                // Intersect with existing start/stop key
+                if (ScanUtil.intersectScanRange(splitScan, split.getLowerRange(), split.getUpperRange())) {
+                    splitScans.add(splitScan);
+                }
+            }
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
+        }
+        int queueSize = config.getInt(QueryServices.STREAMING_QUEUE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_STREAMING_QUEUE_SIZE);
+        int timeoutMs = config.getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, DEFAULT_THREAD_TIMEOUT_MS);
+        final StreamingResultIterator iterator = new StreamingResultIterator(splitScans.size(), queueSize, timeoutMs);
+        ExecutorService executor = services.getExecutor();
+        boolean success = false;
+        try {
+            for (final Scan splitScan : splitScans) {
+                executor.submit(new JobCallable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        ResultIterator scanner = null;
+                        try {
+                            if (!iterator.isClosed()) {
+                                scanner = new TableResultIterator(context, table, splitScan);
+                            }
+                        } catch (Throwable t) {
+                            iterator.fail(t);
+                        } finally {
+                            iterator.stream(scanner);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public Object getJobId() {
+                        return ParallelIterators.this;
+                    }
+                });
+            }
+            success = true;
+            return iterator;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        } finally {
+            if (!success) {
+                iterator.close();
+            }
+        }
+    }
+
     @Override
     public int size() {
         return this.splits.size();
@@ -201,5 +276,8 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
         StringBuilder buf = new StringBuilder();
         buf.append("CLIENT PARALLEL " + size() + "-WAY ");
         explain(buf.toString(),planSteps);
+        if (isStreaming) {
+            StreamingResultIterator.explainStreaming(planSteps);
+        }
     }
 }
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.exception.*;
+import com.salesforce.phoenix.execute.RowCounter;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.query.*;
+import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ScanUtil;
+
+
+/**
+ * 
+ * Result iterator that scans the splits of a table concurrently while returning
+ * the rows in scan order. Each split scan fetches up to a fixed number of rows
+ * ahead of the client and then gives up its thread until the client has consumed
+ * some of them, so that an open result set doesn't hold on to threads of the
+ * query executor. Split scans are only started as the client advances: when
+ * there is a row limit, a single split is scanned ahead at first and the number
+ * doubles each time the client moves to the next split, so that a query that
+ * stops after a few rows doesn't scan the whole table. Without a limit, as many
+ * splits as the target query concurrency are scanned ahead. If the executor
+ * has no room for a scan, the rows of the current split are fetched from the
+ * client thread instead.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class PrefetchingResultIterator extends ExplainTable implements PeekingResultIterator {
+    // Placed on the queue of a split when all of its rows have been queued
+    private static final Tuple END_OF_SPLIT = new ResultTuple();
+    // How often the client checks on a split scan while waiting for its rows
+    private static final long POLL_MS = 100;
+    private static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
+
+    private final List<KeyRange> splits;
+    private final long limit;
+    private final RowCounter rowCounter;
+    private final int prefetchRows;
+    private final int maxScansAhead;
+    private final long timeoutMs;
+    private final List<SplitScan> splitScans;
+    private int scansAhead;
+    private int currentIndex;
+    private long count;
+    private volatile boolean isClosed;
+    private boolean hasNext;
+    private Tuple next;
+    
+    private class SplitScan implements JobCallable<Void> {
+        private final Scan scan;
+        private final BlockingQueue<Tuple> queue;
+        // Set while no thread is fetching rows for the split and it has more rows to fetch
+        private final AtomicBoolean isParked = new AtomicBoolean(true);
+        private ResultIterator scanner;
+        private Tuple pending;
+        private volatile Throwable failure;
+        
+        private SplitScan(Scan scan) {
+            this.scan = scan;
+            this.queue = new ArrayBlockingQueue<Tuple>(prefetchRows + 1);
+        }
+        
+        @Override
+        public Void call() {
+            fill();
+            return null;
+        }
+
+        /**
+         * Fetches rows onto the queue until it is full, the split has been scanned,
+         * or the iterator is closed. Only called by the thread that unparked the scan.
+         */
+        private void fill() {
+            try {
+                while (!isClosed) {
+                    if (pending == null) {
+                        if (scanner == null) {
+                            scanner = new TableResultIterator(context, table, scan);
+                        }
+                        pending = scanner.next();
+                        if (pending == null) {
+                            closeScanner();
+                            pending = END_OF_SPLIT;
+                        }
+                    }
+                    if (!queue.offer(pending)) {
+                        park();
+                        return;
+                    }
+                    if (pending == END_OF_SPLIT) {
+                        pending = null;
+                        return;
+                    }
+                    pending = null;
+                }
+                closeScanner();
+            } catch (Throwable t) {
+                failure = t;
+                try {
+                    closeScanner();
+                } catch (Throwable ignore) {
+                }
+            }
+        }
+        
+        private void park() throws SQLException {
+            isParked.set(true);
+            // If the iterator was closed before the scan was parked, it is up to us to close the scanner
+            if (isClosed && isParked.compareAndSet(true, false)) {
+                closeScanner();
+            }
+        }
+        
+        private void closeScanner() throws SQLException {
+            if (scanner != null) {
+                try {
+                    scanner.close();
+                } finally {
+                    scanner = null;
+                }
+            }
+        }
+
+        /**
+         * Defines the grouping for round robin behavior. All threads spawned to process
+         * this scan will be grouped together and time sliced with other simultaneously
+         * executing parallel scans.
+         */
+        @Override
+        public Object getJobId() {
+            return PrefetchingResultIterator.this;
+        }
+    }
+    
+    /**
+     * @param limit the maximum number of rows to return, as calculated by the rowCounter,
+     *  or null if there is no limit.
+     */
+    public PrefetchingResultIterator(StatementContext context, TableRef table, Integer limit, RowCounter rowCounter) throws SQLException {
+        super(context, table);
+        ConnectionQueryServices services = context.getConnection().getQueryServices();
+        Configuration config = services.getConfig();
+        this.limit = limit == null ? Long.MAX_VALUE : limit;
+        this.rowCounter = rowCounter;
+        this.prefetchRows = Math.max(1, config.getInt(QueryServices.SCAN_PREFETCH_ROWS_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_PREFETCH_ROWS));
+        this.timeoutMs = config.getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, DEFAULT_THREAD_TIMEOUT_MS);
+        List<KeyRange> splits = new ArrayList<KeyRange>(ParallelIterators.getSplits(services, table, context.getScan(), services.getAllTableRegions(table)));
+        // The splits come back grouped by region server, so put them back in scan order
+        Collections.sort(splits, new Comparator<KeyRange>() {
+            @Override
+            public int compare(KeyRange o1, KeyRange o2) {
+                return Bytes.compareTo(o1.getLowerRange(), o2.getLowerRange());
+            }
+        });
+        this.splits = splits;
+        this.splitScans = new ArrayList<SplitScan>(splits.size());
+        int targetConcurrency = config.getInt(QueryServices.TARGET_QUERY_CONCURRENCY_ATTRIB, QueryServicesOptions.DEFAULT_TARGET_QUERY_CONCURRENCY);
+        this.maxScansAhead = Math.max(1, targetConcurrency);
+        this.scansAhead = limit == null ? maxScansAhead : 1;
+    }
+
+    public List<KeyRange> getSplits() {
+        return splits;
+    }
+    
+    /**
+     * Starts the scans of the splits within the current window, creating the
+     * scan of each split from the statement scan when it is started.
+     */
+    private void startSplitScans() throws SQLException {
+        int endIndex = Math.min(splits.size(), currentIndex + scansAhead);
+        try {
+            while (splitScans.size() < endIndex) {
+                KeyRange split = splits.get(splitScans.size());
+                Scan splitScan = new Scan(context.getScan());
+                SplitScan splitScanJob = new SplitScan(splitScan);
+                splitScans.add(splitScanJob);
+                // Intersect with existing start/stop key
+                if (ScanUtil.intersectScanRange(splitScan, split.getLowerRange(), split.getUpperRange())) {
+                    resume(splitScanJob, splitScans.size() - 1 == currentIndex);
+                } else {
+                    splitScanJob.isParked.set(false);
+                    splitScanJob.queue.add(END_OF_SPLIT);
+                }
+            }
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
+        }
+    }
+    
+    /**
+     * Lets a parked split scan fetch more rows.
+     * @param isCurrent true if the client is waiting on the rows of the split,
+     *  in which case they're fetched from the client thread if the executor
+     *  has no room for the scan.
+     */
+    private void resume(SplitScan splitScan, boolean isCurrent) {
+        if (!splitScan.isParked.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            context.getConnection().getQueryServices().getExecutor().submit(splitScan);
+        } catch (RejectedExecutionException e) {
+            if (isCurrent) {
+                splitScan.fill();
+            } else {
+                // Try again once the client gets to the split
+                splitScan.isParked.set(true);
+            }
+        }
+    }
+    
+    private Tuple take() throws SQLException {
+        if (count >= limit) {
+            return null;
+        }
+        try {
+            long waitStart = System.currentTimeMillis();
+            while (currentIndex < splits.size()) {
+                startSplitScans();
+                SplitScan splitScan = splitScans.get(currentIndex);
+                Tuple tuple = splitScan.queue.poll();
+                if (tuple == null) {
+                    if (splitScan.failure != null) {
+                        throw new SQLException(splitScan.failure);
+                    }
+                    resume(splitScan, true);
+                    tuple = splitScan.queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                    if (tuple == null) {
+                        if (System.currentTimeMillis() - waitStart >= timeoutMs) {
+                            throw new SQLException(new TimeoutException("No rows received within " + timeoutMs + " ms"));
+                        }
+                        continue;
+                    }
+                }
+                if (tuple != END_OF_SPLIT) {
+                    // Let the split fetch more rows once half of its prefetched rows have been consumed
+                    if (splitScan.queue.size() <= prefetchRows / 2) {
+                        resume(splitScan, true);
+                    }
+                    count += rowCounter.calculate(tuple);
+                    return tuple;
+                }
+                // Let go of the split and scan further ahead, now that the client is moving through the splits
+                splitScans.set(currentIndex++, null);
+                scansAhead = Math.min(maxScansAhead, scansAhead * 2);
+                waitStart = System.currentTimeMillis();
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION)
+                .setRootCause(e).build().buildException();
+        }
+    }
+    
+    @Override
+    public Tuple peek() throws SQLException {
+        // Only wait for the next row when it's asked for
+        if (!hasNext) {
+            next = take();
+            hasNext = true;
+        }
+        return next;
+    }
+
+    @Override
+    public Tuple next() throws SQLException {
+        Tuple current = peek();
+        hasNext = current == null;
+        return current;
+    }
+
+    /**
+     * Stops the split scans. The scanners of parked split scans are closed here,
+     * while running split scans close their own scanner when they notice.
+     */
+    @Override
+    public void close() throws SQLException {
+        isClosed = true;
+        next = null;
+        hasNext = true;
+        SQLException exception = null;
+        for (SplitScan splitScan : splitScans) {
+            if (splitScan != null) {
+                splitScan.queue.clear();
+                if (splitScan.isParked.compareAndSet(true, false)) {
+                    try {
+                        splitScan.closeScanner();
+                    } catch (SQLException e) {
+                        if (exception == null) {
+                            exception = e;
+                        }
+                    }
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        StringBuilder buf = new StringBuilder();
+        buf.append("CLIENT PARALLEL " + splits.size() + "-WAY ");
+        if (rowCounter != RowCounter.UNLIMIT_ROW_COUNTER) {
+            buf.append(limit + " ROW LIMIT ");
+        }
+        explain(buf.toString(),planSteps);
+    }
+}
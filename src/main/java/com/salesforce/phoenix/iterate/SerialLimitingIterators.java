@@ -27,23 +27,30 @@
  ******************************************************************************/
 package com.salesforce.phoenix.iterate;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.PageFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 import com.google.common.collect.Lists;
 import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.execute.RowCounter;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
 import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.query.ConnectionQueryServices;
 import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.TableRef;
 import com.salesforce.phoenix.util.SQLCloseables;
 import com.salesforce.phoenix.util.ScanUtil;
@@ -51,25 +58,40 @@ import com.salesforce.phoenix.util.ScanUtil;
 
 /**
  * 
- * Class that executes scans serially for each region in descending order.  Used
- * for scans that have a row count limit and in the most common case are looking
- * for newer rows.
+ * Class that executes scans for each region in order until a row count limit
+ * is reached. Used for scans that have a row count limit and in the most common
+ * case are looking for newer rows.
+ * <p>
+ * The regions are scanned in waves: the first wave scans a single region, and
+ * each wave after that scans twice as many regions in parallel, up to
+ * phoenix.query.maxSpeculativeRegionScans regions. Each region in a wave is
+ * limited to the rows still missing when the wave started, and is scanned
+ * again if it found more than are missing by its turn. Once the limit
+ * is reached, the scans still outstanding are cancelled. With a maximum of
+ * one, the regions are scanned strictly one at a time.
  *
  * @author jtaylor
  * @since 0.1
  */
 public class SerialLimitingIterators extends ExplainTable implements ResultIterators {
+    private static final Logger logger = LoggerFactory.getLogger(SerialLimitingIterators.class);
     private static final int DEFAULT_SPOOL_THRESHOLD_BYTES = 1024 * 100; // 100K
+    private static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
 
     private final long limit;
     private final RowCounter rowCounter;
     private final List<Scan> regionScans;
+    private final int maxSpeculativeScans;
+    private int regionsScanned;
+    private int regionsCancelled;
 
     
     public SerialLimitingIterators(StatementContext context, TableRef table, long limit, RowCounter rowCounter) throws SQLException {
         super(context, table);
         this.limit = limit;
         this.rowCounter = rowCounter;
+        this.maxSpeculativeScans = Math.max(1, context.getConnection().getQueryServices().getConfig().getInt(
+                QueryServices.MAX_SPECULATIVE_REGION_SCANS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SPECULATIVE_REGION_SCANS));
         Set<HRegionInfo> regions = context.getConnection().getQueryServices().getAllTableRegions(this.table);
         regionScans = Lists.newArrayListWithExpectedSize(regions.size());
         for (HRegionInfo region : regions) {
@@ -90,31 +112,140 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
     public List<PeekingResultIterator> getIterators() throws SQLException {
         ConnectionQueryServices services = context.getConnection().getQueryServices();
         Configuration config = services.getConfig();
+        ExecutorService executor = services.getExecutor();
         List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(regionScans.size());
-        MemoryManager mm = services.getMemoryManager();
-        int spoolThresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES);
+        int timeoutMs = config.getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, DEFAULT_THREAD_TIMEOUT_MS);
+        // Set once the limit is reached, so that scans finishing after that clean up after themselves
+        AtomicBoolean isDone = new AtomicBoolean();
+        List<Future<SpoolingResultIterator>> futures = new ArrayList<Future<SpoolingResultIterator>>(maxSpeculativeScans);
         boolean success = false;
         long rowCount = 0;
+        int index = 0;
+        int waveSize = 1;
+        regionsScanned = 0;
+        regionsCancelled = 0;
         try {
-            for (Scan regionScan : regionScans) {
-                ScanUtil.andFilter(regionScan, new PageFilter(limit - rowCount));
-                ResultIterator scanner = new TableResultIterator(context, this.table, regionScan);
-                SpoolingResultIterator iterator = new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter);
-                rowCount += iterator.getRowCount();
-                iterators.add(iterator);
-                assert(rowCount <= limit);
-                if (rowCount == limit) {
-                    break;
+            while (index < regionScans.size() && rowCount < limit) {
+                int waveEnd = Math.min(regionScans.size(), index + waveSize);
+                for (int i = index; i < waveEnd; i++) {
+                    JobCallable<SpoolingResultIterator> job = newRegionJob(regionScans.get(i), limit - rowCount, isDone);
+                    Future<SpoolingResultIterator> future;
+                    try {
+                        future = executor.submit(job);
+                    } catch (RejectedExecutionException e) {
+                        // No room to scan ahead, so scan the region from this thread
+                        FutureTask<SpoolingResultIterator> task = new FutureTask<SpoolingResultIterator>(job);
+                        task.run();
+                        future = task;
+                    }
+                    futures.add(future);
                 }
+                // Take the regions in order, so that the rows are the same as when scanning them one by one
+                Iterator<Future<SpoolingResultIterator>> futureIterator = futures.iterator();
+                for (int i = index; futureIterator.hasNext() && rowCount < limit; i++) {
+                    SpoolingResultIterator iterator = futureIterator.next().get(timeoutMs, TimeUnit.MILLISECONDS);
+                    futureIterator.remove();
+                    regionsScanned++;
+                    if (rowCount + iterator.getRowCount() > limit) {
+                        // The region was limited to the rows missing when its wave started, which is more
+                        // than are missing now. The rows cannot be trimmed on the client, as an aggregate
+                        // row stands for all the rows scanned to produce it, so scan the region again.
+                        iterator.close();
+                        iterator = newRegionJob(regionScans.get(i), limit - rowCount, isDone).call();
+                    }
+                    iterators.add(iterator);
+                    rowCount += iterator.getRowCount();
+                }
+                index = waveEnd;
+                waveSize = Math.min(maxSpeculativeScans, waveSize * 2);
             }
             success = true;
             return iterators;
+        } catch (Exception e) {
+            throw new SQLException(e);
         } finally {
+            isDone.set(true);
+            closeOutstanding(futures);
             if (!success) {
                 SQLCloseables.closeAllQuietly(iterators);
             }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Scanned " + regionsScanned + " regions and cancelled " + regionsCancelled + " of " + regionScans.size() + " regions for " + limit + " row limit");
+            }
         }
     }
+    
+    private JobCallable<SpoolingResultIterator> newRegionJob(Scan scan, long pageSize, final AtomicBoolean isDone) throws IOException {
+        Configuration config = context.getConnection().getQueryServices().getConfig();
+        final MemoryManager mm = context.getMemoryManager();
+        final int spoolThresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES);
+        final File spoolDirectory = new File(config.get(QueryServices.SPOOL_DIRECTORY_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY));
+        // Copy the scan so that the page filters of earlier calls do not pile up on it
+        final Scan regionScan = new Scan(scan);
+        ScanUtil.andFilter(regionScan, new PageFilter(pageSize));
+        return new JobCallable<SpoolingResultIterator>() {
+
+            @Override
+            public SpoolingResultIterator call() throws Exception {
+                if (isDone.get()) {
+                    return null;
+                }
+                ResultIterator scanner = new TableResultIterator(context, table, regionScan);
+                SpoolingResultIterator iterator = new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter, spoolDirectory);
+                if (isDone.get()) {
+                    iterator.close();
+                    return null;
+                }
+                return iterator;
+            }
+
+            /**
+             * Defines the grouping for round robin behavior.  All threads spawned to process
+             * this scan will be grouped together and time sliced with other simultaneously
+             * executing parallel scans.
+             */
+            @Override
+            public Object getJobId() {
+                return SerialLimitingIterators.this;
+            }
+        };
+    }
+    
+    /**
+     * Cancels the region scans that are no longer needed, closing the results
+     * of the ones that finished before they could be cancelled.
+     */
+    private void closeOutstanding(List<Future<SpoolingResultIterator>> futures) {
+        for (Future<SpoolingResultIterator> future : futures) {
+            regionsCancelled++;
+            if (!future.cancel(false)) {
+                try {
+                    SpoolingResultIterator iterator = future.get();
+                    if (iterator != null) {
+                        iterator.close();
+                    }
+                } catch (Exception e) {
+                    // Nothing to clean up if the scan failed
+                }
+            }
+        }
+        futures.clear();
+    }
+    
+    /**
+     * @return the number of regions whose rows were used by the last call to {@link #getIterators()}
+     */
+    public int getRegionsScanned() {
+        return regionsScanned;
+    }
+
+    /**
+     * @return the number of region scans started by the last call to {@link #getIterators()}
+     * that were cancelled once the limit was reached
+     */
+    public int getRegionsCancelled() {
+        return regionsCancelled;
+    }
 
     @Override
     public int size() {
@@ -125,7 +256,7 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
     @Override
     public void explain(List<String> planSteps) {
         StringBuilder buf = new StringBuilder();
-        buf.append("CLIENT SERIAL " + limit + " ROW LIMIT ");
+        buf.append("CLIENT " + (maxSpeculativeScans == 1 ? "SERIAL " : "SPECULATIVE ") + limit + " ROW LIMIT ");
         explain(buf.toString(),planSteps);
     }
 }
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+/**
+ * 
+ * Sequential reader of a file spooled to disk by the client. The file is read with
+ * positional {@link FileChannel} reads straight into heap slabs, and callers are
+ * handed pointers into the slab rather than copies. A new slab is started, rather than
+ * an old one reused, when one runs out, so that bytes previously handed out are never
+ * overwritten. Since nothing is memory mapped, closing the reader releases everything
+ * but the slabs still referenced by the caller.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+class SpoolFileReader implements Closeable {
+    private static final int SLAB_BYTES = 64 * 1024;
+    private final FileChannel channel;
+    private final long fileSize;
+    private long filePosition;
+    private byte[] slab = ByteUtil.EMPTY_BYTE_ARRAY;
+    private int slabOffset;
+    private int slabLength;
+    
+    SpoolFileReader(File file) throws IOException {
+        this.channel = new FileInputStream(file).getChannel();
+        this.fileSize = channel.size();
+    }
+    
+    /**
+     * @return true if everything in the file has been read
+     */
+    boolean isEOF() {
+        return slabOffset == slabLength && filePosition == fileSize;
+    }
+    
+    int readVInt() throws IOException {
+        fill(1);
+        fill(WritableUtils.decodeVIntSize(slab[slabOffset]));
+        int value = ByteUtil.vintFromBytes(slab, slabOffset);
+        slabOffset += WritableUtils.getVIntSize(value);
+        return value;
+    }
+    
+    /**
+     * Point ptr at the next length bytes of the file. The bytes remain valid after
+     * subsequent reads.
+     */
+    void read(int length, ImmutableBytesWritable ptr) throws IOException {
+        fill(length);
+        ptr.set(slab, slabOffset, length);
+        slabOffset += length;
+    }
+    
+    /**
+     * Make sure that at least length unread bytes are in the current slab.
+     * @throws EOFException if the end of the file is reached first
+     */
+    private void fill(int length) throws IOException {
+        int remaining = slabLength - slabOffset;
+        if (remaining >= length) {
+            return;
+        }
+        int size = (int)Math.min(SLAB_BYTES, remaining + fileSize - filePosition);
+        byte[] newSlab = new byte[Math.max(size, length)];
+        System.arraycopy(slab, slabOffset, newSlab, 0, remaining);
+        ByteBuffer buf = ByteBuffer.wrap(newSlab, remaining, newSlab.length - remaining);
+        while (buf.hasRemaining() && filePosition < fileSize) {
+            int bytesRead = channel.read(buf, filePosition);
+            if (bytesRead < 0) {
+                break;
+            }
+            filePosition += bytesRead;
+        }
+        slab = newSlab;
+        slabOffset = 0;
+        slabLength = buf.position();
+        if (slabLength < length) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        slab = ByteUtil.EMPTY_BYTE_ARRAY;
+        slabOffset = slabLength = 0;
+        channel.close();
+    }
+}
@@ -28,11 +28,14 @@
 package com.salesforce.phoenix.iterate;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.sql.SQLException;
 import java.util.List;
 
-import org.apache.commons.io.output.DeferredFileOutputStream;
-import org.apache.hadoop.hbase.client.Result;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.ThresholdingOutputStream;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.WritableUtils;
 
@@ -40,7 +43,6 @@ import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.execute.RowCounter;
 import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
-import com.salesforce.phoenix.schema.tuple.ResultTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.ByteUtil;
 import com.salesforce.phoenix.util.TupleUtil;
@@ -51,6 +53,8 @@ import com.salesforce.phoenix.util.TupleUtil;
  * 
  * Result iterator that spools the results of a scan to disk once an in-memory threshold has been reached.
  * If the in-memory threshold is not reached, the results are held in memory with no disk writing perfomed.
+ * The spool file is written through a {@link FileChannel} and read back through positional reads
+ * of the same, with the returned tuples pointing directly into the buffers read into.
  *
  * @author jtaylor
  * @since 0.1
@@ -70,15 +74,29 @@ public class SpoolingResultIterator implements PeekingResultIterator {
      * @throws SQLException
      */
     public SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes, RowCounter rowCounter) throws SQLException {
+        this(scanner, mm, thresholdBytes, rowCounter, null);
+    }
+
+    /**
+     * Create a result iterator by iterating through the results of a scan, spooling them to disk once
+     * a threshold has been reached. The scanner passed in is closed prior to returning.
+     * @param scanner the results of a table scan
+     * @param mm memory manager tracking memory usage across threads.
+     * @param thresholdBytes the requested threshold.  Will be dialed down if memory usage (as determined by
+     *  the memory manager) is exceeded.
+     * @param rowCounter 
+     * @param spoolDirectory the directory in which the spool file is created or null to use the
+     *  default temporary-file directory
+     * @throws SQLException
+     */
+    public SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes, RowCounter rowCounter, File spoolDirectory) throws SQLException {
         boolean success = false;
-        boolean usedOnDiskIterator = false;
         final MemoryChunk chunk = mm.allocate(0, thresholdBytes);
-        File tempFile = null;
+        DeferredFileChannelOutputStream spoolTo = null;
         try {
             // Can't be bigger than int, since it's the max of the above allocation
             int size = (int)chunk.getSize();
-            tempFile = File.createTempFile("ResultSpooler",".bin");
-            DeferredFileOutputStream spoolTo = new DeferredFileOutputStream(size, tempFile) {
+            spoolTo = new DeferredFileChannelOutputStream(size, spoolDirectory) {
                 @Override
                 protected void thresholdReached() throws IOException {
                     super.thresholdReached();
@@ -86,20 +104,17 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 }
             };
             DataOutputStream out = new DataOutputStream(spoolTo);
-            int maxSize = 0;
             for (Tuple result = scanner.next(); result != null; result = scanner.next()) {
-                int length = TupleUtil.write(result, out);
-                maxSize = Math.max(length, maxSize);
+                TupleUtil.write(result, out);
                 rowCount += rowCounter.calculate(result);
             }
-            spoolTo.close();
+            out.close();
             if (spoolTo.isInMemory()) {
                 byte[] data = spoolTo.getData();
                 chunk.resize(data.length);
                 spoolFrom = new InMemoryResultIterator(data, chunk);
             } else {
-                spoolFrom = new OnDiskResultIterator(maxSize, spoolTo.getFile());
-                usedOnDiskIterator = true;
+                spoolFrom = new OnDiskResultIterator(spoolTo.getFile());
             }
             success = true;
         } catch (IOException e) {
@@ -109,8 +124,8 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 scanner.close();
             } finally {
                 try {
-                    if (!usedOnDiskIterator) {
-                        tempFile.delete();
+                    if (!success && spoolTo != null) {
+                        spoolTo.deleteFile();
                     }
                 } finally {
                     if (!success) {
@@ -140,6 +155,63 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         spoolFrom.close();
     }
 
+    /**
+     * 
+     * Output stream that holds its data in memory until a threshold is reached, after
+     * which all of it is written to a file through a {@link FileChannel}. Unlike
+     * {@link org.apache.commons.io.output.DeferredFileOutputStream}, the file is
+     * only created if the threshold is reached.
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    private static class DeferredFileChannelOutputStream extends ThresholdingOutputStream {
+        private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+        private final File directory;
+        private ByteArrayOutputStream memoryOutputStream = new ByteArrayOutputStream();
+        private OutputStream currentOutputStream = memoryOutputStream;
+        private File file;
+        
+        private DeferredFileChannelOutputStream(int threshold, File directory) {
+            super(threshold);
+            this.directory = directory;
+        }
+
+        @Override
+        protected OutputStream getStream() throws IOException {
+            return currentOutputStream;
+        }
+
+        @Override
+        protected void thresholdReached() throws IOException {
+            file = File.createTempFile("ResultSpooler", ".bin", directory);
+            FileChannel channel = new FileOutputStream(file).getChannel();
+            OutputStream fileOutputStream = new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE);
+            memoryOutputStream.writeTo(fileOutputStream);
+            memoryOutputStream = null;
+            currentOutputStream = fileOutputStream;
+        }
+        
+        public boolean isInMemory() {
+            return !isThresholdExceeded();
+        }
+        
+        public byte[] getData() {
+            return memoryOutputStream.toByteArray();
+        }
+        
+        public File getFile() {
+            return file;
+        }
+        
+        public void deleteFile() {
+            if (file != null) {
+                IOUtils.closeQuietly(this);
+                file.delete();
+            }
+        }
+    }
+    
     /**
      * 
      * Backing result iterator if it was not necessary to spool results to disk.
@@ -165,9 +237,8 @@ public class SpoolingResultIterator implements PeekingResultIterator {
             }
             int resultSize = ByteUtil.vintFromBytes(bytes, offset);
             offset += WritableUtils.getVIntSize(resultSize);
-            ImmutableBytesWritable value = new ImmutableBytesWritable(bytes,offset,resultSize);
+            Tuple result = TupleUtil.read(bytes, offset, resultSize);
             offset += resultSize;
-            Tuple result = new ResultTuple(new Result(value));
             return next = result;
         }
         
@@ -195,31 +266,27 @@ public class SpoolingResultIterator implements PeekingResultIterator {
     
     /**
      * 
-     * Backing result iterator if results were spooled to disk
+     * Backing result iterator if results were spooled to disk. The file is read through a
+     * {@link SpoolFileReader}, so the returned tuples point into the slabs it reads into
+     * rather than into copies of each row.
      *
      * @author jtaylor
      * @since 0.1
      */
     private static class OnDiskResultIterator implements PeekingResultIterator {
         private final File file;
-        private DataInputStream spoolFrom;
+        private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        private SpoolFileReader reader;
         private Tuple next;
-        private int maxSize;
-        private int bufferIndex;
-        private byte[][] buffers = new byte[2][];
         private boolean isClosed;
         
-        private OnDiskResultIterator (int maxSize, File file) {
+        private OnDiskResultIterator (File file) {
             this.file = file;
-            this.maxSize = maxSize;
         }
         
         private synchronized void init() throws IOException {
-            if (spoolFrom == null) {
-                spoolFrom = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-                // We need two so that we can have a current and a next without them stomping on each other
-                buffers[0] = new byte[maxSize];
-                buffers[1] = new byte[maxSize];
+            if (reader == null) {
+                reader = new SpoolFileReader(file);
                 advance();
             }
         }
@@ -228,8 +295,8 @@ public class SpoolingResultIterator implements PeekingResultIterator {
             next = null;
             isClosed = true;
             try {
-                if (spoolFrom != null) {
-                    spoolFrom.close();
+                if (reader != null) {
+                    reader.close();
                 }
             } finally {
                 file.delete();
@@ -240,28 +307,13 @@ public class SpoolingResultIterator implements PeekingResultIterator {
             if (isClosed) {
                 return next;
             }
-            int length;
-            try {
-                length = WritableUtils.readVInt(spoolFrom);
-            } catch (EOFException e) {
+            if (reader.isEOF()) {
                 reachedEnd();
                 return next;
             }
-            int totalBytesRead = 0;
-            int offset = 0;
-            // Alternate between buffers so that the current one is not affected by advancing
-            bufferIndex = (bufferIndex + 1) % 2;
-            byte[] buffer = buffers [bufferIndex];
-            while(totalBytesRead < length) {
-                int bytesRead = spoolFrom.read(buffer, offset, length);
-                if (bytesRead == -1) {
-                    reachedEnd();
-                    return next;
-                }
-                offset += bytesRead;
-                totalBytesRead += bytesRead;
-            }
-            next = new ResultTuple(new Result(new ImmutableBytesWritable(buffer,0,length)));
+            int length = reader.readVInt();
+            reader.read(length, ptr);
+            next = TupleUtil.read(ptr.get(), ptr.getOffset(), ptr.getLength());
             return next;
         }
         
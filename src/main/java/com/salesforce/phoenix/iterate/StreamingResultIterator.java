@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.*;
+
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+/**
+ * 
+ * Result iterator that hands back rows from a set of concurrently running scans
+ * as they arrive, rather than waiting for each scan to complete. Each producer
+ * thread calls {@link #stream(ResultIterator)} with the results of its scan. The
+ * rows are exchanged through a bounded queue, so producers block once the
+ * consumer falls behind by more than the queue size. Rows are returned in
+ * the order in which they arrive, so this may only be used when the order in
+ * which the rows are returned does not matter.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class StreamingResultIterator implements PeekingResultIterator {
+    // Placed on the queue by each producer when it is done, whether or not it succeeded
+    private static final Tuple END_OF_STREAM = new ResultTuple();
+    // How often a blocked producer checks whether the consumer has closed the iterator
+    private static final long PRODUCER_WAIT_MS = 100;
+    
+    private final BlockingQueue<Tuple> queue;
+    private final long timeoutMs;
+    private int activeProducers;
+    private volatile boolean isClosed;
+    private volatile Throwable failure;
+    private boolean hasNext;
+    private Tuple next;
+    
+    /**
+     * @param producerCount the number of times {@link #stream(ResultIterator)} will be called
+     * @param queueSize the maximum number of rows buffered between the producers and the consumer
+     * @param timeoutMs the maximum number of milliseconds the consumer will wait for the next row
+     */
+    public StreamingResultIterator(int producerCount, int queueSize, long timeoutMs) {
+        this.queue = new ArrayBlockingQueue<Tuple>(Math.max(1, queueSize));
+        this.activeProducers = producerCount;
+        this.timeoutMs = timeoutMs;
+    }
+    
+    public boolean isClosed() {
+        return isClosed;
+    }
+    
+    /**
+     * Hands the rows of the given scanner to the consumer, blocking while the
+     * queue is full. The scanner is closed prior to returning. Any failure
+     * is rethrown to the consumer.
+     * @param scanner the results of a scan or null if the scan could not be started
+     */
+    public void stream(ResultIterator scanner) {
+        try {
+            if (scanner != null) {
+                for (Tuple tuple = scanner.next(); tuple != null && !isClosed; tuple = scanner.next()) {
+                    put(tuple);
+                }
+            }
+        } catch (Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        } finally {
+            try {
+                if (scanner != null) {
+                    scanner.close();
+                }
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+            } finally {
+                try {
+                    put(END_OF_STREAM);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Records a failure that occurred while starting a scan. The failure is
+     * rethrown to the consumer. {@link #stream(ResultIterator)} must still be called.
+     */
+    public void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+    
+    private void put(Tuple tuple) throws InterruptedException {
+        while (!isClosed && !queue.offer(tuple, PRODUCER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            // Wait for the consumer to make room or go away
+        }
+    }
+    
+    private Tuple take() throws SQLException {
+        try {
+            while (activeProducers > 0) {
+                Tuple tuple = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+                if (tuple == null) {
+                    throw new SQLException(new TimeoutException("No rows received within " + timeoutMs + " ms"));
+                }
+                if (tuple != END_OF_STREAM) {
+                    return tuple;
+                }
+                activeProducers--;
+                if (failure != null) {
+                    throw new SQLException(failure);
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION)
+                .setRootCause(e).build().buildException();
+        }
+    }
+    
+    @Override
+    public Tuple peek() throws SQLException {
+        // Only wait for the next row when it's asked for
+        if (!hasNext) {
+            next = take();
+            hasNext = true;
+        }
+        return next;
+    }
+
+    @Override
+    public Tuple next() throws SQLException {
+        Tuple current = peek();
+        hasNext = current == null;
+        return current;
+    }
+
+    /**
+     * Stops the producers. Producers blocked on a full queue will notice within
+     * {@link #PRODUCER_WAIT_MS} and close their scanners.
+     */
+    @Override
+    public void close() throws SQLException {
+        isClosed = true;
+        next = null;
+        hasNext = true;
+        activeProducers = 0;
+        queue.clear();
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        explainStreaming(planSteps);
+    }
+    
+    /**
+     * Adds the step of handing back the rows of the regions in the order they arrive,
+     * for the scans that are explained before any iterator is created.
+     */
+    static void explainStreaming(List<String> planSteps) {
+        planSteps.add("CLIENT UNORDERED MERGE");
+    }
+}
@@ -27,9 +27,16 @@
  ******************************************************************************/
 package com.salesforce.phoenix.iterate;
 
+import static com.salesforce.phoenix.coprocessor.UngroupedAggregateRegionObserver.*;
 import static com.salesforce.phoenix.query.QueryConstants.*;
 
 import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.salesforce.phoenix.expression.aggregator.Aggregators;
 import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
@@ -38,10 +45,17 @@ import com.salesforce.phoenix.util.KeyValueUtil;
 
 
 public class UngroupedAggregatingResultIterator extends GroupedAggregatingResultIterator {
+    private static final Logger logger = LoggerFactory.getLogger(UngroupedAggregatingResultIterator.class);
+    private final MutationCountingResultIterator counters;
     private boolean hasRows = false;
 
     public UngroupedAggregatingResultIterator( PeekingResultIterator resultIterator, Aggregators aggregators) {
+        this(new MutationCountingResultIterator(resultIterator), aggregators);
+    }
+    
+    private UngroupedAggregatingResultIterator( MutationCountingResultIterator resultIterator, Aggregators aggregators) {
         super(resultIterator, aggregators);
+        this.counters = resultIterator;
     }
     
     @Override
@@ -61,4 +75,94 @@ public class UngroupedAggregatingResultIterator extends GroupedAggregatingResult
         hasRows = true;
         return result;
     }
+    
+    @Override
+    public void close() throws SQLException {
+        if (counters.hasCounters && logger.isDebugEnabled()) {
+            logger.debug("Scanned " + counters.rowsScanned + " rows and wrote " + counters.mutationCount + " mutations on the server ("
+                    + counters.totalBatchTimeNs / 1000000 + " ms total and " + counters.maxBatchTimeNs / 1000000 + " ms max per batch)");
+        }
+        super.close();
+    }
+    
+    /**
+     * @return the number of rows scanned by the coprocessor for an UPSERT SELECT
+     * or DELETE executed on the server side, or 0 otherwise.
+     */
+    public long getRowsScanned() {
+        return counters.rowsScanned;
+    }
+    
+    /**
+     * @return the number of mutations written by the coprocessor for an UPSERT
+     * SELECT or DELETE executed on the server side, or 0 otherwise.
+     */
+    public long getMutationCount() {
+        return counters.mutationCount;
+    }
+    
+    /**
+     * @return the time in nanoseconds spent by the coprocessors writing
+     * batches of mutations, summed across regions.
+     */
+    public long getTotalBatchTimeNs() {
+        return counters.totalBatchTimeNs;
+    }
+    
+    /**
+     * @return the time in nanoseconds taken to write the slowest batch of mutations
+     */
+    public long getMaxBatchTimeNs() {
+        return counters.maxBatchTimeNs;
+    }
+    
+    /**
+     * Sums up the counters returned along with the aggregated value by each region
+     * that mutated rows while being scanned.
+     */
+    private static class MutationCountingResultIterator implements PeekingResultIterator {
+        private final PeekingResultIterator delegate;
+        private boolean hasCounters;
+        private long rowsScanned;
+        private long mutationCount;
+        private long totalBatchTimeNs;
+        private long maxBatchTimeNs;
+        
+        private MutationCountingResultIterator(PeekingResultIterator delegate) {
+            this.delegate = delegate;
+        }
+        
+        private static long getCounter(Tuple result, byte[] qualifier) {
+            KeyValue kv = result.getValue(SINGLE_COLUMN_FAMILY, qualifier);
+            return kv == null ? 0 : Bytes.toLong(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+        }
+        
+        @Override
+        public Tuple next() throws SQLException {
+            Tuple result = delegate.next();
+            if (result != null && result.size() > 1) {
+                hasCounters = true;
+                rowsScanned += getCounter(result, ROWS_SCANNED_COLUMN);
+                mutationCount += getCounter(result, MUTATION_COUNT_COLUMN);
+                totalBatchTimeNs += getCounter(result, TOTAL_BATCH_TIME_COLUMN);
+                maxBatchTimeNs = Math.max(maxBatchTimeNs, getCounter(result, MAX_BATCH_TIME_COLUMN));
+            }
+            return result;
+        }
+
+        @Override
+        public Tuple peek() throws SQLException {
+            return delegate.peek();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            delegate.close();
+        }
+
+        @Override
+        public void explain(List<String> planSteps) {
+            delegate.explain(planSteps);
+        }
+    }
 }
@@ -39,6 +39,7 @@ import com.google.common.collect.Lists;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.execute.MutationState;
+import com.salesforce.phoenix.jdbc.PhoenixStatement.CachedStatement;
 import com.salesforce.phoenix.jdbc.PhoenixStatement.PhoenixStatementParser;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.*;
@@ -72,6 +73,8 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
     private final byte[] tenantId;
     private final String datePattern;
     
+    private final Map<String,CachedStatement> statementCache;
+    
     private boolean isClosed = false;
     
     public PhoenixConnection(ConnectionQueryServices services, String url, Properties info, PMetaData metaData) throws SQLException {
@@ -89,6 +92,16 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
         formatters[PDataType.TIME.ordinal()] = dateTimeFormat;
         this.metaData = metaData;
         this.mutationState = new MutationState(maxSize, this);
+        final int maxCachedStatements = services.getConfig().getInt(QueryServices.STATEMENT_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_STATEMENT_CACHE_SIZE);
+        // Access ordered, so that the least recently prepared statement is evicted first
+        this.statementCache = new LinkedHashMap<String,CachedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,CachedStatement> eldest) {
+                return size() > maxCachedStatements;
+            }
+        };
     }
 
     public int executeStatements(Reader reader, List<Object> binds, PrintStream out) throws IOException, SQLException {
@@ -232,6 +245,28 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
             closeStatements();
         } finally {
             isClosed = true;
+            statementCache.clear();
+        }
+    }
+    
+    /**
+     * @param sql the SQL of a prepared statement
+     * @return the parse tree and plan cached when the same SQL was prepared
+     * before or null if none are cached
+     */
+    CachedStatement getCachedStatement(String sql) {
+        return statementCache.get(sql);
+    }
+    
+    /**
+     * Caches the parse tree of a prepared statement, so that preparing the same SQL
+     * again does not parse it again and may execute the plan compiled for it again.
+     * @param sql the SQL of the statement
+     * @param statement the parse tree of the statement
+     */
+    void cacheStatement(String sql, CachedStatement statement) {
+        if (!isClosed) {
+            statementCache.put(sql, statement);
         }
     }
 
@@ -74,6 +74,13 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
     public static final byte[] TYPE_SCHEMA_BYTES = TYPE_SCHEMA.getBytes();
     public static final byte[] TYPE_TABLE_NAME = SchemaUtil.getTableName(TYPE_SCHEMA_BYTES, TYPE_TABLE_BYTES);
     
+    // Region statistics live in a plain HBase table that is not part of the Phoenix catalog.
+    // The row key is the region name and there's a column per column family of the region.
+    public static final String STATS_TABLE = "STATS";
+    public static final byte[] STATS_TABLE_BYTES = STATS_TABLE.getBytes();
+    public static final byte[] STATS_TABLE_NAME = SchemaUtil.getTableName(TYPE_SCHEMA_BYTES, STATS_TABLE_BYTES);
+    public static final byte[] STATS_FAMILY_BYTES = QueryConstants.DEFAULT_COLUMN_FAMILY_NAME.getBytes();
+    
     public static final String TABLE_NAME_NAME = "TABLE_NAME";
     public static final String TABLE_TYPE_NAME = "TABLE_TYPE";
     public static final byte[] TABLE_TYPE_BYTES = Bytes.toBytes(TABLE_TYPE_NAME);
@@ -500,7 +507,7 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
                 final byte[] rowNumberHolder = new byte[PDataType.INTEGER.getByteSize()];
                 return new PhoenixStatement(connection) {
                     @Override
-                    protected PhoenixResultSet newResultSet(Scanner scanner) throws SQLException {
+                    protected PhoenixResultSet newResultSet(Scanner scanner, StatementContext context) throws SQLException {
                         RowProjector projector = scanner.getProjection();
                         List<ColumnProjector> columns = new ArrayList<ColumnProjector>(projector.getColumnProjectors());
                         ColumnProjector column = columns.get(keySeqPosition);
@@ -568,7 +575,7 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
                             }
 
                         };
-                        return new PhoenixResultSet(delegate, this);
+                        return new PhoenixResultSet(delegate, this, context);
                     }
                     
                 };
@@ -747,7 +754,8 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
                 SELF_REFERENCING_COL_NAME_NAME + "," +
                 REF_GENERATION_NAME +
                 " from " + TYPE_SCHEMA_AND_TABLE + 
-                " where " + COLUMN_NAME + " is null");
+                " where " + COLUMN_NAME + " is null" +
+                " and " + TABLE_CAT_NAME + " is null"); // filter out links from a table to its indexes
         if (schemaPattern != null) {
             buf.append(" and " + TABLE_SCHEM_NAME + (schemaPattern.length() == 0 ? " is null" : " like '" + SchemaUtil.normalizeIdentifier(schemaPattern) + "'" ));
         }
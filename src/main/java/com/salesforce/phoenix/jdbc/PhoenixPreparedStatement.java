@@ -35,6 +35,7 @@ import java.sql.Date;
 import java.util.*;
 
 import com.salesforce.phoenix.compile.StatementPlan;
+import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.util.SQLCloseable;
 
@@ -70,7 +71,9 @@ import com.salesforce.phoenix.util.SQLCloseable;
  */
 public class PhoenixPreparedStatement extends PhoenixStatement implements PreparedStatement, SQLCloseable {
     private final List<Object> parameters;
+    private final List<List<Object>> batch = new ArrayList<List<Object>>();
     private final ExecutableStatement statement;
+    private final CachedStatement cachedStatement;
     
     private final String query;
     
@@ -81,6 +84,7 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
             throw new EOFException();
         }
         this.query = null; // TODO: add toString on SQLStatement
+        this.cachedStatement = null;
         this.parameters = Arrays.asList(new Object[statement.getBindCount()]);
         Collections.fill(parameters, UNBOUND_PARAMETER);
     }
@@ -88,14 +92,45 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
     public PhoenixPreparedStatement(PhoenixConnection connection, String query) throws SQLException {
         super(connection);
         this.query = query;
-        this.statement = parseStatement(query);
+        CachedStatement cachedStatement = connection.getCachedStatement(query);
+        if (cachedStatement == null) {
+            this.statement = parseStatement(query);
+            SQLStatement parsedStatement = copyStatement(statement, new ParseNodeFactory());
+            if (parsedStatement != null) {
+                cachedStatement = new CachedStatement(parsedStatement);
+                connection.cacheStatement(query, cachedStatement);
+            }
+        } else {
+            this.statement = (ExecutableStatement)copyStatement(cachedStatement.getStatement(), new ExecutableNodeFactory());
+        }
+        this.cachedStatement = cachedStatement;
         this.parameters = Arrays.asList(new Object[statement.getBindCount()]);
         Collections.fill(parameters, UNBOUND_PARAMETER);
     }
 
     @Override
     public void addBatch() throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        throwIfUnboundParameters();
+        batch.add(new ArrayList<Object>(parameters));
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        batch.clear();
+    }
+
+    /**
+     * Executes the statement for each set of parameters added to the batch. An
+     * UPSERT VALUES is compiled once for the whole batch, with each set of parameters
+     * only binding the values of a row.
+     */
+    @Override
+    public int[] executeBatch() throws SQLException {
+        try {
+            return executeBatch(statement, batch);
+        } finally {
+            batch.clear();
+        }
     }
 
     @Override
@@ -103,6 +138,36 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
         Collections.fill(parameters, UNBOUND_PARAMETER);
     }
 
+    /**
+     * Copies a statement with the node factory, so that the parse tree of SQL prepared
+     * before may be cached by the connection independently of the statement that parsed
+     * it and handed to the statements that prepare the same SQL again. Only queries and
+     * DML are cached, as other statements are seldom prepared more than once.
+     * @return the copy or null if the statement is not cached
+     */
+    private static SQLStatement copyStatement(SQLStatement statement, ParseNodeFactory factory) {
+        if (statement instanceof SelectStatement) {
+            SelectStatement select = (SelectStatement)statement;
+            return factory.select(select.getFrom(), select.getHint(), select.getSelect(), select.getWhere(), select.getGroupBy(),
+                    select.getHaving(), select.getOrderBy(), select.getLimit(), select.getBindCount());
+        }
+        if (statement instanceof UpsertStatement) {
+            UpsertStatement upsert = (UpsertStatement)statement;
+            SelectStatement select = upsert.getSelect() == null ? null : (SelectStatement)copyStatement(upsert.getSelect(), factory);
+            return factory.upsert(upsert.getTable(), upsert.getColumns(), upsert.getValues(), select, upsert.getBindCount());
+        }
+        if (statement instanceof DeleteStatement) {
+            DeleteStatement delete = (DeleteStatement)statement;
+            return factory.delete(delete.getTable(), delete.getWhere(), delete.getBindCount());
+        }
+        return null;
+    }
+
+    @Override
+    protected CachedStatement getCachedStatement() {
+        return cachedStatement;
+    }
+
     @Override
     protected List<Object> getParameters() {
         return parameters;
@@ -41,6 +41,7 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.compile.ColumnProjector;
 import com.salesforce.phoenix.compile.RowProjector;
+import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.iterate.ResultIterator;
@@ -86,6 +87,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     private final ResultIterator scanner;
     private final RowProjector rowProjector;
     private final PhoenixStatement statement;
+    private final StatementContext context;
     private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
     
     private Tuple currentRow = BEFORE_FIRST;
@@ -93,9 +95,27 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     private boolean wasNull = false;
     
     public PhoenixResultSet(Scanner scanner, PhoenixStatement statement) throws SQLException {
+        this(scanner, statement, null);
+    }
+    
+    /**
+     * @param context the context of the query producing the results or null if there is none
+     */
+    public PhoenixResultSet(Scanner scanner, PhoenixStatement statement, StatementContext context) throws SQLException {
         this.rowProjector = scanner.getProjection();
         this.scanner = scanner.iterator();
         this.statement = statement;
+        this.context = context;
+    }
+    
+    /**
+     * Get the high-water mark of the client-side memory used by the query,
+     * for example to spool or sort its results, through {@link #unwrap(Class)}.
+     * @return the peak number of bytes used so far, or 0 if the results were
+     * not produced by a query
+     */
+    public long getPeakMemoryBytes() {
+        return context == null ? 0 : context.getMemoryManager().getPeakUsedMemory();
     }
     
     @Override
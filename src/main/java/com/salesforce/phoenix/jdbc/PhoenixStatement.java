@@ -40,6 +40,7 @@ import com.google.common.collect.Lists;
 import com.salesforce.phoenix.compile.*;
 import com.salesforce.phoenix.coprocessor.MetaDataProtocol;
 import com.salesforce.phoenix.exception.*;
+import com.salesforce.phoenix.execute.BasicQueryPlan;
 import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.expression.RowKeyColumnExpression;
 import com.salesforce.phoenix.iterate.MaterializedResultIterator;
@@ -103,8 +104,8 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         this.connection = connection;
     }
     
-    protected PhoenixResultSet newResultSet(Scanner scanner) throws SQLException {
-        return new PhoenixResultSet(scanner, PhoenixStatement.this);
+    protected PhoenixResultSet newResultSet(Scanner scanner, StatementContext context) throws SQLException {
+        return new PhoenixResultSet(scanner, PhoenixStatement.this, context);
     }
     
     protected static interface ExecutableStatement extends SQLStatement {
@@ -128,9 +129,15 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
         @Override
         public PhoenixResultSet executeQuery() throws SQLException {
-            QueryPlan plan = compilePlan(getParameters());
+            CachedStatement cachedStatement = getCachedStatement();
+            List<Object> binds = getParameters();
+            QueryPlan plan = cachedStatement == null ? compilePlan(binds) : getPlan(cachedStatement, binds);
             Scanner scanner = plan.getScanner();
-            PhoenixResultSet rs = newResultSet(scanner);
+            PhoenixResultSet rs = newResultSet(scanner, plan.getContext());
+            // Plans of joins are not reused, as they send the hash cache to the servers
+            if (cachedStatement != null && plan instanceof BasicQueryPlan) {
+                cachedStatement.setPlan((BasicQueryPlan)plan, binds, getMaxRows(), rs);
+            }
             resultSets.add(rs);
             lastResultSet = rs;
             lastUpdateCount = NO_UPDATE;
@@ -154,6 +161,19 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
             QueryCompiler compiler = new QueryCompiler(connection, getMaxRows());
             return lastQueryPlan = compiler.compile(this, binds);
         }
+
+        /**
+         * Gets the plan compiled by the last execution of the statement prepared for the
+         * same SQL if it may be executed again, binding the values to it if they changed,
+         * and compiles the statement otherwise.
+         */
+        private QueryPlan getPlan(CachedStatement cachedStatement, List<Object> binds) throws SQLException {
+            BasicQueryPlan plan = cachedStatement.takePlan(getMaxRows());
+            if (plan != null && plan.reset() && (cachedStatement.isBound(binds) || plan.rebind(binds))) {
+                return lastQueryPlan = plan;
+            }
+            return compilePlan(binds);
+        }
         
         @Override
         public ResultSetMetaData getResultSetMetaData() throws SQLException {
@@ -166,6 +186,102 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         }
     }
     
+    /**
+     * Executes a statement once for each of the sets of bind values of a batch. An
+     * UPSERT VALUES is compiled once for the whole batch and its rows are joined into
+     * the mutation state together, while other mutations are compiled and executed
+     * for one set of bind values at a time.
+     * @return the update count of each execution
+     * @throws BatchUpdateException if the statement is not a mutation or an execution failed
+     */
+    protected int[] executeBatch(ExecutableStatement statement, List<List<Object>> batch) throws SQLException {
+        int[] updateCounts = new int[batch.size()];
+        int i = 0;
+        try {
+            if (!(statement instanceof MutatableStatement)) {
+                throw new ExecuteUpdateNotApplicableException(statement.toString());
+            }
+            if (statement instanceof UpsertStatement && ((UpsertStatement)statement).getValues() != null) {
+                if (!batch.isEmpty()) {
+                    executeMutation(new UpsertCompiler(this).compileBatch((UpsertStatement)statement, batch));
+                    // Each execution upserts a single row
+                    Arrays.fill(updateCounts, 1);
+                    i = updateCounts.length;
+                }
+            } else {
+                for (; i < batch.size(); i++) {
+                    updateCounts[i] = executeMutation(((MutatableStatement)statement).compilePlan(batch.get(i)));
+                }
+            }
+            return updateCounts;
+        } catch (SQLException e) {
+            throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(updateCounts, i), e);
+        }
+    }
+    
+    /**
+     * The parse tree of SQL prepared by a connection, kept by the connection so that
+     * preparing the same SQL again does not parse it again, together with the plan
+     * compiled by the last execution of a statement prepared for it, so that the
+     * plan may be executed again instead of compiling the statement again.
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    static class CachedStatement {
+        private final SQLStatement statement;
+        private BasicQueryPlan plan;
+        private Object[] binds;
+        private int maxRows;
+        private PhoenixResultSet resultSet;
+        
+        CachedStatement(SQLStatement statement) {
+            this.statement = statement;
+        }
+        
+        SQLStatement getStatement() {
+            return statement;
+        }
+        
+        /**
+         * Takes the plan compiled by the last execution, if it was for the same max rows
+         * and its result set was closed, since the state used while iterating, like the
+         * aggregators, belongs to the plan. The plan is no longer cached until it is
+         * handed back by {@link #setPlan(BasicQueryPlan, List, int, PhoenixResultSet)}.
+         * @return the plan or null if there is none that may be executed again
+         */
+        BasicQueryPlan takePlan(int maxRows) throws SQLException {
+            BasicQueryPlan plan = this.plan;
+            this.plan = null;
+            if (plan == null || this.maxRows != maxRows || !resultSet.isClosed()) {
+                return null;
+            }
+            return plan;
+        }
+        
+        /**
+         * @return true if the values are the ones the cached plan was executed with
+         */
+        boolean isBound(List<Object> binds) {
+            return Arrays.deepEquals(this.binds, binds.toArray());
+        }
+        
+        void setPlan(BasicQueryPlan plan, List<Object> binds, int maxRows, PhoenixResultSet resultSet) {
+            this.plan = plan;
+            this.binds = binds.toArray();
+            this.maxRows = maxRows;
+            this.resultSet = resultSet;
+            // Copy the mutable values, so that they are compared with the values bound later
+            for (int i = 0; i < this.binds.length; i++) {
+                if (this.binds[i] instanceof byte[]) {
+                    this.binds[i] = ((byte[])this.binds[i]).clone();
+                } else if (this.binds[i] instanceof java.util.Date) {
+                    this.binds[i] = ((java.util.Date)this.binds[i]).clone();
+                }
+            }
+        }
+    }
+    
     private int executeMutation(MutationPlan plan) throws SQLException {
         // Note that the upsert select statements will need to commit any open transaction here,
         // since they'd update data directly from coprocessors, and should thus operate on
@@ -292,6 +408,45 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
     }
     
     
+    private class ExecutableCreateIndexStatement extends CreateIndexStatement implements ExecutableStatement {
+        ExecutableCreateIndexStatement(NamedNode indexName, TableName tableName, List<ColumnDefName> indexColumns, List<ColumnDefName> includeColumns, ListMultimap<String,Pair<String,Object>> props, List<ParseNode> splitNodes, boolean ifNotExists, int bindCount) {
+            super(indexName, tableName, indexColumns, includeColumns, props, splitNodes, ifNotExists, bindCount);
+        }
+
+        @Override
+        public PhoenixResultSet executeQuery() throws SQLException {
+            throw new ExecuteQueryNotApplicableException("CREATE INDEX", this.toString());
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            executeUpdate();
+            return false;
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            MutationPlan plan = compilePlan(getParameters());
+            MutationState state = plan.execute();
+            lastQueryPlan = null;
+            lastResultSet = null;
+            lastUpdateCount = (int)Math.min(state.getUpdateCount(), Integer.MAX_VALUE);
+            lastUpdateOperation = UpdateOperation.UPSERTED;
+            return lastUpdateCount;
+        }
+
+        @Override
+        public ResultSetMetaData getResultSetMetaData() throws SQLException {
+            return null;
+        }
+
+        @Override
+        public MutationPlan compilePlan(List<Object> binds) throws SQLException {
+            CreateTableCompiler compiler = new CreateTableCompiler(connection);
+            return compiler.compile(this, binds);
+        }
+    }
+    
     private class ExecutableDropTableStatement extends DropTableStatement implements ExecutableStatement {
 
         ExecutableDropTableStatement(TableName tableName, boolean ifExists, boolean isView) {
@@ -601,6 +756,11 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
             return new ExecutableCreateTableStatement(tableName, props, columns, pkConstraint, splits, readOnly, ifNotExists, bindCount);
         }
         
+        @Override
+        public CreateIndexStatement createIndex(NamedNode indexName, TableName tableName, List<ColumnDefName> indexColumns, List<ColumnDefName> includeColumns, ListMultimap<String,Pair<String,Object>> props, List<ParseNode> splits, boolean ifNotExists, int bindCount) {
+            return new ExecutableCreateIndexStatement(indexName, tableName, indexColumns, includeColumns, props, splits, ifNotExists, bindCount);
+        }
+        
         @Override
         public AddColumnStatement addColumn(TableName tableName,  ColumnDef columnDef, boolean ifNotExists, Map<String,Object> props) {
             return new ExecutableAddColumnStatement(tableName, columnDef, ifNotExists, props);
@@ -683,6 +843,14 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         }
     }
 
+    /**
+     * @return the parse tree and plan cached by the connection for the SQL of the
+     * statement or null if none are cached for it
+     */
+    protected CachedStatement getCachedStatement() {
+        return null;
+    }
+
     protected List<Object> getParameters() {
         return Collections.<Object>emptyList();
     }
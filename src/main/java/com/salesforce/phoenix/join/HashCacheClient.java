@@ -66,8 +66,6 @@ public class HashCacheClient {
     private static final int DEFAULT_MAX_HASH_CACHE_SIZE = 1024*1024*100;  // 100 Mb
     
     private static final Log LOG = LogFactory.getLog(HashCacheClient.class);
-    private static final String JOIN_KEY_PREFIX = "joinKey";
-    private static int JOIN_KEY_ID = 0;
     private final byte[] iterateOverTableName;
     private final byte[] tenantId;
     private final ConnectionQueryServices services;
@@ -280,10 +278,11 @@ public class HashCacheClient {
 
     /**
      * Create a join ID to keep the cached information across other joins independent.
-     * TODO: Use HBase counter instead here once this is real
+     * Random, since the region servers are shared by every client.
      */
-    private static synchronized byte[] nextJoinId() {
-        return Bytes.toBytes(JOIN_KEY_PREFIX + ++JOIN_KEY_ID);
+    private static byte[] nextJoinId() {
+        UUID uuid = UUID.randomUUID();
+        return Bytes.add(Bytes.toBytes(uuid.getMostSignificantBits()), Bytes.toBytes(uuid.getLeastSignificantBits()));
     }
  
     // package private for testing
@@ -304,7 +303,7 @@ public class HashCacheClient {
                     if (baOut.size() > maxSize) {
                         throw new MaxHashCacheSizeExceededException("Size of hash cache (" + baOut.size() + " bytes) exceeds the maximum allowed size (" + maxSize + " bytes)");
                     }
-                    estimatedSize *= 3/2;
+                    estimatedSize = Math.max(baOut.size(), estimatedSize * 3 / 2);
                     chunk.resize(estimatedSize);
                 }
                 nRows++;
@@ -48,14 +48,14 @@ public class HashCacheImplementation extends BaseEndpointCoprocessor implements
 
     @Override
     public boolean addHashCache(byte[] tenantId, byte[] joinId, ImmutableBytesWritable hashCache) throws SQLException {
-        TenantCache tenantCache = GlobalCache.getTenantCache(this.getEnvironment().getConfiguration(), new ImmutableBytesWritable(tenantId));
+        TenantCache tenantCache = GlobalCache.getTenantCache(this.getEnvironment().getConfiguration(), tenantId == null ? null : new ImmutableBytesWritable(tenantId));
         tenantCache.addHashCache(new ImmutableBytesWritable(joinId), hashCache);
         return true;
     }
 
     @Override
     public boolean removeHashCache(byte[] tenantId, byte[] joinId) throws SQLException {
-        TenantCache tenantCache = GlobalCache.getTenantCache(this.getEnvironment().getConfiguration(), new ImmutableBytesWritable(tenantId));
+        TenantCache tenantCache = GlobalCache.getTenantCache(this.getEnvironment().getConfiguration(), tenantId == null ? null : new ImmutableBytesWritable(tenantId));
         tenantCache.removeHashCache(new ImmutableBytesWritable(joinId));
         return true;
     }
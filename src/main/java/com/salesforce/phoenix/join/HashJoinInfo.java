@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.join;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.ExpressionType;
+import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.TrustedByteArrayOutputStream;
+
+
+/**
+ * 
+ * Information passed through the scan to {@link HashJoiningRegionObserver}
+ * describing how the rows of the scanned table are joined to the rows in
+ * the hash cache.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class HashJoinInfo {
+    /**
+     * Scan attribute holding the serialized {@link HashJoinInfo}
+     */
+    public static final String HASH_JOIN = "HashJoin";
+    /**
+     * Scan attribute holding the id of the hash cache to join against
+     */
+    public static final String JOIN_ID = "JoinId";
+    /**
+     * Prefix of the column families of the columns from the hashed table in
+     * a joined row. Cannot clash with a real column family, since those may
+     * not start with a zero byte.
+     */
+    public static final byte[] JOINED_FAMILY_PREFIX = QueryConstants.SEPARATOR_BYTE_ARRAY;
+    
+    private final boolean isOuterJoin;
+    private final List<Expression> joinExpressions;
+    private final Expression postFilter;
+    
+    /**
+     * @param isOuterJoin true if rows without a match should be returned with nulls
+     * for the columns of the hashed table and false if they should be dropped
+     * @param joinExpressions expressions evaluated against a scanned row to form the
+     * key that is looked up in the hash cache
+     * @param postFilter filter evaluated against the joined rows or null if none
+     */
+    public HashJoinInfo(boolean isOuterJoin, List<Expression> joinExpressions, Expression postFilter) {
+        this.isOuterJoin = isOuterJoin;
+        this.joinExpressions = joinExpressions;
+        this.postFilter = postFilter;
+    }
+    
+    public boolean isOuterJoin() {
+        return isOuterJoin;
+    }
+
+    public List<Expression> getJoinExpressions() {
+        return joinExpressions;
+    }
+
+    public Expression getPostFilter() {
+        return postFilter;
+    }
+
+    /**
+     * Evaluate the join key of a row. Both the client building the hash cache and the
+     * region server probing it go through here so that the keys match byte for byte.
+     * @param tuple the row
+     * @param expressions the join key expressions
+     * @param ptr set to the join key
+     * @return true if the join key could be formed and false if any part of it
+     * is null, in which case the row cannot match anything.
+     */
+    public static boolean evaluateJoinKey(Tuple tuple, List<Expression> expressions, ImmutableBytesWritable ptr) {
+        if (expressions.size() == 1) {
+            return expressions.get(0).evaluate(tuple, ptr) && ptr.getLength() > 0;
+        }
+        try {
+            TrustedByteArrayOutputStream stream = new TrustedByteArrayOutputStream(expressions.size() * 16);
+            DataOutputStream output = new DataOutputStream(stream);
+            for (Expression expression : expressions) {
+                if (!expression.evaluate(tuple, ptr) || ptr.getLength() == 0) {
+                    return false;
+                }
+                // Length prefix each part so that different splits of the same bytes do not collide
+                WritableUtils.writeVInt(output, ptr.getLength());
+                output.write(ptr.get(), ptr.getOffset(), ptr.getLength());
+            }
+            ptr.set(stream.getBuffer(), 0, stream.size());
+            return true;
+        } catch (IOException e) { // Not possible with ByteArrayOutputStream
+            throw new RuntimeException(e);
+        }
+    }
+    
+    public static byte[] serialize(HashJoinInfo joinInfo) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(stream);
+            output.writeBoolean(joinInfo.isOuterJoin);
+            WritableUtils.writeVInt(output, joinInfo.joinExpressions.size());
+            for (Expression expression : joinInfo.joinExpressions) {
+                WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+                expression.write(output);
+            }
+            if (joinInfo.postFilter == null) {
+                WritableUtils.writeVInt(output, -1);
+            } else {
+                WritableUtils.writeVInt(output, ExpressionType.valueOf(joinInfo.postFilter).ordinal());
+                joinInfo.postFilter.write(output);
+            }
+            return stream.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+    
+    public static HashJoinInfo deserialize(byte[] b) {
+        ByteArrayInputStream stream = new ByteArrayInputStream(b);
+        try {
+            DataInputStream input = new DataInputStream(stream);
+            boolean isOuterJoin = input.readBoolean();
+            int size = WritableUtils.readVInt(input);
+            List<Expression> joinExpressions = Lists.newArrayListWithExpectedSize(size);
+            for (int i = 0; i < size; i++) {
+                Expression expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+                expression.readFields(input);
+                joinExpressions.add(expression);
+            }
+            Expression postFilter = null;
+            int postFilterType = WritableUtils.readVInt(input);
+            if (postFilterType >= 0) {
+                postFilter = ExpressionType.values()[postFilterType].newInstance();
+                postFilter.readFields(input);
+            }
+            return new HashJoinInfo(isOuterJoin, Collections.unmodifiableList(joinExpressions), postFilter);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -28,30 +28,41 @@
 package com.salesforce.phoenix.join;
 
 import java.io.IOException;
+import java.util.*;
 
+import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
 
+import com.salesforce.phoenix.cache.*;
 import com.salesforce.phoenix.coprocessor.BaseScannerRegionObserver;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
+import com.salesforce.phoenix.util.ScanUtil;
 
 
 /**
  * 
- * Prototype for region observer that performs a hash join between two tables.
- * The client sends over the rows in a serialized format and the coprocessor
- * deserialized into a Map and caches it on the region server.  The map is then
- * used to resolve the foreign key reference and the rows are then joined together.
+ * Region observer that performs a hash join between two tables.
+ * The client sends over the rows of the smaller table in a serialized format
+ * through {@link HashCacheClient} and the {@link HashCacheImplementation} endpoint
+ * deserializes them into a Map and caches it on the region server. The map is then
+ * used to look up the join key of each row scanned here and the matching rows are
+ * joined to it. The columns of the cached rows are placed in column families prefixed
+ * by {@link HashJoinInfo#JOINED_FAMILY_PREFIX} so that they may be referenced by the
+ * other coprocessors just like the columns of the scanned table. For that to work,
+ * this coprocessor must be registered with a lower priority value than them, so that
+ * they wrap the scanner returned here.
  *
  * TODO: Scan rows locally on region server instead of returning to client
  * if we can know that all both tables rows are on the same region server.
  * 
- * FIXME: For now this does nothing. In it's previous state for 0.94.4 it was not
- * able to instantiate it (it was fine in 0.94.2). Since we're not yet using it,
- * changing it to do nothing. Once we add joins, we'll need to figure this out.
- * I suspect it is not being able to be instantiated because of Snappy.
- * 
  * @author jtaylor
  * @since 0.1
  */
@@ -60,6 +71,155 @@ public class HashJoiningRegionObserver extends BaseScannerRegionObserver  {
     @Override
     protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan,
             RegionScanner s) throws IOException {
-        return s;
+        byte[] joinId = scan.getAttribute(HashJoinInfo.JOIN_ID);
+        if (joinId == null) {
+            return s;
+        }
+        HashJoinInfo joinInfo = HashJoinInfo.deserialize(scan.getAttribute(HashJoinInfo.HASH_JOIN));
+        TenantCache tenantCache = GlobalCache.getTenantCache(c.getEnvironment().getConfiguration(), ScanUtil.getTenantId(scan));
+        HashCache hashCache = tenantCache.getHashCache(new ImmutableBytesWritable(joinId));
+        if (hashCache == null) {
+            throw new DoNotRetryIOException("Could not find hash cache for joinId: " + Bytes.toStringBinary(joinId) + 
+                    ". The cache might have expired and have been removed.");
+        }
+        return new HashJoinRegionScanner(s, joinInfo, hashCache);
+    }
+    
+    private static class HashJoinRegionScanner implements RegionScanner {
+        private final RegionScanner s;
+        private final HashJoinInfo joinInfo;
+        private final HashCache hashCache;
+        private final Queue<List<KeyValue>> resultQueue = new LinkedList<List<KeyValue>>();
+        private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        private final MultiKeyValueTuple tuple = new MultiKeyValueTuple();
+        private boolean hasMore = true;
+        
+        private HashJoinRegionScanner(RegionScanner s, HashJoinInfo joinInfo, HashCache hashCache) {
+            this.s = s;
+            this.joinInfo = joinInfo;
+            this.hashCache = hashCache;
+        }
+
+        private boolean isPostFilterMatch(List<KeyValue> result) {
+            Expression postFilter = joinInfo.getPostFilter();
+            if (postFilter == null) {
+                return true;
+            }
+            tuple.setKeyValues(result);
+            return postFilter.evaluate(tuple, ptr) && Boolean.TRUE.equals(postFilter.getDataType().toObject(ptr));
+        }
+        
+        private void processResults(List<KeyValue> result) {
+            if (result.isEmpty()) {
+                return;
+            }
+            tuple.setKeyValues(result);
+            List<Result> matches = null;
+            if (HashJoinInfo.evaluateJoinKey(tuple, joinInfo.getJoinExpressions(), ptr)) {
+                matches = hashCache.get(ptr);
+            }
+            if (matches == null) {
+                if (joinInfo.isOuterJoin() && isPostFilterMatch(result)) {
+                    resultQueue.offer(result);
+                }
+                return;
+            }
+            KeyValue first = result.get(0);
+            byte[] row = first.getBuffer();
+            int rowOffset = first.getRowOffset();
+            int rowLength = first.getRowLength();
+            for (Result match : matches) {
+                KeyValue[] kvs = match.raw();
+                List<KeyValue> joined = new ArrayList<KeyValue>(result.size() + kvs.length);
+                joined.addAll(result);
+                for (KeyValue kv : kvs) {
+                    // Skip the marker that's only there to give rows with all null columns a key
+                    if (kv.matchingColumn(HashJoinInfo.JOINED_FAMILY_PREFIX, QueryConstants.EMPTY_COLUMN_BYTES)) {
+                        continue;
+                    }
+                    joined.add(new KeyValue(row, rowOffset, rowLength,
+                            kv.getBuffer(), kv.getFamilyOffset(), kv.getFamilyLength(),
+                            kv.getBuffer(), kv.getQualifierOffset(), kv.getQualifierLength(),
+                            kv.getTimestamp(), KeyValue.Type.Put,
+                            kv.getBuffer(), kv.getValueOffset(), kv.getValueLength()));
+                }
+                // Keep the row sorted, as lookups of a column value rely on it
+                Collections.sort(joined, KeyValue.COMPARATOR);
+                if (isPostFilterMatch(joined)) {
+                    resultQueue.offer(joined);
+                }
+            }
+        }
+        
+        private boolean nextJoined(List<KeyValue> results, boolean raw, String metric) throws IOException {
+            while (resultQueue.isEmpty() && hasMore) {
+                List<KeyValue> result = new ArrayList<KeyValue>();
+                hasMore = raw ? s.nextRaw(result, metric) : s.next(result, metric);
+                processResults(result);
+            }
+            if (!resultQueue.isEmpty()) {
+                results.addAll(resultQueue.poll());
+            }
+            return hasMore || !resultQueue.isEmpty();
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results) throws IOException {
+            return nextJoined(results, false, null);
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, String metric) throws IOException {
+            return nextJoined(results, false, metric);
+        }
+
+        // Since a batch limit would split up the columns of a row and Phoenix
+        // never sets one, the limit is ignored here.
+        @Override
+        public boolean next(List<KeyValue> result, int limit) throws IOException {
+            return nextJoined(result, false, null);
+        }
+
+        @Override
+        public boolean next(List<KeyValue> result, int limit, String metric) throws IOException {
+            return nextJoined(result, false, metric);
+        }
+
+        @Override
+        public boolean nextRaw(List<KeyValue> result, String metric) throws IOException {
+            return nextJoined(result, true, metric);
+        }
+
+        @Override
+        public boolean nextRaw(List<KeyValue> result, int limit, String metric) throws IOException {
+            return nextJoined(result, true, metric);
+        }
+
+        @Override
+        public void close() throws IOException {
+            resultQueue.clear();
+            s.close();
+        }
+
+        @Override
+        public HRegionInfo getRegionInfo() {
+            return s.getRegionInfo();
+        }
+
+        @Override
+        public boolean isFilterDone() {
+            return resultQueue.isEmpty() && s.isFilterDone();
+        }
+
+        @Override
+        public boolean reseek(byte[] row) throws IOException {
+            resultQueue.clear();
+            return s.reseek(row);
+        }
+
+        @Override
+        public long getMvccReadPoint() {
+            return s.getMvccReadPoint();
+        }
     }
 }
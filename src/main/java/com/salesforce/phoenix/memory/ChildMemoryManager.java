@@ -27,7 +27,6 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
-import org.apache.http.annotation.GuardedBy;
 import org.apache.http.annotation.ThreadSafe;
 
 /**
@@ -42,10 +41,8 @@ import org.apache.http.annotation.ThreadSafe;
  */
 @ThreadSafe
 public class ChildMemoryManager extends DelegatingMemoryManager {
-    private final Object sync = new Object();
     private final int maxPercOfTotal;
-    @GuardedBy("sync")
-    private long allocatedBytes;
+    private final MemoryCounter allocatedBytes = new MemoryCounter();
     
     public ChildMemoryManager(MemoryManager mm, int maxPercOfTotal) {
         super(mm);
@@ -59,68 +56,89 @@ public class ChildMemoryManager extends DelegatingMemoryManager {
     }
 
 
-    private long adjustAllocation(long minBytes, long reqBytes) {
+    /**
+     * Reserve this memory manager's share of an allocation before it is
+     * made from the parent, revising reqBytes down to available memory
+     * if necessary.
+     */
+    private long reserve(long minBytes, long reqBytes) {
         assert(reqBytes >= minBytes);
-        long availBytes = getAvailableMemory();
+        long nBytes = allocatedBytes.tryReserve(minBytes, reqBytes, getMaxMemory());
         // Check if this memory managers percentage of allocated bytes exceeds its allowed maximum
-        if (minBytes > availBytes) {
+        if (nBytes < 0) {
             throw new InsufficientMemoryException("Attempt to allocate more memory than the max allowed of " + maxPercOfTotal + "%");
         }
-        // Revise reqBytes down to available memory if necessary
-        return Math.min(reqBytes,availBytes);
+        return nBytes;
     }
     
     @Override
-    public MemoryChunk allocate(long minBytes, long nBytes) {
-        synchronized (sync) {
-            nBytes = adjustAllocation(minBytes, nBytes);
-            final MemoryChunk chunk = super.allocate(minBytes, nBytes);
-            allocatedBytes += chunk.getSize();
-            // Instantiate delegate chunk to track allocatedBytes correctly
-            return new MemoryChunk() {
-                @Override
-                public void close() {
-                    synchronized (sync) {
-                        allocatedBytes -= chunk.getSize();
-                        chunk.close();
-                    }
-                }
-    
-                @Override
-                public long getSize() {
-                    return chunk.getSize();
-                }
-    
-                @Override
-                public void resize(long nBytes) {
-                    synchronized (sync) {
-                        long size = getSize();
-                        long deltaBytes = nBytes - size;
-                        if (deltaBytes > 0) {
-                            adjustAllocation(deltaBytes,deltaBytes); // Throw if too much memory
-                        }
+    public MemoryChunk allocate(long minBytes, long reqBytes) {
+        long nBytes = reserve(minBytes, reqBytes);
+        final MemoryChunk chunk;
+        try {
+            chunk = super.allocate(minBytes, nBytes);
+        } catch (RuntimeException e) {
+            allocatedBytes.release(nBytes);
+            throw e;
+        }
+        // Give back what the parent could not provide
+        allocatedBytes.release(nBytes - chunk.getSize());
+        // Instantiate delegate chunk to track allocatedBytes correctly
+        return new MemoryChunk() {
+            @Override
+            public void close() {
+                // Release our share first, so that it's available by the time
+                // anyone waiting on the parent is woken up
+                allocatedBytes.release(chunk.getSize());
+                chunk.close();
+            }
+
+            @Override
+            public long getSize() {
+                return chunk.getSize();
+            }
+
+            @Override
+            public void resize(long nBytes) {
+                long deltaBytes = nBytes - getSize();
+                if (deltaBytes > 0) {
+                    reserve(deltaBytes,deltaBytes); // Throw if too much memory
+                    try {
                         chunk.resize(nBytes);
-                        allocatedBytes += deltaBytes;
+                    } catch (RuntimeException e) {
+                        allocatedBytes.release(deltaBytes);
+                        throw e;
                     }
+                } else {
+                    allocatedBytes.release(-deltaBytes);
+                    chunk.resize(nBytes);
                 }
-            };
-        }
+            }
+        };
     }
 
     @Override
     public long getAvailableMemory() {
-        synchronized (sync) {
-            long availBytes = getMaxMemory() - allocatedBytes;
-            // Sanity check (should never happen)
-            if (availBytes < 0) {
-                throw new IllegalStateException("Available memory has become negative: " + availBytes + " bytes.  Allocated memory: " + allocatedBytes + " bytes.");
-            }
-            return availBytes;
+        long availBytes = getMaxMemory() - allocatedBytes.getUsed();
+        // Sanity check (should never happen)
+        if (availBytes < 0) {
+            throw new IllegalStateException("Available memory has become negative: " + availBytes + " bytes.  Allocated memory: " + allocatedBytes.getUsed() + " bytes.");
         }
+        return availBytes;
     }
     
     @Override
     public long getMaxMemory() {
         return maxPercOfTotal  * super.getMaxMemory() / 100;
     }
+
+    @Override
+    public long getUsedMemory() {
+        return allocatedBytes.getUsed();
+    }
+
+    @Override
+    public long getPeakUsedMemory() {
+        return allocatedBytes.getPeak();
+    }
 }
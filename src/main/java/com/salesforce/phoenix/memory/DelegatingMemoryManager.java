@@ -51,6 +51,16 @@ public class DelegatingMemoryManager implements MemoryManager {
         return parent.getMaxMemory();
     }
 
+    @Override
+    public long getUsedMemory() {
+        return parent.getUsedMemory();
+    }
+
+    @Override
+    public long getPeakUsedMemory() {
+        return parent.getPeakUsedMemory();
+    }
+
     @Override
     public MemoryChunk allocate(long minBytes, long reqBytes) {
         return parent.allocate(minBytes, reqBytes);
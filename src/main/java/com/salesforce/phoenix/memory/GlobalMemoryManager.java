@@ -27,6 +27,15 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.*;
+
 import org.apache.http.annotation.GuardedBy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +44,18 @@ import org.slf4j.LoggerFactory;
 /**
  * 
  * Global memory manager to track course grained memory usage across all requests.
+ * 
+ * Allocations that fit in the remaining memory while no one is waiting are made
+ * with a compare-and-set and never take a lock. Otherwise, allocations are put on
+ * a waiting queue and are granted memory in arrival order as it is freed, instead
+ * of all waking up and racing for it. A waiter that doesn't fit yet holds up the
+ * ones behind it, so that a large request is not starved by a stream of smaller
+ * ones. If it is waiting for memory held by one of them, it gives up after the
+ * maximum wait time, at which point the ones behind it are granted memory.
+ * 
+ * Chunks that are garbage collected without having been closed are detected
+ * through a {@link ReferenceQueue} and their memory is reclaimed on the next
+ * allocation.
  *
  * @author jtaylor
  * @since 0.1
@@ -42,11 +63,19 @@ import org.slf4j.LoggerFactory;
 public class GlobalMemoryManager implements MemoryManager {
     private static final Logger logger = LoggerFactory.getLogger(GlobalMemoryManager.class);
     
-    private final Object sync = new Object();
     private final long maxMemoryBytes;
     private final int maxWaitMs;
-    @GuardedBy("sync")
-    private volatile long usedMemoryBytes;
+    private final MemoryCounter usedMemory = new MemoryCounter();
+    
+    private final Lock waitLock = new ReentrantLock();
+    @GuardedBy("waitLock")
+    private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+    // Read without the lock so that frees can skip the queue when it is empty
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    
+    private final ReferenceQueue<GlobalMemoryChunk> orphanedChunks = new ReferenceQueue<GlobalMemoryChunk>();
+    // Keeps the references reachable until their chunk is closed or collected
+    private final Set<ChunkReference> openChunks = Collections.newSetFromMap(new ConcurrentHashMap<ChunkReference,Boolean>());
     
     public GlobalMemoryManager(long maxBytes, int maxWaitMs) {
         if (maxBytes <= 0) {
@@ -57,14 +86,11 @@ public class GlobalMemoryManager implements MemoryManager {
         }
         this.maxMemoryBytes = maxBytes;
         this.maxWaitMs = maxWaitMs;
-        this.usedMemoryBytes = 0;
     }
     
     @Override
     public long getAvailableMemory() {
-        synchronized(sync) {
-            return maxMemoryBytes - usedMemoryBytes;
-        }
+        return maxMemoryBytes - usedMemory.getUsed();
     }
 
     @Override
@@ -72,8 +98,16 @@ public class GlobalMemoryManager implements MemoryManager {
         return maxMemoryBytes;
     }
 
+    @Override
+    public long getUsedMemory() {
+        return usedMemory.getUsed();
+    }
+
+    @Override
+    public long getPeakUsedMemory() {
+        return usedMemory.getPeak();
+    }
 
-    // TODO: Work on fairness: One big memory request can cause all others to block here.
     private long allocateBytes(long minBytes, long reqBytes) {
         if (minBytes < 0 || reqBytes < 0) {
             throw new IllegalStateException("Minimum requested bytes (" + minBytes + ") and requested bytes (" + reqBytes + ") must be greater than zero");
@@ -81,28 +115,96 @@ public class GlobalMemoryManager implements MemoryManager {
         if (minBytes > maxMemoryBytes) { // No need to wait, since we'll never have this much available
             throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes is larger than global pool of " + maxMemoryBytes + " bytes.");
         }
-        long startTimeMs = System.currentTimeMillis(); // Get time outside of sync block to account for waiting for lock
-        long nBytes;
-        synchronized(sync) {
-            while (usedMemoryBytes + minBytes > maxMemoryBytes) { // Only wait if minBytes not available
-                try {
+        reclaimOrphanedChunks();
+        // Don't jump ahead of the allocations already waiting for memory
+        if (waiterCount.get() == 0) {
+            // Allocate at most reqBytes, but at least minBytes
+            long nBytes = usedMemory.tryReserve(minBytes, reqBytes, maxMemoryBytes);
+            if (nBytes >= 0) {
+                return nBytes;
+            }
+        }
+        return waitForBytes(minBytes, reqBytes);
+    }
+
+    private long waitForBytes(long minBytes, long reqBytes) {
+        long startTimeMs = System.currentTimeMillis(); // Get time before taking lock to account for waiting for it
+        Waiter waiter = new Waiter(minBytes, reqBytes, waitLock.newCondition());
+        waitLock.lock();
+        try {
+            waiters.add(waiter);
+            waiterCount.incrementAndGet();
+            try {
+                // Memory may have been freed before we were on the queue
+                grantWaiters();
+                while (waiter.nBytes < 0) {
                     long remainingWaitTimeMs = maxWaitMs - (System.currentTimeMillis() - startTimeMs);
                     if (remainingWaitTimeMs <= 0) { // Ran out of time waiting for some memory to get freed up
-                        throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes could not be allocated from remaining memory of " + usedMemoryBytes + " bytes from global pool of " + maxMemoryBytes + " bytes after waiting for " + maxWaitMs + "ms.");
+                        throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes could not be allocated from remaining memory of " + getAvailableMemory() + " bytes from global pool of " + maxMemoryBytes + " bytes after waiting for " + maxWaitMs + "ms.");
+                    }
+                    try {
+                        waiter.granted.await(remainingWaitTimeMs, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted allocation of " + minBytes + " bytes", ie);
                     }
-                    sync.wait(remainingWaitTimeMs);
-                } catch (InterruptedException ie) {
-                    throw new RuntimeException("Interrupted allocation of " + minBytes + " bytes", ie);
+                }
+                return waiter.nBytes;
+            } finally {
+                if (waiter.nBytes < 0) { // Otherwise already taken off the queue by grantWaiters
+                    waiters.remove(waiter);
+                    waiterCount.decrementAndGet();
+                    // The waiters behind this one may fit
+                    grantWaiters();
                 }
             }
-            // Allocate at most reqBytes, but at least minBytes
-            nBytes = Math.min(reqBytes, maxMemoryBytes - usedMemoryBytes);
-            if (nBytes < minBytes) {
-                throw new IllegalStateException("Allocated bytes (" + nBytes + ") should be at least the minimum requested bytes (" + minBytes + ")");
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    @GuardedBy("waitLock")
+    private void grantWaiters() {
+        while (!waiters.isEmpty()) {
+            Waiter waiter = waiters.getFirst();
+            long nBytes = usedMemory.tryReserve(waiter.minBytes, waiter.reqBytes, maxMemoryBytes);
+            if (nBytes < 0) {
+                return;
+            }
+            waiter.nBytes = nBytes;
+            waiters.removeFirst();
+            waiterCount.decrementAndGet();
+            waiter.granted.signal();
+        }
+    }
+
+    // exposed for tests
+    int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    private void freeBytes(long nBytes) {
+        usedMemory.release(nBytes);
+        if (waiterCount.get() > 0) {
+            waitLock.lock();
+            try {
+                grantWaiters();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    private void reclaimOrphanedChunks() {
+        ChunkReference ref;
+        while ((ref = (ChunkReference)orphanedChunks.poll()) != null) {
+            openChunks.remove(ref);
+            long size = ref.size.getAndSet(0);
+            if (size > 0) {
+                logger.warn("Orphaned chunk of " + size + " bytes was garbage collected without being closed");
+                freeBytes(size);
             }
-            usedMemoryBytes += nBytes;
         }
-        return nBytes;
     }
 
     @Override
@@ -120,21 +222,49 @@ public class GlobalMemoryManager implements MemoryManager {
         return new GlobalMemoryChunk(sizeBytes);
     }
     
+    private static class Waiter {
+        private final long minBytes;
+        private final long reqBytes;
+        private final Condition granted;
+        @GuardedBy("waitLock")
+        private long nBytes = -1;
+        
+        private Waiter(long minBytes, long reqBytes, Condition granted) {
+            this.minBytes = minBytes;
+            this.reqBytes = reqBytes;
+            this.granted = granted;
+        }
+    }
+    
+    /**
+     * Shares the size of a chunk with the chunk itself, so that the memory
+     * may still be reclaimed once the chunk has been garbage collected.
+     */
+    private static class ChunkReference extends PhantomReference<GlobalMemoryChunk> {
+        private final AtomicLong size;
+        
+        private ChunkReference(GlobalMemoryChunk chunk, AtomicLong size, ReferenceQueue<GlobalMemoryChunk> queue) {
+            super(chunk, queue);
+            this.size = size;
+        }
+    }
+    
     private class GlobalMemoryChunk implements MemoryChunk {
-        private volatile long size;
+        private final AtomicLong size;
+        private final ChunkReference ref;
 
         private GlobalMemoryChunk(long size) {
             if (size < 0) {
                 throw new IllegalStateException("Size of memory chunk must be greater than zero, but instead is " + size);
             }
-            this.size = size;
+            this.size = new AtomicLong(size);
+            this.ref = new ChunkReference(this, this.size, orphanedChunks);
+            openChunks.add(ref);
         }
 
         @Override
         public long getSize() {
-            synchronized(sync) {
-                return size; // TODO: does this need to be synchronized?
-            }
+            return size.get();
         }
         
         @Override
@@ -142,45 +272,25 @@ public class GlobalMemoryManager implements MemoryManager {
             if (nBytes < 0) {
                 throw new IllegalStateException("Number of bytes to resize to must be greater than zero, but instead is " + nBytes);
             }
-            synchronized(sync) {
-                long nAdditionalBytes = (nBytes - size);
-                if (nAdditionalBytes < 0) {
-                    usedMemoryBytes += nAdditionalBytes;
-                    size = nBytes;
-                    sync.notifyAll();
-                } else {
-                    allocateBytes(nAdditionalBytes, nAdditionalBytes);
-                    size = nBytes;
-                }
-            }
-        }
-        
-        /**
-         * Check that MemoryChunk has previously been closed.
-         */
-        @Override
-        protected void finalize() throws Throwable {
-            try {
-                close();
-                if (size > 0) {
-                    logger.warn("Orphaned chunk of " + size + " bytes found during finalize");
-                }
-                // TODO: log error here, but we can't use SFDC logging
-                // because this runs in an hbase coprocessor.
-                // Create a gack-like API (talk with GridForce or HBase folks)
-            } finally {
-                super.finalize();
+            long nAdditionalBytes = (nBytes - size.get());
+            if (nAdditionalBytes < 0) {
+                size.addAndGet(nAdditionalBytes);
+                freeBytes(-nAdditionalBytes);
+            } else if (nAdditionalBytes > 0) {
+                allocateBytes(nAdditionalBytes, nAdditionalBytes);
+                size.addAndGet(nAdditionalBytes);
             }
         }
         
         @Override
         public void close() {
-            synchronized(sync) {
-                usedMemoryBytes -= size;
-                size = 0;
-                sync.notifyAll();
+            long nBytes = size.getAndSet(0);
+            if (nBytes > 0) {
+                freeBytes(nBytes);
+            }
+            if (openChunks.remove(ref)) {
+                ref.clear();
             }
         }
     }
 }
- 
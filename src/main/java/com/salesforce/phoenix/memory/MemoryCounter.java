@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Lock-free counter of the bytes allocated through a memory manager
+ * along with the high-water mark of that amount.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+class MemoryCounter {
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+
+    long getUsed() {
+        return usedBytes.get();
+    }
+
+    long getPeak() {
+        return peakBytes.get();
+    }
+
+    /**
+     * Reserve at most reqBytes, but at least minBytes, without letting
+     * the amount in use exceed maxBytes.
+     * @return the number of bytes reserved or -1 if minBytes is not available
+     */
+    long tryReserve(long minBytes, long reqBytes, long maxBytes) {
+        while (true) {
+            long used = usedBytes.get();
+            long availBytes = maxBytes - used;
+            if (minBytes > availBytes) {
+                return -1;
+            }
+            long nBytes = Math.min(reqBytes, availBytes);
+            if (usedBytes.compareAndSet(used, used + nBytes)) {
+                updatePeak(used + nBytes);
+                return nBytes;
+            }
+        }
+    }
+
+    /**
+     * Unconditionally add nBytes to the amount in use.
+     */
+    void add(long nBytes) {
+        updatePeak(usedBytes.addAndGet(nBytes));
+    }
+
+    void release(long nBytes) {
+        usedBytes.addAndGet(-nBytes);
+    }
+
+    /**
+     * Restart the high-water mark from the amount currently in use.
+     */
+    void resetPeak() {
+        peakBytes.set(usedBytes.get());
+    }
+
+    private void updatePeak(long used) {
+        long peak;
+        while (used > (peak = peakBytes.get())) {
+            if (peakBytes.compareAndSet(peak, used)) {
+                return;
+            }
+        }
+    }
+}
@@ -49,6 +49,18 @@ public interface MemoryManager {
      */
     long getAvailableMemory();
     
+    /**
+     * Get the amount of memory (in bytes) currently allocated through
+     * this memory manager.
+     */
+    long getUsedMemory();
+    
+    /**
+     * Get the high-water mark of the memory (in bytes) allocated through
+     * this memory manager, i.e. the most that has been in use at once.
+     */
+    long getPeakUsedMemory();
+    
     /**
      * Allocate up to reqBytes of memory, dialing the amount down to 
      * minBytes if full amount is not available.  If minBytes is not
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.memory;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * 
+ * Memory manager scoped to a single query. Allocations are passed
+ * through to the parent memory manager, while the memory used by
+ * the query and its high-water mark are tracked here.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+@ThreadSafe
+public class QueryMemoryManager extends DelegatingMemoryManager {
+    private final MemoryCounter usedBytes = new MemoryCounter();
+    
+    public QueryMemoryManager(MemoryManager mm) {
+        super(mm);
+    }
+
+    @Override
+    public MemoryChunk allocate(long minBytes, long reqBytes) {
+        final MemoryChunk chunk = super.allocate(minBytes, reqBytes);
+        usedBytes.add(chunk.getSize());
+        return new MemoryChunk() {
+            @Override
+            public void close() {
+                usedBytes.release(chunk.getSize());
+                chunk.close();
+            }
+
+            @Override
+            public long getSize() {
+                return chunk.getSize();
+            }
+
+            @Override
+            public void resize(long nBytes) {
+                long size = chunk.getSize();
+                chunk.resize(nBytes);
+                usedBytes.add(nBytes - size);
+            }
+        };
+    }
+
+    @Override
+    public long getUsedMemory() {
+        return usedBytes.getUsed();
+    }
+
+    @Override
+    public long getPeakUsedMemory() {
+        return usedBytes.getPeak();
+    }
+
+    /**
+     * Restart the high-water mark from the memory currently in use,
+     * for when the query is executed again.
+     */
+    public void resetPeakUsedMemory() {
+        usedBytes.resetPeak();
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.parse;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Pair;
+
+import com.google.common.collect.*;
+
+/**
+ * 
+ * Parse node for CREATE INDEX. The index is created in the same schema
+ * as the table being indexed.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class CreateIndexStatement implements SQLStatement {
+    private final NamedNode indexName;
+    private final TableName tableName;
+    private final List<ColumnDefName> indexColumns;
+    private final List<ColumnDefName> includeColumns;
+    private final List<ParseNode> splitNodes;
+    private final ListMultimap<String,Pair<String,Object>> props;
+    private final boolean ifNotExists;
+    private final int bindCount;
+
+    protected CreateIndexStatement(NamedNode indexName, TableName tableName, List<ColumnDefName> indexColumns, List<ColumnDefName> includeColumns, 
+            ListMultimap<String,Pair<String,Object>> props, List<ParseNode> splitNodes, boolean ifNotExists, int bindCount) {
+        this.indexName = indexName;
+        this.tableName = tableName;
+        this.indexColumns = ImmutableList.copyOf(indexColumns);
+        this.includeColumns = includeColumns == null ? Collections.<ColumnDefName>emptyList() : ImmutableList.copyOf(includeColumns);
+        this.props = props == null ? ImmutableListMultimap.<String,Pair<String,Object>>of() : props;
+        this.splitNodes = splitNodes == null ? Collections.<ParseNode>emptyList() : ImmutableList.copyOf(splitNodes);
+        this.ifNotExists = ifNotExists;
+        this.bindCount = bindCount;
+    }
+
+    @Override
+    public int getBindCount() {
+        return bindCount;
+    }
+
+    public NamedNode getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * @return the name of the table being indexed
+     */
+    public TableName getTableName() {
+        return tableName;
+    }
+
+    public List<ColumnDefName> getIndexColumns() {
+        return indexColumns;
+    }
+
+    public List<ColumnDefName> getIncludeColumns() {
+        return includeColumns;
+    }
+
+    public ListMultimap<String,Pair<String,Object>> getProps() {
+        return props;
+    }
+
+    public List<ParseNode> getSplitNodes() {
+        return splitNodes;
+    }
+
+    public boolean ifNotExists() {
+        return ifNotExists;
+    }
+}
@@ -42,14 +42,20 @@ public class JoinTableNode extends TableNode {
     public enum JoinType {Inner, Left, Right, Full};
     
     private final NamedTableNode table;
+    private final ParseNode onNode;
     private final JoinType type;
     
     JoinTableNode(String alias, NamedTableNode table, ParseNode node, JoinType type) {
         super(alias);
         this.table = table;
+        this.onNode = node;
         this.type = type;
     }
 
+    public ParseNode getOnNode() {
+        return onNode;
+    }
+
     public JoinType getType() {
         return type;
     }
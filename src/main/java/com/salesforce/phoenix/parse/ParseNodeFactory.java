@@ -43,6 +43,7 @@ import com.salesforce.phoenix.parse.FunctionParseNode.BuiltInFunction;
 import com.salesforce.phoenix.parse.FunctionParseNode.BuiltInFunctionInfo;
 import com.salesforce.phoenix.parse.JoinTableNode.JoinType;
 import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.PTableType;
 import com.salesforce.phoenix.schema.TypeMismatchException;
 import com.salesforce.phoenix.util.SchemaUtil;
 
@@ -250,6 +251,18 @@ public class ParseNodeFactory {
         return new CreateTableStatement(tableName, props, columns, pkConstraint, splits, readOnly, ifNotExists, bindCount);
     }
     
+    public CreateTableStatement createTable(TableName tableName, ListMultimap<String,Pair<String,Object>> props, List<ColumnDef> columns, PrimaryKeyConstraint pkConstraint, List<ParseNode> splits, PTableType tableType, boolean ifNotExists, int bindCount) {
+        return new CreateTableStatement(tableName, props, columns, pkConstraint, splits, tableType, ifNotExists, bindCount);
+    }
+    
+    public CreateIndexStatement createIndex(NamedNode indexName, TableName tableName, List<ColumnDefName> indexColumns, List<ColumnDefName> includeColumns, ListMultimap<String,Pair<String,Object>> props, List<ParseNode> splits, boolean ifNotExists, int bindCount) {
+        return new CreateIndexStatement(indexName, tableName, indexColumns, includeColumns, props, splits, ifNotExists, bindCount);
+    }
+    
+    public NamedNode indexName(String name) {
+        return new NamedNode(name);
+    }
+    
     public AddColumnStatement addColumn(TableName tableName,  ColumnDef columnDef, boolean ifNotExists, Map<String,Object> props) {
         return new AddColumnStatement(tableName, columnDef, ifNotExists, props);
     }
@@ -31,6 +31,7 @@ import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -64,6 +65,16 @@ public interface ConnectionQueryServices extends QueryServices, MetaDataMutated
     public StatsManager getStatsManager();
     
     public SortedSet<HRegionInfo> getAllTableRegions(TableRef table) throws SQLException;
+    
+    /**
+     * Get the location of the region of a table that contains a row, using the
+     * region locations cached by the underlying HBase connection when possible.
+     * @param tableName the physical table name
+     * @param row the row key
+     * @return the region location
+     * @throws SQLException
+     */
+    public HRegionLocation getTableRegionLocation(byte[] tableName, byte[] row) throws SQLException;
 
     public PhoenixConnection connect(String url, Properties info) throws SQLException;
 
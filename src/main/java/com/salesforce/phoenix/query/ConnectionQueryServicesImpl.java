@@ -56,8 +56,10 @@ import com.salesforce.phoenix.coprocessor.MetaDataProtocol.MetaDataMutationResul
 import com.salesforce.phoenix.coprocessor.MetaDataProtocol.MutationCode;
 import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.execute.MutationState;
+import com.salesforce.phoenix.index.IndexRegionObserver;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
+import com.salesforce.phoenix.join.HashCacheImplementation;
 import com.salesforce.phoenix.join.HashJoiningRegionObserver;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.schema.TableNotFoundException;
@@ -188,6 +190,15 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         }
     }
 
+    @Override
+    public HRegionLocation getTableRegionLocation(byte[] tableName, byte[] row) throws SQLException {
+        try {
+            return connection.getRegionLocation(tableName, row, false);
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
+        }
+    }
+
     @Override
     public PMetaData addTable(String schemaName, PTable table) throws SQLException {
         try {
@@ -382,11 +393,16 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
             descriptor.addCoprocessor(ScanRegionObserver.class.getName(), null, 1, null);
             descriptor.addCoprocessor(UngroupedAggregateRegionObserver.class.getName(), null, 1, null);
             descriptor.addCoprocessor(GroupedAggregateRegionObserver.class.getName(), null, 1, null);
-            descriptor.addCoprocessor(HashJoiningRegionObserver.class.getName(), null, 1, null);
+            // Must run before the other observers so that they see the joined rows
+            descriptor.addCoprocessor(HashJoiningRegionObserver.class.getName(), null, 0, null);
+            descriptor.addCoprocessor(HashCacheImplementation.class.getName(), null, 1, null);
             // Setup split policy on Phoenix metadata table to ensure that the key values of a Phoenix table
             // stay on the same region.
             if (SchemaUtil.isMetaTable(tableName)) {
                 descriptor.addCoprocessor(MetaDataEndpointImpl.class.getName(), null, 1, null);
+            } else {
+                descriptor.addCoprocessor(StatisticsRegionObserver.class.getName(), null, 1, null);
+                descriptor.addCoprocessor(IndexRegionObserver.class.getName(), null, 1, null);
             }
         } catch (IOException e) {
             throw new PhoenixIOException(e);
@@ -604,10 +620,16 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
                     existingDesc.removeCoprocessor(UngroupedAggregateRegionObserver.class.getName());
                     existingDesc.removeCoprocessor(GroupedAggregateRegionObserver.class.getName());
                     existingDesc.removeCoprocessor(HashJoiningRegionObserver.class.getName());
+                    existingDesc.removeCoprocessor(HashCacheImplementation.class.getName());
+                    existingDesc.removeCoprocessor(StatisticsRegionObserver.class.getName());
+                    existingDesc.removeCoprocessor(IndexRegionObserver.class.getName());
                     existingDesc.addCoprocessor(ScanRegionObserver.class.getName(), null, 1, null);
                     existingDesc.addCoprocessor(UngroupedAggregateRegionObserver.class.getName(), null, 1, null);
                     existingDesc.addCoprocessor(GroupedAggregateRegionObserver.class.getName(), null, 1, null);
-                    existingDesc.addCoprocessor(HashJoiningRegionObserver.class.getName(), null, 1, null);
+                    existingDesc.addCoprocessor(HashJoiningRegionObserver.class.getName(), null, 0, null);
+                    existingDesc.addCoprocessor(HashCacheImplementation.class.getName(), null, 1, null);
+                    existingDesc.addCoprocessor(StatisticsRegionObserver.class.getName(), null, 1, null);
+                    existingDesc.addCoprocessor(IndexRegionObserver.class.getName(), null, 1, null);
                     boolean wasEnabled = admin.isTableEnabled(tableName);
                     if (wasEnabled) {
                         admin.disableTable(tableName);
@@ -804,6 +826,50 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
     @Override
     public void init(String url, Properties props) throws SQLException {
         SchemaUtil.initMetaData(this, url, props);
+        ensureStatsTableCreated();
+    }
+
+    /**
+     * Create the HBase table to which {@link StatisticsRegionObserver} writes the region
+     * statistics if it doesn't exist yet. It isn't a Phoenix table, so it's created
+     * directly through HBase.
+     * @throws SQLException
+     */
+    private void ensureStatsTableCreated() throws SQLException {
+        HBaseAdmin admin = null;
+        SQLException sqlE = null;
+        try {
+            admin = new HBaseAdmin(this.getConfig());
+            if (!admin.tableExists(STATS_TABLE_NAME)) {
+                HTableDescriptor descriptor = new HTableDescriptor(STATS_TABLE_NAME);
+                HColumnDescriptor columnDescriptor = new HColumnDescriptor(STATS_FAMILY_BYTES);
+                columnDescriptor.setMaxVersions(1);
+                descriptor.addFamily(columnDescriptor);
+                try {
+                    admin.createTable(descriptor);
+                } catch (TableExistsException e) {
+                    // Created concurrently by another client
+                }
+            }
+        } catch (IOException e) {
+            sqlE = new PhoenixIOException(e);
+        } finally {
+            try {
+                if (admin != null) {
+                    admin.close();
+                }
+            } catch (IOException e) {
+                if (sqlE == null) {
+                    sqlE = new PhoenixIOException(e);
+                } else {
+                    sqlE.setNextException(new PhoenixIOException(e));
+                }
+            } finally {
+                if (sqlE != null) {
+                    throw sqlE;
+                }
+            }
+        }
     }
 
     @Override
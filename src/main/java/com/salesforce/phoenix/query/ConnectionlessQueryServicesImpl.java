@@ -31,6 +31,7 @@ import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -87,6 +88,11 @@ public class ConnectionlessQueryServicesImpl extends DelegateQueryServices imple
         return null;
     }
 
+    @Override
+    public HRegionLocation getTableRegionLocation(byte[] tableName, byte[] row) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public PMetaData addTable(String schemaName, PTable table) throws SQLException {
         return metaData = metaData.addTable(schemaName, table);
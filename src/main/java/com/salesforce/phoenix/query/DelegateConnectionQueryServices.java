@@ -31,6 +31,7 @@ import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -74,6 +75,11 @@ public class DelegateConnectionQueryServices extends DelegateQueryServices imple
         return getDelegate().getAllTableRegions(table);
     }
 
+    @Override
+    public HRegionLocation getTableRegionLocation(byte[] tableName, byte[] row) throws SQLException {
+        return getDelegate().getTableRegionLocation(tableName, row);
+    }
+
     @Override
     public PMetaData addTable(String schemaName, PTable table) throws SQLException {
         return getDelegate().addTable(schemaName, table);
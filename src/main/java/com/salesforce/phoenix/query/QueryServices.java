@@ -65,6 +65,16 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     size in bytes after which results from parallel executed aggregate
  *     query results are spooled to disk. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SPOOL_THRESHOLD_BYTES}.</li>
+ *   <li><strong>phoenix.query.spoolDirectory</strong>: directory in which
+ *     the files holding spooled results, sorted runs and spilled groups are created. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SPOOL_DIRECTORY},
+ *     the java.io.tmpdir system property.</li>
+ *   <li><strong>phoenix.query.streamingQueueSize</strong>: maximum number
+ *     of rows buffered on the client while streaming the results of a parallel
+ *     scan whose rows may be returned in any order, such as an ungrouped
+ *     aggregate query. The region scans block once this many rows are waiting
+ *     to be consumed. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_STREAMING_QUEUE_SIZE}.</li>
  *   <li><strong>phoenix.query.maxGlobalMemoryPercentage</strong>: percentage of total 
  *     memory ({@link java.lang.Runtime.getRuntime()#totalMemory}) that all threads
  *     may use. Only course grain memory usage is tracked, mainly accounting for memory
@@ -108,6 +118,11 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     if the stats could not be updated for this length of time, the stats
  *     are considered too old and thus no longer accurate enough to use).
  *     Defaults to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_STATS_AGE_MS}.</li>
+ *   <li><strong>phoenix.query.maxGuidePostsPerRegion</strong>: the number
+ *     of equi-depth guide posts kept per region by the statistics collected at
+ *     major compaction time. Up to twice as many may be kept. More guide posts
+ *     allow for more evenly sized parallel scans at the cost of larger statistics.
+ *     Defaults to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_GUIDE_POSTS_PER_REGION}.</li>
  *   <li><strong>phoenix.mutate.maxSize</strong>: the maximum number of rows
  *     that may be collected in {@link com.salesforce.phoenix.execute.MutationState}
  *     before a commit or rollback must be called. For better performance and to
@@ -115,6 +130,11 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     to TRUE, in which case, mutations (upserts and deletes) are performed
  *     on the server side without returning data back to the client. Defaults
  *     to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_MUTATION_SIZE}.</li>
+ *   <li><strong>phoenix.mutate.maxSizeBytes</strong>: the maximum number of bytes
+ *     that the rows collected in {@link com.salesforce.phoenix.execute.MutationState}
+ *     may take up before a commit or rollback must be called. The bytes are reserved
+ *     from the client memory manager as the rows are collected. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_MUTATION_SIZE_BYTES}.</li>
  *   <li><strong><del>phoenix.mutate.upsertBatchSize</del></strong>: deprecated - use strong>phoenix.mutate.batchSize</strong>
  *     instead.</li>
  *   <li><strong>phoenix.mutate.batchSize</strong>: the number of rows
@@ -129,6 +149,50 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     in milliseconds of the region boundary cache used to guide the split
  *     points for query parallelization. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS}.</li>
+ *   <li><strong>phoenix.coprocessor.groupBySpillThresholdBytes</strong>: size
+ *     in bytes of the map of distinct groups built on the server during an
+ *     unordered GROUP BY beyond which the groups are spilled to disk and merged
+ *     back together when returned. The groups are also spilled if the map cannot
+ *     grow because phoenix.query.maxGlobalMemoryPercentage has been reached.
+ *     Defaults to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_GROUPBY_SPILL_THRESHOLD_BYTES}.</li>
+ *   <li><strong>phoenix.coprocessor.maxPendingMutationBatches</strong>: the number
+ *     of batches of mutations (each of phoenix.mutate.batchSize rows) that may be
+ *     waiting to be written while the coprocessor continues to scan during the
+ *     server side execution of an UPSERT SELECT or DELETE statement. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_PENDING_MUTATION_BATCHES}.</li>
+ *   <li><strong>phoenix.coprocessor.maxMutationWriterThreads</strong>: the maximum
+ *     number of threads on a region server that write the batches of mutations of
+ *     server side UPSERT SELECT and DELETE statements while the scan continues. Once
+ *     all of them are busy, a statement writes its batches on its scan thread instead.
+ *     Defaults to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_MUTATION_WRITER_THREADS}.</li>
+ *   <li><strong>phoenix.coprocessor.maxIndexWriterThreads</strong>: the number of
+ *     threads on a region server that write the index rows of the mutations applied
+ *     to its regions to the index tables, one index table per thread. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_INDEX_WRITER_THREADS}.</li>
+ *   <li><strong>phoenix.coprocessor.indexWriteTimeoutMs</strong>: number of milliseconds
+ *     a mutation of an indexed table waits for its index rows to be written before it
+ *     fails. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_INDEX_WRITE_TIMEOUT_MS}.</li>
+ *   <li><strong>phoenix.query.scanPrefetchRows</strong>: the number of rows that
+ *     each split of a non aggregate query may fetch ahead of the client when the
+ *     splits are scanned in parallel. Set to zero to scan the table serially
+ *     instead. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SCAN_PREFETCH_ROWS}.</li>
+ *   <li><strong>phoenix.query.maxSpeculativeRegionScans</strong>: the maximum number
+ *     of regions scanned at the same time for an aggregate query with a LIMIT. The
+ *     regions are scanned in waves that start with one region and double in size
+ *     until the limit is reached. Set to one to scan the regions one at a time.
+ *     Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_SPECULATIVE_REGION_SCANS}.</li>
+ *   <li><strong>phoenix.query.statementCacheSize</strong>: the maximum number of SQL
+ *     statements for which a connection keeps the parse tree and the last compiled plan,
+ *     so that preparing the same SQL again does not parse it again and executing it does
+ *     not compile it again. Set to zero to not cache statements. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_STATEMENT_CACHE_SIZE}.</li>
+ *   <li><strong>phoenix.mutate.commitRetries</strong>: the number of times the rows
+ *     destined for a region server are sent again when a commit fails to write them.
+ *     Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_COMMIT_RETRIES}.</li>
  *   </ul>
  *     
  * @author jtaylor
@@ -141,6 +205,11 @@ public interface QueryServices extends SQLCloseable {
     public static final String QUEUE_SIZE_ATTRIB = "phoenix.query.queueSize";
     public static final String THREAD_TIMEOUT_MS_ATTRIB = "phoenix.query.timeoutMs";
     public static final String SPOOL_THRESHOLD_BYTES_ATTRIB = "phoenix.query.spoolThresholdBytes";
+    public static final String SPOOL_DIRECTORY_ATTRIB = "phoenix.query.spoolDirectory";
+    public static final String STREAMING_QUEUE_SIZE_ATTRIB = "phoenix.query.streamingQueueSize";
+    public static final String SCAN_PREFETCH_ROWS_ATTRIB = "phoenix.query.scanPrefetchRows";
+    public static final String MAX_SPECULATIVE_REGION_SCANS_ATTRIB = "phoenix.query.maxSpeculativeRegionScans";
+    public static final String STATEMENT_CACHE_SIZE_ATTRIB = "phoenix.query.statementCacheSize";
     
     public static final String MAX_MEMORY_PERC_ATTRIB = "phoenix.query.maxGlobalMemoryPercentage";
     public static final String MAX_MEMORY_WAIT_MS_ATTRIB = "phoenix.query.maxGlobalMemoryWaitMs";
@@ -151,9 +220,11 @@ public interface QueryServices extends SQLCloseable {
     public static final String DATE_FORMAT_ATTRIB = "phoenix.query.dateFormat";
     public static final String STATS_UPDATE_FREQ_MS_ATTRIB = "phoenix.query.statsUpdateFrequency";
     public static final String MAX_STATS_AGE_MS_ATTRIB = "phoenix.query.maxStatsAge";
+    public static final String MAX_GUIDE_POSTS_PER_REGION_ATTRIB = "phoenix.query.maxGuidePostsPerRegion";
     public static final String CALL_QUEUE_ROUND_ROBIN_ATTRIB = "ipc.server.callqueue.roundrobin";
     public static final String SCAN_CACHE_SIZE_ATTRIB = "hbase.client.scanner.caching";
     public static final String MAX_MUTATION_SIZE_ATTRIB = "phoenix.mutate.maxSize";
+    public static final String MAX_MUTATION_SIZE_BYTES_ATTRIB = "phoenix.mutate.maxSizeBytes";
     /**
      * Use {@link #MUTATE_BATCH_SIZE_ATTRIB} instead
      * @deprecated
@@ -161,8 +232,14 @@ public interface QueryServices extends SQLCloseable {
     @Deprecated
     public static final String UPSERT_BATCH_SIZE_ATTRIB = "phoenix.mutate.upsertBatchSize";
     public static final String MUTATE_BATCH_SIZE_ATTRIB = "phoenix.mutate.batchSize";
+    public static final String COMMIT_RETRIES_ATTRIB = "phoenix.mutate.commitRetries";
     public static final String REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB = "phoenix.query.regionBoundaryCacheTTL";
     public static final String MAX_HASH_CACHE_TIME_TO_LIVE_MS = "phoenix.coprocessor.maxHashCacheTimeToLiveMs";
+    public static final String GROUPBY_SPILL_THRESHOLD_BYTES_ATTRIB = "phoenix.coprocessor.groupBySpillThresholdBytes";
+    public static final String MAX_PENDING_MUTATION_BATCHES_ATTRIB = "phoenix.coprocessor.maxPendingMutationBatches";
+    public static final String MAX_MUTATION_WRITER_THREADS_ATTRIB = "phoenix.coprocessor.maxMutationWriterThreads";
+    public static final String MAX_INDEX_WRITER_THREADS_ATTRIB = "phoenix.coprocessor.maxIndexWriterThreads";
+    public static final String INDEX_WRITE_TIMEOUT_MS_ATTRIB = "phoenix.coprocessor.indexWriteTimeoutMs";
 
     public static final String CALL_QUEUE_PRODUCER_ATTRIB_NAME = "CALL_QUEUE_PRODUCER";
     
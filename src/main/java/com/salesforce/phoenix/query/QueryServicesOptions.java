@@ -47,6 +47,8 @@ public class QueryServicesOptions {
 	public static final int DEFAULT_QUEUE_SIZE = 250;
 	public static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
 	public static final int DEFAULT_SPOOL_THRESHOLD_BYTES = 1024 * 1024 * 50; // 50m
+	public static final String DEFAULT_SPOOL_DIRECTORY = System.getProperty("java.io.tmpdir");
+	public static final int DEFAULT_STREAMING_QUEUE_SIZE = 1000;
 	public static final int DEFAULT_MAX_MEMORY_PERC = 20; // 20% of heap
 	public static final int DEFAULT_MAX_MEMORY_WAIT_MS = 5000;
 	public static final int DEFAULT_MAX_TENANT_MEMORY_PERC = 100;
@@ -56,8 +58,10 @@ public class QueryServicesOptions {
     public static final String DEFAULT_DATE_FORMAT = DateUtil.DEFAULT_DATE_FORMAT;
     public static final int DEFAULT_STATS_UPDATE_FREQ_MS = 15 * 60000; // 15min
     public static final int DEFAULT_MAX_STATS_AGE_MS = 24 * 60 * 60000; // 1 day
+    public static final int DEFAULT_MAX_GUIDE_POSTS_PER_REGION = 32;
     public static final boolean DEFAULT_CALL_QUEUE_ROUND_ROBIN = true; 
     public static final int DEFAULT_MAX_MUTATION_SIZE = 500000;
+    public static final long DEFAULT_MAX_MUTATION_SIZE_BYTES = 1024 * 1024 * 100; // 100 Mb
     /**
      * Use {@link #DEFAULT_MUTATE_BATCH_SIZE} instead
      * @deprecated
@@ -69,6 +73,15 @@ public class QueryServicesOptions {
 	public static final int DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS = 60000; // How long to cache region boundary info for parallelization calculation
     public static final int DEFAULT_MAX_HASH_CACHE_TIME_TO_LIVE_MS = 30000; // 30 sec (with no activity)
     public static final int DEFAULT_SCAN_CACHE_SIZE = 1000;
+    public static final long DEFAULT_GROUPBY_SPILL_THRESHOLD_BYTES = 1024*1024*100;  // 100 Mb
+    public static final int DEFAULT_MAX_PENDING_MUTATION_BATCHES = 2;
+    public static final int DEFAULT_MAX_MUTATION_WRITER_THREADS = 10;
+    public static final int DEFAULT_MAX_INDEX_WRITER_THREADS = 10;
+    public static final int DEFAULT_INDEX_WRITE_TIMEOUT_MS = 60000; // 1min
+    public static final int DEFAULT_SCAN_PREFETCH_ROWS = 1000;
+    public static final int DEFAULT_MAX_SPECULATIVE_REGION_SCANS = 8;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 100;
+    public static final int DEFAULT_COMMIT_RETRIES = 1;
     
     private final Configuration config;
     
@@ -84,6 +97,8 @@ public class QueryServicesOptions {
             .setIfUnset(QUEUE_SIZE_ATTRIB, DEFAULT_QUEUE_SIZE)
             .setIfUnset(THREAD_TIMEOUT_MS_ATTRIB, DEFAULT_THREAD_TIMEOUT_MS)
             .setIfUnset(SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES)
+            .setIfUnset(SPOOL_DIRECTORY_ATTRIB, DEFAULT_SPOOL_DIRECTORY)
+            .setIfUnset(STREAMING_QUEUE_SIZE_ATTRIB, DEFAULT_STREAMING_QUEUE_SIZE)
             .setIfUnset(MAX_MEMORY_PERC_ATTRIB, DEFAULT_MAX_MEMORY_PERC)
             .setIfUnset(MAX_MEMORY_WAIT_MS_ATTRIB, DEFAULT_MAX_MEMORY_WAIT_MS)
             .setIfUnset(MAX_TENANT_MEMORY_PERC_ATTRIB, DEFAULT_MAX_TENANT_MEMORY_PERC)
@@ -93,11 +108,22 @@ public class QueryServicesOptions {
             .setIfUnset(MAX_QUERY_CONCURRENCY_ATTRIB, DEFAULT_MAX_QUERY_CONCURRENCY)
             .setIfUnset(DATE_FORMAT_ATTRIB, DEFAULT_DATE_FORMAT)
             .setIfUnset(STATS_UPDATE_FREQ_MS_ATTRIB, DEFAULT_STATS_UPDATE_FREQ_MS)
+            .setIfUnset(MAX_GUIDE_POSTS_PER_REGION_ATTRIB, DEFAULT_MAX_GUIDE_POSTS_PER_REGION)
             .setIfUnset(CALL_QUEUE_ROUND_ROBIN_ATTRIB, DEFAULT_CALL_QUEUE_ROUND_ROBIN)
             .setIfUnset(MAX_MUTATION_SIZE_ATTRIB, DEFAULT_MAX_MUTATION_SIZE)
+            .setIfUnset(MAX_MUTATION_SIZE_BYTES_ATTRIB, DEFAULT_MAX_MUTATION_SIZE_BYTES)
             // TODO: remove usage of UPSERT_BATCH_SIZE_ATTRIB in next release
             .setIfUnset(MUTATE_BATCH_SIZE_ATTRIB, config.getInt(UPSERT_BATCH_SIZE_ATTRIB, DEFAULT_MUTATE_BATCH_SIZE))
             .setIfUnset(REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB, DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS)
+            .setIfUnset(GROUPBY_SPILL_THRESHOLD_BYTES_ATTRIB, DEFAULT_GROUPBY_SPILL_THRESHOLD_BYTES)
+            .setIfUnset(MAX_PENDING_MUTATION_BATCHES_ATTRIB, DEFAULT_MAX_PENDING_MUTATION_BATCHES)
+            .setIfUnset(MAX_MUTATION_WRITER_THREADS_ATTRIB, DEFAULT_MAX_MUTATION_WRITER_THREADS)
+            .setIfUnset(MAX_INDEX_WRITER_THREADS_ATTRIB, DEFAULT_MAX_INDEX_WRITER_THREADS)
+            .setIfUnset(INDEX_WRITE_TIMEOUT_MS_ATTRIB, DEFAULT_INDEX_WRITE_TIMEOUT_MS)
+            .setIfUnset(SCAN_PREFETCH_ROWS_ATTRIB, DEFAULT_SCAN_PREFETCH_ROWS)
+            .setIfUnset(MAX_SPECULATIVE_REGION_SCANS_ATTRIB, DEFAULT_MAX_SPECULATIVE_REGION_SCANS)
+            .setIfUnset(STATEMENT_CACHE_SIZE_ATTRIB, DEFAULT_STATEMENT_CACHE_SIZE)
+            .setIfUnset(COMMIT_RETRIES_ATTRIB, DEFAULT_COMMIT_RETRIES)
             ;
     }
     
@@ -146,6 +172,14 @@ public class QueryServicesOptions {
         return set(SPOOL_THRESHOLD_BYTES_ATTRIB, spoolThresholdBytes);
     }
     
+    public QueryServicesOptions setSpoolDirectory(String spoolDirectory) {
+        return set(SPOOL_DIRECTORY_ATTRIB, spoolDirectory);
+    }
+    
+    public QueryServicesOptions setStreamingQueueSize(int streamingQueueSize) {
+        return set(STREAMING_QUEUE_SIZE_ATTRIB, streamingQueueSize);
+    }
+    
     public QueryServicesOptions setMaxMemoryPerc(int maxMemoryPerc) {
         return set(MAX_MEMORY_PERC_ATTRIB, maxMemoryPerc);
     }
@@ -182,6 +216,10 @@ public class QueryServicesOptions {
         return set(STATS_UPDATE_FREQ_MS_ATTRIB, frequencyMs);
     }
     
+    public QueryServicesOptions setMaxGuidePostsPerRegion(int maxGuidePosts) {
+        return set(MAX_GUIDE_POSTS_PER_REGION_ATTRIB, maxGuidePosts);
+    }
+    
     public QueryServicesOptions setCallQueueRoundRobin(boolean isRoundRobin) {
         return set(CALL_QUEUE_PRODUCER_ATTRIB_NAME, isRoundRobin);
     }
@@ -190,6 +228,10 @@ public class QueryServicesOptions {
         return set(MAX_MUTATION_SIZE_ATTRIB, maxMutateSize);
     }
     
+    public QueryServicesOptions setMaxMutateSizeBytes(long maxMutateSizeBytes) {
+        return set(MAX_MUTATION_SIZE_BYTES_ATTRIB, maxMutateSizeBytes);
+    }
+    
     /**
      * Use {@link #setMutateBatchSize(int)} instead
      * @deprecated
@@ -206,6 +248,42 @@ public class QueryServicesOptions {
         return set(REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB, regionBoundaryCacheTTL);
     }
     
+    public QueryServicesOptions setGroupBySpillThresholdBytes(long groupBySpillThresholdBytes) {
+        return set(GROUPBY_SPILL_THRESHOLD_BYTES_ATTRIB, groupBySpillThresholdBytes);
+    }
+    
+    public QueryServicesOptions setMaxPendingMutationBatches(int maxPendingMutationBatches) {
+        return set(MAX_PENDING_MUTATION_BATCHES_ATTRIB, maxPendingMutationBatches);
+    }
+    
+    public QueryServicesOptions setMaxMutationWriterThreads(int maxMutationWriterThreads) {
+        return set(MAX_MUTATION_WRITER_THREADS_ATTRIB, maxMutationWriterThreads);
+    }
+    
+    public QueryServicesOptions setMaxIndexWriterThreads(int maxIndexWriterThreads) {
+        return set(MAX_INDEX_WRITER_THREADS_ATTRIB, maxIndexWriterThreads);
+    }
+    
+    public QueryServicesOptions setIndexWriteTimeoutMs(int indexWriteTimeoutMs) {
+        return set(INDEX_WRITE_TIMEOUT_MS_ATTRIB, indexWriteTimeoutMs);
+    }
+    
+    public QueryServicesOptions setScanPrefetchRows(int scanPrefetchRows) {
+        return set(SCAN_PREFETCH_ROWS_ATTRIB, scanPrefetchRows);
+    }
+    
+    public QueryServicesOptions setMaxSpeculativeRegionScans(int maxSpeculativeRegionScans) {
+        return set(MAX_SPECULATIVE_REGION_SCANS_ATTRIB, maxSpeculativeRegionScans);
+    }
+    
+    public QueryServicesOptions setStatementCacheSize(int statementCacheSize) {
+        return set(STATEMENT_CACHE_SIZE_ATTRIB, statementCacheSize);
+    }
+    
+    public QueryServicesOptions setCommitRetries(int commitRetries) {
+        return set(COMMIT_RETRIES_ATTRIB, commitRetries);
+    }
+    
     private QueryServicesOptions set(String name, boolean value) {
         config.set(name, Boolean.toString(value));
         return this;
@@ -238,6 +316,14 @@ public class QueryServicesOptions {
         return config.getInt(QUEUE_SIZE_ATTRIB, DEFAULT_QUEUE_SIZE);
     }
     
+    public String getSpoolDirectory() {
+        return config.get(SPOOL_DIRECTORY_ATTRIB, DEFAULT_SPOOL_DIRECTORY);
+    }
+    
+    public int getStreamingQueueSize() {
+        return config.getInt(STREAMING_QUEUE_SIZE_ATTRIB, DEFAULT_STREAMING_QUEUE_SIZE);
+    }
+    
     public int getMaxMemoryPerc() {
         return config.getInt(MAX_MEMORY_PERC_ATTRIB, DEFAULT_MAX_MEMORY_PERC);
     }
@@ -246,10 +332,18 @@ public class QueryServicesOptions {
         return config.getInt(MAX_MEMORY_WAIT_MS_ATTRIB, DEFAULT_MAX_MEMORY_WAIT_MS);
     }
 
+    public int getMaxGuidePostsPerRegion() {
+        return config.getInt(MAX_GUIDE_POSTS_PER_REGION_ATTRIB, DEFAULT_MAX_GUIDE_POSTS_PER_REGION);
+    }
+
     public int getMaxMutateSize() {
         return config.getInt(MAX_MUTATION_SIZE_ATTRIB, DEFAULT_MAX_MUTATION_SIZE);
     }
 
+    public long getMaxMutateSizeBytes() {
+        return config.getLong(MAX_MUTATION_SIZE_BYTES_ATTRIB, DEFAULT_MAX_MUTATION_SIZE_BYTES);
+    }
+
     /**
      * Use {@link #getMutateBatchSize()} instead
      * @deprecated
@@ -265,4 +359,40 @@ public class QueryServicesOptions {
     public int getRegionBoundaryCacheTTLMs() {
         return config.getInt(REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB, DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS);
     }
+    
+    public long getGroupBySpillThresholdBytes() {
+        return config.getLong(GROUPBY_SPILL_THRESHOLD_BYTES_ATTRIB, DEFAULT_GROUPBY_SPILL_THRESHOLD_BYTES);
+    }
+    
+    public int getMaxPendingMutationBatches() {
+        return config.getInt(MAX_PENDING_MUTATION_BATCHES_ATTRIB, DEFAULT_MAX_PENDING_MUTATION_BATCHES);
+    }
+    
+    public int getMaxMutationWriterThreads() {
+        return config.getInt(MAX_MUTATION_WRITER_THREADS_ATTRIB, DEFAULT_MAX_MUTATION_WRITER_THREADS);
+    }
+    
+    public int getMaxIndexWriterThreads() {
+        return config.getInt(MAX_INDEX_WRITER_THREADS_ATTRIB, DEFAULT_MAX_INDEX_WRITER_THREADS);
+    }
+    
+    public int getIndexWriteTimeoutMs() {
+        return config.getInt(INDEX_WRITE_TIMEOUT_MS_ATTRIB, DEFAULT_INDEX_WRITE_TIMEOUT_MS);
+    }
+    
+    public int getScanPrefetchRows() {
+        return config.getInt(SCAN_PREFETCH_ROWS_ATTRIB, DEFAULT_SCAN_PREFETCH_ROWS);
+    }
+    
+    public int getMaxSpeculativeRegionScans() {
+        return config.getInt(MAX_SPECULATIVE_REGION_SCANS_ATTRIB, DEFAULT_MAX_SPECULATIVE_REGION_SCANS);
+    }
+    
+    public int getStatementCacheSize() {
+        return config.getInt(STATEMENT_CACHE_SIZE_ATTRIB, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+    
+    public int getCommitRetries() {
+        return config.getInt(COMMIT_RETRIES_ATTRIB, DEFAULT_COMMIT_RETRIES);
+    }
 }
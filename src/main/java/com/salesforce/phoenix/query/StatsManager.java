@@ -29,7 +29,10 @@ package com.salesforce.phoenix.query;
 
 import java.sql.SQLException;
 
+import org.apache.hadoop.hbase.HRegionInfo;
+
 import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.stat.PRegionStats;
 
 
 /**
@@ -58,6 +61,25 @@ public interface StatsManager {
      */
     byte[] getMaxKey(TableRef table);
     
+    /**
+     * Get the statistics for a region of the given table, as collected the last time
+     * the region was major compacted or through {@link #collectStats(TableRef)}.
+     * @param table the table
+     * @param region a region of the table
+     * @return the statistics of the column family holding the empty key value of the table
+     * or null if unknown
+     */
+    PRegionStats getRegionStats(TableRef table, HRegionInfo region);
+    
+    /**
+     * Collect the statistics for every region of the given table now, rather than waiting
+     * for the regions to be major compacted, and then update the cached table statistics.
+     * This scans the entire table.
+     * @param table the table
+     * @throws SQLException
+     */
+    void collectStats(TableRef table) throws SQLException;
+    
     /**
      * Manually update the cached table statistics
      * @param table the table
@@ -29,15 +29,22 @@ package com.salesforce.phoenix.query;
 
 import java.io.IOException;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.util.*;
 import java.util.concurrent.*;
 
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
 
+import com.salesforce.phoenix.coprocessor.StatisticsRegionObserver;
 import com.salesforce.phoenix.exception.*;
+import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
+import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.stat.PRegionStats;
+import com.salesforce.phoenix.util.ByteUtil;
 import com.salesforce.phoenix.util.SchemaUtil;
 
 
@@ -54,6 +61,9 @@ import com.salesforce.phoenix.util.SchemaUtil;
  * 2) the query to get the stats pulls a single row so it's very cheap
  * 3) it's async and if it takes too long it won't lead to anything except less optimal
  *  parallelization.
+ * The per region statistics are read from the
+ * {@link com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData#STATS_TABLE_NAME} table at the
+ * same time. They're written there on the server side by {@link StatisticsRegionObserver}.
  *
  * @author jtaylor
  * @since 0.1
@@ -118,7 +128,8 @@ public class StatsManagerImpl implements StatsManager {
             if (r != null) {
                 maxKey = r.getRow();
             }
-            tableStatsMap.put(table, new PTableStats(timeKeeper.currentTimeMillis(),minKey,maxKey));
+            Map<byte[],PRegionStats> regionStats = readRegionStats(table);
+            tableStatsMap.put(table, new PTableStats(timeKeeper.currentTimeMillis(),minKey,maxKey,regionStats));
         } catch (IOException e) {
             sqlE = new PhoenixIOException(e);
         } finally {
@@ -138,6 +149,73 @@ public class StatsManagerImpl implements StatsManager {
         }
     }
     
+    private Map<byte[],PRegionStats> readRegionStats(TableRef table) throws IOException, SQLException {
+        Map<byte[],PRegionStats> regionStats = new TreeMap<byte[],PRegionStats>(Bytes.BYTES_COMPARATOR);
+        byte[] family = SchemaUtil.getEmptyColumnFamily(table.getTable().getColumnFamilies());
+        // Region names start with the table name followed by a delimiter
+        byte[] startRow = ByteUtil.concat(table.getTableName(), new byte[] {HRegionInfo.DELIMITER});
+        Scan scan = new Scan(startRow, ByteUtil.nextKey(startRow));
+        scan.addColumn(PhoenixDatabaseMetaData.STATS_FAMILY_BYTES, family);
+        HTableInterface statsTable = services.getTable(PhoenixDatabaseMetaData.STATS_TABLE_NAME);
+        try {
+            ResultScanner scanner = statsTable.getScanner(scan);
+            try {
+                Result r;
+                while ((r = scanner.next()) != null) {
+                    PRegionStats stats = PRegionStats.fromBytes(r.getValue(PhoenixDatabaseMetaData.STATS_FAMILY_BYTES, family));
+                    if (stats != null) {
+                        regionStats.put(r.getRow(), stats);
+                    }
+                }
+            } finally {
+                scanner.close();
+            }
+        } catch (org.apache.hadoop.hbase.TableNotFoundException e) {
+            // The stats table is created on connect, so this only happens until the first
+            // connection to the cluster is made with a client that knows about it.
+        } finally {
+            statsTable.close();
+        }
+        return regionStats;
+    }
+    
+    @Override
+    public void collectStats(TableRef table) throws SQLException {
+        SQLException sqlE = null;
+        HTableInterface hTable = services.getTable(table.getTableName());
+        try {
+            Scan scan = new Scan();
+            scan.setAttribute(StatisticsRegionObserver.COLLECT_STATS, PDataType.TRUE_BYTES);
+            scan.setCacheBlocks(false);
+            ResultScanner scanner = hTable.getScanner(scan);
+            try {
+                // No rows are returned: the statistics are collected and written when the scanner
+                // for each region is opened.
+                while (scanner.next() != null) {
+                }
+            } finally {
+                scanner.close();
+            }
+        } catch (IOException e) {
+            sqlE = new PhoenixIOException(e);
+        } finally {
+            try {
+                hTable.close();
+            } catch (IOException e) {
+                if (sqlE == null) {
+                    sqlE = new PhoenixIOException(e);
+                } else {
+                    sqlE.setNextException(new PhoenixIOException(e));
+                }
+            } finally {
+                if (sqlE != null) {
+                    throw sqlE;
+                }
+            }
+        }
+        updateStats(table);
+    }
+    
     private PTableStats getStats(final TableRef table) {
         PTableStats stats = tableStatsMap.get(table);
         if (stats == null) {
@@ -185,22 +263,34 @@ public class StatsManagerImpl implements StatsManager {
         return stats.getMaxKey();
     }
 
+    @Override
+    public PRegionStats getRegionStats(TableRef table, HRegionInfo region) {
+        PTableStats stats = getStats(table);
+        return stats.getRegionStats(region.getRegionName());
+    }
+
     private static class PTableStats {
         private static final PTableStats NO_STATS = new PTableStats();
         private long initiatedTime;
         private final long completedTime;
         private final byte[] minKey;
         private final byte[] maxKey;
+        private final Map<byte[],PRegionStats> regionStats;
         
         public PTableStats() {
-            this(-1,null,null);
+            this(-1,null,null,Collections.<byte[],PRegionStats>emptyMap());
         }
-        public PTableStats(long completedTime, byte[] minKey, byte[] maxKey) {
+        public PTableStats(long completedTime, byte[] minKey, byte[] maxKey, Map<byte[],PRegionStats> regionStats) {
             this.minKey = minKey;
             this.maxKey = maxKey;
+            this.regionStats = regionStats;
             this.completedTime = this.initiatedTime = completedTime;
         }
 
+        private PRegionStats getRegionStats(byte[] regionName) {
+            return regionStats.get(regionName);
+        }
+
         private byte[] getMinKey() {
             return minKey;
         }
@@ -53,6 +53,7 @@ import com.salesforce.phoenix.query.QueryConstants;
 import com.salesforce.phoenix.util.SchemaUtil;
 
 public class MetaDataClient {
+    private static final ParseNodeFactory FACTORY = new ParseNodeFactory();
     private final PhoenixConnection connection;
 
     public MetaDataClient(PhoenixConnection connection) {
@@ -141,6 +142,12 @@ public class MetaDataClient {
         DECIMAL_DIGITS + "," +
         ORDINAL_POSITION +
         ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String CREATE_INDEX_LINK =
+        "UPSERT INTO " + TYPE_SCHEMA + ".\"" + TYPE_TABLE + "\"( " + 
+        TABLE_SCHEM_NAME + "," +
+        TABLE_NAME_NAME + "," +
+        TABLE_CAT_NAME +
+        ") VALUES (?, ?, ?)";
     private static final String UPDATE_COLUMN_POSITION =
         "UPSERT INTO " + TYPE_SCHEMA + ".\"" + TYPE_TABLE + "\" ( " + 
         TABLE_SCHEM_NAME + "," +
@@ -202,6 +209,135 @@ public class MetaDataClient {
     }
 
     public MutationState createTable(CreateTableStatement statement, byte[][] splits) throws SQLException {
+        return createTable(statement, splits, null);
+    }
+
+    /**
+     * Create an index over an existing table. The row key of the index leads with the
+     * indexed columns, followed by the primary key columns of the table that aren't already
+     * indexed, so that each index row maps back to exactly one row of the table. Included
+     * columns are stored in the index under the same column family and name as in the table.
+     * Once created, the index is populated from the existing rows of the table.
+     * @param statement the CREATE INDEX statement
+     * @param splits the split points for the index table
+     * @return the result of populating the index
+     * @throws SQLException
+     */
+    public MutationState createIndex(CreateIndexStatement statement, byte[][] splits) throws SQLException {
+        TableName tableNameNode = statement.getTableName();
+        String schemaName = tableNameNode.getSchemaName();
+        String tableName = tableNameNode.getTableName();
+        String indexName = statement.getIndexName().getName();
+        PTable table = getLatestTable(schemaName, tableName);
+        if (table.getType() != PTableType.USER) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.CANNOT_INDEX_TABLE)
+                .setSchemaName(schemaName).setTableName(tableName).build().buildException();
+        }
+        Set<PColumn> indexedColumns = Sets.newLinkedHashSet();
+        for (ColumnDefName columnDefName : statement.getIndexColumns()) {
+            PColumn column = resolveColumn(table, columnDefName);
+            if (!indexedColumns.add(column)) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.COLUMN_EXIST_IN_DEF)
+                    .setColumnName(column.getName().getString()).build().buildException();
+            }
+            // The index row key is formed by looking up indexed columns by name alone,
+            // so fail here with an AmbiguousColumnException if the name is not unique
+            if (!SchemaUtil.isPKColumn(column)) {
+                table.getColumn(column.getName().getString());
+            }
+        }
+        List<PColumn> pkColumns = Lists.newArrayList(indexedColumns);
+        for (PColumn column : table.getPKColumns()) {
+            if (!indexedColumns.contains(column)) {
+                pkColumns.add(column);
+            }
+        }
+        Set<PColumn> includedColumns = Sets.newLinkedHashSet();
+        for (ColumnDefName columnDefName : statement.getIncludeColumns()) {
+            PColumn column = resolveColumn(table, columnDefName);
+            // The primary key columns of the table are always part of the index
+            if (SchemaUtil.isPKColumn(column)) {
+                continue;
+            }
+            if (indexedColumns.contains(column) || !includedColumns.add(column)) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.COLUMN_EXIST_IN_DEF)
+                    .setColumnName(column.getName().getString()).build().buildException();
+            }
+        }
+        
+        List<ColumnDef> columnDefs = Lists.newArrayListWithExpectedSize(pkColumns.size() + includedColumns.size());
+        List<String> pkColumnNames = Lists.newArrayListWithExpectedSize(pkColumns.size());
+        StringBuilder indexColumnRefs = new StringBuilder();
+        StringBuilder tableColumnRefs = new StringBuilder();
+        for (PColumn column : pkColumns) {
+            String columnName = SchemaUtil.getCaseSensitiveIdentifier(column.getName().getString());
+            if (pkColumnNames.contains(columnName)) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.COLUMN_EXIST_IN_DEF)
+                    .setColumnName(column.getName().getString()).build().buildException();
+            }
+            pkColumnNames.add(columnName);
+            columnDefs.add(newIndexColumnDef(FACTORY.columnDefName(columnName), column));
+            indexColumnRefs.append(columnName).append(',');
+            tableColumnRefs.append(getColumnRef(column)).append(',');
+        }
+        for (PColumn column : includedColumns) {
+            columnDefs.add(newIndexColumnDef(FACTORY.columnDefName(SchemaUtil.getCaseSensitiveIdentifier(column.getFamilyName().getString()), SchemaUtil.getCaseSensitiveIdentifier(column.getName().getString())), column));
+            indexColumnRefs.append(getColumnRef(column)).append(',');
+            tableColumnRefs.append(getColumnRef(column)).append(',');
+        }
+        indexColumnRefs.setLength(indexColumnRefs.length()-1);
+        tableColumnRefs.setLength(tableColumnRefs.length()-1);
+        
+        TableName indexTableName = FACTORY.table(SchemaUtil.getCaseSensitiveIdentifier(schemaName), SchemaUtil.getCaseSensitiveIdentifier(indexName));
+        PrimaryKeyConstraint pk = FACTORY.primaryKey(SchemaUtil.getCaseSensitiveIdentifier("PK_" + indexName), pkColumnNames);
+        CreateTableStatement tableStatement = FACTORY.createTable(indexTableName, statement.getProps(), columnDefs, pk, statement.getSplitNodes(), PTableType.INDEX, statement.ifNotExists(), statement.getBindCount());
+        MutationState state = createTable(tableStatement, splits, table);
+        if (state != null) { // Index already existed
+            return state;
+        }
+        
+        // Populate the index from the rows already in the table
+        boolean wasAutoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(true);
+            String populate = "UPSERT INTO " + getTableRef(schemaName, indexName) + "(" + indexColumnRefs + ")" +
+                " SELECT " + tableColumnRefs + " FROM " + getTableRef(schemaName, tableName);
+            PreparedStatement upsert = connection.prepareStatement(populate);
+            return new MutationState(upsert.executeUpdate(), connection);
+        } finally {
+            connection.setAutoCommit(wasAutoCommit);
+        }
+    }
+    
+    private static PColumn resolveColumn(PTable table, ColumnDefName columnDefName) throws SQLException {
+        String columnName = columnDefName.getColumnName().getName();
+        if (columnDefName.getFamilyName() == null) {
+            return table.getColumn(columnName);
+        }
+        return table.getColumnFamily(columnDefName.getFamilyName().getName()).getColumn(columnName);
+    }
+    
+    private static ColumnDef newIndexColumnDef(ColumnDefName columnDefName, PColumn column) {
+        return FACTORY.columnDef(columnDefName, column.getDataType().getSqlTypeName(), column.isNullable(), column.getMaxLength(), column.getScale(), false);
+    }
+    
+    private static String getColumnRef(PColumn column) {
+        String columnName = SchemaUtil.getCaseSensitiveIdentifier(column.getName().getString());
+        return column.getFamilyName() == null ? columnName : SchemaUtil.getCaseSensitiveIdentifier(column.getFamilyName().getString()) + QueryConstants.NAME_SEPARATOR + columnName;
+    }
+    
+    private static String getTableRef(String schemaName, String tableName) {
+        String tableRef = SchemaUtil.getCaseSensitiveIdentifier(tableName);
+        return schemaName == null ? tableRef : SchemaUtil.getCaseSensitiveIdentifier(schemaName) + QueryConstants.NAME_SEPARATOR + tableRef;
+    }
+
+    /**
+     * Create the table described by statement. If the table is an index, parentTable is
+     * the table being indexed, which is linked to the index in the same metadata update.
+     * @return null if an index was created, since its caller populates it, and otherwise
+     * the result of initializing the table
+     */
+    private MutationState createTable(CreateTableStatement statement, byte[][] splits, PTable parentTable) throws SQLException {
         PTableType tableType = statement.getTableType();
         boolean isView = tableType == PTableType.VIEW;
         if (isView && !statement.getProps().isEmpty()) {
@@ -327,6 +463,27 @@ public class MetaDataClient {
             final List<Mutation> tableMetaData = connection.getMutationState().toMutations();
             connection.rollback();
             
+            if (parentTable != null) {
+                // Link the indexed table to the index and bump its sequence number so that
+                // it's reloaded with the index. This metadata must follow that of the index,
+                // since the first row identifies the table being created.
+                String parentTableName = parentTable.getName().getString();
+                PreparedStatement linkUpsert = connection.prepareStatement(CREATE_INDEX_LINK);
+                linkUpsert.setString(1, schemaName);
+                linkUpsert.setString(2, parentTableName);
+                linkUpsert.setString(3, tableName);
+                linkUpsert.execute();
+                PreparedStatement parentUpsert = connection.prepareStatement(MUTATE_TABLE);
+                parentUpsert.setString(1, schemaName);
+                parentUpsert.setString(2, parentTableName);
+                parentUpsert.setString(3, parentTable.getType().getSerializedValue());
+                parentUpsert.setLong(4, parentTable.getSequenceNumber() + 1);
+                parentUpsert.setInt(5, parentTable.getColumns().size());
+                parentUpsert.execute();
+                tableMetaData.addAll(connection.getMutationState().toMutations());
+                connection.rollback();
+            }
+            
             MetaDataMutationResult result = connection.getQueryServices().createTable(tableMetaData, isView, tableProps, familyPropList, splits);
             MutationCode code = result.getMutationCode();
             switch(code) {
@@ -345,6 +502,10 @@ public class MetaDataClient {
             default:
                 PTable table = new PTableImpl(new PNameImpl(tableName), tableType, result.getMutationTime(), 0, pkName, columns);
                 connection.addTable(schemaName, table);
+                if (parentTable != null) {
+                    updateCache(schemaName, parentTable.getName().getString());
+                    return null;
+                }
                 if (tableType == PTableType.USER) {
                     connection.setAutoCommit(true);
                     // Delete everything in the column. You'll still be able to do queries at earlier timestamps
@@ -1760,8 +1760,8 @@ public enum PDataType {
     private static final long MAX_LONG_FOR_DESERIALIZE = Long.MAX_VALUE / 1000;
     private static final BigInteger ONE_HUNDRED = BigInteger.valueOf(100);
 
-    private static final byte FALSE_BYTE = 0;
-    private static final byte TRUE_BYTE = 1;
+    public static final byte FALSE_BYTE = 0;
+    public static final byte TRUE_BYTE = 1;
     public static final byte[] FALSE_BYTES = new byte[] {FALSE_BYTE};
     public static final byte[] TRUE_BYTES = new byte[] {TRUE_BYTE};
     public static final byte[] NULL_BYTES = ByteUtil.EMPTY_BYTE_ARRAY;
@@ -1930,6 +1930,60 @@ public enum PDataType {
         return v;
     }
 
+    /**
+     * Deserialize a variable length byte array into a long holding the BigDecimal value
+     * multiplied by 10^scale. This allows values of a bounded scale to be accumulated
+     * without instantiating a BigDecimal for each one.
+     * @param bytes the bytes containing the number
+     * @param offset the offset into the byte array
+     * @param length the length of the serialized BigDecimal
+     * @param scale the scale of the long value
+     * @return the scaled long value, or {@link Long#MIN_VALUE} if the number has more
+     * digits after the decimal point than the scale or if the scaled value doesn't fit
+     * in a long.
+     */
+    public static long toScaledLong(byte[] bytes, int offset, int length, int scale) {
+        if (length == 1 && bytes[offset] == ZERO_BYTE) {
+            return 0;
+        }
+        int signum = ((bytes[offset] & 0x80) == 0) ? -1 : 1;
+        int valueScale;
+        int index;
+        int digitOffset;
+        if (signum == 1) {
+            valueScale = (byte)(((bytes[offset] & 0x7F) - 65) * -2);
+            index = offset + length;
+            digitOffset = POS_DIGIT_OFFSET;
+        } else {
+            valueScale = (byte)((~bytes[offset] - 65 - 128) * -2);
+            index = offset + length - (bytes[offset + length - 1] == NEG_TERMINAL_BYTE ? 1 : 0);
+            digitOffset = -NEG_DIGIT_OFFSET;
+        }
+        // Update the scale based on the precision, as in toBigDecimal
+        valueScale += (index - offset - 2) * 2;
+        long l = 0;
+        for (int i = offset + 1; i < index; i++) {
+            int digit100 = signum * bytes[i] - digitOffset;
+            if (l > (Long.MAX_VALUE - digit100) / 100) {
+                return Long.MIN_VALUE;
+            }
+            l = l * 100 + digit100;
+        }
+        for (; valueScale < scale; valueScale++) {
+            if (l > Long.MAX_VALUE / 10) {
+                return Long.MIN_VALUE;
+            }
+            l *= 10;
+        }
+        for (; valueScale > scale; valueScale--) {
+            if (l % 10 != 0) {
+                return Long.MIN_VALUE;
+            }
+            l /= 10;
+        }
+        return l * signum;
+    }
+
     // Calculate the precisioin and scale of a raw decimal bytes. Returns the values as an int
     // array. The first value is precision, the second value is scale.
     public static int[] getDecimalPrecisionAndScale(byte[] bytes, int offset, int length) {
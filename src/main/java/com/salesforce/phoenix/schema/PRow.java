@@ -70,6 +70,17 @@ public interface PRow {
      */
     public void setValue(PColumn col, byte[] value);
     
+    /**
+     * Set a column value in the row from a slice of a byte array
+     * @param col the column for which the value is being set
+     * @param bytes the byte array holding the value
+     * @param offset the offset of the value in the byte array
+     * @param length the length of the value
+     * @throws ConstraintViolationException if row data violates schema
+     * constraint
+     */
+    public void setValue(PColumn col, byte[] bytes, int offset, int length);
+    
     /**
      * Delete the row. Note that a delete take precedence over any
      * values that may have been set before or after the delete call.
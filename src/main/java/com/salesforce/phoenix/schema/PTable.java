@@ -150,4 +150,10 @@ public interface PTable extends Writable {
     PTableStats getTableStats();
     
     RowKeySchema getRowKeySchema();
+
+    /**
+     * @return the secondary indexes maintained for this table, in the order
+     * in which they were created. Empty if the table has no indexes.
+     */
+    List<PTable> getIndexes();
 }
@@ -72,6 +72,8 @@ public class PTableImpl implements PTable {
     // Statistics associated with this table.
     PTableStats stats;
     RowKeySchema rowKeySchema;
+    // Secondary indexes maintained for this table
+    private List<PTable> indexes;
     
     public PTableImpl() {
     }
@@ -84,10 +86,15 @@ public class PTableImpl implements PTable {
         this.familyByBytes = Collections.emptyMap();
         this.familyByString = Collections.emptyMap();
         this.rowKeySchema = RowKeySchema.EMPTY_SCHEMA;
+        this.indexes = Collections.emptyList();
     }
 
     public PTableImpl(PName name, PTableType type, long timeStamp, long sequenceNumber, String pkName, List<PColumn> columns) {
-        init(name, type, timeStamp, sequenceNumber, pkName, columns, new PTableStatsImpl());
+        this(name, type, timeStamp, sequenceNumber, pkName, columns, Collections.<PTable>emptyList());
+    }
+
+    public PTableImpl(PName name, PTableType type, long timeStamp, long sequenceNumber, String pkName, List<PColumn> columns, List<PTable> indexes) {
+        init(name, type, timeStamp, sequenceNumber, pkName, columns, new PTableStatsImpl(), indexes);
     }
     
     @Override
@@ -95,7 +102,7 @@ public class PTableImpl implements PTable {
         return name.getString();
     }
     
-    private void init(PName name, PTableType type, long timeStamp, long sequenceNumber, String pkName, List<PColumn> columns, PTableStats stats) {
+    private void init(PName name, PTableType type, long timeStamp, long sequenceNumber, String pkName, List<PColumn> columns, PTableStats stats, List<PTable> indexes) {
         this.name = name;
         this.type = type;
         this.timeStamp = timeStamp;
@@ -151,6 +158,7 @@ public class PTableImpl implements PTable {
         this.familyByBytes = familyByBytes.build();
         this.familyByString = familyByString.build();
         this.stats = stats;
+        this.indexes = ImmutableList.copyOf(indexes);
     }
     
     @Override
@@ -342,12 +350,20 @@ public class PTableImpl implements PTable {
         
         @Override
         public void setValue(PColumn column, byte[] byteValue) {
+            if (byteValue == null) {
+                byteValue = ByteUtil.EMPTY_BYTE_ARRAY;
+            }
+            setValue(column, byteValue, 0, byteValue.length);
+        }
+
+        @Override
+        public void setValue(PColumn column, byte[] bytes, int offset, int length) {
             deleteRow = null;
             byte[] family = column.getFamilyName().getBytes();
             byte[] qualifier = column.getName().getBytes();
             PDataType type = column.getDataType();
             // Check null, since some types have no byte representation for null
-            if (byteValue == null || byteValue.length == 0) {
+            if (length == 0) {
                 if (!column.isNullable()) { 
                     throw new ConstraintViolationException(name.getString() + "." + column.getName().getString() + " may not be null");
                 }
@@ -356,14 +372,19 @@ public class PTableImpl implements PTable {
             } else {
                 Integer byteSize = column.getByteSize();
                 if (type.isFixedWidth()) { // TODO: handle multi-byte characters
-                    if (byteValue.length != byteSize) {
-                        throw new ConstraintViolationException(name.getString() + "." + column.getName().getString() + " must be " + byteSize + " bytes (" + type.toObject(byteValue) + ")");
+                    if (length != byteSize) {
+                        throw new ConstraintViolationException(name.getString() + "." + column.getName().getString() + " must be " + byteSize + " bytes (" + type.toObject(bytes, offset, length) + ")");
                     }
-                } else if (byteSize != null && byteValue.length > byteSize) {
-                    throw new ConstraintViolationException(name.getString() + "." + column.getName().getString() + " may not exceed " + byteSize + " bytes (" + type.toObject(byteValue) + ")");
+                } else if (byteSize != null && length > byteSize) {
+                    throw new ConstraintViolationException(name.getString() + "." + column.getName().getString() + " may not exceed " + byteSize + " bytes (" + type.toObject(bytes, offset, length) + ")");
                 }
                 removeIfPresent(unsetValues, family, qualifier);
-                setValues.add(family, qualifier, ts, byteValue);
+                // Build the KeyValue straight from the value bytes, so they are copied only once
+                try {
+                    setValues.add(new KeyValue(key, 0, key.length, family, 0, family.length, qualifier, 0, qualifier.length, ts, KeyValue.Type.Put, bytes, offset, length));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e); // Impossible, as the KeyValue is for the row of the Put
+                }
             }
         }
 
@@ -419,6 +440,11 @@ public class PTableImpl implements PTable {
         return stats;
     }
 
+    @Override
+    public List<PTable> getIndexes() {
+        return indexes;
+    }
+
     @Override
     public void readFields(DataInput input) throws IOException {
         byte[] tableNameBytes = Bytes.readByteArray(input);
@@ -447,7 +473,14 @@ public class PTableImpl implements PTable {
             guidePosts.put(key, value);
         }
         PTableStats stats = new PTableStatsImpl(guidePosts);
-        init(tableName, tableType, timeStamp, sequenceNumber, pkName, columns, stats);
+        int nIndexes = WritableUtils.readVInt(input);
+        List<PTable> indexes = Lists.newArrayListWithExpectedSize(nIndexes);
+        for (int i = 0; i < nIndexes; i++) {
+            PTable index = new PTableImpl();
+            index.readFields(input);
+            indexes.add(index);
+        }
+        init(tableName, tableType, timeStamp, sequenceNumber, pkName, columns, stats, indexes);
     }
 
     @Override
@@ -463,6 +496,10 @@ public class PTableImpl implements PTable {
             column.write(output);
         }
         stats.write(output);
+        WritableUtils.writeVInt(output, indexes.size());
+        for (PTable index : indexes) {
+            index.write(output);
+        }
     }
 
     @Override
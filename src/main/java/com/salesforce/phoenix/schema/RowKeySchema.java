@@ -80,9 +80,11 @@ public class RowKeySchema extends ValueSchema {
 
     @Override
     public Boolean next(ImmutableBytesWritable ptr, int position, ValueBitSet bitSet) {
-        // If positioned at SEPARATOR_BYTE, skip it.
-        if (ptr.get()[ptr.getOffset()] == QueryConstants.SEPARATOR_BYTE) {
-            ptr.set(ptr.get(), ptr.getOffset()+1, ptr.getLength());
+        // If the previous value is variable length, move past it and the SEPARATOR_BYTE
+        // that follows it. Checking for the SEPARATOR_BYTE at the current offset doesn't
+        // work, since the pointer is positioned at the start of the previous value.
+        if (position > 0 && !getField(position-1).getType().isFixedWidth()) {
+            ptr.set(ptr.get(), ptr.getOffset() + ptr.getLength() + 1, 0);
         }
         return super.next(ptr,position,bitSet);
     }
@@ -105,10 +107,14 @@ public class RowKeySchema extends ValueSchema {
         return len;
     }
     
+    @Override
+    protected int getVarLengthFieldSize(int length) {
+        return length + 1; // Include the separator byte
+    }
+    
     @Override
     protected int writeVarLengthField(ImmutableBytesWritable ptr, byte[] b, int offset) {
         int length = ptr.getLength();
-        b = ensureSize(b, offset, offset + length + 1);
         System.arraycopy(ptr.get(), ptr.getOffset(), b, offset, length);
         offset += length + 1;
         b[offset-1] = QueryConstants.SEPARATOR_BYTE;
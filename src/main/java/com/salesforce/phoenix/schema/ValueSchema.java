@@ -339,7 +339,7 @@ public abstract class ValueSchema implements Writable {
     
     protected static byte[] ensureSize(byte[] b, int offset, int size) {
         if (size > b.length) {
-            byte[] bBigger = new byte[Math.min(b.length * 2, size)];
+            byte[] bBigger = new byte[Math.max(b.length * 2, size)];
             System.arraycopy(b, 0, bBigger, 0, offset);
             return bBigger;
         }
@@ -362,6 +362,15 @@ public abstract class ValueSchema implements Writable {
     }
     
     abstract protected int positionVarLength(ImmutableBytesWritable ptr, Field field, int nFields);
+    /**
+     * @return the number of bytes required to serialize a variable length value of the given length
+     */
+    abstract protected int getVarLengthFieldSize(int length);
+    /**
+     * Serialize a variable length value into b, which must have at least
+     * {@link #getVarLengthFieldSize(int)} bytes remaining past offset.
+     * @return the offset past the serialized value
+     */
     abstract protected int writeVarLengthField(ImmutableBytesWritable ptr, byte[] b, int offset);
     
     /**
@@ -385,6 +394,7 @@ public abstract class ValueSchema implements Writable {
                         valueSet.set(index - minNullableIndex);
                     }
                     if (!type.isFixedWidth()) {
+                        b = ensureSize(b, offset, offset + getVarLengthFieldSize(ptr.getLength()));
                         offset = writeVarLengthField(ptr, b, offset);
                     } else {
                         int nBytes = ptr.getLength();
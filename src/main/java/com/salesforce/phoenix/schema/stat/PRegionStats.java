@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.schema.stat;
+
+import java.io.*;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+
+/**
+ * 
+ * Statistics for a single column family of a region, collected on the server
+ * side by {@link StatisticsCollector}. The guide posts are row keys that split
+ * the region into chunks holding roughly the same number of rows (i.e. they
+ * are equi-depth), in ascending order.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class PRegionStats {
+    public static final PRegionStats EMPTY_STATS = new PRegionStats(0, 0, new byte[0][]);
+    
+    private final long rowCount;
+    private final long byteCount;
+    private final byte[][] guidePosts;
+    
+    public PRegionStats(long rowCount, long byteCount, byte[][] guidePosts) {
+        this.rowCount = rowCount;
+        this.byteCount = byteCount;
+        this.guidePosts = guidePosts;
+    }
+
+    /**
+     * @return the number of rows in the region
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of bytes taken up by the key values of the region
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return the guide posts of the region, in ascending order. Never null,
+     * but empty if the region has too few rows to be split.
+     */
+    public byte[][] getGuidePosts() {
+        return guidePosts;
+    }
+    
+    /**
+     * Estimate the fraction of the rows of the region that lie in the given key range,
+     * based on the number of chunks between guide posts that overlap with it.
+     * @param startKey the inclusive start key or an empty byte array if unbound
+     * @param stopKey the exclusive stop key or an empty byte array if unbound
+     * @return a number between 0 and 1
+     */
+    public double getFraction(byte[] startKey, byte[] stopKey) {
+        int nChunks = guidePosts.length + 1;
+        int first = startKey.length == 0 ? 0 : getChunk(startKey);
+        int last = stopKey.length == 0 ? guidePosts.length : getChunk(stopKey);
+        if (last < first) {
+            return 0;
+        }
+        return (double)(last - first + 1) / nChunks;
+    }
+    
+    /**
+     * @return the index of the chunk containing the key, where chunk i spans
+     * from guide post i-1 (inclusive) to guide post i (exclusive).
+     */
+    private int getChunk(byte[] key) {
+        int low = 0;
+        int high = guidePosts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Bytes.compareTo(guidePosts[mid], key);
+            if (cmp <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            DataOutput output = new DataOutputStream(stream);
+            WritableUtils.writeVLong(output, rowCount);
+            WritableUtils.writeVLong(output, byteCount);
+            WritableUtils.writeVInt(output, guidePosts.length);
+            for (byte[] guidePost : guidePosts) {
+                Bytes.writeByteArray(output, guidePost);
+            }
+            return stream.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    public static PRegionStats fromBytes(byte[] b) {
+        if (b == null || b.length == 0) {
+            return null;
+        }
+        try {
+            DataInput input = new DataInputStream(new ByteArrayInputStream(b));
+            long rowCount = WritableUtils.readVLong(input);
+            long byteCount = WritableUtils.readVLong(input);
+            int nGuidePosts = WritableUtils.readVInt(input);
+            byte[][] guidePosts = new byte[nGuidePosts][];
+            for (int i = 0; i < nGuidePosts; i++) {
+                guidePosts[i] = Bytes.readByteArray(input);
+            }
+            return new PRegionStats(rowCount, byteCount, guidePosts);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("rows=").append(rowCount).append(",bytes=").append(byteCount).append(",guidePosts=[");
+        for (byte[] guidePost : guidePosts) {
+            buf.append(Bytes.toStringBinary(guidePost)).append(',');
+        }
+        if (guidePosts.length > 0) {
+            buf.setLength(buf.length()-1);
+        }
+        buf.append(']');
+        return buf.toString();
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.schema.stat;
+
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * 
+ * Collects the statistics for a column family of a region as its key values
+ * are fed through in key order, for example by a compaction or a full scan
+ * of the region. Delete markers are ignored.
+ * 
+ * Since the number of rows isn't known up front, a guide post is taken every
+ * so many rows. Whenever the number of guide posts reaches twice the maximum,
+ * every other one is dropped and the distance between them is doubled. This
+ * keeps the guide posts equi-depth while bounding the memory they use to
+ * at most twice the maximum.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class StatisticsCollector {
+    private final int maxGuidePosts;
+    private List<byte[]> guidePosts;
+    private long rowsPerGuidePost = 1;
+    private long rowCount;
+    private long byteCount;
+    private byte[] currentRow;
+    
+    public StatisticsCollector(int maxGuidePosts) {
+        if (maxGuidePosts < 1) {
+            throw new IllegalArgumentException("Max guide posts must be positive, but was " + maxGuidePosts);
+        }
+        this.maxGuidePosts = maxGuidePosts;
+        this.guidePosts = Lists.newArrayListWithExpectedSize(maxGuidePosts * 2);
+    }
+    
+    /**
+     * Add the key values to the statistics. The key values must be in
+     * key order across successive calls.
+     * @param keyValues
+     */
+    public void collect(List<KeyValue> keyValues) {
+        for (int i = 0; i < keyValues.size(); i++) {
+            collect(keyValues.get(i));
+        }
+    }
+    
+    /**
+     * Add a key value to the statistics. Key values must be added in
+     * key order.
+     * @param kv
+     */
+    public void collect(KeyValue kv) {
+        if (kv.isDelete()) {
+            return;
+        }
+        byteCount += kv.getLength();
+        byte[] buf = kv.getBuffer();
+        int offset = kv.getRowOffset();
+        short length = kv.getRowLength();
+        if (currentRow != null && Bytes.equals(currentRow, 0, currentRow.length, buf, offset, length)) {
+            return;
+        }
+        currentRow = kv.getRow();
+        if (++rowCount % rowsPerGuidePost == 0) {
+            guidePosts.add(currentRow);
+            if (guidePosts.size() == maxGuidePosts * 2) {
+                List<byte[]> keptGuidePosts = Lists.newArrayListWithExpectedSize(maxGuidePosts * 2);
+                // Keep the guide posts at multiples of the doubled distance
+                for (int i = 1; i < guidePosts.size(); i += 2) {
+                    keptGuidePosts.add(guidePosts.get(i));
+                }
+                guidePosts = keptGuidePosts;
+                rowsPerGuidePost *= 2;
+            }
+        }
+    }
+    
+    public long getRowCount() {
+        return rowCount;
+    }
+    
+    public long getByteCount() {
+        return byteCount;
+    }
+    
+    /**
+     * @return the statistics collected so far
+     */
+    public PRegionStats getStats() {
+        return new PRegionStats(rowCount, byteCount, guidePosts.toArray(new byte[guidePosts.size()][]));
+    }
+}
@@ -127,18 +127,32 @@ public class CSVLoader {
 					stmt.setNull(index + 1, columnInfo[index].getSqlType());
 				}
 			}
-			stmt.execute();
+			stmt.addBatch();
 
 			// Commit when batch size is reached
 			if (++rowCount % upsertBatchSize == 0) {
+				executeBatches(columns == null ? stmtCache : new PreparedStatement[] {stmt});
 				conn.commit();
 				System.out.println("Rows upserted: " + rowCount);
 			}
 		}
+		executeBatches(columns == null ? stmtCache : new PreparedStatement[] {stmt});
 		conn.commit();
 		System.out.println("CSV Upsert complete. Total number of rows upserted: " + rowCount);
 	}
 	
+	/**
+	 * Executes the rows added to the batch of each statement, so that the
+	 * UPSERT of each statement is compiled once for all of its rows
+	 */
+	private static void executeBatches(PreparedStatement[] stmts) throws SQLException {
+	    for (PreparedStatement stmt : stmts) {
+	        if (stmt != null) {
+	            stmt.executeBatch();
+	        }
+	    }
+	}
+	
 	/**
 	 * Gets CSV string input converted to correct type 
 	 */
@@ -37,6 +37,7 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 
 import com.salesforce.phoenix.coprocessor.MetaDataProtocol;
+import com.salesforce.phoenix.filter.SkipScanFilter;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.query.KeyRange.Bound;
 import com.salesforce.phoenix.schema.RowKeySchema;
@@ -72,7 +73,8 @@ public class ScanUtil {
     }
     
     /**
-     * Intersects the scan start/stop row with the startKey and stopKey
+     * Intersects the scan start/stop row with the startKey and stopKey. If the scan
+     * has a {@link SkipScanFilter}, its leading slot is intersected as well.
      * @param scan
      * @param startKey
      * @param stopKey
@@ -98,7 +100,61 @@ public class ScanUtil {
         }
         scan.setStartRow(startKey);
         scan.setStopRow(stopKey);
-        return mayHaveRows || Bytes.compareTo(scan.getStartRow(), scan.getStopRow()) < 0;
+        if (!mayHaveRows && Bytes.compareTo(scan.getStartRow(), scan.getStopRow()) >= 0) {
+            return false;
+        }
+        return intersectSkipScanFilter(scan);
+    }
+
+    /**
+     * Replaces the skip scan filter of the scan, if any, with one that only
+     * has the ranges that may match rows between the scan start/stop row,
+     * and narrows the start/stop row to the remaining ranges.
+     * @return false if the Scan cannot possibly return rows and true otherwise
+     */
+    private static boolean intersectSkipScanFilter(Scan scan) {
+        Filter filter = scan.getFilter();
+        SkipScanFilter skipScanFilter = null;
+        List<Filter> filters = null;
+        int index = -1;
+        if (filter instanceof SkipScanFilter) {
+            skipScanFilter = (SkipScanFilter)filter;
+        } else if (filter instanceof FilterList && ((FilterList)filter).getOperator() == FilterList.Operator.MUST_PASS_ALL) {
+            filters = ((FilterList)filter).getFilters();
+            for (index = 0; index < filters.size(); index++) {
+                if (filters.get(index) instanceof SkipScanFilter) {
+                    skipScanFilter = (SkipScanFilter)filters.get(index);
+                    break;
+                }
+            }
+        }
+        if (skipScanFilter == null) {
+            return true;
+        }
+        SkipScanFilter intersectedFilter = skipScanFilter.intersect(scan.getStartRow(), scan.getStopRow());
+        if (intersectedFilter == null) {
+            return false;
+        }
+        if (intersectedFilter == skipScanFilter) {
+            return true;
+        }
+        if (filters == null) {
+            scan.setFilter(intersectedFilter);
+        } else {
+            List<Filter> intersectedFilters = new ArrayList<Filter>(filters);
+            intersectedFilters.set(index, intersectedFilter);
+            scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, intersectedFilters));
+        }
+        // The filter expects the scan to start no earlier than its first key
+        byte[] minKey = getMinKey(intersectedFilter.getSchema(), intersectedFilter.getSlots());
+        if (minKey != null && Bytes.compareTo(minKey, scan.getStartRow()) > 0) {
+            scan.setStartRow(minKey);
+        }
+        byte[] maxKey = getMaxKey(intersectedFilter.getSchema(), intersectedFilter.getSlots());
+        if (maxKey != null && (scan.getStopRow().length == 0 || Bytes.compareTo(maxKey, scan.getStopRow()) < 0)) {
+            scan.setStopRow(maxKey);
+        }
+        return scan.getStopRow().length == 0 || Bytes.compareTo(scan.getStartRow(), scan.getStopRow()) < 0;
     }
     
     public static void andFilter(Scan scan, Filter andWithFilter) {
@@ -196,6 +252,15 @@ public class ScanUtil {
                 }
                 incrementKey = false;
             }
+            /*
+             * Stop after the first range when setting the upper bound, since
+             * the bounds of the slots that follow only apply within each value
+             * of the range. For example, with [5,7] followed by 'b', the upper
+             * bound must be 8 rather than 8c, which would let 8a through.
+             */
+            if (bound == Bound.UPPER && !range.isSingleKey()) {
+                break;
+            }
         }
         
         if (incrementKey) {
@@ -171,6 +171,16 @@ public class SchemaUtil {
     public static boolean isCaseSensitive(String name) {
         return name.length() > 0 && name.charAt(0)=='"';
     }
+
+    /**
+     * Quote a normalized identifier so that {@link #normalizeIdentifier(String)}
+     * gives it back unchanged.
+     * @param name the normalized identifier or null
+     * @return the quoted identifier or null if name is null
+     */
+    public static String getCaseSensitiveIdentifier(String name) {
+        return name == null ? null : '"' + name + '"';
+    }
     
     public static <T> List<T> concat(List<T> l1, List<T> l2) {
         int size1 = l1.size();
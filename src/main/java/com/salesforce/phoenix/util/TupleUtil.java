@@ -32,12 +32,15 @@ import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
 
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 
 
@@ -85,6 +88,13 @@ public class TupleUtil {
                     return;
                 }
             }
+        } else if (r.size() > 1) {
+            // Ungrouped aggregation that mutates rows returns counters along with the aggregated value
+            KeyValue kv = r.getValue(SINGLE_COLUMN_FAMILY, SINGLE_COLUMN);
+            if (kv != null) {
+                ptr.set(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+                return;
+            }
         }
         throw new IllegalStateException("Expected single, aggregated KeyValue from coprocessor, but instead received " + r + ". Ensure aggregating coprocessors are loaded correctly on server");
     }
@@ -105,4 +115,24 @@ public class TupleUtil {
           }
         return size;
     }
+
+    /**
+     * Read back a row serialized by {@link #write(Tuple, DataOutput)}, less its leading
+     * size. The KeyValues of the returned tuple point into buffer rather than being copied,
+     * so the caller must not reuse that part of buffer while the tuple is in use.
+     * @param buffer the buffer holding the serialized row
+     * @param offset the offset of the row in buffer
+     * @param length the size of the row, as written by {@link #write(Tuple, DataOutput)}
+     */
+    public static Tuple read(byte[] buffer, int offset, int length) {
+        List<KeyValue> values = new ArrayList<KeyValue>(1);
+        int endOffset = offset + length;
+        while (offset < endOffset) {
+            int kvLength = Bytes.toInt(buffer, offset);
+            offset += Bytes.SIZEOF_INT;
+            values.add(new KeyValue(buffer, offset, kvLength));
+            offset += kvLength;
+        }
+        return new MultiKeyValueTuple(values);
+    }
 }
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.coprocessor.ObserverContext;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.regionserver.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
+import com.salesforce.phoenix.expression.function.CountAggregateFunction;
+import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+
+
+/**
+ * 
+ * Benchmark of a COUNT(*) GROUP BY through {@link GroupedAggregateRegionObserver#postScannerOpen(ObserverContext, Scan, RegionScanner)}
+ * over a local region, which forms the group key of each row scanned and aggregates it into its group, for a single
+ * variable length column and for a fixed and variable length column together.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class GroupByKeyBenchmark {
+    private static final int ROW_COUNT = 1000;
+    private static final byte[] TABLE_NAME = Bytes.toBytes("GROUP_BY_KEY_BENCHMARK");
+    private static final PName FAMILY_NAME = new PNameImpl("a");
+    private static final PColumn INT_COLUMN = new PColumnImpl(new PNameImpl("i"), FAMILY_NAME, PDataType.INTEGER, null, null, false, 1);
+    private static final PColumn VARCHAR_COLUMN = new PColumnImpl(new PNameImpl("v"), FAMILY_NAME, PDataType.VARCHAR, null, null, true, 2);
+    
+    private final File dir;
+    private final HRegion region;
+    private final Scan scan;
+    private final GroupedAggregateRegionObserver observer = new GroupedAggregateRegionObserver();
+    private final ObserverContext<RegionCoprocessorEnvironment> context = new ObserverContext<RegionCoprocessorEnvironment>();
+    
+    public GroupByKeyBenchmark(int groupByColumnCount) throws IOException {
+        List<Expression> expressions = groupByColumnCount == 1
+                ? Arrays.<Expression>asList(new KeyValueColumnExpression(VARCHAR_COLUMN))
+                : Arrays.<Expression>asList(new KeyValueColumnExpression(INT_COLUMN), new KeyValueColumnExpression(VARCHAR_COLUMN));
+        List<SingleAggregateFunction> aggFuncs = Collections.<SingleAggregateFunction>singletonList(new CountAggregateFunction(CountAggregateFunction.STAR));
+        // Set the scan attributes the way the client does for a GROUP BY on non PK columns
+        scan = new Scan();
+        scan.setAttribute(GroupedAggregateRegionObserver.UNORDERED_GROUP_BY_EXPRESSIONS, serialize(expressions));
+        scan.setAttribute(GroupedAggregateRegionObserver.AGGREGATORS, ServerAggregators.serialize(aggFuncs, 1));
+        
+        final Configuration config = HBaseConfiguration.create();
+        dir = File.createTempFile("GroupByKeyBenchmark", null);
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        HTableDescriptor tableDesc = new HTableDescriptor(TABLE_NAME);
+        tableDesc.addFamily(new HColumnDescriptor(FAMILY_NAME.getBytes()));
+        region = HRegion.createHRegion(new HRegionInfo(TABLE_NAME), new Path(dir.toURI()), config, tableDesc);
+        Random random = new Random(0);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            Put put = new Put(Bytes.toBytes(i));
+            put.add(FAMILY_NAME.getBytes(), INT_COLUMN.getName().getBytes(), PDataType.INTEGER.toBytes(random.nextInt(100)));
+            put.add(FAMILY_NAME.getBytes(), VARCHAR_COLUMN.getName().getBytes(), PDataType.VARCHAR.toBytes("group" + random.nextInt(100)));
+            region.put(put);
+        }
+        region.flushcache();
+        
+        context.prepare(new RegionCoprocessorEnvironment() {
+            @Override
+            public HRegion getRegion() {
+                return region;
+            }
+
+            @Override
+            public RegionServerServices getRegionServerServices() {
+                return null;
+            }
+
+            @Override
+            public ConcurrentMap<String, Object> getSharedData() {
+                return null;
+            }
+
+            @Override
+            public int getVersion() {
+                return 0;
+            }
+
+            @Override
+            public String getHBaseVersion() {
+                return null;
+            }
+
+            @Override
+            public Coprocessor getInstance() {
+                return observer;
+            }
+
+            @Override
+            public int getPriority() {
+                return 0;
+            }
+
+            @Override
+            public int getLoadSequence() {
+                return 0;
+            }
+
+            @Override
+            public Configuration getConfiguration() {
+                return config;
+            }
+
+            @Override
+            public HTableInterface getTable(byte[] tableName) {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+    
+    private static byte[] serialize(List<Expression> expressions) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(stream);
+        for (Expression expression : expressions) {
+            WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+            expression.write(output);
+        }
+        output.close();
+        return stream.toByteArray();
+    }
+    
+    public int groupBy() throws IOException {
+        RegionScanner scanner = observer.postScannerOpen(context, scan, region.getScanner(scan));
+        int groupCount = 0;
+        try {
+            List<KeyValue> results = new ArrayList<KeyValue>();
+            boolean hasMore;
+            do {
+                hasMore = scanner.next(results);
+                if (!results.isEmpty()) {
+                    groupCount++;
+                    results.clear();
+                }
+            } while (hasMore);
+        } finally {
+            scanner.close();
+        }
+        return groupCount;
+    }
+    
+    public void close() throws IOException {
+        try {
+            HRegion.closeHRegion(region);
+        } finally {
+            FileUtil.fullyDelete(dir);
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (int groupByColumnCount : new int[] {1, 2}) {
+            final GroupByKeyBenchmark benchmark = new GroupByKeyBenchmark(groupByColumnCount);
+            try {
+                BenchmarkRunner.run("GroupByKeyBenchmark.groupBy groupByColumnCount=" + groupByColumnCount, ROW_COUNT, new Callable<Object>() {
+                    @Override
+                    public Object call() throws IOException {
+                        return benchmark.groupBy();
+                    }
+                });
+            } finally {
+                benchmark.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+
+
+/**
+ * 
+ * Benchmark of evaluating a WHERE clause of 5 or 10 ANDed comparisons against
+ * constants for each row, as is done by the filters on the server, using either
+ * the interpreted expression or the one produced by {@link EvaluatorCompiler}.
+ * The comparisons are on BIGINT, VARCHAR, and INTEGER columns, the last against
+ * a BIGINT constant, and every row passes them so that all of them are evaluated.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class ExpressionEvaluationBenchmark {
+    private static final int ROW_COUNT = 1000;
+    private static final int MAX_COLUMNS = 10;
+    private static final PName FAMILY_NAME = new PNameImpl("a");
+    
+    private final Expression expression;
+    private final Tuple[] rows;
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+    
+    private static PDataType getType(int i) {
+        switch (i % 3) {
+        case 0:
+            return PDataType.LONG;
+        case 1:
+            return PDataType.VARCHAR;
+        default:
+            return PDataType.INTEGER;
+        }
+    }
+    
+    private static byte[] getQualifier(int i) {
+        return Bytes.toBytes("c" + i);
+    }
+    
+    public ExpressionEvaluationBenchmark(int predicates, boolean compiled) throws Exception {
+        List<Expression> children = new ArrayList<Expression>(predicates);
+        for (int i = 0; i < predicates; i++) {
+            PDataType type = getType(i);
+            PColumn column = new PColumnImpl(new PNameImpl("c" + i), FAMILY_NAME, type, null, null, true, i);
+            Expression constant = type == PDataType.VARCHAR 
+                    ? LiteralExpression.newConstant("a") 
+                    : LiteralExpression.newConstant(-1L, PDataType.LONG);
+            children.add(new ComparisonExpression(CompareOp.GREATER_OR_EQUAL, 
+                    Arrays.<Expression>asList(new KeyValueColumnExpression(column), constant)));
+        }
+        Expression where = new AndExpression(children);
+        expression = compiled ? EvaluatorCompiler.compile(where) : where;
+        rows = new Tuple[ROW_COUNT];
+        Random random = new Random(0);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            byte[] row = Bytes.toBytes(i);
+            // Column qualifiers c0 through c9 are already in sorted order
+            List<KeyValue> keyValues = new ArrayList<KeyValue>(MAX_COLUMNS);
+            for (int j = 0; j < MAX_COLUMNS; j++) {
+                PDataType type = getType(j);
+                byte[] value = type == PDataType.VARCHAR 
+                        ? type.toBytes("b" + random.nextInt(1000)) 
+                        : type == PDataType.LONG ? type.toBytes((long)random.nextInt(1000)) : type.toBytes(random.nextInt(1000));
+                keyValues.add(new KeyValue(row, FAMILY_NAME.getBytes(), getQualifier(j), value));
+            }
+            rows[i] = new MultiKeyValueTuple(keyValues);
+        }
+    }
+    
+    public int evaluate() {
+        int count = 0;
+        for (Tuple row : rows) {
+            expression.reset();
+            if (expression.evaluate(row, ptr) && Boolean.TRUE.equals(PDataType.BOOLEAN.toObject(ptr))) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (int predicates : new int[] {5, 10}) {
+            for (boolean compiled : new boolean[] {false, true}) {
+                final ExpressionEvaluationBenchmark benchmark = new ExpressionEvaluationBenchmark(predicates, compiled);
+                BenchmarkRunner.run("ExpressionEvaluationBenchmark.evaluate predicates=" + predicates + " compiled=" + compiled, ROW_COUNT, new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return benchmark.evaluate();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.KeyValueColumnExpression;
+import com.salesforce.phoenix.expression.function.*;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+
+
+/**
+ * 
+ * Benchmark of {@link ServerAggregators#aggregate(Aggregator[], Tuple)}, which is
+ * called by the coprocessors for every row scanned by an aggregate query, for
+ * COUNT(*) alone and together with a SUM of a BIGINT and of a DECIMAL column.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class ServerAggregatorsBenchmark {
+    private static final int ROW_COUNT = 1000;
+    private static final PName FAMILY_NAME = new PNameImpl("a");
+    private static final PColumn LONG_COLUMN = new PColumnImpl(new PNameImpl("l"), FAMILY_NAME, PDataType.LONG, null, null, true, 1);
+    private static final PColumn DECIMAL_COLUMN = new PColumnImpl(new PNameImpl("d"), FAMILY_NAME, PDataType.DECIMAL, null, null, true, 2);
+    
+    private final ServerAggregators aggregators;
+    private final Aggregator[] rowAggregators;
+    private final Tuple[] rows;
+    
+    public ServerAggregatorsBenchmark(boolean withSums) {
+        List<SingleAggregateFunction> aggFuncs = new ArrayList<SingleAggregateFunction>();
+        aggFuncs.add(new CountAggregateFunction(CountAggregateFunction.STAR));
+        if (withSums) {
+            aggFuncs.add(new SumAggregateFunction(Arrays.<Expression>asList(new KeyValueColumnExpression(LONG_COLUMN))));
+            aggFuncs.add(new SumAggregateFunction(Arrays.<Expression>asList(new KeyValueColumnExpression(DECIMAL_COLUMN))));
+        }
+        // Round trip through serialization as the coprocessor does
+        aggregators = ServerAggregators.deserialize(ServerAggregators.serialize(aggFuncs, 1));
+        rowAggregators = aggregators.newAggregators();
+        rows = new Tuple[ROW_COUNT];
+        Random random = new Random(0);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            byte[] row = Bytes.toBytes(i);
+            rows[i] = new MultiKeyValueTuple(Arrays.asList(
+                    new KeyValue(row, FAMILY_NAME.getBytes(), DECIMAL_COLUMN.getName().getBytes(), PDataType.DECIMAL.toBytes(BigDecimal.valueOf(random.nextInt(10000), 2))),
+                    new KeyValue(row, FAMILY_NAME.getBytes(), LONG_COLUMN.getName().getBytes(), PDataType.LONG.toBytes((long)random.nextInt(10000)))));
+        }
+    }
+    
+    public Aggregator[] aggregate() {
+        for (Tuple row : rows) {
+            aggregators.aggregate(rowAggregators, row);
+        }
+        return rowAggregators;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (boolean withSums : new boolean[] {false, true}) {
+            final ServerAggregatorsBenchmark benchmark = new ServerAggregatorsBenchmark(withSums);
+            BenchmarkRunner.run("ServerAggregatorsBenchmark.aggregate functions=" + (withSums ? "count,sum,sum" : "count"), ROW_COUNT, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return benchmark.aggregate();
+                }
+            });
+        }
+    }
+}
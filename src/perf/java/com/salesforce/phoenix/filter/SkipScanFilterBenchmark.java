@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+/**
+ * 
+ * Benchmark of {@link SkipScanFilter#filterKeyValue(KeyValue)} and
+ * {@link SkipScanFilter#getNextKeyHint(KeyValue)} over a region of rows
+ * with a two column CHAR(3) row key. The scan seeks to the hinted key
+ * the way the region scanner would, so each operation is one skip scan
+ * through the region.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class SkipScanFilterBenchmark {
+    private static final int FIELD_WIDTH = 3;
+    private static final byte[] FAMILY = Bytes.toBytes("a");
+    private static final byte[] QUALIFIER = Bytes.toBytes("b");
+    
+    private static final int CARDINALITY = 100;
+    
+    private final RowKeySchema schema;
+    private final List<List<KeyRange>> slots;
+    private final KeyValue[] keyValues;
+    
+    private static byte[] toField(int value) {
+        return Bytes.toBytes(String.format("%0" + FIELD_WIDTH + "d", value));
+    }
+    
+    /**
+     * @param keysPerSlot number of point keys in each slot of the skip scan
+     */
+    public SkipScanFilterBenchmark(int keysPerSlot) {
+        RowKeySchemaBuilder builder = new RowKeySchemaBuilder().setMinNullable(2);
+        for (int i = 0; i < 2; i++) {
+            builder.addField(new PDatum() {
+                @Override
+                public boolean isNullable() {
+                    return false;
+                }
+
+                @Override
+                public PDataType getDataType() {
+                    return PDataType.CHAR;
+                }
+
+                @Override
+                public Integer getByteSize() {
+                    return FIELD_WIDTH;
+                }
+
+                @Override
+                public Integer getMaxLength() {
+                    return FIELD_WIDTH;
+                }
+
+                @Override
+                public Integer getScale() {
+                    return null;
+                }
+            });
+        }
+        schema = builder.build();
+        
+        // Spread the point keys evenly across the values of each column
+        slots = new ArrayList<List<KeyRange>>(2);
+        for (int i = 0; i < 2; i++) {
+            List<KeyRange> slot = new ArrayList<KeyRange>(keysPerSlot);
+            for (int j = 0; j < keysPerSlot; j++) {
+                byte[] key = toField(j * CARDINALITY / keysPerSlot);
+                slot.add(KeyRange.getKeyRange(key, true, key, true));
+            }
+            slots.add(slot);
+        }
+        
+        keyValues = new KeyValue[CARDINALITY * CARDINALITY];
+        int i = 0;
+        for (int j = 0; j < CARDINALITY; j++) {
+            for (int k = 0; k < CARDINALITY; k++) {
+                byte[] row = ByteUtil.concat(toField(j), toField(k));
+                keyValues[i++] = new KeyValue(row, FAMILY, QUALIFIER, ByteUtil.EMPTY_BYTE_ARRAY);
+            }
+        }
+    }
+    
+    private int seek(KeyValue hint, int from) {
+        int index = Arrays.binarySearch(keyValues, from, keyValues.length, hint, KeyValue.COMPARATOR);
+        return index < 0 ? -(index + 1) : index;
+    }
+    
+    public int skipScan() {
+        SkipScanFilter filter = new SkipScanFilter(slots, schema);
+        int included = 0;
+        int i = 0;
+        while (i < keyValues.length && !filter.filterAllRemaining()) {
+            KeyValue kv = keyValues[i];
+            filter.reset();
+            ReturnCode code = filter.filterKeyValue(kv);
+            if (code == ReturnCode.SEEK_NEXT_USING_HINT) {
+                KeyValue hint = filter.getNextKeyHint(kv);
+                if (hint == null) {
+                    break;
+                }
+                i = seek(hint, i + 1);
+            } else {
+                if (code == ReturnCode.INCLUDE) {
+                    included++;
+                }
+                i++;
+            }
+        }
+        return included;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (int keysPerSlot : new int[] {1, 10, 50}) {
+            final SkipScanFilterBenchmark benchmark = new SkipScanFilterBenchmark(keysPerSlot);
+            BenchmarkRunner.run("SkipScanFilterBenchmark.skipScan keysPerSlot=" + keysPerSlot, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return benchmark.skipScan();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+/**
+ * 
+ * Benchmark of {@link SkipScanFilter} for an IN list on a single column
+ * CHAR(6) row key, sweeping the size of the IN list. The region has twice
+ * as many rows as the largest IN list and the keys are spread evenly across
+ * it, so each operation is one skip scan through the region. Also measures
+ * {@link SkipScanFilter#intersect(byte[], byte[])} with a key range covering
+ * a tenth of the region, as is done for each region scan.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class SkipScanFilterInListBenchmark {
+    private static final int FIELD_WIDTH = 6;
+    private static final int ROW_COUNT = 200000;
+    private static final byte[] FAMILY = Bytes.toBytes("a");
+    private static final byte[] QUALIFIER = Bytes.toBytes("b");
+    
+    private final RowKeySchema schema;
+    private final List<List<KeyRange>> slots;
+    private final KeyValue[] keyValues;
+    private final byte[] lowerKey;
+    private final byte[] upperKey;
+    
+    private static byte[] toField(int value) {
+        return Bytes.toBytes(String.format("%0" + FIELD_WIDTH + "d", value));
+    }
+    
+    /**
+     * @param inListSize number of keys in the IN list
+     */
+    public SkipScanFilterInListBenchmark(int inListSize) {
+        RowKeySchemaBuilder builder = new RowKeySchemaBuilder().setMinNullable(1);
+        builder.addField(new PDatum() {
+            @Override
+            public boolean isNullable() {
+                return false;
+            }
+
+            @Override
+            public PDataType getDataType() {
+                return PDataType.CHAR;
+            }
+
+            @Override
+            public Integer getByteSize() {
+                return FIELD_WIDTH;
+            }
+
+            @Override
+            public Integer getMaxLength() {
+                return FIELD_WIDTH;
+            }
+
+            @Override
+            public Integer getScale() {
+                return null;
+            }
+        });
+        schema = builder.build();
+        
+        List<KeyRange> slot = new ArrayList<KeyRange>(inListSize);
+        for (int i = 0; i < inListSize; i++) {
+            byte[] key = toField((int)((long)i * ROW_COUNT / inListSize));
+            slot.add(KeyRange.getKeyRange(key, true, key, true));
+        }
+        slots = Collections.singletonList(slot);
+        
+        keyValues = new KeyValue[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            keyValues[i] = new KeyValue(toField(i), FAMILY, QUALIFIER, ByteUtil.EMPTY_BYTE_ARRAY);
+        }
+        lowerKey = toField(ROW_COUNT / 2);
+        upperKey = toField(ROW_COUNT / 2 + ROW_COUNT / 10);
+    }
+    
+    private int seek(KeyValue hint, int from) {
+        int index = Arrays.binarySearch(keyValues, from, keyValues.length, hint, KeyValue.COMPARATOR);
+        return index < 0 ? -(index + 1) : index;
+    }
+    
+    public int skipScan() {
+        SkipScanFilter filter = new SkipScanFilter(slots, schema);
+        int included = 0;
+        int i = 0;
+        while (i < keyValues.length && !filter.filterAllRemaining()) {
+            KeyValue kv = keyValues[i];
+            filter.reset();
+            ReturnCode code = filter.filterKeyValue(kv);
+            if (code == ReturnCode.SEEK_NEXT_USING_HINT) {
+                KeyValue hint = filter.getNextKeyHint(kv);
+                if (hint == null) {
+                    break;
+                }
+                i = seek(hint, i + 1);
+            } else {
+                if (code == ReturnCode.INCLUDE) {
+                    included++;
+                }
+                i++;
+            }
+        }
+        return included;
+    }
+    
+    public SkipScanFilter intersect() {
+        return new SkipScanFilter(slots, schema).intersect(lowerKey, upperKey);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (int inListSize : new int[] {10, 100, 1000, 10000, 100000}) {
+            final SkipScanFilterInListBenchmark benchmark = new SkipScanFilterInListBenchmark(inListSize);
+            BenchmarkRunner.run("SkipScanFilterInListBenchmark.skipScan inListSize=" + inListSize, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return benchmark.skipScan();
+                }
+            });
+            BenchmarkRunner.run("SkipScanFilterInListBenchmark.intersect inListSize=" + inListSize, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return benchmark.intersect();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+import com.salesforce.phoenix.util.SQLCloseables;
+import com.salesforce.phoenix.util.TupleUtil;
+
+
+/**
+ * 
+ * Benchmark comparing the heap based {@link MergeSortResultIterator} against
+ * the linear scan merge it replaced, for 8, 64 and 512 input iterators.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MergeSortResultIteratorBenchmark {
+    private static final int ROW_COUNT = 100000;
+    
+    private final boolean heap;
+    private final List<List<Tuple>> input;
+    
+    /**
+     * The previous implementation, which scans every iterator to find the next row.
+     */
+    private static class LinearMergeSortResultIterator implements PeekingResultIterator {
+        private final ResultIterators resultIterators;
+        private final ImmutableBytesWritable tempPtr = new ImmutableBytesWritable();
+        private List<PeekingResultIterator> iterators;
+        
+        private LinearMergeSortResultIterator(ResultIterators iterators) {
+            this.resultIterators = iterators;
+        }
+        
+        private List<PeekingResultIterator> getIterators() throws SQLException {
+            if (iterators == null) {
+                iterators = new ArrayList<PeekingResultIterator>(resultIterators.getIterators());
+            }
+            return iterators;
+        }
+        
+        @Override
+        public void close() throws SQLException {
+            if (iterators != null) {
+                SQLCloseables.closeAll(iterators);
+            }
+        }
+
+        private PeekingResultIterator minIterator() throws SQLException {
+            List<PeekingResultIterator> iterators = getIterators();
+            Tuple minResult = null;
+            PeekingResultIterator minIterator = EMPTY_ITERATOR;
+            for (int i = iterators.size()-1; i >= 0; i--) {
+                PeekingResultIterator iterator = iterators.get(i);
+                Tuple r = iterator.peek();
+                if (r != null) {
+                    if (minResult == null || TupleUtil.compare(r, minResult, tempPtr) < 0) {
+                        minResult = r;
+                        minIterator = iterator;
+                    }
+                    continue;
+                }
+                iterator.close();
+                iterators.remove(i);
+            }
+            return minIterator;
+        }
+        
+        @Override
+        public Tuple peek() throws SQLException {
+            return minIterator().peek();
+        }
+
+        @Override
+        public Tuple next() throws SQLException {
+            return minIterator().next();
+        }
+
+        @Override
+        public void explain(List<String> planSteps) {
+        }
+    }
+    
+    private static List<List<Tuple>> generateInput(int nIterators, int nRows, Random random) {
+        List<List<Tuple>> input = new ArrayList<List<Tuple>>(nIterators);
+        for (int i = 0; i < nIterators; i++) {
+            input.add(new ArrayList<Tuple>(nRows / nIterators + 1));
+        }
+        int[] keys = new int[nRows];
+        for (int i = 0; i < nRows; i++) {
+            keys[i] = random.nextInt();
+        }
+        Arrays.sort(keys);
+        byte[] value = Bytes.toBytes(1);
+        for (int i = 0; i < nRows; i++) {
+            // Flip the sign bit so that the byte order matches the int order
+            byte[] key = Bytes.toBytes(keys[i] ^ Integer.MIN_VALUE);
+            input.get(random.nextInt(nIterators)).add(new SingleKeyValueTuple(new KeyValue(key, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value)));
+        }
+        return input;
+    }
+    
+    public MergeSortResultIteratorBenchmark(int iteratorCount, boolean heap) {
+        this.heap = heap;
+        this.input = generateInput(iteratorCount, ROW_COUNT, new Random(0));
+    }
+    
+    public int merge() throws SQLException {
+        final List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(input.size());
+        for (List<Tuple> rows : input) {
+            iterators.add(new MaterializedResultIterator(rows));
+        }
+        ResultIterators resultIterators = new ResultIterators() {
+            @Override
+            public List<PeekingResultIterator> getIterators() throws SQLException {
+                return iterators;
+            }
+
+            @Override
+            public int size() {
+                return iterators.size();
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+        };
+        PeekingResultIterator iterator = heap 
+                ? new MergeSortResultIterator(resultIterators) 
+                : new LinearMergeSortResultIterator(resultIterators);
+        int count = 0;
+        try {
+            while (iterator.next() != null) {
+                count++;
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (int iteratorCount : new int[] {8, 64, 512}) {
+            for (boolean heap : new boolean[] {true, false}) {
+                final MergeSortResultIteratorBenchmark benchmark = new MergeSortResultIteratorBenchmark(iteratorCount, heap);
+                BenchmarkRunner.run("MergeSortResultIteratorBenchmark.merge iteratorCount=" + iteratorCount + " merger=" + (heap ? "heap" : "linear"), ROW_COUNT, new Callable<Object>() {
+                    @Override
+                    public Object call() throws SQLException {
+                        return benchmark.merge();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
+import com.salesforce.phoenix.expression.BaseTerminalExpression;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.BenchmarkRunner;
+
+
+/**
+ * 
+ * Benchmark of sorting rows in memory with {@link OrderedResultIterator},
+ * both fully and for a top N query.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class OrderedResultIteratorBenchmark {
+    private static final int ROW_COUNT = 100000;
+    private static final int THRESHOLD_BYTES = 1024 * 1024 * 100;
+    private static final Expression VALUE_EXPRESSION = new BaseTerminalExpression() {
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            KeyValue kv = tuple.getValue(SINGLE_COLUMN_FAMILY, SINGLE_COLUMN);
+            ptr.set(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+            return true;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return PDataType.UNSIGNED_INT;
+        }
+    };
+    
+    // The LIMIT of the query, or null for none
+    private final Integer limit;
+    private final MemoryManager memoryManager = new GlobalMemoryManager(Runtime.getRuntime().maxMemory() / 2, 0);
+    private final List<OrderingColumn> orderingColumns = Collections.singletonList(new OrderingColumn(VALUE_EXPRESSION, false, true));
+    private final List<Tuple> rows;
+    
+    public OrderedResultIteratorBenchmark(Integer limit) {
+        this.limit = limit;
+        rows = new ArrayList<Tuple>(ROW_COUNT);
+        Random random = new Random(0);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows.add(new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(i), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(random.nextInt(Integer.MAX_VALUE)))));
+        }
+    }
+    
+    public int sort() throws SQLException {
+        ResultIterator iterator = new OrderedResultIterator(new MaterializedResultIterator(rows), orderingColumns, 
+                limit, memoryManager, THRESHOLD_BYTES, null);
+        int count = 0;
+        try {
+            while (iterator.next() != null) {
+                count++;
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (Integer limit : new Integer[] {null, 10, 1000}) {
+            final OrderedResultIteratorBenchmark benchmark = new OrderedResultIteratorBenchmark(limit);
+            BenchmarkRunner.run("OrderedResultIteratorBenchmark.sort limit=" + limit, ROW_COUNT, new Callable<Object>() {
+                @Override
+                public Object call() throws SQLException {
+                    return benchmark.sort();
+                }
+            });
+        }
+    }
+}
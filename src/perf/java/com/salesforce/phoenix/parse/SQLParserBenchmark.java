@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.parse;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+import com.salesforce.phoenix.util.BenchmarkRunner;
+
+
+/**
+ * 
+ * Benchmark of parsing SQL statements with the ANTLR generated parser
+ * for PhoenixSQL.g, which happens each time a statement is executed.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class SQLParserBenchmark {
+    private static final String[][] STATEMENTS = {
+        {"point", "SELECT host, domain, feature, date, usage.core, usage.db, stats.active_visitor FROM web_stat WHERE host = ? AND domain = ? AND feature = ? AND date = ?"},
+        {"aggregate", "SELECT domain, avg(usage.core), sum(usage.db), count(*) FROM web_stat WHERE date > to_date('2013-01-01') AND domain LIKE 'Apple%' GROUP BY domain HAVING count(*) > 10 ORDER BY sum(usage.db) DESC LIMIT 10"},
+        {"join", "SELECT o.order_id, c.name, o.quantity * i.price FROM orders o INNER JOIN customers c ON o.customer_id = c.customer_id LEFT JOIN items i ON o.item_id = i.item_id WHERE o.quantity > 1"},
+        {"upsert", "UPSERT INTO web_stat(host, domain, feature, date, usage.core, usage.db) VALUES ('NA', 'Salesforce.com', 'Login', to_date('2013-01-01 00:00:00'), 35, 40)"},
+    };
+    
+    private final String statement;
+    
+    public SQLParserBenchmark(String statement) {
+        this.statement = statement;
+    }
+    
+    public Object parse() throws SQLException {
+        return new SQLParser(statement).parseStatement();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (String[] statement : STATEMENTS) {
+            final SQLParserBenchmark benchmark = new SQLParserBenchmark(statement[1]);
+            BenchmarkRunner.run("SQLParserBenchmark.parse statementType=" + statement[0], new Callable<Object>() {
+                @Override
+                public Object call() throws SQLException {
+                    return benchmark.parse();
+                }
+            });
+        }
+    }
+}
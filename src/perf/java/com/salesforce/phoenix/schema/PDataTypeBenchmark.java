@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.schema;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.concurrent.Callable;
+
+import com.salesforce.phoenix.util.BenchmarkRunner;
+
+
+/**
+ * 
+ * Benchmark of encoding values to and decoding them from their serialized
+ * {@link PDataType} form, which happens for every column value read or written.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class PDataTypeBenchmark {
+    private static final PDataType[] TYPES = {PDataType.INTEGER, PDataType.LONG, PDataType.DECIMAL, PDataType.VARCHAR, PDataType.DATE};
+    
+    private final PDataType type;
+    private final Object value;
+    private final byte[] bytes;
+    
+    public PDataTypeBenchmark(PDataType type) {
+        this.type = type;
+        switch (type) {
+        case INTEGER:
+            value = 123456789;
+            break;
+        case LONG:
+            value = 1234567890123L;
+            break;
+        case DECIMAL:
+            value = new BigDecimal("12345.6789");
+            break;
+        case VARCHAR:
+            value = "The quick brown fox jumps over the lazy dog";
+            break;
+        case DATE:
+            value = new Date(1364140800000L);
+            break;
+        default:
+            throw new IllegalArgumentException(type.toString());
+        }
+        bytes = type.toBytes(value);
+    }
+    
+    public byte[] encode() {
+        return type.toBytes(value);
+    }
+    
+    public Object decode() {
+        return type.toObject(bytes);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (PDataType type : TYPES) {
+            final PDataTypeBenchmark benchmark = new PDataTypeBenchmark(type);
+            BenchmarkRunner.run("PDataTypeBenchmark.encode type=" + type, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return benchmark.encode();
+                }
+            });
+            BenchmarkRunner.run("PDataTypeBenchmark.decode type=" + type, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return benchmark.decode();
+                }
+            });
+        }
+    }
+}
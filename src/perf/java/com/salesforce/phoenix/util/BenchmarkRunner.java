@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 
+ * Harness for the microbenchmarks in src/perf/java, which run without a cluster.
+ * Each benchmark is called repeatedly for a number of warmup iterations, so that
+ * it is compiled by the JIT, and then for a number of measured iterations of about
+ * a second each. The average time per operation is printed for each measured
+ * iteration along with their mean. The results returned by the benchmark are
+ * folded into a static field, so that the work being measured can't be optimized
+ * away.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class BenchmarkRunner {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NS = TimeUnit.SECONDS.toNanos(1);
+    // Time is only checked after a batch of calls, whose size doubles until a batch takes this long
+    private static final long MIN_BATCH_NS = ITERATION_NS / 100;
+    
+    // Never read, but the JIT can't know that, so the results folded into it must be computed
+    private static int sink;
+    
+    private BenchmarkRunner() {
+    }
+    
+    /**
+     * Run a benchmark that performs a single operation per call.
+     * @param name the name under which the results are printed
+     * @param benchmark the benchmark
+     */
+    public static void run(String name, Callable<?> benchmark) throws Exception {
+        run(name, 1, benchmark);
+    }
+    
+    /**
+     * Run a benchmark.
+     * @param name the name under which the results are printed
+     * @param operationsPerCall the number of operations, for example rows, processed by each call
+     * @param benchmark the benchmark
+     */
+    public static void run(String name, int operationsPerCall, Callable<?> benchmark) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(benchmark);
+        }
+        StringBuilder buf = new StringBuilder();
+        double total = 0;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            double nsPerOperation = runIteration(benchmark) / operationsPerCall;
+            total += nsPerOperation;
+            buf.append(String.format(" %.3f", nsPerOperation));
+        }
+        System.out.println(String.format("%-60s %12.3f ns/op  [%s ]", name, total / MEASUREMENT_ITERATIONS, buf.substring(1)));
+    }
+    
+    /**
+     * @return the average time in nanoseconds of a call to the benchmark
+     */
+    private static double runIteration(Callable<?> benchmark) throws Exception {
+        int hash = 0;
+        long calls = 0;
+        long batchSize = 1;
+        long elapsedNs;
+        long startNs = System.nanoTime();
+        do {
+            for (long i = 0; i < batchSize; i++) {
+                hash += consume(benchmark.call());
+            }
+            calls += batchSize;
+            elapsedNs = System.nanoTime() - startNs;
+            if (elapsedNs < MIN_BATCH_NS) {
+                batchSize *= 2;
+            }
+        } while (elapsedNs < ITERATION_NS);
+        sink += hash;
+        return (double)elapsedNs / calls;
+    }
+    
+    private static int consume(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof byte[]) {
+            return ((byte[])result).length;
+        }
+        if (result instanceof Number || result instanceof Boolean) {
+            return result.hashCode();
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.phoenix.schema.tuple.*;
+
+
+/**
+ * 
+ * Benchmark of {@link TupleUtil#compare(Tuple, Tuple, ImmutableBytesWritable)},
+ * which is called for every row merged across regions, for the tuple
+ * implementations returned by a scan and by the client side iterators.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class TupleUtilBenchmark {
+    private static final int[] KEY_LENGTHS = {16, 128};
+    private static final String[] TUPLE_TYPES = {"single", "result", "multi"};
+    
+    private final String tupleType;
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+    private final Tuple tuple1;
+    private final Tuple tuple2;
+    
+    public TupleUtilBenchmark(int keyLength, String tupleType) {
+        this.tupleType = tupleType;
+        // Keys that only differ in their last byte, the worst case for the comparison
+        byte[] key1 = new byte[keyLength];
+        Arrays.fill(key1, (byte)'a');
+        byte[] key2 = key1.clone();
+        key2[keyLength-1] = 'b';
+        tuple1 = newTuple(key1);
+        tuple2 = newTuple(key2);
+    }
+    
+    private Tuple newTuple(byte[] key) {
+        KeyValue kv = new KeyValue(key, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, ByteUtil.EMPTY_BYTE_ARRAY);
+        if ("single".equals(tupleType)) {
+            return new SingleKeyValueTuple(kv);
+        } else if ("result".equals(tupleType)) {
+            return new ResultTuple(new Result(new KeyValue[] {kv}));
+        } else {
+            return new MultiKeyValueTuple(Arrays.asList(kv));
+        }
+    }
+    
+    public int compare() {
+        return TupleUtil.compare(tuple1, tuple2, ptr);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        for (int keyLength : KEY_LENGTHS) {
+            for (String tupleType : TUPLE_TYPES) {
+                final TupleUtilBenchmark benchmark = new TupleUtilBenchmark(keyLength, tupleType);
+                BenchmarkRunner.run("TupleUtilBenchmark.compare keyLength=" + keyLength + " tupleType=" + tupleType, new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return benchmark.compare();
+                    }
+                });
+            }
+        }
+    }
+}
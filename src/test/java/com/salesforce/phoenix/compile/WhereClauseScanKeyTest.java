@@ -39,6 +39,7 @@ import org.junit.Test;
 
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.filter.SkipScanFilter;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.query.BaseConnectionlessQueryTest;
@@ -206,12 +207,9 @@ public class WhereClauseScanKeyTest extends BaseConnectionlessQueryTest {
 
         byte[] startRow = ByteUtil.concat(ByteUtil.fillKey(PDataType.VARCHAR.toBytes(tenantId.substring(0,3)),15),PDataType.VARCHAR.toBytes(entityId));
         assertArrayEquals(startRow, scan.getStartRow());
-        // Even though the first slot is a non inclusive range, we need to do a next key
-        // on the second slot because of the algorithm we use to seek to and terminate the
-        // loop during skip scan. We could end up having a first slot just under the upper
-        // limit of slot one and a value equal to the value in slot two and we need this to
-        // be less than the upper range that would get formed.
-        byte[] stopRow = ByteUtil.concat(ByteUtil.fillKey(ByteUtil.nextKey(PDataType.VARCHAR.toBytes(tenantId.substring(0,3))),15),ByteUtil.nextKey(PDataType.VARCHAR.toBytes(entityId)));
+        // The stop row ends with the first slot, since it's a range. The skip scan checks
+        // the second slot for each value of the first.
+        byte[] stopRow = ByteUtil.fillKey(ByteUtil.nextKey(PDataType.VARCHAR.toBytes(tenantId.substring(0,3))),15);
         assertArrayEquals(stopRow, scan.getStopRow());
     }
 
@@ -415,6 +413,128 @@ public class WhereClauseScanKeyTest extends BaseConnectionlessQueryTest {
         assertArrayEquals(ByteUtil.nextKey(PDataType.VARCHAR.toBytes(tenantId)), scan.getStopRow());
     }
 
+    @Test
+    public void testOrSameColumnKeyExpression() throws SQLException {
+        String tenantId1 = "000000000000001";
+        String tenantId2 = "000000000000003";
+        String query = "select * from atable where organization_id='" + tenantId1 + "' or organization_id='" + tenantId2 + "'";
+        Scan scan = new Scan();
+        List<Object> binds = Collections.emptyList();
+        Set<Expression>extractedNodes = new HashSet<Expression>();
+        StatementContext context = compileStatement(query, scan, binds, extractedNodes);
+
+        assertEquals(1, extractedNodes.size());
+        assertEquals(2, context.getScanRanges().getRanges().get(0).size());
+        assertArrayEquals(PDataType.VARCHAR.toBytes(tenantId1), scan.getStartRow());
+        assertArrayEquals(ByteUtil.nextKey(PDataType.VARCHAR.toBytes(tenantId2)), scan.getStopRow());
+    }
+
+    @Test
+    public void testOrOverlappingKeyExpression() throws SQLException {
+        String tenantId1 = "000000000000001";
+        String tenantId2 = "000000000000002";
+        String tenantId3 = "000000000000003";
+        String query = "select * from atable where (organization_id >= '" + tenantId1 + "' and organization_id < '" + tenantId2 + "') or organization_id='" + tenantId2 + "' or organization_id in ('" + tenantId2 + "','" + tenantId3 + "')";
+        Scan scan = new Scan();
+        List<Object> binds = Collections.emptyList();
+        Set<Expression>extractedNodes = new HashSet<Expression>();
+        StatementContext context = compileStatement(query, scan, binds, extractedNodes);
+
+        assertEquals(1, extractedNodes.size());
+        // Adjacent ranges are coalesced
+        assertEquals(2, context.getScanRanges().getRanges().get(0).size());
+        assertArrayEquals(PDataType.VARCHAR.toBytes(tenantId1), scan.getStartRow());
+        assertArrayEquals(ByteUtil.nextKey(PDataType.VARCHAR.toBytes(tenantId3)), scan.getStopRow());
+    }
+
+    @Test
+    public void testInListAfterRangeKeyExpression() throws SQLException {
+        String tenantId = "000000000000001";
+        String entityId1 = "002333333333331";
+        String entityId2 = "002333333333333";
+        String query = "select * from atable where organization_id > '" + tenantId + "' and entity_id in ('" + entityId2 + "','" + entityId1 + "')";
+        Scan scan = new Scan();
+        List<Object> binds = Collections.emptyList();
+        Set<Expression>extractedNodes = new HashSet<Expression>();
+        StatementContext context = compileStatement(query, scan, binds, extractedNodes);
+
+        // The IN list follows the range into the skip scan and is no longer evaluated per row
+        assertEquals(2, extractedNodes.size());
+        assertEquals(2, context.getScanRanges().getRanges().size());
+        assertEquals(2, context.getScanRanges().getRanges().get(1).size());
+        assertTrue(scan.getFilter() instanceof SkipScanFilter);
+        assertArrayEquals(ByteUtil.concat(ByteUtil.nextKey(PDataType.CHAR.toBytes(tenantId)), PDataType.CHAR.toBytes(entityId1)), scan.getStartRow());
+        assertEquals(0, scan.getStopRow().length);
+    }
+
+    @Test
+    public void testOrDifferentKeyPrefixExpression() throws SQLException {
+        String tenantId1 = "000000000000001";
+        String tenantId2 = "000000000000003";
+        String entityId = "002333333333333";
+        String query = "select * from atable where (organization_id='" + tenantId1 + "' and entity_id='" + entityId + "') or organization_id='" + tenantId2 + "'";
+        Scan scan = new Scan();
+        List<Object> binds = Collections.emptyList();
+        Set<Expression>extractedNodes = new HashSet<Expression>();
+        StatementContext context = compileStatement(query, scan, binds, extractedNodes);
+
+        // The ranges let through other entities of the first tenant, so the OR must still be evaluated
+        assertEquals(0, extractedNodes.size());
+        assertNotNull(scan.getFilter());
+        assertEquals(1, context.getScanRanges().getRanges().size());
+        assertArrayEquals(PDataType.VARCHAR.toBytes(tenantId1), scan.getStartRow());
+        assertArrayEquals(ByteUtil.nextKey(PDataType.VARCHAR.toBytes(tenantId2)), scan.getStopRow());
+    }
+
+    @Test
+    public void testOrUnconstrainedBranchKeyExpression() throws SQLException {
+        String tenantId1 = "000000000000001";
+        String tenantId2 = "000000000000003";
+        String query = "select * from atable where organization_id='" + tenantId1 + "' or (organization_id='" + tenantId2 + "' or a_integer=2)";
+        Scan scan = new Scan();
+        List<Object> binds = Collections.emptyList();
+        Set<Expression>extractedNodes = new HashSet<Expression>();
+        compileStatement(query, scan, binds, extractedNodes);
+
+        assertEquals(0, extractedNodes.size());
+        assertNotNull(scan.getFilter());
+        assertEquals(0, scan.getStartRow().length);
+        assertEquals(0, scan.getStopRow().length);
+    }
+
+    @Test
+    public void testArithmeticKeyExpression() throws SQLException {
+        ensureTableCreated(getUrl(), "PKIntValueTest");
+        String query = "SELECT * FROM PKIntValueTest where pk + 1 < 5";
+        Scan scan = new Scan();
+        List<Object> binds = Collections.emptyList();
+        Set<Expression>extractedNodes = new HashSet<Expression>();
+        compileStatement(query, scan, binds, extractedNodes);
+        assertEquals(0, extractedNodes.size());
+        assertNotNull(scan.getFilter());
+        assertEquals(0, scan.getStartRow().length);
+        assertArrayEquals(PDataType.INTEGER.toBytes(4), scan.getStopRow());
+
+        query = "SELECT * FROM PKIntValueTest where pk - 2 >= 3";
+        scan = new Scan();
+        compileStatement(query, scan, binds);
+        assertArrayEquals(PDataType.INTEGER.toBytes(5), scan.getStartRow());
+        assertEquals(0, scan.getStopRow().length);
+
+        query = "SELECT * FROM PKIntValueTest where 3 + pk = 10";
+        scan = new Scan();
+        compileStatement(query, scan, binds);
+        assertArrayEquals(PDataType.INTEGER.toBytes(7), scan.getStartRow());
+        assertArrayEquals(ByteUtil.nextKey(PDataType.INTEGER.toBytes(7)), scan.getStopRow());
+
+        // Out of range for an INTEGER, so the filter has to decide
+        query = "SELECT * FROM PKIntValueTest where pk + 1 < " + Long.MAX_VALUE;
+        scan = new Scan();
+        compileStatement(query, scan, binds);
+        assertEquals(0, scan.getStartRow().length);
+        assertEquals(0, scan.getStopRow().length);
+    }
+
     @Test
     public void testColumnNotFound() throws SQLException {
         String tenantId = "000000000000001";
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * 
+ * Tests for {@link MutationPipeline}
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MutationPipelineTest {
+    private final ExecutorService writers = MutationPipeline.newWriterPool(1);
+    
+    private static class TestMutationTarget implements MutationPipeline.MutationTarget {
+        private final List<Mutation> mutations = Collections.synchronizedList(Lists.<Mutation>newArrayList());
+        private final CountDownLatch latch;
+        private volatile boolean isClosing;
+        private volatile int failOnBatch = -1;
+        private int batchCount;
+        
+        private TestMutationTarget(CountDownLatch latch) {
+            this.latch = latch;
+        }
+        
+        @Override
+        public void batchMutate(List<Pair<Mutation,Integer>> batch) throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (batchCount++ == failOnBatch) {
+                throw new IOException("Failed batch " + failOnBatch);
+            }
+            for (Pair<Mutation,Integer> pair : batch) {
+                mutations.add(pair.getFirst());
+            }
+        }
+
+        @Override
+        public boolean isClosing() {
+            return isClosing;
+        }
+    }
+    
+    private static List<Pair<Mutation,Integer>> newBatch(int start, int size) {
+        List<Pair<Mutation,Integer>> batch = Lists.newArrayListWithExpectedSize(size);
+        for (int i = start; i < start + size; i++) {
+            batch.add(new Pair<Mutation,Integer>(new Put(Bytes.toBytes(i)),null));
+        }
+        return batch;
+    }
+    
+    @Test
+    public void testBatchesWrittenInOrder() throws Exception {
+        TestMutationTarget target = new TestMutationTarget(new CountDownLatch(0));
+        MutationPipeline pipeline = new MutationPipeline(target, 2, writers);
+        for (int i = 0; i < 10; i++) {
+            pipeline.add(newBatch(i * 5, 5));
+        }
+        pipeline.finish();
+        assertEquals(50, pipeline.getMutationCount());
+        assertEquals(10, pipeline.getBatchCount());
+        assertTrue(pipeline.getMaxBatchTimeNs() <= pipeline.getTotalBatchTimeNs());
+        assertEquals(50, target.mutations.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, Bytes.toInt(target.mutations.get(i).getRow()));
+        }
+    }
+    
+    @Test
+    public void testBackPressure() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        TestMutationTarget target = new TestMutationTarget(latch);
+        final MutationPipeline pipeline = new MutationPipeline(target, 1, writers);
+        // One batch held by the writer and one pending, so the third blocks
+        pipeline.add(newBatch(0, 1));
+        pipeline.add(newBatch(1, 1));
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pipeline.add(newBatch(2, 1));
+                    added.countDown();
+                } catch (IOException e) {
+                }
+            }
+        };
+        producer.start();
+        assertFalse(added.await(300, TimeUnit.MILLISECONDS));
+        latch.countDown();
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        pipeline.finish();
+        assertEquals(3, target.mutations.size());
+    }
+    
+    @Test
+    public void testWriterFailure() throws Exception {
+        TestMutationTarget target = new TestMutationTarget(new CountDownLatch(0));
+        target.failOnBatch = 1;
+        MutationPipeline pipeline = new MutationPipeline(target, 2, writers);
+        try {
+            for (int i = 0; i < 10; i++) {
+                pipeline.add(newBatch(i, 1));
+            }
+            pipeline.finish();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Failed batch 1", e.getMessage());
+        } finally {
+            pipeline.abort();
+        }
+        assertEquals(1, target.mutations.size());
+    }
+    
+    @Test
+    public void testAbortWhenClosing() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        TestMutationTarget target = new TestMutationTarget(latch);
+        MutationPipeline pipeline = new MutationPipeline(target, 1, writers);
+        pipeline.add(newBatch(0, 1));
+        pipeline.add(newBatch(1, 1));
+        target.isClosing = true;
+        try {
+            pipeline.add(newBatch(2, 1));
+            fail();
+        } catch (IOException e) {
+        } finally {
+            latch.countDown();
+        }
+    }
+    
+    @Test
+    public void testCallerWritesWhenNoWriterAvailable() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        TestMutationTarget busyTarget = new TestMutationTarget(latch);
+        MutationPipeline busyPipeline = new MutationPipeline(busyTarget, 1, writers);
+        assertTrue(busyPipeline.isPipelined());
+        busyPipeline.add(newBatch(0, 1));
+        try {
+            // The only writer thread is taken, so the batches are written as they're added
+            TestMutationTarget target = new TestMutationTarget(new CountDownLatch(0));
+            MutationPipeline pipeline = new MutationPipeline(target, 1, writers);
+            assertFalse(pipeline.isPipelined());
+            pipeline.add(newBatch(0, 5));
+            assertEquals(5, target.mutations.size());
+            pipeline.add(newBatch(5, 5));
+            pipeline.finish();
+            assertEquals(10, target.mutations.size());
+            assertEquals(10, pipeline.getMutationCount());
+            assertEquals(2, pipeline.getBatchCount());
+        } finally {
+            latch.countDown();
+        }
+        busyPipeline.finish();
+        assertEquals(1, busyTarget.mutations.size());
+    }
+}
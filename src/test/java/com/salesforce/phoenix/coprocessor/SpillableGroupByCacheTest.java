@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
+import com.salesforce.phoenix.expression.function.CountAggregateFunction;
+import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.ValueBitSet;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.util.SizedUtil;
+import com.salesforce.phoenix.util.TupleUtil;
+
+
+/**
+ * 
+ * Tests for {@link SpillableGroupByCache}
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class SpillableGroupByCacheTest {
+    private static final String[] KEYS = {"f", "a", "e", "b", "a", "d", "c", "f", "b", "a", "e", "c"};
+    
+    private static ServerAggregators newCountAggregators() {
+        List<SingleAggregateFunction> functions = Collections.<SingleAggregateFunction>singletonList(new CountAggregateFunction(CountAggregateFunction.STAR));
+        return ServerAggregators.deserialize(ServerAggregators.serialize(functions, 1));
+    }
+    
+    private static RegionScanner newEmptyScanner() {
+        return new BaseRegionScanner() {
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                return false;
+            }
+        };
+    }
+    
+    private static Map<String,Long> aggregate(GlobalMemoryManager mm, long spillThresholdBytes, int expectedSpillCount) throws IOException {
+        ServerAggregators aggregators = newCountAggregators();
+        SpillableGroupByCache cache = new SpillableGroupByCache(mm, 1, aggregators, spillThresholdBytes, null);
+        for (String key : KEYS) {
+            Aggregator[] rowAggregators = cache.cache(new ImmutableBytesWritable(Bytes.toBytes(key)));
+            aggregators.aggregate(rowAggregators, null);
+        }
+        assertEquals(expectedSpillCount, cache.getSpillCount());
+        
+        // Combine consecutive rows with the same key, as the client does
+        Map<String,Long> counts = new LinkedHashMap<String,Long>();
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        RegionScanner scanner = cache.getScanner(newEmptyScanner());
+        try {
+            String prevKey = null;
+            boolean hasMore;
+            do {
+                List<KeyValue> results = new ArrayList<KeyValue>();
+                hasMore = scanner.next(results);
+                for (KeyValue kv : results) {
+                    String key = Bytes.toString(kv.getRow());
+                    assertTrue(prevKey == null || prevKey.compareTo(key) <= 0);
+                    TupleUtil.getAggregateValue(new SingleKeyValueTuple(kv), ptr);
+                    aggregators.getValueSchema().setAccessor(ptr, 0, ValueBitSet.EMPTY_VALUE_BITSET);
+                    long count = PDataType.LONG.getCodec().decodeLong(ptr.get(), ptr.getOffset());
+                    Long prevCount = counts.get(key);
+                    counts.put(key, prevCount == null ? count : prevCount + count);
+                    prevKey = key;
+                }
+            } while (hasMore);
+        } finally {
+            scanner.close();
+        }
+        assertEquals(mm.getMaxMemory(), mm.getAvailableMemory());
+        return counts;
+    }
+    
+    private static Map<String,Long> expectedCounts() {
+        Map<String,Long> counts = new TreeMap<String,Long>();
+        for (String key : KEYS) {
+            Long count = counts.get(key);
+            counts.put(key, count == null ? 1L : count + 1);
+        }
+        return counts;
+    }
+    
+    @Test
+    public void testNoSpill() throws Exception {
+        GlobalMemoryManager mm = new GlobalMemoryManager(1024 * 1024, 0);
+        Map<String,Long> counts = aggregate(mm, 1024 * 1024, 0);
+        assertEquals(new ArrayList<Map.Entry<String,Long>>(expectedCounts().entrySet()), new ArrayList<Map.Entry<String,Long>>(counts.entrySet()));
+    }
+    
+    @Test
+    public void testSpillOverThreshold() throws Exception {
+        GlobalMemoryManager mm = new GlobalMemoryManager(1024 * 1024, 0);
+        // Room for only two groups in memory
+        long spillThresholdBytes = 2 * SizedUtil.sizeOfMap(1, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, newCountAggregators().getSize());
+        Map<String,Long> counts = aggregate(mm, spillThresholdBytes, 5);
+        assertEquals(new ArrayList<Map.Entry<String,Long>>(expectedCounts().entrySet()), new ArrayList<Map.Entry<String,Long>>(counts.entrySet()));
+    }
+    
+    @Test
+    public void testSpillOnInsufficientMemory() throws Exception {
+        // Memory manager with room for only three groups
+        long maxBytes = 3 * SizedUtil.sizeOfMap(1, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, newCountAggregators().getSize());
+        GlobalMemoryManager mm = new GlobalMemoryManager(maxBytes, 0);
+        Map<String,Long> counts = aggregate(mm, Long.MAX_VALUE, 3);
+        assertEquals(new ArrayList<Map.Entry<String,Long>>(expectedCounts().entrySet()), new ArrayList<Map.Entry<String,Long>>(counts.entrySet()));
+    }
+}
@@ -154,6 +154,40 @@ public class GroupByCaseTest extends BaseClientMangedTimeTest {
         conn.close();
     }
 
+    @Test
+    public void testApproxCountDistinct() throws Exception {
+        GroupByCaseTest gbt = new GroupByCaseTest();
+        long ts = gbt.createTable();
+        gbt.loadData(ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 1));
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select approx_count_distinct(appcpu), approx_count_distinct(uri), count(1) from " + GROUPBYTEST_NAME);
+        assertTrue(rs.next());
+        assertEquals(2, rs.getLong(1));
+        assertEquals(8, rs.getLong(2));
+        assertEquals(8, rs.getLong(3));
+        assertFalse(rs.next());
+
+        rs = stmt.executeQuery("select substr(uri,1,4), approx_count_distinct(appcpu) from " + GROUPBYTEST_NAME + " where appcpu = 10 or uri = 'SOQL3' group by substr(uri,1,4)");
+        assertTrue(rs.next());
+        assertEquals("Repo", rs.getString(1));
+        assertEquals(1, rs.getLong(2));
+        assertTrue(rs.next());
+        assertEquals("SOQL", rs.getString(1));
+        assertEquals(2, rs.getLong(2));
+        assertFalse(rs.next());
+
+        // Never null, even when no rows match
+        rs = stmt.executeQuery("select approx_count_distinct(uri) from " + GROUPBYTEST_NAME + " where appcpu = 20");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getLong(1));
+        assertFalse(rs.wasNull());
+        assertFalse(rs.next());
+        conn.close();
+    }
+
     @edu.umd.cs.findbugs.annotations.SuppressWarnings(
             value="RV_RETURN_VALUE_IGNORED",
             justification="Test code.")
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.PHOENIX_JDBC_URL;
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.salesforce.phoenix.util.PhoenixRuntime;
+
+
+public class HashJoinTest extends BaseClientMangedTimeTest {
+    
+    private static Connection initTables(long ts) throws Exception {
+        ensureTableCreated(getUrl(), "JoinCustomerTest", null, ts-2);
+        ensureTableCreated(getUrl(), "JoinOrderTest", null, ts-2);
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        conn.createStatement().execute("UPSERT INTO JoinCustomerTest VALUES('AAA','Alice','WEST')");
+        conn.createStatement().execute("UPSERT INTO JoinCustomerTest VALUES('BBB','Bob','EAST')");
+        conn.createStatement().execute("UPSERT INTO JoinCustomerTest VALUES('CCC','Carol','WEST')");
+        conn.createStatement().execute("UPSERT INTO JoinOrderTest VALUES(1,'AAA',10)");
+        conn.createStatement().execute("UPSERT INTO JoinOrderTest VALUES(2,'BBB',20)");
+        conn.createStatement().execute("UPSERT INTO JoinOrderTest VALUES(3,'AAA',30)");
+        conn.createStatement().execute("UPSERT INTO JoinOrderTest(order_id,quantity) VALUES(4,40)");
+        conn.createStatement().execute("UPSERT INTO JoinOrderTest VALUES(5,'ZZZ',50)");
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 1));
+        return DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+    }
+    
+    @Test
+    public void testInnerJoin() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT o.order_id, c.name, o.quantity FROM JoinOrderTest o JOIN JoinCustomerTest c ON o.customer_id = c.customer_id";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertEquals("Alice", rs.getString(2));
+            assertEquals(10, rs.getInt(3));
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertEquals("Bob", rs.getString(2));
+            assertEquals(20, rs.getInt(3));
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+            assertEquals("Alice", rs.getString(2));
+            assertEquals(30, rs.getInt(3));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testInnerJoinWithMultipleMatches() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT c.customer_id, o.order_id FROM JoinCustomerTest c INNER JOIN JoinOrderTest o ON c.customer_id = o.customer_id ORDER BY o.order_id DESC LIMIT 10";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("AAA", rs.getString(1));
+            assertEquals(3, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("BBB", rs.getString(1));
+            assertEquals(2, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("AAA", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testLeftJoin() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT c.name, o.order_id FROM JoinCustomerTest c LEFT JOIN JoinOrderTest o ON c.customer_id = o.customer_id ORDER BY c.name, o.order_id LIMIT 10";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("Alice", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("Alice", rs.getString(1));
+            assertEquals(3, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("Bob", rs.getString(1));
+            assertEquals(2, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("Carol", rs.getString(1));
+            assertEquals(0, rs.getInt(2));
+            assertTrue(rs.wasNull());
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testRightJoin() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT o.order_id, c.name FROM JoinCustomerTest c RIGHT OUTER JOIN JoinOrderTest o ON c.customer_id = o.customer_id";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            for (int i = 1; i <= 5; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(i == 1 || i == 3 ? "Alice" : i == 2 ? "Bob" : null, rs.getString(2));
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testLeftJoinWithNullFilter() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT c.name FROM JoinCustomerTest c LEFT JOIN JoinOrderTest o ON c.customer_id = o.customer_id WHERE o.order_id IS NULL";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("Carol", rs.getString(1));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testJoinWithConditionsAndAggregation() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT c.name, SUM(o.quantity), COUNT(*) FROM JoinOrderTest o JOIN JoinCustomerTest c ON o.customer_id = c.customer_id AND c.region = ? " +
+            		"WHERE o.quantity >= 10 AND o.quantity + LENGTH(c.name) > 13 GROUP BY c.name";
+            PreparedStatement statement = conn.prepareStatement(query);
+            statement.setString(1, "WEST");
+            ResultSet rs = statement.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("Alice", rs.getString(1));
+            assertEquals(40, rs.getInt(2));
+            assertEquals(2, rs.getInt(3));
+            assertFalse(rs.next());
+            
+            statement.setString(1, "EAST");
+            rs = statement.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("Bob", rs.getString(1));
+            assertEquals(20, rs.getInt(2));
+            assertEquals(1, rs.getInt(3));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testJoinWithWildcard() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT * FROM JoinOrderTest JOIN JoinCustomerTest ON JoinOrderTest.customer_id = JoinCustomerTest.customer_id WHERE order_id = 2";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals(6, rs.getMetaData().getColumnCount());
+            assertEquals(2, rs.getInt(1));
+            assertEquals("BBB", rs.getString(2));
+            assertEquals(20, rs.getInt(3));
+            assertEquals("BBB", rs.getString(4));
+            assertEquals("Bob", rs.getString(5));
+            assertEquals("EAST", rs.getString(6));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testExplainJoin() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "EXPLAIN SELECT o.order_id, c.name FROM JoinOrderTest o LEFT JOIN JoinCustomerTest c ON o.customer_id = c.customer_id";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            StringBuilder buf = new StringBuilder();
+            while (rs.next()) {
+                buf.append(rs.getString(1));
+                buf.append('\n');
+            }
+            String plan = buf.toString();
+            assertTrue(plan, plan.contains("SERVER OUTER HASH JOIN"));
+            assertTrue(plan, plan.contains("OVER JOINORDERTEST"));
+            assertTrue(plan, plan.contains("OVER JOINCUSTOMERTEST"));
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testFullJoinNotSupported() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT o.order_id, c.name FROM JoinOrderTest o FULL JOIN JoinCustomerTest c ON o.customer_id = c.customer_id";
+            conn.createStatement().executeQuery(query);
+            fail();
+        } catch (SQLFeatureNotSupportedException e) {
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testJoinWithoutEqualityConditionNotSupported() throws Exception {
+        Connection conn = initTables(nextTimestamp());
+        try {
+            String query = "SELECT o.order_id, c.name FROM JoinOrderTest o JOIN JoinCustomerTest c ON o.customer_id > c.customer_id";
+            conn.createStatement().executeQuery(query);
+            fail();
+        } catch (SQLFeatureNotSupportedException e) {
+        } finally {
+            conn.close();
+        }
+    }
+}
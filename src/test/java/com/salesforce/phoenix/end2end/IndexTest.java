@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.junit.Test;
+
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+
+public class IndexTest extends BaseHBaseManagedTimeTest {
+    
+    private static String getPlan(Connection conn, String query) throws SQLException {
+        ResultSet rs = conn.createStatement().executeQuery("EXPLAIN " + query);
+        StringBuilder buf = new StringBuilder();
+        while (rs.next()) {
+            buf.append(rs.getString(1));
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+    
+    private static void initTable(Connection conn, String tableName) throws SQLException {
+        conn.createStatement().execute("CREATE TABLE " + tableName + " (k VARCHAR NOT NULL PRIMARY KEY, v1 VARCHAR, v2 INTEGER, v3 VARCHAR)");
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + tableName + " VALUES(?,?,?,?)");
+        stmt.setString(1, "a");
+        stmt.setString(2, "x");
+        stmt.setInt(3, 1);
+        stmt.setString(4, "aa");
+        stmt.execute();
+        stmt.setString(1, "b");
+        stmt.setString(2, "y");
+        stmt.setInt(3, 2);
+        stmt.setString(4, "bb");
+        stmt.execute();
+        stmt.setString(1, "c");
+        stmt.setString(2, "x");
+        stmt.setInt(3, 3);
+        stmt.setString(4, "cc");
+        stmt.execute();
+        conn.commit();
+    }
+    
+    @Test
+    public void testIndexPopulatedAndUsed() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            initTable(conn, "IT1");
+            conn.createStatement().execute("CREATE INDEX IT1_IDX ON IT1 (v1) INCLUDE (v2)");
+            
+            String query = "SELECT k, v2 FROM IT1 WHERE v1 = 'x'";
+            assertTrue(getPlan(conn, query).contains("OVER IT1_IDX"));
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("c", rs.getString(1));
+            assertEquals(3, rs.getInt(2));
+            assertFalse(rs.next());
+            
+            // Not all referenced columns are in the index
+            query = "SELECT k, v3 FROM IT1 WHERE v1 = 'x'";
+            assertTrue(getPlan(conn, query).contains("FULL SCAN OVER IT1\n"));
+            // Leading PK column of the table is constrained
+            query = "SELECT k, v2 FROM IT1 WHERE k = 'a' AND v1 = 'x'";
+            assertFalse(getPlan(conn, query).contains("IT1_IDX"));
+            // Wildcard
+            query = "SELECT * FROM IT1 WHERE v1 = 'x'";
+            assertTrue(getPlan(conn, query).contains("FULL SCAN OVER IT1\n"));
+            rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("aa", rs.getString(4));
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testIndexMaintained() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            initTable(conn, "IT2");
+            conn.createStatement().execute("CREATE INDEX IT2_IDX ON IT2 (v1) INCLUDE (v2)");
+            
+            // Change the indexed column, so the index row moves
+            conn.createStatement().execute("UPSERT INTO IT2(k, v1) VALUES('a', 'z')");
+            // Change only a covered column
+            conn.createStatement().execute("UPSERT INTO IT2(k, v2) VALUES('c', 30)");
+            // Insert a new row
+            conn.createStatement().execute("UPSERT INTO IT2(k, v1, v2) VALUES('d', 'x', 4)");
+            // Set a covered column to null
+            conn.createStatement().execute("UPSERT INTO IT2(k, v1, v2) VALUES('b', 'y', null)");
+            conn.commit();
+            
+            String query = "SELECT k, v2 FROM IT2 WHERE v1 = 'x'";
+            assertTrue(getPlan(conn, query).contains("OVER IT2_IDX"));
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("c", rs.getString(1));
+            assertEquals(30, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("d", rs.getString(1));
+            assertEquals(4, rs.getInt(2));
+            assertFalse(rs.next());
+            
+            rs = conn.createStatement().executeQuery("SELECT k, v2 FROM IT2 WHERE v1 = 'z'");
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+            assertFalse(rs.next());
+            
+            rs = conn.createStatement().executeQuery("SELECT k, v2 FROM IT2 WHERE v1 = 'y'");
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            rs.getInt(2);
+            assertTrue(rs.wasNull());
+            assertFalse(rs.next());
+            
+            conn.createStatement().execute("DELETE FROM IT2 WHERE k = 'c'");
+            conn.commit();
+            rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("d", rs.getString(1));
+            assertFalse(rs.next());
+            
+            // One index row per table row
+            rs = conn.createStatement().executeQuery("SELECT count(*) FROM IT2_IDX");
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testConcurrentUpdatesOfRow() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            initTable(conn, "IT4");
+            conn.createStatement().execute("CREATE INDEX IT4_IDX ON IT4 (v1)");
+            
+            final int nThreads = 4;
+            final int nUpdates = 25;
+            final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+            Thread[] threads = new Thread[nThreads];
+            for (int i = 0; i < nThreads; i++) {
+                final int thread = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Connection conn = DriverManager.getConnection(getUrl());
+                            try {
+                                PreparedStatement stmt = conn.prepareStatement("UPSERT INTO IT4(k, v1) VALUES('a', ?)");
+                                for (int j = 0; j < nUpdates; j++) {
+                                    stmt.setString(1, thread + "-" + j);
+                                    stmt.execute();
+                                    conn.commit();
+                                }
+                            } finally {
+                                conn.close();
+                            }
+                        } catch (Throwable t) {
+                            failures.add(t);
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), failures);
+            
+            // Each update saw the one before it, so only the index row of the last one remains
+            ResultSet rs = conn.createStatement().executeQuery("SELECT v1 FROM IT4 WHERE k = 'a'");
+            assertTrue(rs.next());
+            String v1 = rs.getString(1);
+            assertTrue(v1.contains("-"));
+            rs = conn.createStatement().executeQuery("SELECT k FROM IT4_IDX WHERE k = 'a'");
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertFalse(rs.next());
+            PreparedStatement stmt = conn.prepareStatement("SELECT k FROM IT4 WHERE v1 = ?");
+            stmt.setString(1, v1);
+            assertTrue(getPlan(conn, "SELECT k FROM IT4 WHERE v1 = 'x'").contains("OVER IT4_IDX"));
+            rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testIndexDefinitionErrors() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            initTable(conn, "IT3");
+            try {
+                conn.createStatement().execute("CREATE INDEX IT3_IDX ON IT3 (v1, v1)");
+                fail();
+            } catch (SQLException e) {
+                assertEquals(SQLExceptionCode.COLUMN_EXIST_IN_DEF.getErrorCode(), e.getErrorCode());
+            }
+            try {
+                conn.createStatement().execute("CREATE INDEX IT3_IDX ON IT3 (v1) INCLUDE (v1)");
+                fail();
+            } catch (SQLException e) {
+                assertEquals(SQLExceptionCode.COLUMN_EXIST_IN_DEF.getErrorCode(), e.getErrorCode());
+            }
+            conn.createStatement().execute("CREATE INDEX IT3_IDX ON IT3 (v1)");
+            try {
+                conn.createStatement().execute("CREATE INDEX IT3_IDX2 ON IT3_IDX (v1)");
+                fail();
+            } catch (SQLException e) {
+                assertEquals(SQLExceptionCode.CANNOT_INDEX_TABLE.getErrorCode(), e.getErrorCode());
+            }
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.junit.Test;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
+import com.salesforce.phoenix.jdbc.PhoenixResultSet;
 import com.salesforce.phoenix.query.QueryConstants;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.util.*;
@@ -1421,6 +1422,8 @@ public class ProductMetricsTest extends BaseClientMangedTimeTest {
             assertEquals(210, rs.getInt(1));
             assertEquals(6, rs.getInt(2));
             assertFalse(rs.next());
+            // Memory is used on the client to sort the rows
+            assertTrue(rs.unwrap(PhoenixResultSet.class).getPeakMemoryBytes() > 0);
         } finally {
             conn.close();
         }
@@ -47,6 +47,7 @@ import com.salesforce.phoenix.coprocessor.GroupedAggregateRegionObserver;
 import com.salesforce.phoenix.coprocessor.UngroupedAggregateRegionObserver;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
+import com.salesforce.phoenix.join.HashCacheImplementation;
 import com.salesforce.phoenix.join.HashJoiningRegionObserver;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.*;
@@ -516,6 +517,7 @@ public class QueryDatabaseMetaDataTest extends BaseClientMangedTimeTest {
         assertTrue(descriptor.hasCoprocessor(UngroupedAggregateRegionObserver.class.getName()));
         assertTrue(descriptor.hasCoprocessor(GroupedAggregateRegionObserver.class.getName()));
         assertTrue(descriptor.hasCoprocessor(HashJoiningRegionObserver.class.getName()));
+        assertTrue(descriptor.hasCoprocessor(HashCacheImplementation.class.getName()));
         admin.close();
          
         int rowCount = 5;
@@ -156,6 +156,99 @@ public class QueryExecTest extends BaseClientMangedTimeTest {
         }
     }
 
+    @Test
+    public void testScanAcrossSplitsInOrder() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        String query = "SELECT entity_id FROM aTable";
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            String[] rows = new String[] {ROW1, ROW2, ROW3, ROW4, ROW5, ROW6, ROW7, ROW8, ROW9};
+            PreparedStatement statement = conn.prepareStatement(query);
+            ResultSet rs = statement.executeQuery();
+            for (String row : rows) {
+                assertTrue (rs.next());
+                assertEquals(row, rs.getString(1));
+            }
+            assertFalse(rs.next());
+
+            // Stop before the scans of the later splits have been drained
+            statement = conn.prepareStatement(query + " LIMIT 5");
+            rs = statement.executeQuery();
+            for (int i = 0; i < 5; i++) {
+                assertTrue (rs.next());
+                assertEquals(rows[i], rs.getString(1));
+            }
+            assertFalse(rs.next());
+
+            statement = conn.prepareStatement(query);
+            rs = statement.executeQuery();
+            assertTrue (rs.next());
+            assertEquals(ROW1, rs.getString(1));
+            rs.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testTopNAcrossSplits() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            PreparedStatement statement = conn.prepareStatement("SELECT entity_id FROM aTable WHERE organization_id=? ORDER BY a_integer DESC LIMIT 4");
+            statement.setString(1, tenantId);
+            ResultSet rs = statement.executeQuery();
+            for (String row : new String[] {ROW9, ROW8, ROW7, ROW6}) {
+                assertTrue (rs.next());
+                assertEquals(row, rs.getString(1));
+            }
+            assertFalse(rs.next());
+
+            statement = conn.prepareStatement("SELECT entity_id FROM aTable WHERE organization_id=? ORDER BY y_integer NULLS LAST, entity_id DESC LIMIT 3");
+            statement.setString(1, tenantId);
+            rs = statement.executeQuery();
+            for (String row : new String[] {ROW9, ROW8, ROW7}) {
+                assertTrue (rs.next());
+                assertEquals(row, rs.getString(1));
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testGroupByLimitAcrossRegions() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            // The first region has four of the rows, so the limit is reached in the middle of the second wave
+            PreparedStatement statement = conn.prepareStatement("SELECT entity_id, count(1) FROM aTable WHERE organization_id=? GROUP BY entity_id LIMIT 5");
+            statement.setString(1, tenantId);
+            ResultSet rs = statement.executeQuery();
+            for (String row : new String[] {ROW1, ROW2, ROW3, ROW4, ROW5}) {
+                assertTrue (rs.next());
+                assertEquals(row, rs.getString(1));
+                assertEquals(1, rs.getLong(2));
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
     @Test
     public void testToDateOnString() throws Exception { // TODO: test more conversion combinations
         long ts = nextTimestamp();
@@ -35,6 +35,9 @@ import java.util.Properties;
 
 import org.junit.Test;
 
+import com.salesforce.phoenix.compile.QueryPlan;
+import com.salesforce.phoenix.jdbc.PhoenixPreparedStatement;
+
 public class QueryExecWithoutSCNTest extends BaseHBaseManagedTimeTest {
     @Test
     public void testScanNoSCN() throws Exception {
@@ -56,4 +59,118 @@ public class QueryExecWithoutSCNTest extends BaseHBaseManagedTimeTest {
             conn.close();
         }
     }
+    
+    @Test
+    public void testReuseCompiledPlan() throws Exception {
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, new Properties());
+        try {
+            conn.createStatement().execute("CREATE TABLE REUSE_PLAN (k VARCHAR NOT NULL PRIMARY KEY, v VARCHAR)");
+            conn.createStatement().execute("UPSERT INTO REUSE_PLAN VALUES('a','1')");
+            conn.commit();
+            String query = "SELECT * FROM REUSE_PLAN WHERE k >= ?";
+            PreparedStatement statement = conn.prepareStatement(query);
+            statement.setString(1, "a");
+            ResultSet rs = statement.executeQuery();
+            QueryPlan plan = statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan();
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertFalse(rs.next());
+            rs.close();
+            
+            // Rows written since the plan was compiled are seen when it is executed again
+            conn.createStatement().execute("UPSERT INTO REUSE_PLAN VALUES('b','2')");
+            conn.commit();
+            rs = statement.executeQuery();
+            assertSame(plan, statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertFalse(rs.next());
+            rs.close();
+            
+            // Other bind values are bound to the same plan
+            statement.setString(1, "b");
+            rs = statement.executeQuery();
+            assertSame(plan, statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertFalse(rs.next());
+            assertEquals(2, rs.getMetaData().getColumnCount());
+            rs.close();
+            
+            // A change to the table compiles the statement again
+            conn.createStatement().execute("ALTER TABLE REUSE_PLAN ADD w VARCHAR");
+            rs = statement.executeQuery();
+            assertNotSame(plan, statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            plan = statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan();
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertFalse(rs.next());
+            assertEquals(3, rs.getMetaData().getColumnCount());
+            rs.close();
+            
+            // Preparing the same SQL again creates a new statement that executes the cached plan
+            statement.close();
+            PreparedStatement otherStatement = conn.prepareStatement(query);
+            assertNotSame(statement, otherStatement);
+            assertTrue(statement.isClosed());
+            otherStatement.setString(1, "a");
+            rs = otherStatement.executeQuery();
+            assertSame(plan, otherStatement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            
+            // The plan is not shared while its result set is open
+            PreparedStatement openStatement = conn.prepareStatement(query);
+            openStatement.setString(1, "b");
+            ResultSet openRs = openStatement.executeQuery();
+            assertNotSame(plan, openStatement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            assertTrue(openRs.next());
+            assertEquals("b", openRs.getString(1));
+            assertFalse(openRs.next());
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertFalse(rs.next());
+            
+            // A bind value used outside of the WHERE clause compiles the statement again
+            statement = conn.prepareStatement("SELECT k FROM REUSE_PLAN WHERE k >= ? LIMIT ?");
+            statement.setString(1, "a");
+            statement.setInt(2, 1);
+            rs = statement.executeQuery();
+            plan = statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan();
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertFalse(rs.next());
+            rs.close();
+            statement.setInt(2, 2);
+            rs = statement.executeQuery();
+            assertNotSame(plan, statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertFalse(rs.next());
+            rs.close();
+            
+            // Whether an index is used depends on the bind values, so the statement is compiled again
+            conn.createStatement().execute("CREATE INDEX REUSE_PLAN_IDX ON REUSE_PLAN (v)");
+            statement = conn.prepareStatement("SELECT k FROM REUSE_PLAN WHERE v = ?");
+            statement.setString(1, "1");
+            rs = statement.executeQuery();
+            plan = statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan();
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            assertFalse(rs.next());
+            rs.close();
+            statement.setString(1, "2");
+            rs = statement.executeQuery();
+            assertNotSame(plan, statement.unwrap(PhoenixPreparedStatement.class).getQueryPlan());
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
 }
@@ -53,10 +53,10 @@ public class QueryPlanTest extends BaseConnectedQueryTest {
         ensureTableCreated(getUrl(), PTSDB_NAME, getDefaultSplits(getOrganizationId()));
         String[] queryPlans = new String[] {
                 "SELECT * FROM atable",
-                "CLIENT SERIAL FULL SCAN OVER ATABLE",
+                "CLIENT PARALLEL 4-WAY FULL SCAN OVER ATABLE",
 
                 "SELECT inst,host FROM PTSDB WHERE regexp_substr(inst, '[^-]+') IN ('na1', 'na2','na3')",
-                "CLIENT SERIAL RANGE SCAN ON 3 RANGES OVER PTSDB ['na1'-'na4')\n" + 
+                "CLIENT PARALLEL 1-WAY RANGE SCAN ON 3 RANGES OVER PTSDB ['na1'-'na4')\n" + 
                 "    SERVER FILTER BY REGEXP_SUBSTR(INST, '[^-]+', 1) IN ('na1','na2','na3')",
 
                 "SELECT count(*) FROM atable",
@@ -70,7 +70,7 @@ public class QueryPlanTest extends BaseConnectedQueryTest {
                 "    SERVER AGGREGATE INTO SINGLE ROW",
 
                 "SELECT a_string FROM atable WHERE organization_id='000000000000001' AND SUBSTR(entity_id,1,3) > '002' AND SUBSTR(entity_id,1,3) <= '003'",
-                "CLIENT SERIAL RANGE SCAN OVER ATABLE '000000000000001',['003'-'004')",
+                "CLIENT PARALLEL 1-WAY RANGE SCAN OVER ATABLE '000000000000001',['003'-'004')",
 
                 "SELECT count(1) FROM atable GROUP BY a_string",
                 "CLIENT PARALLEL 4-WAY FULL SCAN OVER ATABLE\n" +
@@ -78,7 +78,7 @@ public class QueryPlanTest extends BaseConnectedQueryTest {
                 "CLIENT MERGE SORT",
 
                 "SELECT count(1) FROM atable GROUP BY a_string LIMIT 5",
-                "CLIENT SERIAL 5 ROW LIMIT FULL SCAN OVER ATABLE\n" +
+                "CLIENT SPECULATIVE 5 ROW LIMIT FULL SCAN OVER ATABLE\n" +
                 "    SERVER AGGREGATE INTO DISTINCT ROWS BY [A_STRING]\n" +
                 "CLIENT MERGE SORT",
 
@@ -104,32 +104,40 @@ public class QueryPlanTest extends BaseConnectedQueryTest {
                 "CLIENT SORT BY [B_STRING asc nulls first]",
 
                 "SELECT a_string,b_string FROM atable WHERE organization_id = '000000000000001' AND entity_id = '000000000000002' AND x_integer = 2 AND a_integer < 5 ",
-                "CLIENT SERIAL RANGE SCAN OVER ATABLE '000000000000001','000000000000002'\n" + 
+                "CLIENT PARALLEL 1-WAY RANGE SCAN OVER ATABLE '000000000000001','000000000000002'\n" + 
                 "    SERVER FILTER BY (X_INTEGER = 2 AND A_INTEGER < 5)",
 
                 "SELECT a_string,b_string FROM atable WHERE organization_id = '000000000000001' AND entity_id != '000000000000002' AND x_integer = 2 AND a_integer < 5 LIMIT 10",
-                "CLIENT SERIAL 10 ROW LIMIT RANGE SCAN OVER ATABLE '000000000000001'\n" + 
+                "CLIENT PARALLEL 1-WAY 10 ROW LIMIT RANGE SCAN OVER ATABLE '000000000000001'\n" + 
                 "    SERVER FILTER BY (ENTITY_ID != '000000000000002' AND X_INTEGER = 2 AND A_INTEGER < 5)",
 
                 "SELECT a_string,b_string FROM atable WHERE organization_id = '000000000000001' ORDER BY a_string LIMIT 10",
-                "CLIENT SERIAL 10 ROW LIMIT RANGE SCAN OVER ATABLE '000000000000001'\n" + 
-                "CLIENT SORT BY [A_STRING asc nulls first]",
+                "CLIENT PARALLEL 1-WAY RANGE SCAN OVER ATABLE '000000000000001'\n" + 
+                "    SERVER TOP 10 ROWS SORTED BY [A_STRING asc nulls first]\n" + 
+                "CLIENT MERGE SORT",
 
                 "SELECT max(a_integer) FROM atable WHERE organization_id = '000000000000001' GROUP BY organization_id,entity_id,ROUND(a_date,'HOUR') ORDER BY entity_id LIMIT 10",
-                "CLIENT SERIAL 10 ROW LIMIT RANGE SCAN OVER ATABLE '000000000000001'\n" + 
+                "CLIENT SPECULATIVE 10 ROW LIMIT RANGE SCAN OVER ATABLE '000000000000001'\n" + 
                 "    SERVER AGGREGATE INTO DISTINCT ROWS BY [ORGANIZATION_ID, ENTITY_ID, ROUND(A_DATE)]\n" + 
                 "CLIENT MERGE SORT\n" + 
                 "CLIENT SORT BY [ENTITY_ID asc nulls first]",
 
                 "SELECT a_string,b_string FROM atable WHERE organization_id = '000000000000001' ORDER BY a_string LIMIT 10",
-                "CLIENT SERIAL 10 ROW LIMIT RANGE SCAN OVER ATABLE '000000000000001'\n" + 
-                "CLIENT SORT BY [A_STRING asc nulls first]",
+                "CLIENT PARALLEL 1-WAY RANGE SCAN OVER ATABLE '000000000000001'\n" + 
+                "    SERVER TOP 10 ROWS SORTED BY [A_STRING asc nulls first]\n" + 
+                "CLIENT MERGE SORT",
 
                 "SELECT a_string,b_string FROM atable WHERE organization_id IN ('000000000000001', '000000000000005')",
-                "CLIENT SERIAL RANGE SCAN ON 2 KEYS OVER ATABLE ['000000000000001'-'000000000000005']",
+                "CLIENT PARALLEL 1-WAY RANGE SCAN ON 2 KEYS OVER ATABLE ['000000000000001'-'000000000000005']",
 
                 "SELECT a_string,b_string FROM atable WHERE organization_id IN ('000000000000001', '000000000000005') AND entity_id IN('000000000000001','00000000000000Z')",
-                "CLIENT SERIAL RANGE SCAN ON 4 KEYS OVER ATABLE ['000000000000001'-'000000000000005'],['000000000000001'-'00000000000000Z']",
+                "CLIENT PARALLEL 1-WAY RANGE SCAN ON 4 KEYS OVER ATABLE ['000000000000001'-'000000000000005'],['000000000000001'-'00000000000000Z']",
+
+                "DELETE FROM atable WHERE a_integer = 1",
+                "DELETE ROWS\n" +
+                "CLIENT PARALLEL 4-WAY FULL SCAN OVER ATABLE\n" +
+                "    SERVER FILTER BY A_INTEGER = 1\n" +
+                "CLIENT UNORDERED MERGE",
         };
         for (int i = 0; i < queryPlans.length; i+=2) {
             String query = queryPlans[i];
@@ -80,6 +80,107 @@ public class SkipScanQueryTest extends BaseHBaseManagedTimeTest {
         }
     }
 
+    @Test
+    public void testLargeInQueryOverSplits() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.setAutoCommit(false);
+        try {
+            conn.createStatement().execute("CREATE TABLE inSplitTest (k CHAR(4) NOT NULL PRIMARY KEY, v INTEGER) SPLIT ON ('0250','0500','0750')");
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO inSplitTest VALUES(?,?)");
+            for (int i = 0; i < 1000; i += 3) {
+                stmt.setString(1, String.format("%04d", i));
+                stmt.setInt(2, i);
+                stmt.execute();
+            }
+            conn.commit();
+            StringBuilder buf = new StringBuilder("SELECT v FROM inSplitTest WHERE k IN (");
+            for (int i = 0; i < 1000; i += 2) {
+                buf.append('\'').append(String.format("%04d", i)).append("',");
+            }
+            buf.setCharAt(buf.length()-1, ')');
+            ResultSet rs = conn.createStatement().executeQuery(buf.toString());
+            for (int i = 0; i < 1000; i += 6) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testOrQuery() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.setAutoCommit(false);
+        initIntInTable(conn,Arrays.asList(2,7,10,12));
+        try {
+            String query;
+            query = "SELECT i FROM inTest WHERE i = 1 OR i = 2 OR (i >= 5 AND i < 10) OR i + 1 > 12";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertTrue(rs.next());
+            assertEquals(7, rs.getInt(1));
+            assertTrue(rs.next());
+            assertEquals(12, rs.getInt(1));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testInListAfterRangeQuery() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.setAutoCommit(false);
+        try {
+            conn.createStatement().execute("CREATE TABLE rangeInTest (k1 INTEGER NOT NULL, k2 CHAR(1) NOT NULL CONSTRAINT pk PRIMARY KEY (k1,k2))");
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO rangeInTest VALUES(?,?)");
+            for (int k1 = 3; k1 <= 9; k1++) {
+                for (String k2 : Arrays.asList("a","b","c","d")) {
+                    stmt.setInt(1, k1);
+                    stmt.setString(2, k2);
+                    stmt.execute();
+                }
+            }
+            conn.commit();
+            
+            String query = "SELECT k1,k2 FROM rangeInTest WHERE k1 >= 5 AND k1 <= 7 AND k2 IN ('d','b')";
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            for (int k1 = 5; k1 <= 7; k1++) {
+                for (String k2 : Arrays.asList("b","d")) {
+                    assertTrue(rs.next());
+                    assertEquals(k1, rs.getInt(1));
+                    assertEquals(k2, rs.getString(2));
+                }
+            }
+            assertFalse(rs.next());
+            
+            query = "SELECT k1,k2 FROM rangeInTest WHERE k1 > 7 AND k2 IN ('a','c')";
+            rs = conn.createStatement().executeQuery(query);
+            for (int k1 = 8; k1 <= 9; k1++) {
+                for (String k2 : Arrays.asList("a","c")) {
+                    assertTrue(rs.next());
+                    assertEquals(k1, rs.getInt(1));
+                    assertEquals(k2, rs.getString(2));
+                }
+            }
+            assertFalse(rs.next());
+            
+            query = "SELECT k1,k2 FROM rangeInTest WHERE k1 < 5 AND k2 = 'c'";
+            rs = conn.createStatement().executeQuery(query);
+            for (int k1 = 3; k1 <= 4; k1++) {
+                assertTrue(rs.next());
+                assertEquals(k1, rs.getInt(1));
+                assertEquals("c", rs.getString(2));
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
     @Test
     public void testVarCharParallelListInQuery() throws Exception {
         Connection conn = DriverManager.getConnection(getUrl());
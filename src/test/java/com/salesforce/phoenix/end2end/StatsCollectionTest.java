@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.compile.QueryCompiler;
+import com.salesforce.phoenix.compile.QueryCompiler.CostEstimate;
+import com.salesforce.phoenix.iterate.ParallelIterators;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.query.*;
+import com.salesforce.phoenix.schema.PSchema;
+import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.stat.PRegionStats;
+
+
+/**
+ * Tests for the collection of region statistics and their use
+ * when splitting a scan.
+ */
+public class StatsCollectionTest extends BaseHBaseManagedTimeTest {
+    private static final String TABLE_NAME = "STATS_TEST";
+    private static final int ROW_COUNT = 200;
+    
+    private static String getKey(int i) {
+        return String.format("k%03d", i);
+    }
+    
+    private static TableRef initTable() throws SQLException {
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            conn.createStatement().execute("CREATE TABLE " + TABLE_NAME + " (k CHAR(4) NOT NULL PRIMARY KEY, v INTEGER) SPLIT ON ('" + getKey(ROW_COUNT/2) + "')");
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + TABLE_NAME + " VALUES(?,?)");
+            for (int i = 0; i < ROW_COUNT; i++) {
+                stmt.setString(1, getKey(i));
+                stmt.setInt(2, i);
+                stmt.execute();
+            }
+            conn.commit();
+            PhoenixConnection pconn = conn.unwrap(PhoenixConnection.class);
+            PSchema schema = pconn.getPMetaData().getSchemas().get(QueryConstants.NULL_SCHEMA_NAME);
+            return new TableRef(null, schema.getTable(TABLE_NAME), schema, HConstants.LATEST_TIMESTAMP);
+        } finally {
+            conn.close();
+        }
+    }
+    
+    private static ConnectionQueryServices getServices() throws SQLException {
+        return driver.getConnectionQueryServices(getUrl(), TEST_PROPERTIES);
+    }
+    
+    private static void assertStats(StatsManager statsManager, TableRef table, SortedSet<HRegionInfo> regions) {
+        assertEquals(2, regions.size());
+        for (HRegionInfo region : regions) {
+            PRegionStats stats = statsManager.getRegionStats(table, region);
+            assertNotNull(stats);
+            assertEquals(ROW_COUNT/2, stats.getRowCount());
+            assertTrue(stats.getByteCount() > 0);
+            byte[][] guidePosts = stats.getGuidePosts();
+            assertTrue(guidePosts.length > 0);
+            for (int i = 0; i < guidePosts.length; i++) {
+                assertTrue(Bytes.compareTo(guidePosts[i], region.getStartKey()) >= 0);
+                assertTrue(region.getEndKey().length == 0 || Bytes.compareTo(guidePosts[i], region.getEndKey()) < 0);
+                assertTrue(i == 0 || Bytes.compareTo(guidePosts[i-1], guidePosts[i]) < 0);
+            }
+        }
+    }
+    
+    @Test
+    public void testCollectStatsOnDemand() throws Exception {
+        Configuration config = driver.getQueryServices().getConfig();
+        config.setInt(QueryServices.MAX_QUERY_CONCURRENCY_ATTRIB, 8);
+        config.setInt(QueryServices.TARGET_QUERY_CONCURRENCY_ATTRIB, 8);
+        TableRef table = initTable();
+        ConnectionQueryServices services = getServices();
+        services.getStatsManager().collectStats(table);
+        SortedSet<HRegionInfo> regions = services.getAllTableRegions(table);
+        assertStats(services.getStatsManager(), table, regions);
+        
+        // With 2 regions and a target concurrency of 8, each region is split in 4 on its guide posts
+        List<KeyRange> splits = ParallelIterators.getSplits(services, table, new Scan(), regions);
+        assertEquals(8, splits.size());
+        for (KeyRange split : splits) {
+            int nRows = 0;
+            for (int i = 0; i < ROW_COUNT; i++) {
+                if (split.isInRange(Bytes.toBytes(getKey(i)), 0, getKey(i).length())) {
+                    nRows++;
+                }
+            }
+            assertTrue("Uneven split " + split + " with " + nRows + " rows", nRows >= 20 && nRows <= 30);
+        }
+        
+        CostEstimate cost = QueryCompiler.estimateCost(services, table, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+        assertTrue(cost.isKnown());
+        assertEquals(ROW_COUNT, cost.getRowCount());
+        cost = QueryCompiler.estimateCost(services, table, Bytes.toBytes(getKey(0)), Bytes.toBytes(getKey(50)));
+        assertTrue("Unexpected estimate " + cost.getRowCount(), cost.getRowCount() >= 45 && cost.getRowCount() <= 60);
+    }
+    
+    @Test
+    public void testCollectStatsOnMajorCompaction() throws Exception {
+        TableRef table = initTable();
+        ConnectionQueryServices services = getServices();
+        HBaseAdmin admin = new HBaseAdmin(driver.getQueryServices().getConfig());
+        try {
+            admin.flush(table.getTableName());
+            admin.majorCompact(table.getTableName());
+        } finally {
+            admin.close();
+        }
+        SortedSet<HRegionInfo> regions = services.getAllTableRegions(table);
+        StatsManager statsManager = services.getStatsManager();
+        long startTime = System.currentTimeMillis();
+        boolean collected;
+        do {
+            Thread.sleep(500);
+            statsManager.updateStats(table);
+            collected = true;
+            for (HRegionInfo region : regions) {
+                collected &= statsManager.getRegionStats(table, region) != null;
+            }
+        } while (!collected && System.currentTimeMillis() - startTime < 30000);
+        assertTrue("Statistics not collected on major compaction", collected);
+        assertStats(services.getStatsManager(), table, regions);
+    }
+}
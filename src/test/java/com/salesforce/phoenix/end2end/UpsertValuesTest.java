@@ -33,8 +33,11 @@ import static org.junit.Assert.*;
 import java.sql.*;
 import java.util.Properties;
 
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.salesforce.phoenix.execute.MutationState;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.util.*;
 
 
@@ -96,4 +99,140 @@ public class UpsertValuesTest extends BaseClientMangedTimeTest {
         assertEquals(3,rs.getInt(1));
         assertFalse(rs.next());
     }
+    
+    @Test
+    public void testUpsertValuesBatch() throws Exception {
+        long ts = nextTimestamp();
+        ensureTableCreated(getUrl(),"IntKeyTest",null, ts-2);
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 1)); // Execute at timestamp 1
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        PreparedStatement upsertStmt = conn.prepareStatement("UPSERT INTO IntKeyTest VALUES(?)");
+        for (int i = 1; i <= 3; i++) {
+            upsertStmt.setInt(1, i);
+            upsertStmt.addBatch();
+        }
+        int[] updateCounts = upsertStmt.executeBatch();
+        assertArrayEquals(new int[] {1, 1, 1}, updateCounts);
+        // The batch is cleared once executed
+        assertEquals(0, upsertStmt.executeBatch().length);
+        
+        upsertStmt.setString(1, "foo");
+        upsertStmt.addBatch();
+        try {
+            upsertStmt.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            assertEquals(0, e.getUpdateCounts().length);
+        }
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        String select = "SELECT i FROM IntKeyTest";
+        ResultSet rs = conn.createStatement().executeQuery(select);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(rs.next());
+            assertEquals(i,rs.getInt(1));
+        }
+        assertFalse(rs.next());
+    }
+    
+    @Test
+    public void testCommitAcrossRegionsAndTables() throws Exception {
+        long ts = nextTimestamp();
+        ensureTableCreated(getUrl(),TestUtil.PTSDB_NAME,new byte[][] {Bytes.toBytes("b"), Bytes.toBytes("d")}, ts-2);
+        ensureTableCreated(getUrl(),"IntKeyTest",null, ts-2);
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 1)); // Execute at timestamp 1
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        PreparedStatement upsertStmt = conn.prepareStatement("upsert into ptsdb(inst,host,date) values(?,'h',current_date())");
+        for (String inst : new String[] {"a", "b", "c", "d", "e"}) {
+            upsertStmt.setString(1, inst);
+            upsertStmt.executeUpdate();
+        }
+        conn.createStatement().executeUpdate("UPSERT INTO IntKeyTest VALUES(1)");
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        ResultSet rs = conn.createStatement().executeQuery("SELECT inst FROM ptsdb");
+        for (String inst : new String[] {"a", "b", "c", "d", "e"}) {
+            assertTrue(rs.next());
+            assertEquals(inst,rs.getString(1));
+        }
+        assertFalse(rs.next());
+        rs = conn.createStatement().executeQuery("SELECT count(*) FROM IntKeyTest");
+        assertTrue(rs.next());
+        assertEquals(1,rs.getInt(1));
+    }
+    
+    @Test
+    public void testUpsertSameRowsBeforeCommit() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = "00D300000000XHP";
+        ensureTableCreated(getUrl(),TestUtil.ATABLE_NAME,null, ts-2);
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 1)); // Execute at timestamp 1
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        conn.setAutoCommit(false);
+        // Enough rows, upserted twice, to span several blocks of the mutation buffer and to compact it
+        int nRows = 1000;
+        String padding = String.format("%0100d", 0);
+        PreparedStatement upsertAString = conn.prepareStatement("upsert into atable(organization_id,entity_id,a_string) values(?,?,?)");
+        PreparedStatement upsertBString = conn.prepareStatement("upsert into atable(organization_id,entity_id,b_string) values(?,?,?)");
+        for (int i = 0; i < nRows; i++) {
+            String entityId = String.format("%015d", i);
+            upsertAString.setString(1, tenantId);
+            upsertAString.setString(2, entityId);
+            upsertAString.setString(3, padding);
+            upsertAString.executeUpdate();
+            upsertBString.setString(1, tenantId);
+            upsertBString.setString(2, entityId);
+            upsertBString.setString(3, "b" + i);
+            upsertBString.executeUpdate();
+        }
+        for (int i = 0; i < nRows; i++) {
+            upsertAString.setString(1, tenantId);
+            upsertAString.setString(2, String.format("%015d", i));
+            upsertAString.setString(3, "a" + i);
+            upsertAString.executeUpdate();
+        }
+        MutationState state = conn.unwrap(PhoenixConnection.class).getMutationState();
+        assertEquals(nRows, state.getUpdateCount());
+        assertTrue(state.getByteSize() > 0);
+        conn.commit();
+        assertEquals(0, state.getByteSize());
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        ResultSet rs = conn.createStatement().executeQuery("SELECT entity_id, a_string, b_string FROM atable");
+        for (int i = 0; i < nRows; i++) {
+            assertTrue(rs.next());
+            assertEquals(String.format("%015d", i),rs.getString(1));
+            assertEquals("a" + i,rs.getString(2));
+            assertEquals("b" + i,rs.getString(3));
+        }
+        assertFalse(rs.next());
+    }
+    
+    @Test
+    public void testUpsertSingleRowBufferSize() throws Exception {
+        long ts = nextTimestamp();
+        ensureTableCreated(getUrl(),TestUtil.ATABLE_NAME,null, ts-2);
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 1)); // Execute at timestamp 1
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        conn.setAutoCommit(false);
+        conn.createStatement().executeUpdate("upsert into atable(organization_id,entity_id,a_string) values('00D300000000XHP','000000000000001','a')");
+        MutationState state = conn.unwrap(PhoenixConnection.class).getMutationState();
+        assertEquals(1, state.getUpdateCount());
+        // The buffer is sized to the row rather than to a whole block
+        assertTrue(state.getByteSize() < 1024);
+        conn.rollback();
+        conn.close();
+    }
 }
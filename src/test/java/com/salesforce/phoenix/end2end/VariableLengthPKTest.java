@@ -1095,6 +1095,9 @@ public class VariableLengthPKTest extends BaseClientMangedTimeTest {
             "SELECT CASE WHEN 'ABC' LIKE 'A__' THEN '1' ELSE '2' END FROM BTABLE LIMIT 1",
             "SELECT CASE WHEN 'AB_C' LIKE 'AB\\_C' THEN '1' ELSE '2' END FROM BTABLE LIMIT 1",
             "SELECT CASE WHEN 'ABC%DE' LIKE 'ABC\\%D%' THEN '1' ELSE '2' END FROM BTABLE LIMIT 1",
+            "SELECT CASE WHEN 'ABCDE' LIKE '%CD%' THEN '1' ELSE '2' END FROM BTABLE LIMIT 1",
+            "SELECT CASE WHEN 'ABCDE' LIKE '%CD' THEN '1' ELSE '2' END FROM BTABLE LIMIT 1",
+            "SELECT CASE WHEN 'A\u00e9C' LIKE 'A_C' THEN '1' ELSE '2' END FROM BTABLE LIMIT 1",
         };
         String result[] = {
             "2",
@@ -1102,6 +1105,9 @@ public class VariableLengthPKTest extends BaseClientMangedTimeTest {
             "1",
             "1",
             "1",
+            "1",
+            "2",
+            "1",
         };
         assertEquals(query.length,result.length);
         String url = PHOENIX_JDBC_URL + ";" + PhoenixRuntime.CURRENT_SCN_ATTRIB + "=" + (ts + 5); // Run query at timestamp 5
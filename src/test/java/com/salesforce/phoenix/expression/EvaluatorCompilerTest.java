@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.function.CountAggregateFunction;
+import com.salesforce.phoenix.expression.function.SumAggregateFunction;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+public class EvaluatorCompilerTest {
+    private static final byte[] ROW = Bytes.toBytes("r");
+    private static final PName FAMILY_NAME = new PNameImpl("a");
+    private static final PColumn LONG_COLUMN = new PColumnImpl(new PNameImpl("l"), FAMILY_NAME, PDataType.LONG, null, null, true, 1);
+    private static final PColumn INTEGER_COLUMN = new PColumnImpl(new PNameImpl("i"), FAMILY_NAME, PDataType.INTEGER, null, null, true, 2);
+    private static final PColumn VARCHAR_COLUMN = new PColumnImpl(new PNameImpl("s"), FAMILY_NAME, PDataType.VARCHAR, null, null, true, 3);
+    
+    private static Tuple newTuple(Long l, Integer i, String s) {
+        List<KeyValue> keyValues = new ArrayList<KeyValue>();
+        // Key values must be in sorted order of their column qualifier
+        if (i != null) {
+            keyValues.add(new KeyValue(ROW, FAMILY_NAME.getBytes(), INTEGER_COLUMN.getName().getBytes(), PDataType.INTEGER.toBytes(i)));
+        }
+        if (l != null) {
+            keyValues.add(new KeyValue(ROW, FAMILY_NAME.getBytes(), LONG_COLUMN.getName().getBytes(), PDataType.LONG.toBytes(l)));
+        }
+        if (s != null) {
+            keyValues.add(new KeyValue(ROW, FAMILY_NAME.getBytes(), VARCHAR_COLUMN.getName().getBytes(), PDataType.VARCHAR.toBytes(s)));
+        }
+        return new MultiKeyValueTuple(keyValues);
+    }
+    
+    private static List<Tuple> newTuples() {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (long l = -2; l <= 2; l++) {
+            for (String s : Arrays.asList("a", "b", "c")) {
+                tuples.add(newTuple(l, (int)(l * 2), s));
+            }
+        }
+        tuples.add(newTuple(null, 1, "b"));
+        tuples.add(newTuple(1L, null, null));
+        return tuples;
+    }
+    
+    private static Expression compare(CompareOp op, Expression lhs, Expression rhs) {
+        return new ComparisonExpression(op, Arrays.asList(lhs, rhs));
+    }
+    
+    private static void assertEvaluatesSame(Expression expression, List<Tuple> tuples) {
+        Expression compiled = EvaluatorCompiler.compile(expression);
+        assertEquals(expression.toString(), compiled.toString());
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        ImmutableBytesWritable compiledPtr = new ImmutableBytesWritable();
+        for (Tuple tuple : tuples) {
+            expression.reset();
+            compiled.reset();
+            boolean evaluated = expression.evaluate(tuple, ptr);
+            assertEquals(expression + " for " + tuple, evaluated, compiled.evaluate(tuple, compiledPtr));
+            if (evaluated) {
+                assertEquals(expression + " for " + tuple, ptr, compiledPtr);
+            }
+        }
+    }
+    
+    @Test
+    public void testComparisons() throws Exception {
+        List<Tuple> tuples = newTuples();
+        Expression longColumn = new KeyValueColumnExpression(LONG_COLUMN);
+        Expression integerColumn = new KeyValueColumnExpression(INTEGER_COLUMN);
+        Expression varcharColumn = new KeyValueColumnExpression(VARCHAR_COLUMN);
+        List<Expression> constants = Arrays.<Expression>asList(
+                LiteralExpression.newConstant(1L, PDataType.LONG),
+                LiteralExpression.newConstant(-1, PDataType.INTEGER));
+        for (CompareOp op : CompareOp.values()) {
+            if (op == CompareOp.NO_OP) {
+                continue;
+            }
+            for (Expression constant : constants) {
+                assertEvaluatesSame(compare(op, longColumn, constant), tuples);
+                assertEvaluatesSame(compare(op, constant, longColumn), tuples);
+                assertEvaluatesSame(compare(op, integerColumn, constant), tuples);
+            }
+            assertEvaluatesSame(compare(op, varcharColumn, LiteralExpression.newConstant("b")), tuples);
+            assertEvaluatesSame(compare(op, LiteralExpression.newConstant("b"), varcharColumn), tuples);
+            assertEvaluatesSame(compare(op, varcharColumn, LiteralExpression.newConstant("b", PDataType.CHAR)), tuples);
+            assertEvaluatesSame(compare(op, longColumn, integerColumn), tuples);
+        }
+    }
+    
+    @Test
+    public void testAndOr() throws Exception {
+        List<Tuple> tuples = newTuples();
+        Expression longColumn = new KeyValueColumnExpression(LONG_COLUMN);
+        Expression integerColumn = new KeyValueColumnExpression(INTEGER_COLUMN);
+        Expression varcharColumn = new KeyValueColumnExpression(VARCHAR_COLUMN);
+        List<Expression> predicates = Arrays.asList(
+                compare(CompareOp.GREATER, longColumn, LiteralExpression.newConstant(-2L, PDataType.LONG)),
+                compare(CompareOp.LESS_OR_EQUAL, integerColumn, LiteralExpression.newConstant(2, PDataType.INTEGER)),
+                compare(CompareOp.NOT_EQUAL, varcharColumn, LiteralExpression.newConstant("c")));
+        assertEvaluatesSame(new AndExpression(predicates), tuples);
+        assertEvaluatesSame(new OrExpression(predicates), tuples);
+        assertEvaluatesSame(new OrExpression(Arrays.<Expression>asList(new AndExpression(predicates.subList(0, 2)), predicates.get(2))), tuples);
+    }
+    
+    @Test
+    public void testPartialEvaluation() throws Exception {
+        Expression expression = new AndExpression(Arrays.asList(
+                compare(CompareOp.EQUAL, new KeyValueColumnExpression(INTEGER_COLUMN), LiteralExpression.newConstant(2, PDataType.INTEGER)),
+                compare(CompareOp.EQUAL, new KeyValueColumnExpression(LONG_COLUMN), LiteralExpression.newConstant(1L, PDataType.LONG))));
+        Expression compiled = EvaluatorCompiler.compile(expression);
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        compiled.reset();
+        // The long column hasn't been seen yet, so the result isn't known
+        assertFalse(compiled.evaluate(newTuple(null, 2, null), ptr));
+        // The integer column has already been evaluated as true, so only the long column is needed
+        assertTrue(compiled.evaluate(newTuple(1L, null, null), ptr));
+        assertEquals(Boolean.TRUE, PDataType.BOOLEAN.toObject(ptr));
+        compiled.reset();
+        assertTrue(compiled.evaluate(newTuple(null, 3, null), ptr));
+        assertEquals(Boolean.FALSE, PDataType.BOOLEAN.toObject(ptr));
+    }
+    
+    @Test
+    public void testLongArithmetic() throws Exception {
+        List<Tuple> tuples = newTuples();
+        List<Expression> children = Arrays.<Expression>asList(
+                LiteralExpression.newConstant(3L, PDataType.LONG),
+                new KeyValueColumnExpression(LONG_COLUMN),
+                LiteralExpression.newConstant(-5, PDataType.INTEGER),
+                new KeyValueColumnExpression(INTEGER_COLUMN));
+        assertEvaluatesSame(new LongAddExpression(children), tuples);
+        assertEvaluatesSame(new LongMultiplyExpression(children), tuples);
+        assertEvaluatesSame(compare(CompareOp.GREATER, new LongAddExpression(children), LiteralExpression.newConstant(0L, PDataType.LONG)), tuples);
+    }
+    
+    @Test
+    public void testUnsupportedExpression() throws Exception {
+        Expression expression = new IsNullExpression(new KeyValueColumnExpression(LONG_COLUMN), false);
+        assertSame(expression, EvaluatorCompiler.compile(expression));
+        // Visited as the COUNT it delegates to, which must not replace it
+        List<Expression> children = Arrays.<Expression>asList(LiteralExpression.newConstant(1L, PDataType.LONG));
+        expression = new SumAggregateFunction(children, new CountAggregateFunction(children));
+        assertSame(expression, EvaluatorCompiler.compile(expression));
+        expression = compare(CompareOp.GREATER, expression, LiteralExpression.newConstant(0L, PDataType.LONG));
+        assertSame(expression, EvaluatorCompiler.compile(expression));
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.junit.Test;
+
+import com.salesforce.phoenix.schema.PDataType;
+
+public class InListExpressionTest {
+    
+    private static Boolean evaluate(String value, int size) throws Exception {
+        List<Expression> children = new ArrayList<Expression>(size + 1);
+        children.add(LiteralExpression.newConstant(value));
+        // Every other value, so that values both before, after, and between the list values are looked up
+        for (int i = 0; i < size; i++) {
+            children.add(LiteralExpression.newConstant(Integer.toString(i * 2)));
+        }
+        InListExpression e = new InListExpression(children);
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(e.evaluate(null, ptr));
+        return (Boolean)e.getDataType().toObject(ptr);
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        // Sizes that use a linear search, a binary search, and a hash table
+        for (int size : new int[] {1, 5, 100, 1000}) {
+            assertTrue(evaluate("0", size));
+            assertTrue(evaluate(Integer.toString(size - 1 - (size - 1) % 2), size));
+            assertTrue(evaluate(Integer.toString((size - 1) * 2), size));
+            assertFalse(evaluate("1", size));
+            assertFalse(evaluate("00", size));
+            assertFalse(evaluate(Integer.toString(size * 2), size));
+            assertFalse(evaluate("0" + Integer.toString(size * 20), size));
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        for (int size : new int[] {3, 100, 1000}) {
+            List<Expression> children = new ArrayList<Expression>(size + 1);
+            children.add(LiteralExpression.newConstant(1L));
+            for (int i = size - 1; i >= 0; i--) {
+                children.add(LiteralExpression.newConstant((long)i, PDataType.LONG));
+            }
+            InListExpression e = new InListExpression(children);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            e.write(new DataOutputStream(bytes));
+            InListExpression copy = new InListExpression();
+            copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(e, copy);
+            assertEquals(e.hashCode(), copy.hashCode());
+            assertArrayEquals(PDataType.LONG.toBytes(0L), copy.getMinKey().copyBytes());
+            assertArrayEquals(PDataType.LONG.toBytes(size - 1L), copy.getMaxKey().copyBytes());
+            ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+            assertTrue(copy.evaluate(null, ptr));
+            assertEquals(Boolean.TRUE, copy.getDataType().toObject(ptr));
+        }
+    }
+
+    @Test
+    public void testDeserializeUnsortedValues() throws Exception {
+        // Clients that didn't sort the values serialize them in the order they were listed
+        for (int size : new int[] {5, 100, 1000}) {
+            Expression child = LiteralExpression.newConstant("x", PDataType.VARCHAR);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            WritableUtils.writeVInt(output, ExpressionType.valueOf(child).ordinal());
+            child.write(output);
+            output.writeBoolean(false);
+            ByteArrayOutputStream values = new ByteArrayOutputStream();
+            for (int i = size - 1; i >= 0; i--) {
+                values.write(Bytes.toBytes(Integer.toString(i)));
+            }
+            WritableUtils.writeVInt(output, values.size());
+            output.write(values.toByteArray());
+            WritableUtils.writeVInt(output, size);
+            for (int i = size - 1; i >= 0; i--) {
+                WritableUtils.writeVInt(output, Integer.toString(i).length());
+            }
+            InListExpression copy = new InListExpression();
+            copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            
+            List<Expression> children = new ArrayList<Expression>(size + 1);
+            children.add(child);
+            for (int i = 0; i < size; i++) {
+                children.add(LiteralExpression.newConstant(Integer.toString(i), PDataType.VARCHAR));
+            }
+            assertEquals(new InListExpression(children), copy);
+            assertArrayEquals(Bytes.toBytes("0"), copy.getMinKey().copyBytes());
+            assertArrayEquals(Bytes.toBytes(Integer.toString(size - 1)), copy.getMaxKey().copyBytes());
+        }
+    }
+}
\ No newline at end of file
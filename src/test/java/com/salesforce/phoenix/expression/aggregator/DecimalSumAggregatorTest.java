@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigDecimal;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import com.salesforce.phoenix.schema.PDataType;
+
+
+public class DecimalSumAggregatorTest {
+    
+    private static BigDecimal sum(String... values) {
+        DecimalSumAggregator aggregator = new DecimalSumAggregator();
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        for (String value : values) {
+            ptr.set(PDataType.DECIMAL.toBytes(new BigDecimal(value)));
+            aggregator.aggregate(null, ptr);
+        }
+        aggregator.evaluate(null, ptr);
+        return (BigDecimal)PDataType.DECIMAL.toObject(ptr);
+    }
+    
+    private static void assertSum(String... values) {
+        BigDecimal expected = BigDecimal.ZERO;
+        for (String value : values) {
+            expected = expected.add(new BigDecimal(value));
+        }
+        BigDecimal actual = sum(values);
+        assertEquals(actual + " != " + expected, 0, expected.compareTo(actual));
+    }
+    
+    @Test
+    public void testSum() {
+        assertSum("1");
+        assertSum("1", "2", "-5");
+        // Increases the scale of the sum as values with a larger scale are seen
+        assertSum("1", "0.5", "-0.25", "100.125", "3");
+        assertSum("0.001", "1E+10", "-7.5");
+    }
+    
+    @Test
+    public void testSumOverflow() {
+        String max = Long.toString(Long.MAX_VALUE);
+        String min = Long.toString(Long.MIN_VALUE);
+        // The sum no longer fits in a long
+        assertSum(max, "1", "-2");
+        assertSum(min, "-1", "2");
+        // A value that doesn't fit in a long
+        assertSum("1", "123456789012345678901234567", "1");
+        // Increasing the scale of the sum makes it no longer fit in a long
+        assertSum(max, "0.5");
+        // A scale too large for a long
+        assertSum("1", "0.1111111111111111111111", "2");
+    }
+    
+    @Test
+    public void testReset() {
+        DecimalSumAggregator aggregator = new DecimalSumAggregator();
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable(PDataType.DECIMAL.toBytes(new BigDecimal("0.5")));
+        aggregator.aggregate(null, ptr);
+        aggregator.reset();
+        assertFalse(aggregator.evaluate(null, ptr));
+        ptr.set(PDataType.DECIMAL.toBytes(new BigDecimal("2")));
+        aggregator.aggregate(null, ptr);
+        aggregator.evaluate(null, ptr);
+        assertEquals(0, new BigDecimal("2").compareTo((BigDecimal)PDataType.DECIMAL.toObject(ptr)));
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+public class HyperLogLogAggregatorTest {
+    
+    private static void aggregate(Aggregator aggregator, int start, int end) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        for (int i = start; i < end; i++) {
+            ptr.set(Bytes.toBytes("value" + i));
+            aggregator.aggregate(null, ptr);
+        }
+    }
+    
+    private static long estimate(Aggregator aggregator) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(aggregator.evaluate(null, ptr));
+        assertEquals(HyperLogLogAggregator.REGISTER_COUNT, ptr.getLength());
+        return HyperLogLogAggregator.estimate(ptr.get(), ptr.getOffset(), ptr.getLength());
+    }
+    
+    private static void assertEstimate(long expected, long actual) {
+        // Allow for three times the standard error of about 1.6%
+        assertTrue(actual + " not within 5% of " + expected, Math.abs(actual - expected) <= expected * 0.05);
+    }
+    
+    @Test
+    public void testEstimate() {
+        HyperLogLogAggregator aggregator = new HyperLogLogAggregator();
+        assertEquals(0, estimate(aggregator));
+        aggregate(aggregator, 0, 1);
+        assertEquals(1, estimate(aggregator));
+        // Duplicates and nulls are not counted
+        aggregate(aggregator, 0, 100);
+        aggregate(aggregator, 0, 100);
+        aggregator.aggregate(null, new ImmutableBytesWritable(ByteUtil.EMPTY_BYTE_ARRAY));
+        assertEstimate(100, estimate(aggregator));
+        aggregate(aggregator, 0, 100000);
+        assertEstimate(100000, estimate(aggregator));
+        
+        aggregator.reset();
+        assertEquals(0, estimate(aggregator));
+    }
+    
+    @Test
+    public void testMerge() {
+        HyperLogLogAggregator region1 = new HyperLogLogAggregator();
+        HyperLogLogAggregator region2 = new HyperLogLogAggregator();
+        HyperLogLogAggregator region3 = new HyperLogLogAggregator();
+        aggregate(region1, 0, 30000);
+        aggregate(region2, 20000, 50000);
+        
+        HyperLogLogClientAggregator client = new HyperLogLogClientAggregator();
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        for (Aggregator region : new Aggregator[] {region1, region2, region3}) {
+            region.evaluate(null, ptr);
+            client.aggregate(null, ptr);
+        }
+        assertEstimate(50000, estimate(client));
+    }
+}
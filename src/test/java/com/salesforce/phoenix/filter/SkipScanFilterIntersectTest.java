@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import com.salesforce.phoenix.util.ScanUtil;
+
+
+public class SkipScanFilterIntersectTest {
+    private static final int FIELD_WIDTH = 3;
+
+    private static RowKeySchema newSchema(int nFields) {
+        RowKeySchemaBuilder builder = new RowKeySchemaBuilder().setMinNullable(nFields);
+        for (int i = 0; i < nFields; i++) {
+            builder.addField(new PDatum() {
+                @Override
+                public boolean isNullable() {
+                    return false;
+                }
+
+                @Override
+                public PDataType getDataType() {
+                    return PDataType.CHAR;
+                }
+
+                @Override
+                public Integer getByteSize() {
+                    return FIELD_WIDTH;
+                }
+
+                @Override
+                public Integer getMaxLength() {
+                    return FIELD_WIDTH;
+                }
+
+                @Override
+                public Integer getScale() {
+                    return null;
+                }
+            });
+        }
+        return builder.build();
+    }
+
+    private static List<KeyRange> points(String... keys) {
+        List<KeyRange> ranges = new ArrayList<KeyRange>(keys.length);
+        for (String key : keys) {
+            ranges.add(KeyRange.getKeyRange(Bytes.toBytes(key), true, Bytes.toBytes(key), true));
+        }
+        return ranges;
+    }
+
+    private static ReturnCode filter(SkipScanFilter filter, String row) {
+        filter.reset();
+        return filter.filterKeyValue(KeyValue.createFirstOnRow(Bytes.toBytes(row)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testIntersectLeadingSlot() {
+        List<List<KeyRange>> slots = Arrays.asList(points("aaa", "bbb", "ccc", "ddd"), points("xxx", "yyy"));
+        SkipScanFilter filter = new SkipScanFilter(slots, newSchema(2));
+        assertSame(filter, filter.intersect(KeyRange.UNBOUND_LOWER, KeyRange.UNBOUND_UPPER));
+        assertSame(filter, filter.intersect(Bytes.toBytes("a"), Bytes.toBytes("e")));
+        assertEquals(points("bbb", "ccc"), filter.intersect(Bytes.toBytes("b"), Bytes.toBytes("d")).getSlots().get(0));
+        assertEquals(points("bbb", "ccc"), filter.intersect(Bytes.toBytes("bbbzzz"), Bytes.toBytes("ccczzz")).getSlots().get(0));
+        assertEquals(points("ccc", "ddd"), filter.intersect(Bytes.toBytes("bbc"), KeyRange.UNBOUND_UPPER).getSlots().get(0));
+        assertEquals(points("xxx", "yyy"), filter.intersect(Bytes.toBytes("bbc"), KeyRange.UNBOUND_UPPER).getSlots().get(1));
+        assertNull(filter.intersect(Bytes.toBytes("bbc"), Bytes.toBytes("ccc")));
+        assertNull(filter.intersect(Bytes.toBytes("eee"), KeyRange.UNBOUND_UPPER));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testIntersectScanRange() throws Exception {
+        List<List<KeyRange>> slots = Arrays.asList(points("aaa", "bbb", "ccc", "ddd"), points("xxx", "yyy"));
+        Scan scan = new Scan();
+        scan.setFilter(new SkipScanFilter(slots, newSchema(2)));
+        assertTrue(ScanUtil.intersectScanRange(scan, Bytes.toBytes("b"), Bytes.toBytes("d")));
+        assertEquals(points("bbb", "ccc"), ((SkipScanFilter)scan.getFilter()).getSlots().get(0));
+        // The start and stop row are narrowed to the remaining ranges
+        assertArrayEquals(Bytes.toBytes("bbbxxx"), scan.getStartRow());
+        assertArrayEquals(Bytes.toBytes("cccyyz"), scan.getStopRow());
+
+        scan = new Scan();
+        scan.setFilter(new SkipScanFilter(slots, newSchema(2)));
+        assertFalse(ScanUtil.intersectScanRange(scan, Bytes.toBytes("bbc"), Bytes.toBytes("ccc")));
+    }
+
+    @Test
+    public void testNavigateLargeLeadingSlot() {
+        String[] keys = new String[500];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.format("%03d", i * 2);
+        }
+        @SuppressWarnings("unchecked")
+        List<List<KeyRange>> slots = Arrays.asList(points(keys), points("xxx", "yyy"));
+        SkipScanFilter filter = new SkipScanFilter(slots, newSchema(2));
+        assertEquals(ReturnCode.INCLUDE, filter(filter, "000xxx"));
+        // Jumps directly to the next key rather than stepping through each one
+        assertEquals(ReturnCode.SEEK_NEXT_USING_HINT, filter(filter, "501aaa"));
+        KeyValue hint = filter.getNextKeyHint(null);
+        assertEquals("502xxx", Bytes.toString(hint.getRow()));
+        // The same hint is reused until the position changes
+        assertSame(hint, filter.getNextKeyHint(null));
+        assertEquals(ReturnCode.INCLUDE, filter(filter, "502xxx"));
+        assertEquals(ReturnCode.SEEK_NEXT_USING_HINT, filter(filter, "502xxz"));
+        assertEquals("502yyy", Bytes.toString(filter.getNextKeyHint(null).getRow()));
+        assertEquals(ReturnCode.INCLUDE, filter(filter, "998yyy"));
+        assertEquals(ReturnCode.NEXT_ROW, filter(filter, "998yyz"));
+        assertTrue(filter.filterAllRemaining());
+    }
+}
@@ -34,9 +34,14 @@ import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
+import com.salesforce.phoenix.expression.BaseTerminalExpression;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.AssertResults;
@@ -88,4 +93,98 @@ public class MergeSortResultIteratorTest {
         AssertResults.assertResults(scanner, expectedResults);
     }
 
+    @Test
+    public void testMergeSortManyIterators() throws Throwable {
+        int nIterators = 64;
+        int nRows = 1000;
+        Random random = new Random(0);
+        List<List<Tuple>> rows = new ArrayList<List<Tuple>>(nIterators);
+        for (int i = 0; i < nIterators; i++) {
+            rows.add(new ArrayList<Tuple>());
+        }
+        List<Integer> keys = new ArrayList<Integer>(nRows);
+        for (int i = 0; i < nRows; i++) {
+            keys.add(random.nextInt(nRows / 4));
+        }
+        Collections.sort(keys);
+        Tuple[] expectedResults = new Tuple[nRows];
+        for (int i = 0; i < nRows; i++) {
+            Tuple tuple = new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(keys.get(i)), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1)));
+            expectedResults[i] = tuple;
+            // Leave some iterators empty
+            rows.get(random.nextInt(nIterators - 2)).add(tuple);
+        }
+        final List<PeekingResultIterator> results = new ArrayList<PeekingResultIterator>(nIterators);
+        for (List<Tuple> iteratorRows : rows) {
+            results.add(new MaterializedResultIterator(iteratorRows));
+        }
+        ResultIterators iterators = new ResultIterators() {
+
+            @Override
+            public List<PeekingResultIterator> getIterators() throws SQLException {
+                return results;
+            }
+
+            @Override
+            public int size() {
+                return results.size();
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+            
+        };
+        ResultIterator scanner = new MergeSortResultIterator(iterators);
+        AssertResults.assertResults(scanner, expectedResults);
+    }
+
+    @Test
+    public void testMergeSortTopN() throws Throwable {
+        // Sort by the value, with an empty value standing for null
+        Expression valueExpression = new BaseTerminalExpression() {
+            @Override
+            public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+                KeyValue kv = tuple.getValue(SINGLE_COLUMN_FAMILY, SINGLE_COLUMN);
+                ptr.set(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+                return ptr.getLength() > 0;
+            }
+
+            @Override
+            public PDataType getDataType() {
+                return PDataType.UNSIGNED_INT;
+            }
+        };
+        Tuple a = new SingleKeyValueTuple(new KeyValue(A, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(3)));
+        Tuple b = new SingleKeyValueTuple(new KeyValue(B, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1)));
+        Tuple c = new SingleKeyValueTuple(new KeyValue(Bytes.toBytes("c"), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(2)));
+        Tuple d = new SingleKeyValueTuple(new KeyValue(Bytes.toBytes("d"), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, new byte[0]));
+        Tuple e = new SingleKeyValueTuple(new KeyValue(Bytes.toBytes("e"), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(5)));
+
+        // Each iterator is sorted by value descending, nulls last, as the region observer returns them
+        List<OrderingColumn> orderingColumns = Collections.singletonList(new OrderingColumn(valueExpression, true, false));
+        final List<PeekingResultIterator> results = new ArrayList<PeekingResultIterator>(Arrays.asList(new PeekingResultIterator[] {
+                new MaterializedResultIterator(Arrays.asList(e, c, d)),
+                new MaterializedResultIterator(Arrays.asList(a, b)),
+                new MaterializedResultIterator(Collections.<Tuple>emptyList())}));
+        ResultIterators iterators = new ResultIterators() {
+
+            @Override
+            public List<PeekingResultIterator> getIterators() throws SQLException {
+                return results;
+            }
+
+            @Override
+            public int size() {
+                return results.size();
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+            
+        };
+        ResultIterator scanner = new MergeSortTopNResultIterator(iterators, 4, orderingColumns);
+        AssertResults.assertResults(scanner, new Tuple[] {e, a, c, b});
+    }
 }
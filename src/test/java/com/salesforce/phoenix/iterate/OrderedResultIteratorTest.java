@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
+import com.salesforce.phoenix.expression.BaseTerminalExpression;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.memory.*;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.AssertResults;
+
+
+public class OrderedResultIteratorTest {
+    private static final Expression VALUE_EXPRESSION = new BaseTerminalExpression() {
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            KeyValue kv = tuple.getValue(SINGLE_COLUMN_FAMILY, SINGLE_COLUMN);
+            ptr.set(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+            return true;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return PDataType.UNSIGNED_INT;
+        }
+    };
+    
+    private static Tuple newTuple(String key, int value) {
+        return new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(key), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(value)));
+    }
+    
+    private static List<Tuple> newTuples() {
+        return Arrays.asList(
+                newTuple("a", 4),
+                newTuple("b", 1),
+                newTuple("c", 6),
+                newTuple("d", 3),
+                newTuple("e", 5),
+                newTuple("f", 2));
+    }
+    
+    private static void testSort(boolean ascending, Integer limit, int thresholdBytes, String... expectedKeys) throws Exception {
+        testSort(ascending, limit, thresholdBytes, OrderedResultIterator.DEFAULT_MAX_MERGE_FAN_IN, expectedKeys);
+    }
+    
+    private static void testSort(boolean ascending, Integer limit, int thresholdBytes, int maxMergeFanIn, String... expectedKeys) throws Exception {
+        Tuple[] expectedResults = new Tuple[expectedKeys.length];
+        Map<String,Tuple> tuplesByKey = new HashMap<String,Tuple>();
+        for (Tuple tuple : newTuples()) {
+            tuplesByKey.put(Bytes.toString(tuple.getValue(0).getRow()), tuple);
+        }
+        for (int i = 0; i < expectedKeys.length; i++) {
+            expectedResults[i] = tuplesByKey.get(expectedKeys[i]);
+        }
+        MemoryManager memoryManager = new DelegatingMemoryManager(new GlobalMemoryManager(1024 * 1024, 0));
+        List<OrderingColumn> orderingColumns = Collections.singletonList(new OrderingColumn(VALUE_EXPRESSION, false, ascending));
+        ResultIterator iterator = new OrderedResultIterator(new MaterializedResultIterator(newTuples()), orderingColumns, limit, memoryManager, thresholdBytes, thresholdBytes, maxMergeFanIn, null);
+        AssertResults.assertResults(iterator, expectedResults);
+        assertEquals(memoryManager.getMaxMemory(), memoryManager.getAvailableMemory());
+    }
+    
+    @Test
+    public void testInMemorySort() throws Exception {
+        testSort(true, null, 1024 * 1024, "b", "f", "d", "a", "e", "c");
+        testSort(false, null, 1024 * 1024, "c", "e", "a", "d", "f", "b");
+    }
+    
+    @Test
+    public void testOnDiskSort() throws Exception {
+        testSort(true, null, 1, "b", "f", "d", "a", "e", "c");
+        testSort(false, null, 1, "c", "e", "a", "d", "f", "b");
+    }
+    
+    @Test
+    public void testMultiPassMerge() throws Exception {
+        testSort(true, null, 1, 2, "b", "f", "d", "a", "e", "c");
+        testSort(false, null, 1, 3, "c", "e", "a", "d", "f", "b");
+    }
+    
+    @Test
+    public void testTopN() throws Exception {
+        testSort(true, 2, 1024 * 1024, "b", "f");
+        testSort(false, 3, 1024 * 1024, "c", "e", "a");
+        testSort(true, 10, 1024 * 1024, "b", "f", "d", "a", "e", "c");
+        testSort(true, 0, 1024 * 1024);
+    }
+    
+    @Test
+    public void testTopNOnDisk() throws Exception {
+        testSort(true, 2, 1, "b", "f");
+        testSort(false, 3, 1, "c", "e", "a");
+        // Each spilled run is full, so later rows are pruned against its last row
+        testSort(true, 1, 1, "b");
+        testSort(false, 1, 1, 2, "c");
+        testSort(true, 3, 1, 2, "b", "f", "d");
+    }
+}
@@ -30,11 +30,16 @@ package com.salesforce.phoenix.iterate;
 import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
 import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
 import java.util.Arrays;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.salesforce.phoenix.execute.ScanRowCounter;
 import com.salesforce.phoenix.memory.*;
@@ -74,4 +79,46 @@ public class SpoolingResultIteratorTest {
         testSpooling(1);
     }
 
+    @Rule
+    public TemporaryFolder spoolDirectory = new TemporaryFolder();
+    
+    @Test
+    public void testOnDiskSpoolingManyRows() throws Throwable {
+        // Enough rows to span a number of the slabs into which the spool file is read
+        int nRows = 10000;
+        byte[] value = new byte[100];
+        Tuple[] results = new Tuple[nRows];
+        Tuple[] expectedResults = new Tuple[nRows];
+        for (int i = 0; i < nRows; i++) {
+            byte[] row = Bytes.toBytes(String.format("%08d", i));
+            results[i] = new SingleKeyValueTuple(new KeyValue(row, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value));
+            expectedResults[i] = new SingleKeyValueTuple(new KeyValue(row, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value));
+        }
+        PeekingResultIterator iterator = new MaterializedResultIterator(Arrays.asList(results));
+        MemoryManager memoryManager = new DelegatingMemoryManager(new GlobalMemoryManager(1024, 0));
+        File directory = spoolDirectory.getRoot();
+        ResultIterator scanner = new SpoolingResultIterator(iterator, memoryManager, 1024, new ScanRowCounter(), directory);
+        assertEquals(1, directory.list().length);
+        AssertResults.assertResults(scanner, expectedResults);
+        assertEquals(0, directory.list().length);
+        assertEquals(memoryManager.getMaxMemory(), memoryManager.getAvailableMemory());
+    }
+    
+    @Test
+    public void testOnDiskSpoolingRowsLargerThanSlab() throws Throwable {
+        int nRows = 3;
+        Tuple[] results = new Tuple[nRows];
+        Tuple[] expectedResults = new Tuple[nRows];
+        for (int i = 0; i < nRows; i++) {
+            byte[] row = Bytes.toBytes(String.format("%08d", i));
+            byte[] value = new byte[100 * 1024 + i];
+            Arrays.fill(value, (byte)i);
+            results[i] = new SingleKeyValueTuple(new KeyValue(row, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value));
+            expectedResults[i] = new SingleKeyValueTuple(new KeyValue(row, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value));
+        }
+        PeekingResultIterator iterator = new MaterializedResultIterator(Arrays.asList(results));
+        MemoryManager memoryManager = new DelegatingMemoryManager(new GlobalMemoryManager(1024, 0));
+        ResultIterator scanner = new SpoolingResultIterator(iterator, memoryManager, 1024, new ScanRowCounter(), spoolDirectory.getRoot());
+        AssertResults.assertResults(scanner, expectedResults);
+    }
 }
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Test;
+
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.AssertResults;
+
+
+public class StreamingResultIteratorTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    private static Tuple newTuple(int key) {
+        return new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(key), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1)));
+    }
+    
+    private void stream(final StreamingResultIterator iterator, final ResultIterator scanner) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                iterator.stream(scanner);
+            }
+        });
+    }
+    
+    @Test
+    public void testAllRowsReturned() throws Exception {
+        int nProducers = 4;
+        int nRowsPerProducer = 100;
+        StreamingResultIterator iterator = new StreamingResultIterator(nProducers, 10, 10000);
+        List<Tuple> expectedResults = new ArrayList<Tuple>();
+        for (int i = 0; i < nProducers; i++) {
+            List<Tuple> rows = new ArrayList<Tuple>();
+            for (int j = 0; j < nRowsPerProducer; j++) {
+                rows.add(newTuple(i * nRowsPerProducer + j));
+            }
+            expectedResults.addAll(rows);
+            stream(iterator, new MaterializedResultIterator(rows));
+        }
+        AssertResults.assertUnorderedResults(iterator, expectedResults.toArray(new Tuple[expectedResults.size()]));
+    }
+    
+    @Test
+    public void testRowsReturnedBeforeSlowScanCompletes() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        StreamingResultIterator iterator = new StreamingResultIterator(2, 10, 10000);
+        stream(iterator, new ResultIterator() {
+            @Override
+            public Tuple next() throws SQLException {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws SQLException {
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+        });
+        stream(iterator, new MaterializedResultIterator(Arrays.asList(newTuple(1), newTuple(2))));
+        try {
+            assertNotNull(iterator.next());
+            assertNotNull(iterator.next());
+        } finally {
+            latch.countDown();
+        }
+        assertNull(iterator.next());
+        iterator.close();
+    }
+    
+    @Test
+    public void testProducerBlocksWhenQueueIsFull() throws Exception {
+        final int queueSize = 5;
+        final int nRows = 100;
+        // The rows in the queue plus the row held by the blocked producer
+        final int maxRowsAhead = queueSize + 1;
+        final AtomicInteger rowsRead = new AtomicInteger();
+        // Incremented before each row is taken, so that the producer never appears further ahead than it is
+        final AtomicInteger rowsTaken = new AtomicInteger();
+        final AtomicInteger maxRowsAheadSeen = new AtomicInteger();
+        final CountDownLatch producerBlocked = new CountDownLatch(1);
+        StreamingResultIterator iterator = new StreamingResultIterator(1, queueSize, 10000);
+        stream(iterator, new ResultIterator() {
+            @Override
+            public Tuple next() throws SQLException {
+                int row = rowsRead.getAndIncrement();
+                maxRowsAheadSeen.set(Math.max(maxRowsAheadSeen.get(), row + 1 - rowsTaken.get()));
+                // Only possible once the consumer has taken the first row
+                if (row + 1 == 1 + maxRowsAhead) {
+                    producerBlocked.countDown();
+                }
+                return row < nRows ? newTuple(row) : null;
+            }
+
+            @Override
+            public void close() throws SQLException {
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+        });
+        rowsTaken.incrementAndGet();
+        assertNotNull(iterator.next());
+        assertTrue(producerBlocked.await(10, TimeUnit.SECONDS));
+        // Nothing more is read until the consumer takes another row
+        assertEquals(1 + maxRowsAhead, rowsRead.get());
+        int nRowsTaken = 1;
+        for (rowsTaken.incrementAndGet(); iterator.next() != null; rowsTaken.incrementAndGet()) {
+            nRowsTaken++;
+        }
+        assertEquals(nRows, nRowsTaken);
+        assertTrue(maxRowsAheadSeen.get() <= maxRowsAhead);
+        iterator.close();
+    }
+    
+    @Test
+    public void testFailureRethrown() throws Exception {
+        StreamingResultIterator iterator = new StreamingResultIterator(2, 10, 10000);
+        stream(iterator, new MaterializedResultIterator(Arrays.asList(newTuple(1))));
+        iterator.fail(new SQLException("Unable to start scan"));
+        stream(iterator, null);
+        try {
+            while (iterator.next() != null) {
+            }
+            fail();
+        } catch (SQLException e) {
+            assertEquals("Unable to start scan", e.getCause().getMessage());
+        } finally {
+            iterator.close();
+        }
+    }
+}
@@ -27,8 +27,10 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
@@ -77,16 +79,18 @@ public class MemoryManagerTest {
     }
 
     @Test
-    public void testWaitForMemoryAvailable() {
+    public void testWaitForMemoryAvailable() throws Exception {
         final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
         final ChildMemoryManager rmm1 = new ChildMemoryManager(gmm,100);
         final ChildMemoryManager rmm2 = new ChildMemoryManager(gmm,100);
+        final AtomicLong freedTime = new AtomicLong(Long.MAX_VALUE);
         Thread t1 = new Thread() {
             @Override
             public void run() {
                 MemoryChunk c1 = rmm1.allocate(50);
                 MemoryChunk c2 = rmm1.allocate(50);
                 sleepFor(2000);
+                freedTime.set(System.nanoTime());
                 c1.close();
                 sleepFor(1000);
                 c2.close();
@@ -97,9 +101,8 @@ public class MemoryManagerTest {
             public void run() {
                 sleepFor(1000);
                 // Will require waiting for a bit of time before t1 frees the requested memory
-                long startTime = System.currentTimeMillis();
                 MemoryChunk c3 = rmm2.allocate(50);
-                assertTrue(System.currentTimeMillis() - startTime >= 1000);
+                assertTrue(System.nanoTime() >= freedTime.get()); // we waited until the memory was freed
                 c3.close();
             }
         };
@@ -107,27 +110,31 @@ public class MemoryManagerTest {
         t2.start();
         sleepFor(500);
         // Main thread competes with others to get all memory, but should wait
-        // until both threads are complete (since that's when the memory will
-        // again be all available.
+        // until t1 is complete (since that's when the memory will again be all
+        // available). Since it asked first, it gets the memory ahead of t2.
         ChildMemoryManager rmm = new ChildMemoryManager(gmm,100);
         MemoryChunk c = rmm.allocate(100);
         c.close();
+        t1.join();
+        t2.join();
         assertTrue(rmm.getAvailableMemory() == rmm.getMaxMemory());
         assertTrue(rmm1.getAvailableMemory() == rmm1.getMaxMemory());
         assertTrue(rmm2.getAvailableMemory() == rmm2.getMaxMemory());
     }
     
     @Test
-    public void testResizeWaitForMemoryAvailable() {
+    public void testResizeWaitForMemoryAvailable() throws Exception {
         final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
         final ChildMemoryManager rmm1 = new ChildMemoryManager(gmm,100);
         final ChildMemoryManager rmm2 = new ChildMemoryManager(gmm,100);
+        final AtomicLong freedTime = new AtomicLong(Long.MAX_VALUE);
         Thread t1 = new Thread() {
             @Override
             public void run() {
                 MemoryChunk c1 = rmm1.allocate(50);
                 MemoryChunk c2 = rmm1.allocate(40);
                 sleepFor(2000);
+                freedTime.set(System.nanoTime());
                 c1.close();
                 sleepFor(1000);
                 c2.close();
@@ -139,9 +146,8 @@ public class MemoryManagerTest {
                 sleepFor(1000);
                 MemoryChunk c3 = rmm2.allocate(10);
                 // Will require waiting for a bit of time before t1 frees the requested memory
-                long startTime = System.currentTimeMillis();
                 c3.resize(50);
-                assertTrue(System.currentTimeMillis() - startTime >= 1000);
+                assertTrue(System.nanoTime() >= freedTime.get()); // we waited until the memory was freed
                 c3.close();
             }
         };
@@ -149,26 +155,30 @@ public class MemoryManagerTest {
         t2.start();
         sleepFor(500);
         // Main thread competes with others to get all memory, but should wait
-        // until both threads are complete (since that's when the memory will
-        // again be all available.
+        // until t1 is complete (since that's when the memory will again be all
+        // available). Since it asked first, it gets the memory ahead of t2.
         ChildMemoryManager rmm = new ChildMemoryManager(gmm,100);
         MemoryChunk c = rmm.allocate(100);
         c.close();
+        t1.join();
+        t2.join();
         assertTrue(rmm.getAvailableMemory() == rmm.getMaxMemory());
         assertTrue(rmm1.getAvailableMemory() == rmm1.getMaxMemory());
         assertTrue(rmm2.getAvailableMemory() == rmm2.getMaxMemory());
     }
     
     @Test
-    public void testWaitUntilResize() {
+    public void testWaitUntilResize() throws Exception {
         final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
         final ChildMemoryManager rmm1 = new ChildMemoryManager(gmm,100);
+        final AtomicLong freedTime = new AtomicLong(Long.MAX_VALUE);
         final MemoryChunk c1 = rmm1.allocate(70);
         Thread t1 = new Thread() {
             @Override
             public void run() {
                 MemoryChunk c2 = rmm1.allocate(20);
                 sleepFor(2000);
+                freedTime.set(System.nanoTime());
                 c1.resize(20); // resize down to test that other thread is notified
                 sleepFor(1000);
                 c2.close();
@@ -182,10 +192,10 @@ public class MemoryManagerTest {
                 sleepFor(1000);
                 ChildMemoryManager rmm2 = new ChildMemoryManager(gmm,100);
                 MemoryChunk c3 = rmm2.allocate(10);
-                long startTime = System.currentTimeMillis();
+                // Queued behind the main thread, which only gets its memory once
+                // t1 has closed both of its chunks
                 c3.resize(60); // Test that resize waits if memory not available
-                assertTrue(c1.getSize() == 20); // c1 was resized not closed
-                assertTrue(System.currentTimeMillis() - startTime >= 1000); // we waited some time before the allocate happened
+                assertTrue(System.nanoTime() >= freedTime.get()); // we waited until the memory was freed
                 c3.close();
                 assertTrue(rmm2.getAvailableMemory() == rmm2.getMaxMemory());
             }
@@ -194,12 +204,15 @@ public class MemoryManagerTest {
         t2.start();
         sleepFor(500);
         // Main thread competes with others to get all memory, but should wait
-        // until both threads are complete (since that's when the memory will
-        // again be all available.
+        // until t1 closes its chunks (since that's when the memory will
+        // again be all available). Since it asked first, it gets the memory ahead of t2.
         ChildMemoryManager rmm = new ChildMemoryManager(gmm,100);
         MemoryChunk c = rmm.allocate(100);
         c.close();
+        t1.join();
+        t2.join();
         assertTrue(rmm.getAvailableMemory() == rmm.getMaxMemory());
+        assertTrue(gmm.getAvailableMemory() == gmm.getMaxMemory());
     }
 
     @Test
@@ -271,4 +284,128 @@ public class MemoryManagerTest {
         assertTrue(rmm3.getAvailableMemory() == rmm3.getMaxMemory());
         assertTrue(rmm4.getAvailableMemory() == rmm4.getMaxMemory());
     }
+
+    @Test
+    public void testPeakUsedMemory() throws Exception {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100,1);
+        QueryMemoryManager qmm1 = new QueryMemoryManager(gmm);
+        QueryMemoryManager qmm2 = new QueryMemoryManager(gmm);
+        MemoryChunk c1 = qmm1.allocate(30);
+        MemoryChunk c2 = qmm1.allocate(20);
+        MemoryChunk c3 = qmm2.allocate(10);
+        c2.resize(40);
+        assertEquals(70, qmm1.getUsedMemory());
+        assertEquals(10, qmm2.getUsedMemory());
+        assertEquals(80, gmm.getUsedMemory());
+        c1.close();
+        c2.resize(5);
+        assertEquals(5, qmm1.getUsedMemory());
+        assertEquals(70, qmm1.getPeakUsedMemory());
+        c2.close();
+        c3.close();
+        assertEquals(0, qmm1.getUsedMemory());
+        assertEquals(0, qmm2.getUsedMemory());
+        assertEquals(10, qmm2.getPeakUsedMemory());
+        assertEquals(0, gmm.getUsedMemory());
+        assertEquals(80, gmm.getPeakUsedMemory());
+        qmm1.resetPeakUsedMemory();
+        assertEquals(0, qmm1.getPeakUsedMemory());
+    }
+
+    private static Thread allocateInThread(final MemoryManager mm, final long nBytes, final CountDownLatch done) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                MemoryChunk chunk = mm.allocate(nBytes);
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    fail();
+                } finally {
+                    chunk.close();
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+    
+    private static void waitForWaiters(GlobalMemoryManager gmm, int waiterCount) {
+        for (int i = 0; i < 1000 && gmm.getWaiterCount() != waiterCount; i++) {
+            sleepFor(10);
+        }
+        assertEquals(waiterCount, gmm.getWaiterCount());
+    }
+    
+    @Test
+    public void testWaitersGrantedInArrivalOrder() throws Exception {
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
+        final CountDownLatch done = new CountDownLatch(1);
+        MemoryChunk c = gmm.allocate(90);
+        Thread t1 = allocateInThread(gmm, 50, done);
+        waitForWaiters(gmm, 1);
+        // Fits, but may not jump ahead of the request already waiting
+        Thread t2 = allocateInThread(gmm, 10, done);
+        waitForWaiters(gmm, 2);
+        assertEquals(90, gmm.getUsedMemory());
+        // Enough for the second request, but not for the first one
+        c.resize(60);
+        assertEquals(2, gmm.getWaiterCount());
+        assertEquals(60, gmm.getUsedMemory());
+        // Both are granted memory as soon as it is freed
+        c.close();
+        assertEquals(0, gmm.getWaiterCount());
+        assertEquals(60, gmm.getUsedMemory());
+        done.countDown();
+        t1.join();
+        t2.join();
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+
+    @Test
+    public void testTimedOutWaiterLetsOthersThrough() throws Exception {
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(100,500);
+        final CountDownLatch done = new CountDownLatch(1);
+        MemoryChunk c = gmm.allocate(60);
+        Thread t1 = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    gmm.allocate(50);
+                    fail();
+                } catch (InsufficientMemoryException e) { // expected
+                }
+            }
+        };
+        t1.start();
+        waitForWaiters(gmm, 1);
+        Thread t2 = allocateInThread(gmm, 10, done);
+        waitForWaiters(gmm, 2);
+        t1.join();
+        // Granted once the request ahead of it gave up
+        waitForWaiters(gmm, 0);
+        assertEquals(70, gmm.getUsedMemory());
+        done.countDown();
+        t2.join();
+        c.close();
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+
+    @Test
+    public void testOrphanedChunkReclaimed() throws Exception {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100,1);
+        gmm.allocate(60); // never closed
+        MemoryChunk c = null;
+        for (int i = 0; i < 100 && c == null; i++) {
+            System.gc();
+            sleepFor(50);
+            try {
+                c = gmm.allocate(100);
+            } catch (InsufficientMemoryException e) { // expected until the chunk is collected
+            }
+        }
+        assertNotNull(c);
+        c.close();
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
 }
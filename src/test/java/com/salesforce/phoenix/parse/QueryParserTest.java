@@ -27,12 +27,12 @@
  ******************************************************************************/
 package com.salesforce.phoenix.parse;
 
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 import java.io.StringReader;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -190,6 +190,34 @@ public class QueryParserTest {
         parser.parseStatement();
     }
     
+    @Test
+    public void testParseJoin3() throws Exception {
+        SQLParser parser = new SQLParser(new StringReader(
+            "select o.order_id, c.name from orders o\n" + 
+            "left outer join customers as c on o.customer_id = c.customer_id and c.region = 'WEST'\n" + 
+            "where o.quantity > 5"
+            ));
+        SelectStatement statement = (SelectStatement)parser.parseStatement();
+        List<TableNode> from = statement.getFrom();
+        assertEquals(2, from.size());
+        assertEquals("O", from.get(0).getAlias());
+        JoinTableNode joinNode = (JoinTableNode)from.get(1);
+        assertEquals(JoinTableNode.JoinType.Left, joinNode.getType());
+        assertEquals("C", joinNode.getTable().getAlias());
+        assertTrue(joinNode.getOnNode() instanceof AndParseNode);
+    }
+
+    @Test
+    public void testParseJoinDefaultsToInner() throws Exception {
+        SQLParser parser = new SQLParser(new StringReader(
+            "select * from orders join customers on orders.customer_id = customers.customer_id"
+            ));
+        SelectStatement statement = (SelectStatement)parser.parseStatement();
+        JoinTableNode joinNode = (JoinTableNode)statement.getFrom().get(1);
+        assertEquals(JoinTableNode.JoinType.Inner, joinNode.getType());
+        assertTrue(joinNode.getOnNode() instanceof EqualParseNode);
+    }
+    
     @Test
     public void testNegative1() throws Exception {
         SQLParser parser = new SQLParser(new StringReader(
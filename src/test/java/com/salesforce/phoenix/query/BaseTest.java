@@ -186,6 +186,14 @@ public abstract class BaseTest {
         builder.put("KVBigIntValueTest", "create table KVBigIntValueTest" + 
                 "   (pk integer not null primary key,\n" +
                 "    kv bigint)\n");
+        builder.put("JoinCustomerTest", "create table JoinCustomerTest" + 
+                "   (customer_id char(3) not null primary key,\n" +
+                "    name varchar,\n" +
+                "    region varchar)\n");
+        builder.put("JoinOrderTest", "create table JoinOrderTest" + 
+                "   (order_id integer not null primary key,\n" +
+                "    customer_id char(3),\n" +
+                "    quantity integer)\n");
         tableDDLMap = builder.build();
     }
 
@@ -53,6 +53,7 @@ public class QueryServicesTestImpl extends BaseQueryServicesImpl {
     private static final long DEFAULT_MAX_HASH_CACHE_SIZE = 1024*1024*10;  // 10 Mb
     private static final int DEFAULT_TARGET_QUERY_CONCURRENCY = 4;
     private static final int DEFAULT_MAX_QUERY_CONCURRENCY = 8;
+    private static final int DEFAULT_SCAN_PREFETCH_ROWS = 2; // Small enough that split scans have to wait on the client
     
     public QueryServicesTestImpl() {
         this(HBaseConfiguration.create());
@@ -70,6 +71,7 @@ public class QueryServicesTestImpl extends BaseQueryServicesImpl {
                 .setMaxHashCacheSize(DEFAULT_MAX_HASH_CACHE_SIZE)
                 .setTargetQueryConcurrency(DEFAULT_TARGET_QUERY_CONCURRENCY)
                 .setMaxQueryConcurrency(DEFAULT_MAX_QUERY_CONCURRENCY)
+                .setScanPrefetchRows(DEFAULT_SCAN_PREFETCH_ROWS)
         );
     }    
    
@@ -342,6 +342,27 @@ public class PDataTypeTest {
         }
     }
 
+    @Test
+    public void testToScaledLong() throws Exception {
+        String[] values = new String[] {"0", "1", "-1", "0.5", "-0.5", "1.25", "-1.25", "100", "-100", "12345.6789", "-12345.6789", "1E+4", "-1E+4"};
+        for (String value : values) {
+            BigDecimal bd = new BigDecimal(value);
+            byte[] b = PDataType.DECIMAL.toBytes(bd);
+            for (int scale = 0; scale <= 6; scale++) {
+                long expected = bd.scale() > scale && bd.setScale(scale, BigDecimal.ROUND_DOWN).compareTo(bd) != 0 
+                        ? Long.MIN_VALUE 
+                        : bd.movePointRight(scale).longValueExact();
+                assertEquals(value + " at scale " + scale, expected, PDataType.toScaledLong(b, 0, b.length, scale));
+            }
+        }
+        // Doesn't fit into a long once scaled
+        byte[] b = PDataType.DECIMAL.toBytes(BigDecimal.valueOf(Long.MAX_VALUE / 10));
+        assertEquals(Long.MAX_VALUE / 10 * 10, PDataType.toScaledLong(b, 0, b.length, 1));
+        assertEquals(Long.MIN_VALUE, PDataType.toScaledLong(b, 0, b.length, 2));
+        b = PDataType.DECIMAL.toBytes(new BigDecimal("100000000000000000000000000000"));
+        assertEquals(Long.MIN_VALUE, PDataType.toScaledLong(b, 0, b.length, 0));
+    }
+
     private void testReadDecimalPrecisionAndScaleFromRawBytes(BigDecimal bd) {
         byte[] b = PDataType.DECIMAL.toBytes(bd);
         int[] v = PDataType.getDecimalPrecisionAndScale(b, 0, b.length);
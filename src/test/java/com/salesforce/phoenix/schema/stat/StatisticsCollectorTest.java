@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.schema.stat;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.Type;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+
+public class StatisticsCollectorTest {
+    private static final byte[] FAMILY = Bytes.toBytes("0");
+    private static final byte[] QUALIFIER1 = Bytes.toBytes("A");
+    private static final byte[] QUALIFIER2 = Bytes.toBytes("B");
+    
+    private static byte[] getRow(int i) {
+        return Bytes.toBytes(String.format("row%05d", i));
+    }
+    
+    private static StatisticsCollector collect(int nRows, int maxGuidePosts) {
+        StatisticsCollector collector = new StatisticsCollector(maxGuidePosts);
+        for (int i = 0; i < nRows; i++) {
+            byte[] row = getRow(i);
+            collector.collect(Arrays.asList(new KeyValue(row, FAMILY, QUALIFIER1, 1, Bytes.toBytes(i)),
+                    new KeyValue(row, FAMILY, QUALIFIER2, 1, Bytes.toBytes(i))));
+        }
+        return collector;
+    }
+    
+    @Test
+    public void testGuidePostsAreEquiDepth() {
+        int nRows = 10000;
+        int maxGuidePosts = 10;
+        PRegionStats stats = collect(nRows, maxGuidePosts).getStats();
+        assertEquals(nRows, stats.getRowCount());
+        byte[][] guidePosts = stats.getGuidePosts();
+        assertTrue(guidePosts.length >= maxGuidePosts && guidePosts.length < maxGuidePosts * 2);
+        // Every guide post is the same number of rows apart
+        int rowsPerGuidePost = Integer.parseInt(Bytes.toString(guidePosts[0]).substring(3)) + 1;
+        for (int i = 0; i < guidePosts.length; i++) {
+            assertArrayEquals(getRow((i + 1) * rowsPerGuidePost - 1), guidePosts[i]);
+        }
+        assertTrue(nRows - guidePosts.length * rowsPerGuidePost < rowsPerGuidePost);
+    }
+    
+    @Test
+    public void testFewRows() {
+        PRegionStats stats = collect(3, 10).getStats();
+        assertEquals(3, stats.getRowCount());
+        assertEquals(3, stats.getGuidePosts().length);
+        
+        stats = new StatisticsCollector(10).getStats();
+        assertEquals(0, stats.getRowCount());
+        assertEquals(0, stats.getByteCount());
+        assertEquals(0, stats.getGuidePosts().length);
+    }
+    
+    @Test
+    public void testDeleteMarkersIgnored() {
+        StatisticsCollector collector = new StatisticsCollector(10);
+        KeyValue put = new KeyValue(getRow(0), FAMILY, QUALIFIER1, 2, Bytes.toBytes(0));
+        collector.collect(new KeyValue(getRow(0), FAMILY, QUALIFIER1, 3, Type.Delete));
+        collector.collect(put);
+        collector.collect(new KeyValue(getRow(1), FAMILY, null, 3, Type.DeleteFamily));
+        assertEquals(1, collector.getRowCount());
+        assertEquals(put.getLength(), collector.getByteCount());
+    }
+    
+    @Test
+    public void testSerialization() {
+        PRegionStats stats = collect(1000, 4).getStats();
+        PRegionStats copy = PRegionStats.fromBytes(stats.toBytes());
+        assertEquals(stats.getRowCount(), copy.getRowCount());
+        assertEquals(stats.getByteCount(), copy.getByteCount());
+        assertEquals(stats.getGuidePosts().length, copy.getGuidePosts().length);
+        for (int i = 0; i < stats.getGuidePosts().length; i++) {
+            assertArrayEquals(stats.getGuidePosts()[i], copy.getGuidePosts()[i]);
+        }
+        assertNull(PRegionStats.fromBytes(null));
+    }
+    
+    @Test
+    public void testFraction() {
+        // Guide posts at rows 99, 199, ..., 999 split the region into 11 chunks
+        byte[][] guidePosts = new byte[10][];
+        for (int i = 0; i < guidePosts.length; i++) {
+            guidePosts[i] = getRow((i + 1) * 100 - 1);
+        }
+        PRegionStats stats = new PRegionStats(1050, 10500, guidePosts);
+        byte[] empty = new byte[0];
+        assertEquals(1.0, stats.getFraction(empty, empty), 0);
+        assertEquals(1.0/11, stats.getFraction(empty, getRow(50)), 0.0001);
+        assertEquals(2.0/11, stats.getFraction(getRow(150), getRow(250)), 0.0001);
+        assertEquals(6.0/11, stats.getFraction(getRow(500), empty), 0.0001);
+        assertEquals(0.0, stats.getFraction(getRow(250), getRow(150)), 0);
+    }
+}
@@ -27,12 +27,12 @@
  ******************************************************************************/
 package com.salesforce.phoenix.util;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 import org.junit.Test;
 
 import com.salesforce.phoenix.expression.LikeExpression;
+import com.salesforce.phoenix.expression.LikeMatcher;
 
 
 public class LikeExpressionTest {
@@ -46,5 +46,59 @@ public class LikeExpressionTest {
         assertEquals("PR?O%UCT%M*TRI_S", LikeExpression.wildCardToLike("PR\\?O*UCT*M\\*TRI?S"));
     }
     
+    private static boolean matches(String pattern, String value) {
+        byte[] b = StringUtil.toBytes("xx" + value + "yy");
+        return LikeMatcher.compile(pattern).matches(b, 2, b.length - 4);
+    }
+    
+    @Test
+    public void testLikeMatcher() {
+        assertTrue(matches("abc", "abc"));
+        assertFalse(matches("abc", "abcd"));
+        assertTrue(matches("abc%", "abcd"));
+        assertFalse(matches("abc%", "ab"));
+        assertTrue(matches("%bcd", "abcd"));
+        assertFalse(matches("%bcd", "abcde"));
+        assertTrue(matches("%bc%", "abcd"));
+        assertTrue(matches("%%bc%%", "bc"));
+        assertFalse(matches("%bc%", "acbd"));
+        assertTrue(matches("%", "a"));
+        assertTrue(matches("a%c%e", "abcdcde"));
+        assertFalse(matches("a%c%e", "abcdcdef"));
+        assertTrue(matches("a_c", "abc"));
+        assertFalse(matches("a_c", "ac"));
+        assertTrue(matches("%a_c", "aaaxc"));
+        // A single character wildcard matches a multi-byte character
+        assertTrue(matches("a_c", "a\u00e9c"));
+        assertTrue(matches("a_c", "a\u20acc"));
+        assertFalse(matches("a__c", "a\u20acc"));
+        assertTrue(matches("%\u20ac_", "ab\u20ac\u00e9"));
+        // Escaped wildcards are matched literally
+        assertTrue(matches("a\\_c", "a_c"));
+        assertFalse(matches("a\\_c", "abc"));
+        assertTrue(matches("a\\%%", "a%bc"));
+        assertFalse(matches("a\\%%", "abc"));
+    }
+    
+    @Test
+    public void testLikeMatcherPrefix() {
+        LikeMatcher matcher = LikeMatcher.compile("ab\\_c%");
+        assertEquals("ab_c", matcher.getLiteralPrefix());
+        assertFalse(matcher.startsWithWildcard());
+        assertTrue(matcher.endsWithOnlyWildcard());
+        matcher = LikeMatcher.compile("ab_c%");
+        assertEquals("ab", matcher.getLiteralPrefix());
+        assertFalse(matcher.endsWithOnlyWildcard());
+        matcher = LikeMatcher.compile("abc%%");
+        assertFalse(matcher.endsWithOnlyWildcard());
+        matcher = LikeMatcher.compile("_abc");
+        assertEquals("", matcher.getLiteralPrefix());
+        assertTrue(matcher.startsWithWildcard());
+        matcher = LikeMatcher.compile("abc");
+        assertEquals("abc", matcher.getLiteralPrefix());
+        assertFalse(matcher.startsWithWildcard());
+        assertFalse(matcher.endsWithOnlyWildcard());
+    }
+    
 
 }